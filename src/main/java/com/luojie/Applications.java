@@ -2,6 +2,7 @@ package com.luojie;
 
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.cache.annotation.EnableCaching;
 import org.springframework.context.ConfigurableApplicationContext;
 import org.springframework.scheduling.annotation.EnableAsync;
 import org.springframework.transaction.annotation.EnableTransactionManagement;
@@ -11,6 +12,7 @@ import java.util.Arrays;
 @SpringBootApplication
 @EnableAsync // springboot 开启异步支持
 @EnableTransactionManagement // 开启事务控制
+@EnableCaching // 开启@Cacheable，缓存由BoundedCacheManager提供
 public class Applications {
 
     public static void main(String[] args) {
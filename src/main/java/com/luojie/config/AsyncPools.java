@@ -1,5 +1,7 @@
 package com.luojie.config;
 
+import com.luojie.config.trace.TraceIdVirtualThreadExecutor;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
@@ -10,8 +12,24 @@ import java.util.concurrent.ThreadPoolExecutor;
 @Configuration
 public class AsyncPools {
 
+    /**
+     * 线程池类型，platform为普通线程池，virtual为每个任务一个虚拟线程
+     */
+    @Value("${async.executor.type:platform}")
+    private String executorType;
+
+    /**
+     * 虚拟线程模式下同时执行的任务上限，不要超过Hikari/Jedis连接池的大小
+     */
+    @Value("${async.executor.virtual.max-concurrency:10}")
+    private int virtualMaxConcurrency;
+
     @Bean(name = "asyncExecutor")
     public Executor getAsyncExecutor() {
+        if ("virtual".equalsIgnoreCase(executorType)) {
+            // 虚拟线程阻塞在IO上不占用平台线程，任务不会被拒绝，由并发上限保护下游连接池
+            return TraceIdVirtualThreadExecutor.create("async-virtual-", virtualMaxConcurrency);
+        }
         ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
         executor.setCorePoolSize(10); // 设置核心线程数
         executor.setMaxPoolSize(20); // 设置最大线程数
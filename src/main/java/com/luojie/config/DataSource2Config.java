@@ -1,11 +1,16 @@
 package com.luojie.config;
 
 import com.luojie.config.myInterface.mybatisIntercept.SqlPrintInterceptor;
+import com.luojie.config.myInterface.mybatisIntercept.SqlStatementMetrics;
+import com.luojie.util.journal.SlowSqlJournal;
 import com.zaxxer.hikari.HikariDataSource;
 import org.apache.ibatis.plugin.Interceptor;
+import org.apache.ibatis.session.ExecutorType;
 import org.apache.ibatis.session.SqlSessionFactory;
 import org.mybatis.spring.SqlSessionFactoryBean;
+import org.mybatis.spring.SqlSessionTemplate;
 import org.mybatis.spring.annotation.MapperScan;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.jdbc.DataSourceBuilder;
@@ -25,16 +30,29 @@ public class DataSource2Config {
     private String username;
     @Value("${datasource2.password}")
     private String password;
+    /**
+     * mysql驱动把一次executeBatch的多条语句合并发送，否则BATCH执行器仍然是每条一次网络往返
+     */
+    @Value("${datasource2.rewrite-batched-statements:true}")
+    private boolean rewriteBatchedStatements;
+
+    @Autowired
+    private SlowSqlJournal slowSqlJournal;
+
+    @Autowired
+    private SqlStatementMetrics sqlStatementMetrics;
 
     @Bean(name = "dataSource2")
     public DataSource dataSource1() {
-        return DataSourceBuilder.create()
+        HikariDataSource dataSource = DataSourceBuilder.create()
                 .url(url)
                 .username(username)
                 .password(password)
                 // 使用HikariCP数据连接池管理
                 .type(HikariDataSource.class)
                 .build();
+        dataSource.addDataSourceProperty("rewriteBatchedStatements", rewriteBatchedStatements);
+        return dataSource;
     }
 
     @Bean(name = "sqlSessionFactory2")
@@ -44,8 +62,16 @@ public class DataSource2Config {
         sessionFactoryBean.setMapperLocations(new PathMatchingResourcePatternResolver().getResources("classpath:rojerTestMapper/mapper2/*.xml"));
         // 增加自定义的sql日志打印器
         // 用new Interceptor[]{new SqlPrintInterceptor()}而不是直接new SqlPrintInterceptor()是为了后续方便扩展
-        sessionFactoryBean.setPlugins(new Interceptor[]{new SqlPrintInterceptor()});
+        sessionFactoryBean.setPlugins(new Interceptor[]{new SqlPrintInterceptor(slowSqlJournal,
+                sqlStatementMetrics.forDataSource("dataSource2"))});
         return sessionFactoryBean.getObject();
     }
 
-}
\ No newline at end of file
+    /**
+     * BATCH执行器的SqlSessionTemplate，用于BulkWriteService批量写入，需要在事务中使用，见BatchSqlUtil
+     */
+    @Bean(name = "batchSqlSessionTemplate2")
+    public SqlSessionTemplate batchSqlSessionTemplate2(@Qualifier("sqlSessionFactory2") SqlSessionFactory sqlSessionFactory) {
+        return new SqlSessionTemplate(sqlSessionFactory, ExecutorType.BATCH);
+    }
+}
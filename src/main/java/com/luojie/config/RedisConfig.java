@@ -1,5 +1,8 @@
 package com.luojie.config;
 
+import com.luojie.config.redis.CompactRedisSerializer;
+import com.luojie.config.redis.UserModelCodec;
+import com.luojie.moudle.UserModel;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
@@ -9,7 +12,9 @@ import org.springframework.data.redis.connection.RedisStandaloneConfiguration;
 import org.springframework.data.redis.connection.jedis.JedisClientConfiguration;
 import org.springframework.data.redis.connection.jedis.JedisConnectionFactory;
 import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
 import org.springframework.data.redis.serializer.GenericJackson2JsonRedisSerializer;
+import org.springframework.data.redis.serializer.RedisSerializer;
 import org.springframework.data.redis.serializer.StringRedisSerializer;
 import redis.clients.jedis.JedisPoolConfig;
 
@@ -39,6 +44,18 @@ public class RedisConfig {
     @Value("${spring.redis.jedis.pool.max-wait}")
     private Duration maxWaitMillis;
 
+    /**
+     * value序列化方式，json为GenericJackson2JsonRedisSerializer，compact为CompactRedisSerializer
+     */
+    @Value("${redis.serializer.mode:json}")
+    private String serializerMode;
+
+    /**
+     * compact模式下超过该字节数的value会被压缩
+     */
+    @Value("${redis.serializer.compress-threshold:1024}")
+    private int compressThreshold;
+
     /**
      * Redis 连接工厂配置
      * @return
@@ -115,11 +132,36 @@ public class RedisConfig {
         template.setKeySerializer(new StringRedisSerializer());
         template.setHashKeySerializer(new StringRedisSerializer());
 
-        // 使用GenericJackson2JsonRedisSerializer序列化和反序列化redis的value值
-        template.setValueSerializer(new GenericJackson2JsonRedisSerializer());
-        template.setHashValueSerializer(new GenericJackson2JsonRedisSerializer());
+        // 序列化和反序列化redis的value值
+        RedisSerializer<Object> valueSerializer = valueSerializer();
+        template.setValueSerializer(valueSerializer);
+        template.setHashValueSerializer(valueSerializer);
 
         template.afterPropertiesSet();
         return template;
     }
+
+    /**
+     * redis发布订阅的监听容器，二级缓存用它接收其他节点的失效通知
+     * @param redisConnectionFactory
+     * @return
+     */
+    @Bean
+    public RedisMessageListenerContainer redisMessageListenerContainer(RedisConnectionFactory redisConnectionFactory) {
+        RedisMessageListenerContainer container = new RedisMessageListenerContainer();
+        container.setConnectionFactory(redisConnectionFactory);
+        return container;
+    }
+
+    /**
+     * value序列化器，默认json，与已有数据兼容；compact模式下String存原始UTF-8，已注册的类型存二进制
+     * @return
+     */
+    private RedisSerializer<Object> valueSerializer() {
+        if ("compact".equalsIgnoreCase(serializerMode)) {
+            return new CompactRedisSerializer(compressThreshold)
+                    .register(1, UserModel.class, new UserModelCodec());
+        }
+        return new GenericJackson2JsonRedisSerializer();
+    }
 }
@@ -3,6 +3,7 @@ package com.luojie.config;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
 import org.springframework.jdbc.datasource.DataSourceTransactionManager;
 import org.springframework.transaction.annotation.EnableTransactionManagement;
 
@@ -12,11 +13,26 @@ import javax.sql.DataSource;
 @EnableTransactionManagement
 public class TxConfig {
 
+    @Autowired
+    DataSource dataSource1;
+
     @Autowired
     DataSource dataSource2;
 
+    /**
+     * 有两个事务管理器，没有指定时用这个，和原来一样
+     */
+    @Primary
     @Bean("myTransactionManager")
     public DataSourceTransactionManager transactionManager() {
         return new DataSourceTransactionManager(dataSource2);
     }
+
+    /**
+     * dataSource1的事务管理器，BulkWriteService写入mapper1时使用
+     */
+    @Bean("myTransactionManager1")
+    public DataSourceTransactionManager transactionManager1() {
+        return new DataSourceTransactionManager(dataSource1);
+    }
 }
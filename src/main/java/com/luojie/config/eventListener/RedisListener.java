@@ -1,5 +1,7 @@
 package com.luojie.config.eventListener;
 
+import com.luojie.config.trace.TraceContextSnapshot;
+import com.luojie.config.trace.TraceIdInterceptor;
 import com.luojie.event.BaseRedisEvent;
 import com.luojie.event.RedisAddEvent;
 import com.luojie.event.RedisDeleteEvent;
@@ -12,6 +14,8 @@ import org.springframework.context.ApplicationListener;
 import org.springframework.scheduling.annotation.Async;
 import org.springframework.stereotype.Component;
 
+import java.util.concurrent.TimeUnit;
+
 @Component
 @Slf4j
 public class RedisListener implements ApplicationListener<BaseRedisEvent> {
@@ -22,13 +26,39 @@ public class RedisListener implements ApplicationListener<BaseRedisEvent> {
     @Override
     @Async("asyncExecutor") // 使用异步线程池进行处理
     public void onApplicationEvent(BaseRedisEvent redisEvent) {
-        if (redisEvent instanceof RedisAddEvent) {
-            handleAddEvent((RedisAddEvent) redisEvent);
-        } else if (redisEvent instanceof RedisDeleteEvent) {
-            handleDeleteEvent((RedisDeleteEvent) redisEvent);
+        // 从事件中恢复发布时的链路上下文，不依赖线程池传递MDC
+        TraceContextSnapshot context = redisEvent.getTraceContext();
+        TraceContextSnapshot previous = context.attach();
+        long handleStart = System.nanoTime();
+        try {
+            if (redisEvent instanceof RedisAddEvent) {
+                handleAddEvent((RedisAddEvent) redisEvent);
+            } else if (redisEvent instanceof RedisDeleteEvent) {
+                handleDeleteEvent((RedisDeleteEvent) redisEvent);
+            }
+        } finally {
+            logStageTiming(redisEvent, handleStart, System.nanoTime());
+            context.detach(previous);
         }
     }
 
+    /**
+     * 输出从请求进入到redis写入完成的各阶段耗时，单位为微秒
+     */
+    private void logStageTiming(BaseRedisEvent redisEvent, long handleStart, long handleEnd) {
+        String requestStart = redisEvent.getTraceContext().get(TraceIdInterceptor.TRACE_START_NANOS);
+        long publishNanos = redisEvent.getPublishNanos();
+        long requestToPublish = requestStart == null ? -1 : toMicros(publishNanos - Long.parseLong(requestStart));
+        long total = requestStart == null ? -1 : toMicros(handleEnd - Long.parseLong(requestStart));
+        log.info("{} stage timing(us) - requestToPublish:{}, queue:{}, redis:{}, total:{}",
+                redisEvent.getClass().getSimpleName(), requestToPublish, toMicros(handleStart - publishNanos),
+                toMicros(handleEnd - handleStart), total);
+    }
+
+    private static long toMicros(long nanos) {
+        return TimeUnit.NANOSECONDS.toMicros(nanos);
+    }
+
     private void handleAddEvent(RedisAddEvent redisEvent) {
         log.info("RedisAddEvent:{}", redisEvent);
         RedisEventModule module = redisEvent.eventModule;
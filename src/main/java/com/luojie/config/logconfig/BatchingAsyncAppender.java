@@ -0,0 +1,277 @@
+package com.luojie.config.logconfig;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.LoggerContext;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.classic.spi.LoggingEvent;
+import ch.qos.logback.core.Appender;
+import ch.qos.logback.core.OutputStreamAppender;
+import ch.qos.logback.core.UnsynchronizedAppenderBase;
+import ch.qos.logback.core.spi.AppenderAttachable;
+import ch.qos.logback.core.spi.AppenderAttachableImpl;
+import com.luojie.util.concurrent.MpscRingBuffer;
+
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 异步日志appender，在logback.xml中包装CONSOLE、FILE，请求线程只把日志放进队列，由一个后台线程写出
+ * 1. 队列是有界的无锁环形队列MpscRingBuffer(每个槽位一个序号，生产者CAS占位)，放入时不加锁，队列长度queueSize向上取2的幂
+ * 2. 队列满时低于discardLevel(默认WARN)的日志直接丢弃，不阻塞请求线程；WARN及以上等待队列有空位，不会丢失
+ *    丢弃的条数由后台线程以WARN日志输出
+ * 3. 后台线程每写出maxBatchSize条或者队列取空时才flush一次，被包装的文件appender要配置immediateFlush=false
+ * 和logback的AsyncAppender一样，放入队列前在请求线程中调用prepareForDeferredProcessing，保留线程名、MDC和格式化后的消息
+ */
+public class BatchingAsyncAppender extends UnsynchronizedAppenderBase<ILoggingEvent>
+        implements AppenderAttachable<ILoggingEvent> {
+
+    private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+
+    private static final long FULL_PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(100);
+
+    private final AppenderAttachableImpl<ILoggingEvent> appenders = new AppenderAttachableImpl<>();
+
+    private final LongAdder discarded = new LongAdder();
+
+    private int queueSize = 8192;
+
+    private Level discardLevel = Level.WARN;
+
+    private int maxBatchSize = 512;
+
+    private int maxFlushTime = 1000;
+
+    private boolean includeCallerData;
+
+    private MpscRingBuffer<ILoggingEvent> queue;
+
+    private Thread worker;
+
+    /**
+     * 后台线程是否在等待新日志
+     */
+    private volatile boolean sleeping;
+
+    private long reportedDiscards;
+
+    @Override
+    public void start() {
+        if (isStarted()) {
+            return;
+        }
+        if (!appenders.iteratorForAppenders().hasNext()) {
+            addError("No attached appenders found for [" + name + "]");
+            return;
+        }
+        queue = new MpscRingBuffer<>(queueSize);
+        worker = new Thread(this::drainLoop, "logback-async-" + name);
+        worker.setDaemon(true);
+        super.start();
+        worker.start();
+    }
+
+    @Override
+    public void stop() {
+        if (!isStarted()) {
+            return;
+        }
+        super.stop();
+        LockSupport.unpark(worker);
+        try {
+            worker.join(maxFlushTime);
+            if (worker.isAlive()) {
+                addWarn("Max flush time of " + maxFlushTime + "ms exceeded, " + queue.size()
+                        + " queued events may be lost");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Override
+    protected void append(ILoggingEvent event) {
+        event.prepareForDeferredProcessing();
+        if (includeCallerData) {
+            event.getCallerData();
+        }
+        if (queue.offer(event)) {
+            wakeWorker();
+            return;
+        }
+        if (!event.getLevel().isGreaterOrEqual(discardLevel)) {
+            discarded.increment();
+            return;
+        }
+        // 重要的日志等待后台线程腾出空位
+        while (!queue.offer(event)) {
+            wakeWorker();
+            if (!isStarted() || !worker.isAlive()) {
+                return;
+            }
+            LockSupport.parkNanos(FULL_PARK_NANOS);
+        }
+        wakeWorker();
+    }
+
+    private void wakeWorker() {
+        if (sleeping) {
+            sleeping = false;
+            LockSupport.unpark(worker);
+        }
+    }
+
+    private void drainLoop() {
+        int unflushed = 0;
+        while (true) {
+            ILoggingEvent event = queue.poll();
+            if (event != null) {
+                appenders.appendLoopOnAppenders(event);
+                if (++unflushed >= maxBatchSize) {
+                    flush();
+                    unflushed = 0;
+                }
+                continue;
+            }
+            reportDiscards();
+            if (unflushed > 0) {
+                flush();
+                unflushed = 0;
+            }
+            if (!isStarted()) {
+                break;
+            }
+            // 先声明要等待再检查一次队列，和wakeWorker配合不会错过新日志
+            sleeping = true;
+            if (queue.isEmpty() && isStarted()) {
+                LockSupport.parkNanos(this, IDLE_PARK_NANOS);
+            }
+            sleeping = false;
+        }
+        // stop之后还可能有日志放进来
+        ILoggingEvent event;
+        while ((event = queue.poll()) != null) {
+            appenders.appendLoopOnAppenders(event);
+        }
+        reportDiscards();
+        flush();
+        appenders.detachAndStopAllAppenders();
+    }
+
+    private void flush() {
+        for (Iterator<Appender<ILoggingEvent>> it = appenders.iteratorForAppenders(); it.hasNext(); ) {
+            if (it.next() instanceof OutputStreamAppender<ILoggingEvent> appender && !appender.isImmediateFlush()
+                    && appender.getOutputStream() != null) {
+                try {
+                    appender.getOutputStream().flush();
+                } catch (IOException e) {
+                    addError("Failed to flush [" + appender.getName() + "]", e);
+                }
+            }
+        }
+    }
+
+    private void reportDiscards() {
+        long total = discarded.sum();
+        if (total == reportedDiscards) {
+            return;
+        }
+        Logger logger = ((LoggerContext) getContext()).getLogger(BatchingAsyncAppender.class);
+        LoggingEvent event = new LoggingEvent(BatchingAsyncAppender.class.getName(), logger, Level.WARN,
+                "异步日志队列已满，丢弃了{}条{}以下的日志", null, new Object[]{total - reportedDiscards, discardLevel});
+        event.prepareForDeferredProcessing();
+        appenders.appendLoopOnAppenders(event);
+        reportedDiscards = total;
+    }
+
+    /**
+     * 队列满时丢弃的日志条数
+     */
+    public long getDiscardedCount() {
+        return discarded.sum();
+    }
+
+    public int getQueueSize() {
+        return queueSize;
+    }
+
+    public void setQueueSize(int queueSize) {
+        this.queueSize = queueSize;
+    }
+
+    public String getDiscardLevel() {
+        return discardLevel.toString();
+    }
+
+    /**
+     * 队列满时丢弃低于该级别的日志，设为ALL时全部等待不丢弃
+     */
+    public void setDiscardLevel(String discardLevel) {
+        this.discardLevel = Level.toLevel(discardLevel, Level.WARN);
+    }
+
+    public int getMaxBatchSize() {
+        return maxBatchSize;
+    }
+
+    public void setMaxBatchSize(int maxBatchSize) {
+        this.maxBatchSize = Math.max(1, maxBatchSize);
+    }
+
+    public int getMaxFlushTime() {
+        return maxFlushTime;
+    }
+
+    /**
+     * 停止时等待后台线程写完队列的最长时间(毫秒)
+     */
+    public void setMaxFlushTime(int maxFlushTime) {
+        this.maxFlushTime = maxFlushTime;
+    }
+
+    public boolean isIncludeCallerData() {
+        return includeCallerData;
+    }
+
+    public void setIncludeCallerData(boolean includeCallerData) {
+        this.includeCallerData = includeCallerData;
+    }
+
+    @Override
+    public void addAppender(Appender<ILoggingEvent> newAppender) {
+        appenders.addAppender(newAppender);
+    }
+
+    @Override
+    public Iterator<Appender<ILoggingEvent>> iteratorForAppenders() {
+        return appenders.iteratorForAppenders();
+    }
+
+    @Override
+    public Appender<ILoggingEvent> getAppender(String name) {
+        return appenders.getAppender(name);
+    }
+
+    @Override
+    public boolean isAttached(Appender<ILoggingEvent> appender) {
+        return appenders.isAttached(appender);
+    }
+
+    @Override
+    public void detachAndStopAllAppenders() {
+        appenders.detachAndStopAllAppenders();
+    }
+
+    @Override
+    public boolean detachAppender(Appender<ILoggingEvent> appender) {
+        return appenders.detachAppender(appender);
+    }
+
+    @Override
+    public boolean detachAppender(String name) {
+        return appenders.detachAppender(name);
+    }
+}
@@ -1,25 +1,47 @@
 package com.luojie.config.myInterface;
 
 import com.luojie.common.NoPermissionException;
+import com.luojie.context.UserContext;
 import com.luojie.dao.mapper1.Mapper1;
 import com.luojie.moudle.UserModel;
 import org.aspectj.lang.annotation.Aspect;
 import org.aspectj.lang.annotation.Before;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
 import org.springframework.stereotype.Component;
 
+import jakarta.annotation.PostConstruct;
 import jakarta.servlet.http.HttpServletRequest;
 
 @Component
 @Aspect
 public class PermissionAspect {
 
+    /**
+     * 当前请求解析好的权限保存在request属性中，同一个请求多次校验只解析一次
+     */
+    private static final String REQUEST_ATTRIBUTE = PermissionAspect.class.getName() + ".permissions";
+
     @Autowired
     private HttpServletRequest request;
 
     @Autowired
     private Mapper1 mapper1;
 
+    @Autowired
+    private CacheManager cacheManager;
+
+    /**
+     * userID -> UserPermissions，多个请求共享，过期时间见cache.spring.caches.permissionCache
+     */
+    private Cache permissionCache;
+
+    @PostConstruct
+    public void init() {
+        permissionCache = cacheManager.getCache("permissionCache");
+    }
+
     @Before("@annotation(requiresPermission)")
     public void checkPermission(MyPermission requiresPermission) {
         String permission = requiresPermission.value();
@@ -31,16 +53,32 @@ public class PermissionAspect {
     }
 
     private boolean hasPermission(String permission) {
+        return currentPermissions().has(permission);
+    }
+
+    /**
+     * 依次从request属性、共享的权限缓存获取；缓存没有时优先用UserAuthFilter放进UserContext的用户，最后才查数据库
+     */
+    private UserPermissions currentPermissions() {
+        Object resolved = request.getAttribute(REQUEST_ATTRIBUTE);
+        if (resolved instanceof UserPermissions) {
+            return (UserPermissions) resolved;
+        }
         // 一般我们会通过request拿token，解析token和数据库中数据比对，看用户是否有权限，这里我就简化为直接的值
         String userID = request.getHeader("userID");
-        // 从数据库中拿到该用户的所有权限
-        UserModel user = mapper1.getUser(userID);
-        // 进行权限判断
-        if (user == null) return false;
-        if (user.getRoles().contains(permission)) {
-            return true;
+        UserPermissions permissions = UserPermissions.NONE;
+        if (userID != null) {
+            permissions = permissionCache.get(userID, () -> {
+                UserModel user = UserContext.findCurrentUser();
+                if (user == null || !userID.equals(user.getUserid())) {
+                    // 从数据库中拿到该用户的所有权限
+                    user = mapper1.getUser(userID);
+                }
+                return UserPermissions.of(user);
+            });
         }
-        return false;
+        request.setAttribute(REQUEST_ATTRIBUTE, permissions);
+        return permissions;
     }
 
 }
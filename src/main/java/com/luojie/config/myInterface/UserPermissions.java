@@ -0,0 +1,78 @@
+package com.luojie.config.myInterface;
+
+import com.luojie.moudle.UserModel;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 解析好的用户权限，由UserModel.roles(逗号分隔)构建，构建后不可变
+ * 前64个出现过的权限名分配一个二进制位，判断时只需要一次位运算；超出64个的权限用Set判断
+ * 权限名按完整的名字匹配，不再是roles字符串的子串匹配(例如"superadmin"不包含"admin"权限)
+ */
+public final class UserPermissions {
+
+    /**
+     * 用户不存在时的权限，什么权限都没有
+     */
+    public static final UserPermissions NONE = new UserPermissions(0, Collections.emptySet());
+
+    private static final ConcurrentMap<String, Integer> BITS = new ConcurrentHashMap<>();
+
+    private static final AtomicInteger NEXT_BIT = new AtomicInteger();
+
+    private final long mask;
+
+    /**
+     * 没有分配到二进制位的权限
+     */
+    private final Set<String> others;
+
+    private UserPermissions(long mask, Set<String> others) {
+        this.mask = mask;
+        this.others = others;
+    }
+
+    public static UserPermissions of(UserModel user) {
+        if (user == null || user.getRoles() == null) {
+            return NONE;
+        }
+        long mask = 0;
+        Set<String> others = new HashSet<>();
+        for (String role : user.getRoles().split(",")) {
+            String name = role.trim();
+            if (name.isEmpty()) {
+                continue;
+            }
+            int bit = bitOf(name);
+            if (bit >= 0) {
+                mask |= 1L << bit;
+            } else {
+                others.add(name);
+            }
+        }
+        return new UserPermissions(mask, others.isEmpty() ? Collections.emptySet() : others);
+    }
+
+    public boolean has(String permission) {
+        Integer bit = BITS.get(permission);
+        if (bit != null && bit >= 0) {
+            return (mask & (1L << bit)) != 0;
+        }
+        return others.contains(permission);
+    }
+
+    /**
+     * 权限名对应的二进制位，已经分配完时返回-1
+     */
+    private static int bitOf(String name) {
+        return BITS.computeIfAbsent(name, n -> {
+            int bit = NEXT_BIT.getAndIncrement();
+            return bit < Long.SIZE ? bit : -1;
+        });
+    }
+}
@@ -1,15 +1,17 @@
 package com.luojie.config.myInterface.mybatisIntercept;
 
-import com.luojie.common.Conditions;
-import com.luojie.util.TxtUtil;
+import com.luojie.util.journal.SlowSqlJournal;
 import lombok.extern.slf4j.Slf4j;
-import org.apache.commons.lang3.ObjectUtils;
 import org.apache.ibatis.cache.CacheKey;
+import org.apache.ibatis.executor.BatchExecutor;
+import org.apache.ibatis.executor.BatchExecutorException;
+import org.apache.ibatis.executor.BatchResult;
 import org.apache.ibatis.executor.Executor;
 import org.apache.ibatis.mapping.BoundSql;
 import org.apache.ibatis.mapping.MappedStatement;
 import org.apache.ibatis.mapping.ParameterMapping;
 import org.apache.ibatis.plugin.Interceptor;
+import org.apache.ibatis.reflection.ExceptionUtil;
 import org.apache.ibatis.plugin.Intercepts;
 import org.apache.ibatis.plugin.Invocation;
 import org.apache.ibatis.plugin.Signature;
@@ -17,32 +19,70 @@ import org.apache.ibatis.reflection.MetaObject;
 import org.apache.ibatis.session.Configuration;
 import org.apache.ibatis.session.ResultHandler;
 import org.apache.ibatis.session.RowBounds;
+import org.apache.ibatis.type.TypeHandlerRegistry;
 
-import java.text.SimpleDateFormat;
-import java.util.Date;
+import java.sql.Statement;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Properties;
-import java.util.regex.Matcher;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
 
 /**
  * 自定义打印日志功能的拦截器
+ * 只有慢sql或者开启了DEBUG日志时才生成带参数的sql，其他情况只多一次计时
+ * 生成sql时，每个MappedStatement去掉多余空白、按?切分后的结果会缓存起来，参数一次遍历拼接
+ * BATCH执行器的update只是addBatch，不计时；在flushStatements时统一计时，见interceptFlush
  */
 @Intercepts({
         // 拦截 Executor 接口的 query 方法，包含不同的参数组合
         @Signature(type = Executor.class, method = "query", args = {MappedStatement.class, Object.class, RowBounds.class, ResultHandler.class, CacheKey.class, BoundSql.class}),
         @Signature(type = Executor.class, method = "query", args = {MappedStatement.class, Object.class, RowBounds.class, ResultHandler.class}),
         @Signature(type = Executor.class, method = "queryCursor", args = {MappedStatement.class, Object.class, RowBounds.class}),
-        @Signature(type = Executor.class, method = "update", args = {MappedStatement.class, Object.class})
+        @Signature(type = Executor.class, method = "update", args = {MappedStatement.class, Object.class}),
+        @Signature(type = Executor.class, method = "flushStatements", args = {})
 })
 @Slf4j
 public class SqlPrintInterceptor implements Interceptor {
 
-    private static final SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss.SSS");
+    private final SlowSqlJournal slowSqlJournal;
+
+    /**
+     * 当前数据源的执行统计，未开启时为null
+     */
+    private final SqlStatementMetrics.DataSourceMetrics metrics;
+
+    /**
+     * MappedStatement id -> 切分好的sql；动态sql每次生成的sql不同时会被替换，条数不超过MappedStatement的数量
+     */
+    private final ConcurrentMap<String, SqlTemplate> templates = new ConcurrentHashMap<>();
+
+    /**
+     * BATCH执行器addBatch过的MappedStatement，flushStatements失败时按BatchExecutorException中的id找到失败的语句
+     */
+    private final ConcurrentMap<String, MappedStatement> batchedStatements = new ConcurrentHashMap<>();
+
+    public SqlPrintInterceptor(SlowSqlJournal slowSqlJournal) {
+        this(slowSqlJournal, null);
+    }
+
+    /**
+     * @param metrics 所属数据源的执行统计，为null时不统计
+     */
+    public SqlPrintInterceptor(SlowSqlJournal slowSqlJournal, SqlStatementMetrics.DataSourceMetrics metrics) {
+        this.slowSqlJournal = slowSqlJournal;
+        this.metrics = metrics;
+    }
 
     @Override
     public Object intercept(Invocation invocation) throws Throwable {
+        // 没有参数的方法getArgs()为null
+        if ("flushStatements".equals(invocation.getMethod().getName())) {
+            return interceptFlush(invocation);
+        }
         // 记录开始时间
-        long startTime = System.currentTimeMillis();
+        long startTime = System.nanoTime();
         Object proceed = null;
 
         // 执行原始方法
@@ -50,40 +90,139 @@ public class SqlPrintInterceptor implements Interceptor {
             proceed = invocation.proceed();
         } catch (Throwable t) {
             log.error("Error during SQL execution", t);
+            if (metrics != null) {
+                // proceed通过反射调用，按真正的异常类型统计
+                metrics.record((MappedStatement) invocation.getArgs()[0], System.nanoTime() - startTime, -1,
+                        ExceptionUtil.unwrapThrowable(t));
+            }
             throw t; // 重新抛出异常
         }
 
-        // 记录结束时间
-        long endTime = System.currentTimeMillis();
-        long executionTime = endTime - startTime; // 计算执行时间
+        // 计算执行时间
+        long executionNanos = System.nanoTime() - startTime;
+        long executionTime = TimeUnit.NANOSECONDS.toMillis(executionNanos);
+        // BATCH执行器的update只做了addBatch，没有访问数据库
+        boolean batched = proceed instanceof Integer count && count == BatchExecutor.BATCH_UPDATE_RETURN_VALUE;
+        if (batched) {
+            MappedStatement mappedStatement = (MappedStatement) invocation.getArgs()[0];
+            if (!batchedStatements.containsKey(mappedStatement.getId())) {
+                batchedStatements.put(mappedStatement.getId(), mappedStatement);
+            }
+        }
+        if (metrics != null && !batched) {
+            metrics.record((MappedStatement) invocation.getArgs()[0], executionNanos, rowCount(proceed), null);
+        }
 
-        // 转换执行时间为 "XXs.XXms" 格式
-        String formattedExecutionTime = formatExecutionTime(executionTime);
+        // 每条sql的打印改为DEBUG级别，不是慢sql又没开DEBUG时不生成sql
+        boolean debug = log.isDebugEnabled();
+        boolean slow = !batched && slowSqlJournal.isSlow(executionTime);
+        if (!debug && !slow) {
+            return proceed;
+        }
 
         // 生成打印的 SQL 语句
-        String printSql = generateSql(invocation);
-        // 输出 SQL 和执行时间
-        System.out.println(Conditions.RED + "SQL: " + printSql);
-        System.out.println("Execution time: " + formattedExecutionTime);
-        System.out.print(Conditions.RESET);
-        log.info("SQL: " + printSql);
-        log.info("Execution time: " + formattedExecutionTime);
+        Object[] args = invocation.getArgs();
+        // 6个参数的query已经带了BoundSql，不用再生成一次
+        String printSql = generateSql((MappedStatement) args[0], args[1], args.length == 6 ? (BoundSql) args[5] : null);
+        if (debug) {
+            // 转换执行时间为 "XXs.XXms" 格式
+            String formattedExecutionTime = formatExecutionTime(executionTime);
+            // 输出 SQL 和执行时间
+            log.debug("SQL: {}", printSql);
+            log.debug("Execution time: {}", formattedExecutionTime);
+        }
 
-        // 记录慢sql(这里我为了方便观察，所以设置界限为0，各位可以根据实际情况设置)
-        if ((executionTime / 1000) >= 0) {
-            writeSlowSqlToLocation(printSql, formattedExecutionTime);
+        // 记录慢sql，阈值见sql.slow.threshold，写文件在后台线程完成
+        if (slow) {
+            slowSqlJournal.record(printSql, executionTime);
         }
 
         return proceed; // 返回原始方法的结果
     }
 
-    // 记录慢sql
-    private void writeSlowSqlToLocation(String sql, String executeTime) {
-        String formattedDate = dateFormat.format(new Date());
-        String logs = formattedDate + "  SQL: " + sql + "  执行耗时: " + executeTime;
-        TxtUtil.writeLog(logs);
+    /**
+     * BATCH执行器发送前面addBatch的语句，每个BatchResult是一条语句的一次executeBatch
+     * 统计时每个BatchResult记一次执行，耗时按BatchResult的个数平均分摊；慢sql和DEBUG日志用第一组参数生成sql，
+     * 前面加上批量的条数，耗时为整次flush的耗时
+     * 提交事务时执行器内部调用的flushStatements不经过插件，不会计时，BatchSqlUtil在提交前已经显式flush
+     */
+    @SuppressWarnings("unchecked")
+    private Object interceptFlush(Invocation invocation) throws Throwable {
+        long startTime = System.nanoTime();
+        List<BatchResult> results;
+        try {
+            results = (List<BatchResult>) invocation.proceed();
+        } catch (Throwable t) {
+            log.error("Error during SQL batch execution", t);
+            // proceed通过反射调用，异常包在InvocationTargetException中
+            Throwable cause = ExceptionUtil.unwrapThrowable(t);
+            MappedStatement failing = cause instanceof BatchExecutorException e
+                    ? batchedStatements.get(e.getFailingStatementId()) : null;
+            if (metrics != null && failing != null) {
+                metrics.record(failing, System.nanoTime() - startTime, -1, cause);
+            }
+            throw t;
+        }
+        // SIMPLE、REUSE执行器和没有待发送语句时为空
+        if (results == null || results.isEmpty()) {
+            return results;
+        }
+
+        long executionNanos = System.nanoTime() - startTime;
+        long executionTime = TimeUnit.NANOSECONDS.toMillis(executionNanos);
+        if (metrics != null) {
+            for (BatchResult result : results) {
+                metrics.record(result.getMappedStatement(), executionNanos / results.size(), rowCount(result), null);
+            }
+        }
+
+        boolean debug = log.isDebugEnabled();
+        boolean slow = slowSqlJournal.isSlow(executionTime);
+        if (!debug && !slow) {
+            return results;
+        }
+        for (BatchResult result : results) {
+            List<Object> parameters = result.getParameterObjects();
+            String printSql = "[batch " + parameters.size() + "] " + generateSql(result.getMappedStatement(),
+                    parameters.isEmpty() ? null : parameters.get(0), null);
+            if (debug) {
+                log.debug("SQL: {}", printSql);
+                log.debug("Execution time: {}", formatExecutionTime(executionTime));
+            }
+            if (slow) {
+                slowSqlJournal.record(printSql, executionTime);
+            }
+        }
+        return results;
+    }
+
+    /**
+     * executeBatch影响的行数，驱动返回SUCCESS_NO_INFO时按1行计算
+     */
+    private static long rowCount(BatchResult result) {
+        long rows = 0;
+        for (int count : result.getUpdateCounts()) {
+            if (count > 0) {
+                rows += count;
+            } else if (count == Statement.SUCCESS_NO_INFO) {
+                rows++;
+            }
+        }
+        return rows;
     }
 
+    /**
+     * query返回List，update返回影响的行数，queryCursor的行数在执行时还不知道
+     */
+    private static long rowCount(Object result) {
+        if (result instanceof List<?> list) {
+            return list.size();
+        }
+        if (result instanceof Integer count) {
+            return count;
+        }
+        return -1;
+    }
 
     // 新增格式化执行时间的方法
     private String formatExecutionTime(long executionTime) {
@@ -92,68 +231,53 @@ public class SqlPrintInterceptor implements Interceptor {
         return String.format("%ds.%03dms", seconds, milliseconds); // 格式化为 "XXs.XXXms"
     }
 
-    private String generateSql(Invocation invocation) {
-        // 获取 MappedStatement 对象
-        MappedStatement mappedStatement = (MappedStatement) invocation.getArgs()[0];
-        Object parameter = null;
-
-        // 获取参数对象
-        if (invocation.getArgs().length > 1) {
-            parameter = invocation.getArgs()[1];
+    /**
+     * @param boundSql 已经生成的BoundSql，为null时用参数生成
+     */
+    private String generateSql(MappedStatement mappedStatement, Object parameter, BoundSql boundSql) {
+        if (boundSql == null) {
+            boundSql = mappedStatement.getBoundSql(parameter);
         }
 
-        // 获取 MyBatis 配置
-        Configuration configuration = mappedStatement.getConfiguration();
-        // 获取 BoundSql 对象
-        BoundSql boundSql = mappedStatement.getBoundSql(parameter);
-
-        // 获取参数对象
-        Object parameterObject = boundSql.getParameterObject();
-        // 获取参数映射列表
-        List<ParameterMapping> parameterMappings = boundSql.getParameterMappings();
-        // 获取执行的 SQL 语句
         String sql = boundSql.getSql();
-
-        // 替换 SQL 中多个空格为一个空格
-        sql = sql.replaceAll("[\\s]+", " ");
-
-        // 如果参数对象和参数映射不为空
-        if (!ObjectUtils.isEmpty(parameterObject) && !ObjectUtils.isEmpty(parameterMappings)) {
-            // 如果只有一个参数，直接替换
-            if (parameterObject instanceof String && parameterMappings.size() == 1) {
-                return sql.replaceFirst("\\?", String.valueOf(parameterObject)); // 处理缺少值的情况
-            }
-            // 遍历每个参数映射
-            for (ParameterMapping parameterMapping : parameterMappings) {
-                String propertyName = parameterMapping.getProperty(); // 获取属性名
-                MetaObject metaObject = configuration.newMetaObject(parameterObject); // 创建 MetaObject
-
-                Object obj = null; // 初始化参数对象
-                // 如果参数对象有对应的 getter 方法
-                if (metaObject.hasGetter(propertyName)) {
-                    obj = metaObject.getValue(propertyName); // 获取参数值
-                } else if (boundSql.hasAdditionalParameter(propertyName)) {
-                    obj = boundSql.getAdditionalParameter(propertyName); // 获取附加参数
-                }
-
-                // 替换 SQL 中的占位符
-                if (obj != null) {
-                    sql = sql.replaceFirst("\\?", Matcher.quoteReplacement(getParameterValue(obj)));
-                } else {
-                    sql = sql.replaceFirst("\\?", Matcher.quoteReplacement(propertyName)); // 处理缺少值的情况
-                }
-            }
+        SqlTemplate template = templates.get(mappedStatement.getId());
+        if (template == null || !template.matches(sql)) {
+            template = new SqlTemplate(sql);
+            templates.put(mappedStatement.getId(), template);
         }
-        return sql; // 返回生成的 SQL 语句
+        return template.render(parameterValues(mappedStatement.getConfiguration(), boundSql));
     }
 
-    private String getParameterValue(Object parameterObject) {
-        // 如果参数对象为空，返回 "null"
-        if (parameterObject == null) {
-            return "null";
+    /**
+     * 按参数映射的顺序取出参数值，取值顺序与MyBatis的DefaultParameterHandler一致
+     */
+    private List<Object> parameterValues(Configuration configuration, BoundSql boundSql) {
+        List<ParameterMapping> parameterMappings = boundSql.getParameterMappings();
+        Object parameterObject = boundSql.getParameterObject();
+        if (parameterMappings == null || parameterMappings.isEmpty()) {
+            return List.of();
+        }
+        TypeHandlerRegistry typeHandlerRegistry = configuration.getTypeHandlerRegistry();
+        List<Object> values = new ArrayList<>(parameterMappings.size());
+        MetaObject metaObject = null;
+        for (ParameterMapping parameterMapping : parameterMappings) {
+            String propertyName = parameterMapping.getProperty(); // 获取属性名
+            if (boundSql.hasAdditionalParameter(propertyName)) {
+                // foreach等生成的附加参数
+                values.add(boundSql.getAdditionalParameter(propertyName));
+            } else if (parameterObject == null) {
+                values.add(null);
+            } else if (typeHandlerRegistry.hasTypeHandler(parameterObject.getClass())) {
+                // 只有一个简单类型的参数
+                values.add(parameterObject);
+            } else {
+                if (metaObject == null) {
+                    metaObject = configuration.newMetaObject(parameterObject);
+                }
+                values.add(metaObject.hasGetter(propertyName) ? metaObject.getValue(propertyName) : propertyName);
+            }
         }
-        // 返回参数对象的字符串表示
-        return parameterObject.toString();
+        return values;
     }
 
     @Override
@@ -167,4 +291,67 @@ public class SqlPrintInterceptor implements Interceptor {
         // 设置属性
         Interceptor.super.setProperties(properties);
     }
+
+    /**
+     * 去掉多余空白后按占位符?切分的sql，引号里的?不是占位符
+     */
+    private static final class SqlTemplate {
+
+        private final String raw;
+
+        private final String[] segments;
+
+        private final int length;
+
+        private SqlTemplate(String raw) {
+            this.raw = raw;
+            List<String> parts = new ArrayList<>();
+            StringBuilder current = new StringBuilder(raw.length());
+            boolean inQuote = false;
+            boolean lastWhitespace = false;
+            int total = 0;
+            for (int i = 0; i < raw.length(); i++) {
+                char c = raw.charAt(i);
+                // 多个空白字符合并为一个空格
+                if (Character.isWhitespace(c)) {
+                    if (!lastWhitespace) {
+                        current.append(' ');
+                    }
+                    lastWhitespace = true;
+                    continue;
+                }
+                lastWhitespace = false;
+                if (c == '\'') {
+                    inQuote = !inQuote;
+                }
+                if (c == '?' && !inQuote) {
+                    total += current.length();
+                    parts.add(current.toString());
+                    current.setLength(0);
+                } else {
+                    current.append(c);
+                }
+            }
+            total += current.length();
+            parts.add(current.toString());
+            this.segments = parts.toArray(new String[0]);
+            this.length = total;
+        }
+
+        private boolean matches(String sql) {
+            // 静态sql每次返回的是同一个字符串，一般在==就能判断
+            return raw == sql || raw.equals(sql);
+        }
+
+        private String render(List<Object> values) {
+            StringBuilder sql = new StringBuilder(length + values.size() * 16);
+            sql.append(segments[0]);
+            for (int i = 1; i < segments.length; i++) {
+                // 参数不够时保留占位符
+                sql.append(i <= values.size() ? String.valueOf(values.get(i - 1)) : "?");
+                sql.append(segments[i]);
+            }
+            return sql.toString();
+        }
+    }
 }
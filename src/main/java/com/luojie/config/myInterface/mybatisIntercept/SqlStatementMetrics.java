@@ -0,0 +1,152 @@
+package com.luojie.config.myInterface.mybatisIntercept;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.annotation.PostConstruct;
+import org.apache.ibatis.mapping.MappedStatement;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 按数据源和MappedStatement统计sql的执行情况，通过actuator的/actuator/metrics查看
+ * sql.statement：执行耗时(纳秒精度)，带百分位直方图，tag为datasource、statement(如Mapper2.buyBook)、type、outcome
+ * sql.statement.rows：查询返回的行数或更新影响的行数
+ * sql.statement.errors：执行失败的次数，tag多一个exception
+ * 例如 /actuator/metrics/sql.statement?tag=statement:Mapper1.getUser
+ */
+@Component
+public class SqlStatementMetrics {
+
+    @Value("${sql.metrics.enabled:true}")
+    private boolean enabled;
+
+    /**
+     * 直方图统计的耗时范围，超出范围的值算在两端的桶里，范围越小桶越少
+     */
+    @Value("${sql.metrics.minimum-expected-value:100us}")
+    private Duration minimumExpectedValue;
+
+    @Value("${sql.metrics.maximum-expected-value:10s}")
+    private Duration maximumExpectedValue;
+
+    @Autowired
+    private ObjectProvider<MeterRegistry> meterRegistryProvider;
+
+    private MeterRegistry meterRegistry;
+
+    @PostConstruct
+    public void init() {
+        meterRegistry = meterRegistryProvider.getIfAvailable(SimpleMeterRegistry::new);
+    }
+
+    /**
+     * 一个数据源的统计，每个SqlPrintInterceptor持有一个
+     *
+     * @return 未开启时返回null
+     */
+    public DataSourceMetrics forDataSource(String dataSource) {
+        return enabled ? new DataSourceMetrics(dataSource) : null;
+    }
+
+    /**
+     * MappedStatement的id取最后两段，例如com.luojie.dao.mapper2.Mapper2.buyBook -> Mapper2.buyBook
+     */
+    static String statementName(String id) {
+        int method = id.lastIndexOf('.');
+        int type = method > 0 ? id.lastIndexOf('.', method - 1) : -1;
+        return id.substring(type + 1);
+    }
+
+    public final class DataSourceMetrics {
+
+        private final String dataSource;
+
+        /**
+         * MappedStatement id -> 统计项，避免每次执行都重新拼tag查找meter
+         */
+        private final ConcurrentMap<String, StatementMeters> statements = new ConcurrentHashMap<>();
+
+        private DataSourceMetrics(String dataSource) {
+            this.dataSource = dataSource;
+        }
+
+        /**
+         * 记录一次执行
+         *
+         * @param rows 返回或影响的行数，未知时传负数
+         * @param error 执行失败的异常，成功时为null
+         */
+        public void record(MappedStatement mappedStatement, long nanos, long rows, Throwable error) {
+            StatementMeters meters = statements.get(mappedStatement.getId());
+            if (meters == null) {
+                meters = statements.computeIfAbsent(mappedStatement.getId(), id -> new StatementMeters(mappedStatement));
+            }
+            if (error == null) {
+                meters.success.record(nanos, TimeUnit.NANOSECONDS);
+                if (rows >= 0) {
+                    meters.rows.record(rows);
+                }
+            } else {
+                meters.failure.record(nanos, TimeUnit.NANOSECONDS);
+                meters.errors(error).increment();
+            }
+        }
+
+        private final class StatementMeters {
+
+            private final String statement;
+
+            private final String type;
+
+            private final Timer success;
+
+            private final Timer failure;
+
+            private final DistributionSummary rows;
+
+            /**
+             * 异常类型 -> 计数
+             */
+            private final ConcurrentMap<Class<?>, Counter> errors = new ConcurrentHashMap<>();
+
+            private StatementMeters(MappedStatement mappedStatement) {
+                this.statement = statementName(mappedStatement.getId());
+                this.type = mappedStatement.getSqlCommandType().name();
+                this.success = timer("success");
+                this.failure = timer("error");
+                this.rows = DistributionSummary.builder("sql.statement.rows").description("sql返回或影响的行数")
+                        .tag("datasource", dataSource).tag("statement", statement).tag("type", type)
+                        .register(meterRegistry);
+            }
+
+            private Timer timer(String outcome) {
+                return Timer.builder("sql.statement").description("sql执行耗时")
+                        .tag("datasource", dataSource).tag("statement", statement).tag("type", type)
+                        .tag("outcome", outcome)
+                        .publishPercentiles(0.5, 0.95, 0.99)
+                        .publishPercentileHistogram()
+                        .minimumExpectedValue(minimumExpectedValue)
+                        .maximumExpectedValue(maximumExpectedValue)
+                        .register(meterRegistry);
+            }
+
+            private Counter errors(Throwable error) {
+                return errors.computeIfAbsent(error.getClass(), c -> Counter.builder("sql.statement.errors")
+                        .description("sql执行失败的次数")
+                        .tag("datasource", dataSource).tag("statement", statement).tag("type", type)
+                        .tag("exception", c.getSimpleName())
+                        .register(meterRegistry));
+            }
+        }
+    }
+}
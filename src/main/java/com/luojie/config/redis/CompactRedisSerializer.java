@@ -0,0 +1,241 @@
+package com.luojie.config.redis;
+
+import org.springframework.data.redis.serializer.GenericJackson2JsonRedisSerializer;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.data.redis.serializer.SerializationException;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * 紧凑的redis value序列化器，用来替代GenericJackson2JsonRedisSerializer
+ * 1. String直接存UTF-8字节，不带引号和类型信息，redis-cli里可以直接看到原值
+ * 2. 注册了CompactCodec的类型(例如UserModel)按字段顺序写二进制，只占1个字节的类型id
+ * 3. 其他类型仍然用GenericJackson2JsonRedisSerializer，保证任意对象都能存取
+ * 4. 序列化结果超过阈值时用Deflater压缩
+ *
+ * 首字节小于TAG_LIMIT时表示带标记的格式，否则整个value就是UTF-8字符串
+ * 与json格式的数据不兼容，切换序列化方式前需要清理或等待旧数据过期
+ */
+public class CompactRedisSerializer implements RedisSerializer<Object> {
+
+    /**
+     * 首字节以控制字符开头的字符串，后面是UTF-8字节
+     */
+    private static final int TAG_STRING = 0x00;
+
+    /**
+     * 压缩过的字符串，后面是原始长度和压缩数据
+     */
+    private static final int TAG_COMPRESSED_STRING = 0x01;
+
+    /**
+     * 对象，后面是类型id和编码数据
+     */
+    private static final int TAG_OBJECT = 0x02;
+
+    /**
+     * 压缩过的对象，解压后是类型id和编码数据
+     */
+    private static final int TAG_COMPRESSED_OBJECT = 0x03;
+
+    private static final int TAG_LIMIT = 0x04;
+
+    /**
+     * 没有注册CompactCodec的类型使用json
+     */
+    private static final int JSON_TYPE_ID = 0;
+
+    private final GenericJackson2JsonRedisSerializer json = new GenericJackson2JsonRedisSerializer();
+
+    private final Map<Class<?>, Registration> byClass = new ConcurrentHashMap<>();
+
+    private final Registration[] byId = new Registration[256];
+
+    /**
+     * 超过该字节数才压缩，小于等于0表示不压缩
+     */
+    private final int compressThreshold;
+
+    public CompactRedisSerializer(int compressThreshold) {
+        this.compressThreshold = compressThreshold;
+    }
+
+    /**
+     * 注册类型的编解码，typeId写入redis后不能再更换
+     * @param typeId 1~255
+     * @param type 类型
+     * @param codec 编解码
+     */
+    public <T> CompactRedisSerializer register(int typeId, Class<T> type, CompactCodec<T> codec) {
+        if (typeId <= JSON_TYPE_ID || typeId > 255) {
+            throw new IllegalArgumentException("typeId must be between 1 and 255");
+        }
+        if (byId[typeId] != null) {
+            throw new IllegalArgumentException("typeId " + typeId + " already registered for " + byId[typeId].type);
+        }
+        Registration registration = new Registration(typeId, type, codec);
+        byId[typeId] = registration;
+        byClass.put(type, registration);
+        return this;
+    }
+
+    @Override
+    public byte[] serialize(Object value) throws SerializationException {
+        if (value == null) {
+            return new byte[0];
+        }
+        if (value instanceof String) {
+            return serializeString((String) value);
+        }
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+            bytes.write(TAG_OBJECT);
+            Registration registration = byClass.get(value.getClass());
+            if (registration == null) {
+                bytes.write(JSON_TYPE_ID);
+                bytes.write(json.serialize(value));
+            } else {
+                DataOutputStream out = new DataOutputStream(bytes);
+                out.writeByte(registration.id);
+                registration.codec.write(value, out);
+            }
+            byte[] result = bytes.toByteArray();
+            if (shouldCompress(result.length - 1)) {
+                return compress(TAG_COMPRESSED_OBJECT, result, 1, result.length - 1);
+            }
+            return result;
+        } catch (IOException e) {
+            throw new SerializationException("Could not write " + value.getClass().getName(), e);
+        }
+    }
+
+    @Override
+    public Object deserialize(byte[] bytes) throws SerializationException {
+        if (bytes == null || bytes.length == 0) {
+            return null;
+        }
+        int tag = bytes[0] & 0xFF;
+        if (tag >= TAG_LIMIT) {
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+        try {
+            switch (tag) {
+                case TAG_STRING:
+                    return new String(bytes, 1, bytes.length - 1, StandardCharsets.UTF_8);
+                case TAG_COMPRESSED_STRING:
+                    return new String(decompress(bytes), StandardCharsets.UTF_8);
+                case TAG_OBJECT:
+                    return readObject(bytes, 1, bytes.length - 1);
+                default:
+                    byte[] payload = decompress(bytes);
+                    return readObject(payload, 0, payload.length);
+            }
+        } catch (IOException | DataFormatException e) {
+            throw new SerializationException("Could not read compact redis value", e);
+        }
+    }
+
+    private byte[] serializeString(String value) {
+        byte[] utf8 = value.getBytes(StandardCharsets.UTF_8);
+        if (shouldCompress(utf8.length)) {
+            return compress(TAG_COMPRESSED_STRING, utf8, 0, utf8.length);
+        }
+        if (utf8.length > 0 && (utf8[0] & 0xFF) >= TAG_LIMIT) {
+            return utf8;
+        }
+        // 空串或以控制字符开头时加上标记，避免和其他格式混淆
+        byte[] result = new byte[utf8.length + 1];
+        result[0] = TAG_STRING;
+        System.arraycopy(utf8, 0, result, 1, utf8.length);
+        return result;
+    }
+
+    private Object readObject(byte[] bytes, int offset, int length) throws IOException {
+        int typeId = bytes[offset] & 0xFF;
+        if (typeId == JSON_TYPE_ID) {
+            return json.deserialize(Arrays.copyOfRange(bytes, offset + 1, offset + length));
+        }
+        Registration registration = byId[typeId];
+        if (registration == null) {
+            throw new IOException("unknown compact type id " + typeId);
+        }
+        return registration.codec.read(new DataInputStream(new ByteArrayInputStream(bytes, offset + 1, length - 1)));
+    }
+
+    private boolean shouldCompress(int length) {
+        return compressThreshold > 0 && length > compressThreshold;
+    }
+
+    /**
+     * 格式：标记 + 变长原始长度 + deflate数据
+     */
+    private static byte[] compress(int tag, byte[] data, int offset, int length) {
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED, true);
+        try {
+            deflater.setInput(data, offset, length);
+            deflater.finish();
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(length / 2 + 16);
+            bytes.write(tag);
+            CompactCodec.writeVarInt(new DataOutputStream(bytes), length);
+            byte[] buffer = new byte[Math.min(length + 16, 8192)];
+            while (!deflater.finished()) {
+                int count = deflater.deflate(buffer);
+                bytes.write(buffer, 0, count);
+            }
+            return bytes.toByteArray();
+        } catch (IOException e) {
+            throw new SerializationException("Could not compress redis value", e);
+        } finally {
+            deflater.end();
+        }
+    }
+
+    private static byte[] decompress(byte[] bytes) throws IOException, DataFormatException {
+        ByteArrayInputStream in = new ByteArrayInputStream(bytes, 1, bytes.length - 1);
+        int length = CompactCodec.readVarInt(new DataInputStream(in));
+        int offset = bytes.length - in.available();
+        Inflater inflater = new Inflater(true);
+        try {
+            inflater.setInput(bytes, offset, bytes.length - offset);
+            byte[] result = new byte[length];
+            int read = 0;
+            while (read < length) {
+                int count = inflater.inflate(result, read, length - read);
+                if (count == 0 && (inflater.finished() || inflater.needsInput())) {
+                    throw new DataFormatException("truncated compressed redis value");
+                }
+                read += count;
+            }
+            return result;
+        } finally {
+            inflater.end();
+        }
+    }
+
+    private static final class Registration {
+
+        private final int id;
+
+        private final Class<?> type;
+
+        @SuppressWarnings("rawtypes")
+        private final CompactCodec codec;
+
+        private Registration(int id, Class<?> type, CompactCodec<?> codec) {
+            this.id = id;
+            this.type = type;
+            this.codec = codec;
+        }
+    }
+}
@@ -0,0 +1,33 @@
+package com.luojie.config.redis;
+
+import com.luojie.moudle.UserModel;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * UserModel的二进制编解码，字段顺序：username, money, sex, roles, userid
+ */
+public class UserModelCodec implements CompactCodec<UserModel> {
+
+    @Override
+    public void write(UserModel value, DataOutput out) throws IOException {
+        CompactCodec.writeString(out, value.getUsername());
+        CompactCodec.writeString(out, value.getMoney());
+        CompactCodec.writeString(out, value.getSex());
+        CompactCodec.writeString(out, value.getRoles());
+        CompactCodec.writeString(out, value.getUserid());
+    }
+
+    @Override
+    public UserModel read(DataInput in) throws IOException {
+        UserModel user = new UserModel();
+        user.setUsername(CompactCodec.readString(in));
+        user.setMoney(CompactCodec.readString(in));
+        user.setSex(CompactCodec.readString(in));
+        user.setRoles(CompactCodec.readString(in));
+        user.setUserid(CompactCodec.readString(in));
+        return user;
+    }
+}
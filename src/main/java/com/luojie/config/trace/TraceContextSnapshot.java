@@ -0,0 +1,172 @@
+package com.luojie.config.trace;
+
+import ch.qos.logback.classic.util.LogbackMDCAdapter;
+import org.slf4j.MDC;
+import org.slf4j.spi.MDCAdapter;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+
+/**
+ * 不可变的MDC上下文快照
+ * 在提交任务时捕获一次，可以被同一批扇出的任务共享，
+ * 子线程安装和恢复时不再每个任务拷贝两次MDC的Map
+ */
+public final class TraceContextSnapshot {
+
+    /**
+     * 空快照，父线程没有MDC上下文时使用
+     */
+    public static final TraceContextSnapshot EMPTY = new TraceContextSnapshot(Collections.emptyMap());
+
+    /**
+     * attach在同一线程上重入时返回的标记，detach遇到它什么都不做
+     */
+    private static final TraceContextSnapshot REENTRANT = new TraceContextSnapshot(Collections.emptyMap());
+
+    /**
+     * 当前线程已经安装的快照，同一个快照嵌套安装时(例如CompletableFuture的同步阶段)直接跳过
+     */
+    private static final ThreadLocal<TraceContextSnapshot> ACTIVE = new ThreadLocal<>();
+
+    /**
+     * 只读的上下文内容，创建后不会再被修改
+     */
+    private final Map<String, String> context;
+
+    private TraceContextSnapshot(Map<String, String> context) {
+        this.context = context;
+    }
+
+    /**
+     * 捕获当前线程的MDC上下文
+     * logback的getPropertyMap返回的是它自己缓存的只读Map，MDC没有变化时不会产生新的拷贝，
+     * 日志输出时也会用到这份缓存，所以大部分情况下捕获是零分配的
+     * @return 当前线程的上下文快照
+     */
+    public static TraceContextSnapshot capture() {
+        MDCAdapter adapter = MDC.getMDCAdapter();
+        if (adapter instanceof LogbackMDCAdapter) {
+            Map<String, String> context = ((LogbackMDCAdapter) adapter).getPropertyMap();
+            return context == null || context.isEmpty() ? EMPTY : new TraceContextSnapshot(context);
+        }
+        return of(MDC.getCopyOfContextMap());
+    }
+
+    /**
+     * 根据指定的Map创建快照，会拷贝一次以保证快照不可变
+     * @param context 指定的MDC上下文
+     * @return 上下文快照
+     */
+    public static TraceContextSnapshot of(Map<String, String> context) {
+        if (context == null || context.isEmpty()) {
+            return EMPTY;
+        }
+        return new TraceContextSnapshot(Collections.unmodifiableMap(new HashMap<>(context)));
+    }
+
+    /**
+     * 把快照安装到当前线程的MDC中
+     * @return 安装前当前线程的上下文，用于执行完成后恢复
+     */
+    public TraceContextSnapshot attach() {
+        if (ACTIVE.get() == this) {
+            return REENTRANT;
+        }
+        TraceContextSnapshot previous = capture();
+        // 空快照不覆盖当前线程的上下文，与原先context为null时的行为保持一致
+        if (!context.isEmpty() && previous.context != context) {
+            install();
+        }
+        ACTIVE.set(this);
+        return previous;
+    }
+
+    /**
+     * 恢复当前线程安装前的上下文
+     * @param previous attach方法返回的上下文
+     */
+    public void detach(TraceContextSnapshot previous) {
+        if (previous == REENTRANT) {
+            return;
+        }
+        // 外层如果是另一个快照，清空标记只会让它下次重新安装，不影响正确性；用set(null)避免每次重建ThreadLocal条目
+        ACTIVE.set(null);
+        previous.install();
+    }
+
+    private void install() {
+        MDC.clear();
+        // 只读Map的forEach直接委托给底层HashMap，不会像拷贝构造那样为每个Entry创建包装对象
+        context.forEach(MDC::put);
+    }
+
+    /**
+     * 包装Runnable，执行期间使用该快照作为MDC上下文
+     * @param runnable 原始的Runnable任务
+     * @return 包装后的Runnable
+     */
+    public Runnable wrap(Runnable runnable) {
+        return () -> {
+            TraceContextSnapshot previous = attach();
+            try {
+                runnable.run();
+            } finally {
+                detach(previous);
+            }
+        };
+    }
+
+    /**
+     * 包装Callable，执行期间使用该快照作为MDC上下文
+     * @param callable 原始的Callable任务
+     * @param <V> 返回值类型
+     * @return 包装后的Callable
+     */
+    public <V> Callable<V> wrap(Callable<V> callable) {
+        return () -> {
+            TraceContextSnapshot previous = attach();
+            try {
+                return callable.call();
+            } finally {
+                detach(previous);
+            }
+        };
+    }
+
+    /**
+     * 获取快照中的traceId
+     * @return traceId
+     */
+    public String getTraceId() {
+        return context.get(TraceIdInterceptor.TRACE_ID);
+    }
+
+    /**
+     * 获取快照中的值
+     * @param key 键名
+     * @return 对应的值
+     */
+    public String get(String key) {
+        return context.get(key);
+    }
+
+    /**
+     * 获取只读的上下文内容
+     * @return 只读Map
+     */
+    public Map<String, String> asMap() {
+        return context;
+    }
+
+    public boolean isEmpty() {
+        return context.isEmpty();
+    }
+
+    @Override
+    public String toString() {
+        return "TraceContextSnapshot" + context;
+    }
+}
@@ -1,7 +1,5 @@
 package com.luojie.config.trace;
 
-import org.slf4j.MDC;
-
 import java.util.Map;
 import java.util.concurrent.Callable;
 
@@ -17,9 +15,9 @@ public class TraceIdCallable<V> implements Callable<V> {
     private final Callable<V> callable;
     
     /**
-     * 父线程的MDC上下文
+     * 父线程的MDC上下文快照
      */
-    private final Map<String, String> context;
+    private final TraceContextSnapshot context;
 
     /**
      * 构造方法
@@ -27,7 +25,7 @@ public class TraceIdCallable<V> implements Callable<V> {
      */
     public TraceIdCallable(Callable<V> callable) {
         this.callable = callable;
-        this.context = MDC.getCopyOfContextMap();
+        this.context = TraceContextSnapshot.capture();
     }
 
     /**
@@ -37,27 +35,29 @@ public class TraceIdCallable<V> implements Callable<V> {
      */
     public TraceIdCallable(Callable<V> callable, Map<String, String> context) {
         this.callable = callable;
-        this.context = context;
+        this.context = TraceContextSnapshot.of(context);
+    }
+
+    /**
+     * 构造方法
+     * @param callable 原始的Callable任务
+     * @param context 已捕获的上下文快照，扇出多个任务时可以共享同一个快照
+     */
+    public TraceIdCallable(Callable<V> callable, TraceContextSnapshot context) {
+        this.callable = callable;
+        this.context = context == null ? TraceContextSnapshot.EMPTY : context;
     }
 
     @Override
     public V call() throws Exception {
-        // 获取当前MDC上下文
-        Map<String, String> previous = MDC.getCopyOfContextMap();
+        // 安装父线程的上下文，并记录当前线程原有的上下文
+        TraceContextSnapshot previous = context.attach();
         try {
-            // 设置传递的上下文
-            if (context != null) {
-                MDC.setContextMap(context);
-            }
             // 执行任务
             return callable.call();
         } finally {
             // 恢复上下文
-            if (previous == null) {
-                MDC.clear();
-            } else {
-                MDC.setContextMap(previous);
-            }
+            context.detach(previous);
         }
     }
 
@@ -81,4 +81,15 @@ public class TraceIdCallable<V> implements Callable<V> {
     public static <V> TraceIdCallable<V> wrap(Callable<V> callable, Map<String, String> context) {
         return new TraceIdCallable<>(callable, context);
     }
+
+    /**
+     * 包装Callable，使其支持TraceId传递，使用已捕获的上下文快照
+     * @param callable 原始的Callable任务
+     * @param context 上下文快照
+     * @param <V> 返回值类型
+     * @return 包装后的TraceIdCallable
+     */
+    public static <V> TraceIdCallable<V> wrap(Callable<V> callable, TraceContextSnapshot context) {
+        return new TraceIdCallable<>(callable, context);
+    }
 }
\ No newline at end of file
@@ -1,246 +1,520 @@
 package com.luojie.config.trace;
 
-import org.slf4j.MDC;
-
-import java.util.Map;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
 import java.util.concurrent.Executor;
 import java.util.function.BiConsumer;
 import java.util.function.BiFunction;
 import java.util.function.Consumer;
 import java.util.function.Function;
+import java.util.function.Supplier;
 
 /**
  * 支持TraceId传递的CompletableFuture
- * 用于在CompletableFuture异步任务中传递TraceId，确保日志链路完整
+ * 创建时捕获一次上下文快照，通过newIncompleteFuture传给后续的每一个阶段，
+ * 包括thenCompose/thenCombine等组合阶段以及指定了线程池的异步阶段，
+ * 整条异步链路只捕获一次上下文，每个阶段执行时安装同一个快照
+ * @param <T> 返回值类型
  */
-public class TraceIdCompletableFuture {
+public class TraceIdCompletableFuture<T> extends CompletableFuture<T> {
+
+    /**
+     * 整条链路共享的上下文快照
+     */
+    private final TraceContextSnapshot context;
+
+    /**
+     * 未指定线程池的异步阶段使用的线程池，为null时使用CompletableFuture默认的线程池
+     */
+    private final Executor defaultExecutor;
+
+    /**
+     * 构造方法，捕获当前线程的上下文
+     */
+    public TraceIdCompletableFuture() {
+        this(TraceContextSnapshot.capture(), null);
+    }
+
+    /**
+     * 构造方法
+     * @param context 上下文快照
+     * @param defaultExecutor 未指定线程池的异步阶段使用的线程池
+     */
+    public TraceIdCompletableFuture(TraceContextSnapshot context, Executor defaultExecutor) {
+        this.context = context == null ? TraceContextSnapshot.EMPTY : context;
+        this.defaultExecutor = defaultExecutor;
+    }
+
+    /**
+     * 获取链路共享的上下文快照
+     * @return 上下文快照
+     */
+    public TraceContextSnapshot getContext() {
+        return context;
+    }
+
+    @Override
+    public <U> CompletableFuture<U> newIncompleteFuture() {
+        // 后续阶段直接沿用同一个快照，不再重新捕获
+        return new TraceIdCompletableFuture<>(context, defaultExecutor);
+    }
+
+    @Override
+    public Executor defaultExecutor() {
+        return defaultExecutor == null ? super.defaultExecutor() : defaultExecutor;
+    }
 
     /**
      * 创建一个支持TraceId传递的CompletableFuture
-     * @param <T> 返回值类型
+     * @param supplier 任务
+     * @param <U> 返回值类型
      * @return 包装后的CompletableFuture
      */
-    public static <T> CompletableFuture<T> supplyAsync(java.util.function.Supplier<T> supplier) {
-        Map<String, String> context = MDC.getCopyOfContextMap();
-        return CompletableFuture.supplyAsync(() -> {
-            Map<String, String> previous = MDC.getCopyOfContextMap();
-            try {
-                if (context != null) {
-                    MDC.setContextMap(context);
-                }
-                return supplier.get();
-            } finally {
-                if (previous == null) {
-                    MDC.clear();
-                } else {
-                    MDC.setContextMap(previous);
-                }
-            }
-        });
+    public static <U> TraceIdCompletableFuture<U> supplyAsync(Supplier<U> supplier) {
+        TraceIdCompletableFuture<U> future = new TraceIdCompletableFuture<>();
+        future.completeAsync(supplier);
+        return future;
     }
 
     /**
      * 创建一个支持TraceId传递的CompletableFuture，使用指定的线程池
-     * @param <T> 返回值类型
+     * 该线程池同时作为后续未指定线程池的异步阶段的默认线程池
+     * @param supplier 任务
      * @param executor 线程池
+     * @param <U> 返回值类型
      * @return 包装后的CompletableFuture
      */
-    public static <T> CompletableFuture<T> supplyAsync(java.util.function.Supplier<T> supplier, Executor executor) {
-        Map<String, String> context = MDC.getCopyOfContextMap();
-        return CompletableFuture.supplyAsync(() -> {
-            Map<String, String> previous = MDC.getCopyOfContextMap();
-            try {
-                if (context != null) {
-                    MDC.setContextMap(context);
-                }
-                return supplier.get();
-            } finally {
-                if (previous == null) {
-                    MDC.clear();
-                } else {
-                    MDC.setContextMap(previous);
-                }
-            }
-        }, executor);
+    public static <U> TraceIdCompletableFuture<U> supplyAsync(Supplier<U> supplier, Executor executor) {
+        TraceIdCompletableFuture<U> future = new TraceIdCompletableFuture<>(TraceContextSnapshot.capture(), executor);
+        future.completeAsync(supplier, executor);
+        return future;
     }
 
     /**
      * 创建一个支持TraceId传递的CompletableFuture，无返回值
+     * @param runnable 任务
      * @return 包装后的CompletableFuture
      */
-    public static CompletableFuture<Void> runAsync(Runnable runnable) {
-        Map<String, String> context = MDC.getCopyOfContextMap();
-        return CompletableFuture.runAsync(() -> {
-            Map<String, String> previous = MDC.getCopyOfContextMap();
-            try {
-                if (context != null) {
-                    MDC.setContextMap(context);
-                }
-                runnable.run();
-            } finally {
-                if (previous == null) {
-                    MDC.clear();
-                } else {
-                    MDC.setContextMap(previous);
-                }
-            }
+    public static TraceIdCompletableFuture<Void> runAsync(Runnable runnable) {
+        return supplyAsync(() -> {
+            runnable.run();
+            return null;
         });
     }
 
     /**
      * 创建一个支持TraceId传递的CompletableFuture，无返回值，使用指定的线程池
+     * @param runnable 任务
      * @param executor 线程池
      * @return 包装后的CompletableFuture
      */
-    public static CompletableFuture<Void> runAsync(Runnable runnable, Executor executor) {
-        Map<String, String> context = MDC.getCopyOfContextMap();
-        return CompletableFuture.runAsync(() -> {
-            Map<String, String> previous = MDC.getCopyOfContextMap();
-            try {
-                if (context != null) {
-                    MDC.setContextMap(context);
-                }
-                runnable.run();
-            } finally {
-                if (previous == null) {
-                    MDC.clear();
-                } else {
-                    MDC.setContextMap(previous);
-                }
-            }
+    public static TraceIdCompletableFuture<Void> runAsync(Runnable runnable, Executor executor) {
+        return supplyAsync(() -> {
+            runnable.run();
+            return null;
         }, executor);
     }
 
+    /**
+     * 创建一个已完成的、携带当前上下文的CompletableFuture
+     * @param value 结果
+     * @param <U> 返回值类型
+     * @return 包装后的CompletableFuture
+     */
+    public static <U> TraceIdCompletableFuture<U> completedFuture(U value) {
+        TraceIdCompletableFuture<U> future = new TraceIdCompletableFuture<>();
+        future.complete(value);
+        return future;
+    }
+
+    /**
+     * 所有任务完成后完成，后续阶段携带当前上下文
+     * @param cfs 任务
+     * @return 包装后的CompletableFuture
+     */
+    public static TraceIdCompletableFuture<Void> allOf(CompletableFuture<?>... cfs) {
+        return wrap(CompletableFuture.allOf(cfs));
+    }
+
+    /**
+     * 任一任务完成后完成，后续阶段携带当前上下文
+     * @param cfs 任务
+     * @return 包装后的CompletableFuture
+     */
+    public static TraceIdCompletableFuture<Object> anyOf(CompletableFuture<?>... cfs) {
+        return wrap(CompletableFuture.anyOf(cfs));
+    }
+
+    /**
+     * 把普通的CompletionStage转换为携带当前上下文的CompletableFuture
+     * @param stage 原始的CompletionStage
+     * @param <U> 返回值类型
+     * @return 包装后的CompletableFuture
+     */
+    public static <U> TraceIdCompletableFuture<U> wrap(CompletionStage<U> stage) {
+        if (stage instanceof TraceIdCompletableFuture) {
+            return (TraceIdCompletableFuture<U>) stage;
+        }
+        TraceIdCompletableFuture<U> future = new TraceIdCompletableFuture<>();
+        stage.whenComplete((value, ex) -> {
+            if (ex != null) {
+                future.completeExceptionally(ex);
+            } else {
+                future.complete(value);
+            }
+        });
+        return future;
+    }
+
     /**
      * 包装thenApply方法，使其支持TraceId传递
      * @param future 原始CompletableFuture
      * @param fn 转换函数
-     * @param <T> 输入类型
-     * @param <U> 输出类型
+     * @param <U> 输入类型
+     * @param <V> 输出类型
      * @return 包装后的CompletableFuture
      */
-    public static <T, U> CompletableFuture<U> thenApply(CompletableFuture<T> future, Function<? super T, ? extends U> fn) {
-        Map<String, String> context = MDC.getCopyOfContextMap();
-        return future.thenApply(t -> {
-            Map<String, String> previous = MDC.getCopyOfContextMap();
-            try {
-                if (context != null) {
-                    MDC.setContextMap(context);
-                }
-                return fn.apply(t);
-            } finally {
-                if (previous == null) {
-                    MDC.clear();
-                } else {
-                    MDC.setContextMap(previous);
-                }
-            }
-        });
+    public static <U, V> CompletableFuture<V> thenApply(CompletableFuture<U> future, Function<? super U, ? extends V> fn) {
+        return wrap(future).thenApply(fn);
     }
 
     /**
      * 包装thenAccept方法，使其支持TraceId传递
      * @param future 原始CompletableFuture
      * @param action 消费函数
-     * @param <T> 输入类型
+     * @param <U> 输入类型
      * @return 包装后的CompletableFuture
      */
-    public static <T> CompletableFuture<Void> thenAccept(CompletableFuture<T> future, Consumer<? super T> action) {
-        Map<String, String> context = MDC.getCopyOfContextMap();
-        return future.thenAccept(t -> {
-            Map<String, String> previous = MDC.getCopyOfContextMap();
-            try {
-                if (context != null) {
-                    MDC.setContextMap(context);
-                }
-                action.accept(t);
-            } finally {
-                if (previous == null) {
-                    MDC.clear();
-                } else {
-                    MDC.setContextMap(previous);
-                }
-            }
-        });
+    public static <U> CompletableFuture<Void> thenAccept(CompletableFuture<U> future, Consumer<? super U> action) {
+        return wrap(future).thenAccept(action);
     }
 
     /**
      * 包装exceptionally方法，使其支持TraceId传递
      * @param future 原始CompletableFuture
      * @param fn 异常处理函数
-     * @param <T> 返回类型
+     * @param <U> 返回类型
      * @return 包装后的CompletableFuture
      */
-    public static <T> CompletableFuture<T> exceptionally(CompletableFuture<T> future, Function<Throwable, ? extends T> fn) {
-        Map<String, String> context = MDC.getCopyOfContextMap();
-        return future.exceptionally(ex -> {
-            Map<String, String> previous = MDC.getCopyOfContextMap();
-            try {
-                if (context != null) {
-                    MDC.setContextMap(context);
-                }
-                return fn.apply(ex);
-            } finally {
-                if (previous == null) {
-                    MDC.clear();
-                } else {
-                    MDC.setContextMap(previous);
-                }
-            }
-        });
+    public static <U> CompletableFuture<U> exceptionally(CompletableFuture<U> future, Function<Throwable, ? extends U> fn) {
+        return wrap(future).exceptionally(fn);
     }
 
     /**
      * 包装handle方法，使其支持TraceId传递
      * @param future 原始CompletableFuture
      * @param fn 处理函数
-     * @param <T> 输入类型
-     * @param <U> 输出类型
+     * @param <U> 输入类型
+     * @param <V> 输出类型
      * @return 包装后的CompletableFuture
      */
-    public static <T, U> CompletableFuture<U> handle(CompletableFuture<T> future, BiFunction<? super T, Throwable, ? extends U> fn) {
-        Map<String, String> context = MDC.getCopyOfContextMap();
-        return future.handle((t, ex) -> {
-            Map<String, String> previous = MDC.getCopyOfContextMap();
-            try {
-                if (context != null) {
-                    MDC.setContextMap(context);
-                }
-                return fn.apply(t, ex);
-            } finally {
-                if (previous == null) {
-                    MDC.clear();
-                } else {
-                    MDC.setContextMap(previous);
-                }
-            }
-        });
+    public static <U, V> CompletableFuture<V> handle(CompletableFuture<U> future, BiFunction<? super U, Throwable, ? extends V> fn) {
+        return wrap(future).handle(fn);
     }
 
     /**
      * 包装whenComplete方法，使其支持TraceId传递
      * @param future 原始CompletableFuture
      * @param action 完成动作
-     * @param <T> 输入类型
+     * @param <U> 输入类型
      * @return 包装后的CompletableFuture
      */
-    public static <T> CompletableFuture<T> whenComplete(CompletableFuture<T> future, BiConsumer<? super T, ? super Throwable> action) {
-        Map<String, String> context = MDC.getCopyOfContextMap();
-        return future.whenComplete((t, ex) -> {
-            Map<String, String> previous = MDC.getCopyOfContextMap();
+    public static <U> CompletableFuture<U> whenComplete(CompletableFuture<U> future, BiConsumer<? super U, ? super Throwable> action) {
+        return wrap(future).whenComplete(action);
+    }
+
+    // ---------------- 以下覆盖所有带回调的阶段，回调执行时安装链路的上下文快照 ----------------
+
+    @Override
+    public <U> CompletableFuture<U> thenApply(Function<? super T, ? extends U> fn) {
+        return super.thenApply(function(fn));
+    }
+
+    @Override
+    public <U> CompletableFuture<U> thenApplyAsync(Function<? super T, ? extends U> fn) {
+        return super.thenApplyAsync(function(fn));
+    }
+
+    @Override
+    public <U> CompletableFuture<U> thenApplyAsync(Function<? super T, ? extends U> fn, Executor executor) {
+        return super.thenApplyAsync(function(fn), executor);
+    }
+
+    @Override
+    public CompletableFuture<Void> thenAccept(Consumer<? super T> action) {
+        return super.thenAccept(consumer(action));
+    }
+
+    @Override
+    public CompletableFuture<Void> thenAcceptAsync(Consumer<? super T> action) {
+        return super.thenAcceptAsync(consumer(action));
+    }
+
+    @Override
+    public CompletableFuture<Void> thenAcceptAsync(Consumer<? super T> action, Executor executor) {
+        return super.thenAcceptAsync(consumer(action), executor);
+    }
+
+    @Override
+    public CompletableFuture<Void> thenRun(Runnable action) {
+        return super.thenRun(runnable(action));
+    }
+
+    @Override
+    public CompletableFuture<Void> thenRunAsync(Runnable action) {
+        return super.thenRunAsync(runnable(action));
+    }
+
+    @Override
+    public CompletableFuture<Void> thenRunAsync(Runnable action, Executor executor) {
+        return super.thenRunAsync(runnable(action), executor);
+    }
+
+    @Override
+    public <U, V> CompletableFuture<V> thenCombine(CompletionStage<? extends U> other,
+                                                   BiFunction<? super T, ? super U, ? extends V> fn) {
+        return super.thenCombine(other, biFunction(fn));
+    }
+
+    @Override
+    public <U, V> CompletableFuture<V> thenCombineAsync(CompletionStage<? extends U> other,
+                                                        BiFunction<? super T, ? super U, ? extends V> fn) {
+        return super.thenCombineAsync(other, biFunction(fn));
+    }
+
+    @Override
+    public <U, V> CompletableFuture<V> thenCombineAsync(CompletionStage<? extends U> other,
+                                                        BiFunction<? super T, ? super U, ? extends V> fn,
+                                                        Executor executor) {
+        return super.thenCombineAsync(other, biFunction(fn), executor);
+    }
+
+    @Override
+    public <U> CompletableFuture<Void> thenAcceptBoth(CompletionStage<? extends U> other,
+                                                      BiConsumer<? super T, ? super U> action) {
+        return super.thenAcceptBoth(other, biConsumer(action));
+    }
+
+    @Override
+    public <U> CompletableFuture<Void> thenAcceptBothAsync(CompletionStage<? extends U> other,
+                                                           BiConsumer<? super T, ? super U> action) {
+        return super.thenAcceptBothAsync(other, biConsumer(action));
+    }
+
+    @Override
+    public <U> CompletableFuture<Void> thenAcceptBothAsync(CompletionStage<? extends U> other,
+                                                           BiConsumer<? super T, ? super U> action,
+                                                           Executor executor) {
+        return super.thenAcceptBothAsync(other, biConsumer(action), executor);
+    }
+
+    @Override
+    public CompletableFuture<Void> runAfterBoth(CompletionStage<?> other, Runnable action) {
+        return super.runAfterBoth(other, runnable(action));
+    }
+
+    @Override
+    public CompletableFuture<Void> runAfterBothAsync(CompletionStage<?> other, Runnable action) {
+        return super.runAfterBothAsync(other, runnable(action));
+    }
+
+    @Override
+    public CompletableFuture<Void> runAfterBothAsync(CompletionStage<?> other, Runnable action, Executor executor) {
+        return super.runAfterBothAsync(other, runnable(action), executor);
+    }
+
+    @Override
+    public <U> CompletableFuture<U> applyToEither(CompletionStage<? extends T> other, Function<? super T, U> fn) {
+        return super.applyToEither(other, function(fn));
+    }
+
+    @Override
+    public <U> CompletableFuture<U> applyToEitherAsync(CompletionStage<? extends T> other, Function<? super T, U> fn) {
+        return super.applyToEitherAsync(other, function(fn));
+    }
+
+    @Override
+    public <U> CompletableFuture<U> applyToEitherAsync(CompletionStage<? extends T> other, Function<? super T, U> fn,
+                                                       Executor executor) {
+        return super.applyToEitherAsync(other, function(fn), executor);
+    }
+
+    @Override
+    public CompletableFuture<Void> acceptEither(CompletionStage<? extends T> other, Consumer<? super T> action) {
+        return super.acceptEither(other, consumer(action));
+    }
+
+    @Override
+    public CompletableFuture<Void> acceptEitherAsync(CompletionStage<? extends T> other, Consumer<? super T> action) {
+        return super.acceptEitherAsync(other, consumer(action));
+    }
+
+    @Override
+    public CompletableFuture<Void> acceptEitherAsync(CompletionStage<? extends T> other, Consumer<? super T> action,
+                                                     Executor executor) {
+        return super.acceptEitherAsync(other, consumer(action), executor);
+    }
+
+    @Override
+    public CompletableFuture<Void> runAfterEither(CompletionStage<?> other, Runnable action) {
+        return super.runAfterEither(other, runnable(action));
+    }
+
+    @Override
+    public CompletableFuture<Void> runAfterEitherAsync(CompletionStage<?> other, Runnable action) {
+        return super.runAfterEitherAsync(other, runnable(action));
+    }
+
+    @Override
+    public CompletableFuture<Void> runAfterEitherAsync(CompletionStage<?> other, Runnable action, Executor executor) {
+        return super.runAfterEitherAsync(other, runnable(action), executor);
+    }
+
+    @Override
+    public <U> CompletableFuture<U> thenCompose(Function<? super T, ? extends CompletionStage<U>> fn) {
+        return super.thenCompose(function(fn));
+    }
+
+    @Override
+    public <U> CompletableFuture<U> thenComposeAsync(Function<? super T, ? extends CompletionStage<U>> fn) {
+        return super.thenComposeAsync(function(fn));
+    }
+
+    @Override
+    public <U> CompletableFuture<U> thenComposeAsync(Function<? super T, ? extends CompletionStage<U>> fn,
+                                                     Executor executor) {
+        return super.thenComposeAsync(function(fn), executor);
+    }
+
+    @Override
+    public CompletableFuture<T> whenComplete(BiConsumer<? super T, ? super Throwable> action) {
+        return super.whenComplete(biConsumer(action));
+    }
+
+    @Override
+    public CompletableFuture<T> whenCompleteAsync(BiConsumer<? super T, ? super Throwable> action) {
+        return super.whenCompleteAsync(biConsumer(action));
+    }
+
+    @Override
+    public CompletableFuture<T> whenCompleteAsync(BiConsumer<? super T, ? super Throwable> action, Executor executor) {
+        return super.whenCompleteAsync(biConsumer(action), executor);
+    }
+
+    @Override
+    public <U> CompletableFuture<U> handle(BiFunction<? super T, Throwable, ? extends U> fn) {
+        return super.handle(biFunction(fn));
+    }
+
+    @Override
+    public <U> CompletableFuture<U> handleAsync(BiFunction<? super T, Throwable, ? extends U> fn) {
+        return super.handleAsync(biFunction(fn));
+    }
+
+    @Override
+    public <U> CompletableFuture<U> handleAsync(BiFunction<? super T, Throwable, ? extends U> fn, Executor executor) {
+        return super.handleAsync(biFunction(fn), executor);
+    }
+
+    @Override
+    public CompletableFuture<T> exceptionally(Function<Throwable, ? extends T> fn) {
+        return super.exceptionally(function(fn));
+    }
+
+    @Override
+    public CompletableFuture<T> exceptionallyAsync(Function<Throwable, ? extends T> fn) {
+        return super.exceptionallyAsync(function(fn));
+    }
+
+    @Override
+    public CompletableFuture<T> exceptionallyAsync(Function<Throwable, ? extends T> fn, Executor executor) {
+        return super.exceptionallyAsync(function(fn), executor);
+    }
+
+    @Override
+    public CompletableFuture<T> exceptionallyCompose(Function<Throwable, ? extends CompletionStage<T>> fn) {
+        return super.exceptionallyCompose(function(fn));
+    }
+
+    @Override
+    public CompletableFuture<T> exceptionallyComposeAsync(Function<Throwable, ? extends CompletionStage<T>> fn) {
+        return super.exceptionallyComposeAsync(function(fn));
+    }
+
+    @Override
+    public CompletableFuture<T> exceptionallyComposeAsync(Function<Throwable, ? extends CompletionStage<T>> fn,
+                                                          Executor executor) {
+        return super.exceptionallyComposeAsync(function(fn), executor);
+    }
+
+    @Override
+    public CompletableFuture<T> completeAsync(Supplier<? extends T> supplier) {
+        return super.completeAsync(supplier(supplier));
+    }
+
+    @Override
+    public CompletableFuture<T> completeAsync(Supplier<? extends T> supplier, Executor executor) {
+        return super.completeAsync(supplier(supplier), executor);
+    }
+
+    // ---------------- 回调包装，安装的都是同一个快照，同一线程上嵌套时不会重复安装 ----------------
+
+    private <A, R> Function<A, R> function(Function<? super A, ? extends R> fn) {
+        return a -> {
+            TraceContextSnapshot previous = context.attach();
             try {
-                if (context != null) {
-                    MDC.setContextMap(context);
-                }
-                action.accept(t, ex);
+                return fn.apply(a);
             } finally {
-                if (previous == null) {
-                    MDC.clear();
-                } else {
-                    MDC.setContextMap(previous);
-                }
+                context.detach(previous);
             }
-        });
+        };
+    }
+
+    private <A, B, R> BiFunction<A, B, R> biFunction(BiFunction<? super A, ? super B, ? extends R> fn) {
+        return (a, b) -> {
+            TraceContextSnapshot previous = context.attach();
+            try {
+                return fn.apply(a, b);
+            } finally {
+                context.detach(previous);
+            }
+        };
+    }
+
+    private <A> Consumer<A> consumer(Consumer<? super A> action) {
+        return a -> {
+            TraceContextSnapshot previous = context.attach();
+            try {
+                action.accept(a);
+            } finally {
+                context.detach(previous);
+            }
+        };
+    }
+
+    private <A, B> BiConsumer<A, B> biConsumer(BiConsumer<? super A, ? super B> action) {
+        return (a, b) -> {
+            TraceContextSnapshot previous = context.attach();
+            try {
+                action.accept(a, b);
+            } finally {
+                context.detach(previous);
+            }
+        };
+    }
+
+    private Runnable runnable(Runnable action) {
+        return context.wrap(action);
+    }
+
+    private <R> Supplier<R> supplier(Supplier<? extends R> supplier) {
+        return () -> {
+            TraceContextSnapshot previous = context.attach();
+            try {
+                return supplier.get();
+            } finally {
+                context.detach(previous);
+            }
+        };
     }
-}
\ No newline at end of file
+}
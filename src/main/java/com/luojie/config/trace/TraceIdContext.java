@@ -18,6 +18,14 @@ public class TraceIdContext {
         return MDC.getCopyOfContextMap();
     }
 
+    /**
+     * 获取当前线程MDC上下文的只读快照，可以在多个任务之间共享
+     * @return 上下文快照
+     */
+    public static TraceContextSnapshot snapshot() {
+        return TraceContextSnapshot.capture();
+    }
+
     /**
      * 设置MDC上下文
      * @param context MDC上下文Map
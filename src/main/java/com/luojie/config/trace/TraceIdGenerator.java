@@ -0,0 +1,15 @@
+package com.luojie.config.trace;
+
+/**
+ * TraceId生成器
+ * 默认使用FastTraceIdGenerator，可以通过trace.id.generator配置切换，
+ * 配置成其他值并自行注册一个实现类即可替换为自定义的生成方式
+ */
+public interface TraceIdGenerator {
+
+    /**
+     * 生成一个新的traceId
+     * @return traceId字符串
+     */
+    String generate();
+}
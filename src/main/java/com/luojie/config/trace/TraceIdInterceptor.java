@@ -3,13 +3,13 @@ package com.luojie.config.trace;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.lang3.StringUtils;
 import org.slf4j.MDC;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 import org.springframework.web.servlet.HandlerInterceptor;
 import org.springframework.web.servlet.ModelAndView;
 
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
-import java.util.UUID;
 
 /**
  * TraceId拦截器
@@ -29,10 +29,46 @@ public class TraceIdInterceptor implements HandlerInterceptor {
      */
     public static final String TRACE_ID_HEADER = "X-Trace-Id";
 
+    /**
+     * W3C Trace Context请求头，格式为 version-traceId-parentId-flags
+     */
+    public static final String TRACEPARENT_HEADER = "traceparent";
+
+    /**
+     * W3C Baggage请求头，原样放进MDC，随TraceContextSnapshot带到异步任务和redis事件中
+     */
+    public static final String BAGGAGE_HEADER = "baggage";
+
+    /**
+     * MDC中baggage的键名
+     */
+    public static final String BAGGAGE = "baggage";
+
+    /**
+     * W3C规定baggage最长8192字节，超过时不传递
+     */
+    private static final int MAX_BAGGAGE_LENGTH = 8192;
+
+    /**
+     * 请求开始时的System.nanoTime，随MDC一起传递，用于计算链路各阶段耗时
+     */
+    public static final String TRACE_START_NANOS = "traceStartNanos";
+
+    /**
+     * TraceId生成器，默认为FastTraceIdGenerator
+     */
+    @Autowired
+    private TraceIdGenerator traceIdGenerator;
+
     @Override
     public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) {
         // 尝试从请求头中获取traceId，用于跨服务调用时保持traceId一致
         String traceId = request.getHeader(TRACE_ID_HEADER);
+
+        // 没有自定义请求头时，尝试使用W3C traceparent中的trace-id
+        if (StringUtils.isBlank(traceId)) {
+            traceId = parseTraceparent(request.getHeader(TRACEPARENT_HEADER));
+        }
         
         // 如果请求头中没有traceId，则生成一个新的
         if (StringUtils.isBlank(traceId)) {
@@ -41,6 +77,11 @@ public class TraceIdInterceptor implements HandlerInterceptor {
         
         // 将traceId放入MDC中，使得日志输出中包含traceId
         MDC.put(TRACE_ID, traceId);
+        MDC.put(TRACE_START_NANOS, String.valueOf(System.nanoTime()));
+        String baggage = request.getHeader(BAGGAGE_HEADER);
+        if (StringUtils.isNotBlank(baggage) && baggage.length() <= MAX_BAGGAGE_LENGTH) {
+            MDC.put(BAGGAGE, baggage);
+        }
         
         // 将traceId放入响应头中，便于跨服务调用
         response.setHeader(TRACE_ID_HEADER, traceId);
@@ -64,13 +105,37 @@ public class TraceIdInterceptor implements HandlerInterceptor {
         log.info("请求处理完成 - URL: {}, TraceId: {}", 
                 request.getRequestURI(), MDC.get(TRACE_ID));
         MDC.remove(TRACE_ID);
+        MDC.remove(TRACE_START_NANOS);
+        MDC.remove(BAGGAGE);
     }
     
+    /**
+     * 从traceparent请求头中解析trace-id
+     * @param traceparent 请求头的值，例如 00-4bf92f3577b34da6a3ce929d0e0e4736-00f067aa0ba902b7-01
+     * @return trace-id，格式不正确时返回null
+     */
+    private String parseTraceparent(String traceparent) {
+        if (traceparent == null || traceparent.length() < 55 || traceparent.charAt(2) != '-'
+                || traceparent.charAt(35) != '-') {
+            return null;
+        }
+        String traceId = traceparent.substring(3, 35);
+        // W3C规定只能是小写十六进制
+        for (int i = 0; i < traceId.length(); i++) {
+            char c = traceId.charAt(i);
+            if ((c < '0' || c > '9') && (c < 'a' || c > 'f')) {
+                return null;
+            }
+        }
+        // 全为0的trace-id是无效的
+        return "00000000000000000000000000000000".equals(traceId) ? null : traceId;
+    }
+
     /**
      * 生成唯一的traceId
      * @return traceId字符串
      */
     private String generateTraceId() {
-        return UUID.randomUUID().toString().replace("-", "");
+        return traceIdGenerator.generate();
     }
 }
\ No newline at end of file
@@ -1,7 +1,5 @@
 package com.luojie.config.trace;
 
-import org.slf4j.MDC;
-
 import java.util.Map;
 
 /**
@@ -16,9 +14,9 @@ public class TraceIdRunnable implements Runnable {
     private final Runnable runnable;
     
     /**
-     * 父线程的MDC上下文
+     * 父线程的MDC上下文快照
      */
-    private final Map<String, String> context;
+    private final TraceContextSnapshot context;
 
     /**
      * 构造方法
@@ -26,7 +24,7 @@ public class TraceIdRunnable implements Runnable {
      */
     public TraceIdRunnable(Runnable runnable) {
         this.runnable = runnable;
-        this.context = MDC.getCopyOfContextMap();
+        this.context = TraceContextSnapshot.capture();
     }
 
     /**
@@ -36,27 +34,29 @@ public class TraceIdRunnable implements Runnable {
      */
     public TraceIdRunnable(Runnable runnable, Map<String, String> context) {
         this.runnable = runnable;
-        this.context = context;
+        this.context = TraceContextSnapshot.of(context);
+    }
+
+    /**
+     * 构造方法
+     * @param runnable 原始的Runnable任务
+     * @param context 已捕获的上下文快照，扇出多个任务时可以共享同一个快照
+     */
+    public TraceIdRunnable(Runnable runnable, TraceContextSnapshot context) {
+        this.runnable = runnable;
+        this.context = context == null ? TraceContextSnapshot.EMPTY : context;
     }
 
     @Override
     public void run() {
-        // 获取当前MDC上下文
-        Map<String, String> previous = MDC.getCopyOfContextMap();
+        // 安装父线程的上下文，并记录当前线程原有的上下文
+        TraceContextSnapshot previous = context.attach();
         try {
-            // 设置传递的上下文
-            if (context != null) {
-                MDC.setContextMap(context);
-            }
             // 执行任务
             runnable.run();
         } finally {
             // 恢复上下文
-            if (previous == null) {
-                MDC.clear();
-            } else {
-                MDC.setContextMap(previous);
-            }
+            context.detach(previous);
         }
     }
 
@@ -78,4 +78,14 @@ public class TraceIdRunnable implements Runnable {
     public static TraceIdRunnable wrap(Runnable runnable, Map<String, String> context) {
         return new TraceIdRunnable(runnable, context);
     }
+
+    /**
+     * 包装Runnable，使其支持TraceId传递，使用已捕获的上下文快照
+     * @param runnable 原始的Runnable任务
+     * @param context 上下文快照
+     * @return 包装后的TraceIdRunnable
+     */
+    public static TraceIdRunnable wrap(Runnable runnable, TraceContextSnapshot context) {
+        return new TraceIdRunnable(runnable, context);
+    }
 }
\ No newline at end of file
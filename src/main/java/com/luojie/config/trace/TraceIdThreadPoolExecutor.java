@@ -1,8 +1,5 @@
 package com.luojie.config.trace;
 
-import org.slf4j.MDC;
-
-import java.util.Map;
 import java.util.concurrent.*;
 
 /**
@@ -44,26 +41,15 @@ public class TraceIdThreadPoolExecutor extends ThreadPoolExecutor {
         super(corePoolSize, maximumPoolSize, keepAliveTime, unit, workQueue, threadFactory, handler);
     }
 
+    /**
+     * submit系列方法最终都会调用execute，所以只在这里包装一次，
+     * 避免submit和execute各捕获一次上下文
+     */
     @Override
     public void execute(Runnable command) {
         super.execute(TraceIdRunnable.wrap(command));
     }
 
-    @Override
-    public Future<?> submit(Runnable task) {
-        return super.submit(TraceIdRunnable.wrap(task));
-    }
-
-    @Override
-    public <T> Future<T> submit(Runnable task, T result) {
-        return super.submit(TraceIdRunnable.wrap(task), result);
-    }
-
-    @Override
-    public <T> Future<T> submit(Callable<T> task) {
-        return super.submit(TraceIdCallable.wrap(task));
-    }
-
     /**
      * 创建一个支持TraceId传递的ThreadPoolExecutor
      * @param corePoolSize 核心线程数
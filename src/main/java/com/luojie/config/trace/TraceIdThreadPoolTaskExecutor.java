@@ -1,9 +1,7 @@
 package com.luojie.config.trace;
 
-import org.slf4j.MDC;
 import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
 
-import java.util.Map;
 import java.util.concurrent.Callable;
 import java.util.concurrent.Future;
 
@@ -15,66 +13,16 @@ public class TraceIdThreadPoolTaskExecutor extends ThreadPoolTaskExecutor {
 
     @Override
     public void execute(Runnable task) {
-        super.execute(wrap(task, MDC.getCopyOfContextMap()));
+        super.execute(TraceContextSnapshot.capture().wrap(task));
     }
 
     @Override
     public Future<?> submit(Runnable task) {
-        return super.submit(wrap(task, MDC.getCopyOfContextMap()));
+        return super.submit(TraceContextSnapshot.capture().wrap(task));
     }
 
     @Override
     public <T> Future<T> submit(Callable<T> task) {
-        return super.submit(wrap(task, MDC.getCopyOfContextMap()));
+        return super.submit(TraceContextSnapshot.capture().wrap(task));
     }
-
-    /**
-     * 包装Runnable，使其能够传递上下文信息
-     */
-    private Runnable wrap(final Runnable runnable, final Map<String, String> context) {
-        return () -> {
-            // 获取当前MDC上下文
-            Map<String, String> previous = MDC.getCopyOfContextMap();
-            try {
-                // 设置传递的上下文
-                if (context != null) {
-                    MDC.setContextMap(context);
-                }
-                // 执行任务
-                runnable.run();
-            } finally {
-                // 恢复上下文
-                if (previous == null) {
-                    MDC.clear();
-                } else {
-                    MDC.setContextMap(previous);
-                }
-            }
-        };
-    }
-
-    /**
-     * 包装Callable，使其能够传递上下文信息
-     */
-    private <T> Callable<T> wrap(final Callable<T> callable, final Map<String, String> context) {
-        return () -> {
-            // 获取当前MDC上下文
-            Map<String, String> previous = MDC.getCopyOfContextMap();
-            try {
-                // 设置传递的上下文
-                if (context != null) {
-                    MDC.setContextMap(context);
-                }
-                // 执行任务
-                return callable.call();
-            } finally {
-                // 恢复上下文
-                if (previous == null) {
-                    MDC.clear();
-                } else {
-                    MDC.setContextMap(previous);
-                }
-            }
-        };
-    }
-}
\ No newline at end of file
+}
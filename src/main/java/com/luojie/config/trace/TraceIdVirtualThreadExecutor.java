@@ -0,0 +1,129 @@
+package com.luojie.config.trace;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.List;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 支持TraceId传递的虚拟线程执行器
+ * 每个任务一个虚拟线程，提交时不会因为队列满而被拒绝；
+ * 同时用信号量限制真正执行的任务数，避免大量任务同时占用Hikari/Jedis连接池
+ */
+@Slf4j
+public class TraceIdVirtualThreadExecutor extends AbstractExecutorService {
+
+    /**
+     * 实际执行任务的虚拟线程执行器
+     */
+    private final ExecutorService delegate;
+
+    /**
+     * 并发限制，拿不到许可的虚拟线程会挂起等待，不占用平台线程
+     */
+    private final Semaphore permits;
+
+    /**
+     * 最大并发执行数
+     */
+    private final int maxConcurrency;
+
+    /**
+     * 构造方法
+     * @param threadNamePrefix 虚拟线程名前缀
+     * @param maxConcurrency 最大并发执行数
+     */
+    public TraceIdVirtualThreadExecutor(String threadNamePrefix, int maxConcurrency) {
+        if (maxConcurrency <= 0) {
+            throw new IllegalArgumentException("maxConcurrency must be positive");
+        }
+        this.delegate = Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name(threadNamePrefix, 0).factory());
+        this.permits = new Semaphore(maxConcurrency);
+        this.maxConcurrency = maxConcurrency;
+    }
+
+    /**
+     * submit系列方法最终都会调用execute，在这里统一传递上下文并做并发限制
+     */
+    @Override
+    public void execute(Runnable command) {
+        delegate.execute(TraceIdRunnable.wrap(limit(command)));
+    }
+
+    private Runnable limit(Runnable command) {
+        return () -> {
+            try {
+                permits.acquire();
+            } catch (InterruptedException e) {
+                // 只有shutdownNow时才会被中断，此时放弃执行
+                Thread.currentThread().interrupt();
+                log.warn("virtual thread task interrupted while waiting for permit");
+                return;
+            }
+            try {
+                command.run();
+            } finally {
+                permits.release();
+            }
+        };
+    }
+
+    /**
+     * 获取正在执行的任务数
+     * @return 正在执行的任务数
+     */
+    public int getActiveCount() {
+        return maxConcurrency - permits.availablePermits();
+    }
+
+    /**
+     * 获取等待许可的任务数
+     * @return 等待中的任务数
+     */
+    public int getWaitingCount() {
+        return permits.getQueueLength();
+    }
+
+    public int getMaxConcurrency() {
+        return maxConcurrency;
+    }
+
+    @Override
+    public void shutdown() {
+        delegate.shutdown();
+    }
+
+    @Override
+    public List<Runnable> shutdownNow() {
+        return delegate.shutdownNow();
+    }
+
+    @Override
+    public boolean isShutdown() {
+        return delegate.isShutdown();
+    }
+
+    @Override
+    public boolean isTerminated() {
+        return delegate.isTerminated();
+    }
+
+    @Override
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        return delegate.awaitTermination(timeout, unit);
+    }
+
+    /**
+     * 创建一个支持TraceId传递的虚拟线程执行器
+     * @param threadNamePrefix 虚拟线程名前缀
+     * @param maxConcurrency 最大并发执行数
+     * @return 虚拟线程执行器
+     */
+    public static TraceIdVirtualThreadExecutor create(String threadNamePrefix, int maxConcurrency) {
+        return new TraceIdVirtualThreadExecutor(threadNamePrefix, maxConcurrency);
+    }
+}
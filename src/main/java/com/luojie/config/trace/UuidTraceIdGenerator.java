@@ -0,0 +1,20 @@
+package com.luojie.config.trace;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.util.UUID;
+
+/**
+ * 原先基于UUID的TraceId生成器
+ * UUID.randomUUID使用SecureRandom，高并发下有竞争，配置trace.id.generator=uuid时才启用
+ */
+@Component
+@ConditionalOnProperty(name = "trace.id.generator", havingValue = "uuid")
+public class UuidTraceIdGenerator implements TraceIdGenerator {
+
+    @Override
+    public String generate() {
+        return UUID.randomUUID().toString().replace("-", "");
+    }
+}
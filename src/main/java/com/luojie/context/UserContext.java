@@ -18,6 +18,13 @@ public class UserContext {
         return user;
     }
 
+    /**
+     * 获取当前用户，没有时返回null
+     */
+    public static UserModel findCurrentUser() {
+        return userHolder.get();
+    }
+
     public static void clear() {
         userHolder.remove();
     }
@@ -2,6 +2,7 @@ package com.luojie.controImpl;
 
 import com.luojie.dao.mapper2.Mapper2;
 import com.luojie.moudle.IdempotenceTestModule;
+import com.luojie.util.cache.PenetrationGuard;
 import org.apache.commons.lang3.StringUtils;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
@@ -12,6 +13,9 @@ public class IdempotenceTestImpl {
     @Autowired
     private Mapper2 mapper2;
 
+    @Autowired
+    private PenetrationGuard penetrationGuard;
+
     public void setup(String uuid, IdempotenceTestModule module) {
         // 检查是否已经存在
 //        String getuuid = mapper2.getuuid(uuid);
@@ -22,6 +26,8 @@ public class IdempotenceTestImpl {
         // 不存在则继续
         module.setUuid(uuid);
         mapper2.insertUq(module);
+        // 加入布隆过滤器并清除空值缓存，否则RedisCatch10在空值过期前查不到新数据
+        penetrationGuard.added(uuid);
     }
 
 }
@@ -1,8 +1,17 @@
 package com.luojie.controller;
 
+import com.luojie.moudle.CsvImportJobModel;
 import com.luojie.moudle.RojerCSVModel;
+import com.luojie.service.CsvExportService;
+import com.luojie.service.CsvImportService;
 import com.luojie.util.CsvUtil;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
 import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 
 import java.util.ArrayList;
@@ -11,6 +20,12 @@ import java.util.List;
 @RestController
 public class CSVTestController {
 
+    @Autowired
+    private CsvExportService csvExportService;
+
+    @Autowired
+    private CsvImportService csvImportService;
+
     @GetMapping("/csv/test")
     public void testCsv() throws Exception {
         RojerCSVModel csvModel1 = new RojerCSVModel("John", "30", "New York");
@@ -25,6 +40,44 @@ public class CSVTestController {
         CsvUtil.writeToFile("D:\\tmp\\test1.csv",list);
     }
 
+    /**
+     * 导出uq表为csv，边查询边写到响应，不在内存中保存结果集
+     * 请求头Accept-Encoding包含gzip时压缩
+     */
+    @GetMapping("/csv/export/uq")
+    public void exportUq(HttpServletRequest request, HttpServletResponse response) throws Exception {
+        String acceptEncoding = request.getHeader(HttpHeaders.ACCEPT_ENCODING);
+        boolean gzip = acceptEncoding != null && acceptEncoding.contains("gzip");
+        response.setContentType("text/csv;charset=UTF-8");
+        response.setHeader(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=uq.csv");
+        if (gzip) {
+            response.setHeader(HttpHeaders.CONTENT_ENCODING, "gzip");
+        }
+        csvExportService.exportUq(response.getOutputStream(), gzip);
+    }
+
+    /**
+     * 把服务器上csv.import.dir下的csv文件导入uq表，默认跳过第一行列名，从上次中断的地方继续
+     * 导入在后台执行，返回任务，用/csv/import/job?id=查询结果
+     *
+     * @param path csv.import.dir下的相对路径
+     */
+    @PostMapping("/csv/import/uq")
+    public CsvImportJobModel importUq(@RequestParam String path,
+                                      @RequestParam(defaultValue = "1") int skipLines,
+                                      @RequestParam(defaultValue = "true") boolean resume) throws Exception {
+        return csvImportService.submitImportUq(path, skipLines, resume);
+    }
+
+    @GetMapping("/csv/import/job")
+    public CsvImportJobModel importJob(@RequestParam String id) {
+        CsvImportJobModel job = csvImportService.getJob(id);
+        if (job == null) {
+            throw new IllegalArgumentException("导入任务不存在或已过期: " + id);
+        }
+        return job;
+    }
+
     @GetMapping("/csv/test/get")
     public void testCsvGet() throws Exception {
         List<RojerCSVModel> list = new ArrayList<>();
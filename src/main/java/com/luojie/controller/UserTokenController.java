@@ -0,0 +1,22 @@
+package com.luojie.controller;
+
+import com.luojie.service.UserService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RestController;
+
+@RestController
+public class UserTokenController {
+
+    @Autowired
+    UserService userService;
+
+    /**
+     * 退出登录，清除当前token的用户缓存
+     */
+    @PostMapping("/user/logout")
+    public void logout(@RequestHeader("token") String token) {
+        userService.revokeToken(token);
+    }
+}
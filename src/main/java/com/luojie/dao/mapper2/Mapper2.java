@@ -5,8 +5,11 @@ import com.luojie.moudle.LibraryModel;
 import com.luojie.moudle.UserModel;
 import org.apache.ibatis.annotations.Mapper;
 import org.apache.ibatis.annotations.Param;
+import org.apache.ibatis.cursor.Cursor;
+import org.apache.ibatis.session.ResultHandler;
 
 import java.math.BigDecimal;
+import java.util.List;
 
 @Mapper
 public interface Mapper2 {
@@ -26,4 +29,26 @@ public interface Mapper2 {
     String getOne(@Param("uuid")String uuid, @Param("key") String key, @Param("value") String value);
 
     void insertUq(IdempotenceTestModule module);
+
+    /**
+     * uuid已存在时跳过，用于可能重复写入的场景，如CsvImportService断点续传时重新写入未完成的段
+     *
+     * @return 实际写入的行数
+     */
+    int insertUqIgnore(IdempotenceTestModule module);
+
+    /**
+     * 多行insert，只作为BatchInsertBenchmark中和BATCH执行器对比的基准，批量写入用BulkWriteService.insertUqs
+     */
+    int insertUqs(@Param("list") List<IdempotenceTestModule> modules);
+
+    /**
+     * 逐行遍历uq表的所有uuid，不会一次性加载到内存
+     */
+    void scanAllUuid(ResultHandler<String> handler);
+
+    /**
+     * 逐行读取uq表，用于导出，需要在事务中遍历，遍历完要关闭
+     */
+    Cursor<IdempotenceTestModule> exportUq();
 }
@@ -1,9 +1,36 @@
 package com.luojie.event;
 
+import com.luojie.config.trace.TraceContextSnapshot;
 import org.springframework.context.ApplicationEvent;
 
+/**
+ * redis事件基类
+ * 发布时捕获当前线程的链路上下文和时间点，异步监听器处理时直接从事件中恢复，
+ * 不依赖执行监听器的线程池是否传递了MDC
+ */
 public abstract class BaseRedisEvent extends ApplicationEvent {
+
+    /**
+     * 发布事件时的链路上下文
+     */
+    private final TraceContextSnapshot traceContext;
+
+    /**
+     * 发布事件时的System.nanoTime，用于计算排队耗时
+     */
+    private final long publishNanos;
+
     public BaseRedisEvent(Object source) {
         super(source);
+        this.traceContext = TraceContextSnapshot.capture();
+        this.publishNanos = System.nanoTime();
+    }
+
+    public TraceContextSnapshot getTraceContext() {
+        return traceContext;
+    }
+
+    public long getPublishNanos() {
+        return publishNanos;
     }
 }
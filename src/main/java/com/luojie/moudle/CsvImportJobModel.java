@@ -0,0 +1,49 @@
+package com.luojie.moudle;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.luojie.util.csvimport.CsvImportPipeline;
+import lombok.Data;
+
+import java.nio.file.Path;
+
+/**
+ * csv导入任务，由后台线程更新，通过/csv/import/job查询
+ */
+@Data
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class CsvImportJobModel {
+
+    public enum Status {
+        RUNNING, SUCCEEDED, FAILED
+    }
+
+    private final String id;
+
+    /**
+     * csv.import.dir下的相对路径
+     */
+    private final String path;
+
+    /**
+     * 文件的真实路径，同一个文件的不同写法(./a.csv、大小写不同等)相同，用于判断文件是否正在导入，不返回给调用方
+     */
+    @JsonIgnore
+    private final Path file;
+
+    private final long startTime;
+
+    private volatile Status status = Status.RUNNING;
+
+    private volatile long endTime;
+
+    /**
+     * 成功时的写入结果
+     */
+    private volatile CsvImportPipeline.Result result;
+
+    /**
+     * 失败原因，失败后可以用resume=true重新提交，从检查点继续
+     */
+    private volatile String error;
+}
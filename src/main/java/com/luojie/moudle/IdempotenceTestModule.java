@@ -1,13 +1,20 @@
 package com.luojie.moudle;
 
+import com.opencsv.bean.CsvBindByPosition;
 import lombok.Data;
 
+/**
+ * csv中的列顺序与CsvExportService导出的一致：key,value,uuid
+ */
 @Data
 public class IdempotenceTestModule {
 
+    @CsvBindByPosition(position = 0)
     private String key;
 
+    @CsvBindByPosition(position = 1)
     private String value;
 
+    @CsvBindByPosition(position = 2)
     private String uuid;
 }
@@ -0,0 +1,103 @@
+package com.luojie.service;
+
+import com.luojie.dao.mapper1.Mapper1;
+import com.luojie.dao.mapper2.Mapper2;
+import com.luojie.moudle.IdempotenceTestModule;
+import com.luojie.moudle.LibraryModel;
+import com.luojie.moudle.UserModel;
+import com.luojie.util.BatchSqlUtil;
+import com.luojie.util.cache.PenetrationGuard;
+import jakarta.annotation.PostConstruct;
+import org.mybatis.spring.SqlSessionTemplate;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.List;
+
+/**
+ * 批量写入，用于回放大量数据，每个方法的数据在一个独立的新事务中写入，返回时已经提交，不受调用方事务影响
+ * 都用BATCH执行器，每datasource.batch.flush-size条发送一次，rewriteBatchedStatements=true时驱动改写成多行insert
+ */
+@Service
+public class BulkWriteService {
+
+    @Value("${datasource.batch.flush-size:1000}")
+    private int flushSize;
+
+    @Autowired
+    @Qualifier("batchSqlSessionTemplate1")
+    private SqlSessionTemplate batchTemplate1;
+
+    @Autowired
+    @Qualifier("batchSqlSessionTemplate2")
+    private SqlSessionTemplate batchTemplate2;
+
+    @Autowired
+    @Qualifier("myTransactionManager1")
+    private PlatformTransactionManager transactionManager1;
+
+    @Autowired
+    @Qualifier("myTransactionManager")
+    private PlatformTransactionManager transactionManager2;
+
+    @Autowired
+    private PenetrationGuard penetrationGuard;
+
+    private TransactionTemplate transactionTemplate1;
+
+    private TransactionTemplate transactionTemplate2;
+
+    @PostConstruct
+    public void init() {
+        transactionTemplate1 = BatchSqlUtil.transactionTemplate(transactionManager1);
+        transactionTemplate2 = BatchSqlUtil.transactionTemplate(transactionManager2);
+    }
+
+    public int addUsers(List<UserModel> users) {
+        return BatchSqlUtil.execute(batchTemplate1, transactionTemplate1, Mapper1.class, users, flushSize,
+                Mapper1::addUser);
+    }
+
+    /**
+     * 提交后通知PenetrationGuard，否则开启布隆过滤器时新写入的uuid会被RedisCatch10当作不存在
+     * BatchSqlUtil.execute返回时已经提交，直接通知
+     */
+    public int insertUqs(List<IdempotenceTestModule> modules) {
+        int rows = BatchSqlUtil.execute(batchTemplate2, transactionTemplate2, Mapper2.class, modules, flushSize,
+                Mapper2::insertUq);
+        notifyAdded(modules);
+        return rows;
+    }
+
+    /**
+     * 每flushSize个uuid一条通知
+     */
+    private void notifyAdded(List<IdempotenceTestModule> modules) {
+        for (int from = 0; from < modules.size(); from += flushSize) {
+            penetrationGuard.addedAll(modules.subList(from, Math.min(from + flushSize, modules.size())).stream()
+                    .map(IdempotenceTestModule::getUuid).toList());
+        }
+    }
+
+    public int addUserBalances(List<UserModel> users) {
+        return BatchSqlUtil.execute(batchTemplate2, transactionTemplate2, Mapper2.class, users, flushSize,
+                Mapper2::addUserBalance);
+    }
+
+    public int addLibraries(List<LibraryModel> libraries) {
+        return BatchSqlUtil.execute(batchTemplate2, transactionTemplate2, Mapper2.class, libraries, flushSize,
+                Mapper2::addLibrary);
+    }
+
+    /**
+     * @param orders name为书名，amount为购买数量
+     */
+    public int buyBooks(List<LibraryModel> orders) {
+        return BatchSqlUtil.execute(batchTemplate2, transactionTemplate2, Mapper2.class, orders, flushSize,
+                (mapper, order) -> mapper.buyBook(order.getName(), order.getAmount()));
+    }
+}
@@ -0,0 +1,70 @@
+package com.luojie.service;
+
+import com.luojie.dao.mapper2.Mapper2;
+import com.luojie.moudle.IdempotenceTestModule;
+import com.luojie.util.CsvUtil;
+import org.apache.ibatis.cursor.Cursor;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.util.unit.DataSize;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * 把查询结果导出为csv，直接写到输出流(HTTP响应)
+ * 用MyBatis的Cursor逐行读取(mysql驱动逐行返回)，编码到缓冲区后分块写出，不会把结果集放在内存中
+ * 客户端读得慢时写出会阻塞，Cursor也随之停止读取
+ */
+@Service
+public class CsvExportService {
+
+    /**
+     * 编码缓冲区大小，也是每次写到响应的大小
+     */
+    @Value("${csv.export.buffer-size:256KB}")
+    private DataSize bufferSize;
+
+    /**
+     * gzip压缩级别，1最快，9压缩率最高
+     */
+    @Value("${csv.export.gzip-level:1}")
+    private int gzipLevel;
+
+    @Autowired
+    private Mapper2 mapper2;
+
+    /**
+     * 导出uq表，第一行为列名(key,value,uuid)
+     * Cursor需要在事务中遍历，所以在这里写完整个响应
+     *
+     * @param out 输出流，不会被关闭
+     * @param gzip 是否用gzip压缩
+     * @return 导出的行数
+     */
+    @Transactional(value = "myTransactionManager", readOnly = true)
+    public long exportUq(OutputStream out, boolean gzip) throws IOException {
+        try (Cursor<IdempotenceTestModule> cursor = mapper2.exportUq()) {
+            return write(out, gzip, cursor);
+        }
+    }
+
+    private long write(OutputStream out, boolean gzip, Iterable<IdempotenceTestModule> rows) throws IOException {
+        int size = (int) bufferSize.toBytes();
+        if (!gzip) {
+            return CsvUtil.writeToStream(out, IdempotenceTestModule.class, rows.iterator(), true, size);
+        }
+        GZIPOutputStream gzipOut = new GZIPOutputStream(out, size) {
+            {
+                def.setLevel(gzipLevel);
+            }
+        };
+        long count = CsvUtil.writeToStream(gzipOut, IdempotenceTestModule.class, rows.iterator(), true, size);
+        gzipOut.finish();
+        gzipOut.flush();
+        return count;
+    }
+}
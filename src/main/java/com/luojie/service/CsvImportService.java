@@ -0,0 +1,226 @@
+package com.luojie.service;
+
+import com.luojie.dao.mapper2.Mapper2;
+import com.luojie.moudle.IdempotenceTestModule;
+import com.luojie.config.trace.TraceIdRunnable;
+import com.luojie.moudle.CsvImportJobModel;
+import com.luojie.util.BatchSqlUtil;
+import com.luojie.util.cache.PenetrationGuard;
+import com.luojie.util.csvimport.CsvImportPipeline;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.StringUtils;
+import org.mybatis.spring.SqlSessionTemplate;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.util.unit.DataSize;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * 把csv文件导入数据库，用CsvImportPipeline多线程解析，BATCH执行器批量写入
+ * 每批在一个事务中写入，中断后可以从检查点继续，见CsvImportPipeline
+ * 继续时未完成的段会整段重新写入，所以用insertUqIgnore按uuid唯一键跳过已经写入的行
+ * 接口提交的导入只能读取csv.import.dir下的文件，在asyncExecutor中执行，返回任务供查询
+ */
+@Service
+@Slf4j
+public class CsvImportService {
+
+    /**
+     * 可以导入的文件所在目录
+     */
+    @Value("${csv.import.dir:D:\\tmp\\import}")
+    private String importDir;
+
+    /**
+     * 结束的任务保留多久，超过后查询不到
+     */
+    @Value("${csv.import.job-retention:1d}")
+    private Duration jobRetention;
+
+    /**
+     * 解析线程数，0为CPU核数
+     */
+    @Value("${csv.import.parse-threads:0}")
+    private int parseThreads;
+
+    /**
+     * 每个数据源的写入线程数，不要超过连接池大小
+     */
+    @Value("${csv.import.write-threads:4}")
+    private int writeThreads;
+
+    @Value("${csv.import.batch-size:1000}")
+    private int batchSize;
+
+    @Value("${csv.import.split-size:8MB}")
+    private DataSize splitSize;
+
+    @Value("${csv.import.queue-capacity:16}")
+    private int queueCapacity;
+
+    @Autowired
+    @Qualifier("batchSqlSessionTemplate2")
+    private SqlSessionTemplate batchTemplate2;
+
+    @Autowired
+    @Qualifier("myTransactionManager")
+    private PlatformTransactionManager transactionManager2;
+
+    @Autowired
+    private ObjectProvider<MeterRegistry> meterRegistryProvider;
+
+    @Autowired
+    private PenetrationGuard penetrationGuard;
+
+    @Autowired
+    @Qualifier("asyncExecutor")
+    private Executor asyncExecutor;
+
+    /**
+     * 任务id -> 任务
+     */
+    private final ConcurrentMap<String, CsvImportJobModel> jobs = new ConcurrentHashMap<>();
+
+    private TransactionTemplate transactionTemplate2;
+
+    @PostConstruct
+    public void init() {
+        transactionTemplate2 = BatchSqlUtil.transactionTemplate(transactionManager2);
+    }
+
+    /**
+     * 在asyncExecutor中导入uq表，立即返回任务，用getJob查询进度
+     * 同一个文件同时只能有一个导入任务，否则会互相覆盖检查点
+     *
+     * @param path csv.import.dir下的相对路径，不能是绝对路径，不能包含..
+     * @throws IllegalArgumentException 路径不合法或者文件不存在
+     * @throws IllegalStateException 该文件正在导入
+     */
+    public CsvImportJobModel submitImportUq(String path, int skipLines, boolean resume) throws IOException {
+        Path file = resolveImportFile(path);
+        expireJobs();
+        CsvImportJobModel job = new CsvImportJobModel(UUID.randomUUID().toString(), path, file,
+                System.currentTimeMillis());
+        synchronized (jobs) {
+            for (CsvImportJobModel running : jobs.values()) {
+                if (running.getStatus() == CsvImportJobModel.Status.RUNNING && running.getFile().equals(file)) {
+                    throw new IllegalStateException("文件正在导入, jobId:" + running.getId());
+                }
+            }
+            jobs.put(job.getId(), job);
+        }
+        try {
+            asyncExecutor.execute(TraceIdRunnable.wrap(() -> runJob(job, file, skipLines, resume)));
+        } catch (RejectedExecutionException e) {
+            jobs.remove(job.getId());
+            throw e;
+        }
+        log.info("csv import job {} submitted, file:{}", job.getId(), file);
+        return job;
+    }
+
+    /**
+     * @return 不存在或者已过期时返回null
+     */
+    public CsvImportJobModel getJob(String id) {
+        return jobs.get(id);
+    }
+
+    private void runJob(CsvImportJobModel job, Path file, int skipLines, boolean resume) {
+        try {
+            job.setResult(importUq(file, skipLines, resume));
+            job.setStatus(CsvImportJobModel.Status.SUCCEEDED);
+        } catch (Exception e) {
+            log.error("csv import job {} failed, file:{}", job.getId(), file, e);
+            job.setError(e.getMessage());
+            job.setStatus(CsvImportJobModel.Status.FAILED);
+        } finally {
+            job.setEndTime(System.currentTimeMillis());
+        }
+    }
+
+    private void expireJobs() {
+        long expireBefore = System.currentTimeMillis() - jobRetention.toMillis();
+        jobs.values().removeIf(job -> job.getStatus() != CsvImportJobModel.Status.RUNNING
+                && job.getEndTime() < expireBefore);
+    }
+
+    /**
+     * 只允许csv.import.dir下已存在的文件，按真实路径比较，符号链接也不能指到目录外
+     *
+     * @return 文件的真实路径，同一个文件的不同写法返回同一个路径
+     */
+    private Path resolveImportFile(String path) throws IOException {
+        Path relative;
+        try {
+            relative = Paths.get(path);
+        } catch (InvalidPathException e) {
+            throw new IllegalArgumentException("文件路径不合法: " + path);
+        }
+        for (Path name : relative) {
+            if ("..".equals(name.toString())) {
+                throw new IllegalArgumentException("文件路径不能包含..: " + path);
+            }
+        }
+        if (relative.isAbsolute() || relative.getRoot() != null) {
+            throw new IllegalArgumentException("只能导入" + importDir + "下的文件，请使用相对路径: " + path);
+        }
+        Path base = Paths.get(importDir).toAbsolutePath().normalize();
+        Path file = base.resolve(relative).normalize();
+        if (!Files.isRegularFile(file)) {
+            throw new IllegalArgumentException("文件不存在: " + path);
+        }
+        Path realFile = file.toRealPath();
+        if (!realFile.startsWith(base.toRealPath())) {
+            throw new IllegalArgumentException("文件不存在: " + path);
+        }
+        return realFile;
+    }
+
+    /**
+     * 导入uq表，列为key,value,uuid，uuid为空的行不导入
+     *
+     * @param file csv文件
+     * @param skipLines 跳过开头的行数，CsvExportService导出的文件第一行是列名
+     * @param resume 是否从上次中断的地方继续
+     */
+    public CsvImportPipeline.Result importUq(Path file, int skipLines, boolean resume) throws IOException {
+        return new CsvImportPipeline<>(IdempotenceTestModule.class,
+                (List<IdempotenceTestModule> rows) -> {
+                    BatchSqlUtil.execute(batchTemplate2, transactionTemplate2, Mapper2.class, rows, batchSize,
+                            Mapper2::insertUqIgnore);
+                    // 已提交，通知所有节点的布隆过滤器并删除空值缓存，否则导入的uuid会被RedisCatch10当作不存在
+                    penetrationGuard.addedAll(rows.stream().map(IdempotenceTestModule::getUuid).toList());
+                })
+                .name("uq")
+                .parseThreads(parseThreads > 0 ? parseThreads : Runtime.getRuntime().availableProcessors())
+                .writeThreads(writeThreads)
+                .batchSize(batchSize)
+                .splitSize(splitSize.toBytes())
+                .queueCapacity(queueCapacity)
+                .skipLines(skipLines)
+                .validator(module -> StringUtils.isNotEmpty(module.getUuid()))
+                .meterRegistry(meterRegistryProvider.getIfAvailable(SimpleMeterRegistry::new))
+                .run(file, resume);
+    }
+}
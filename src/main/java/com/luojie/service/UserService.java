@@ -2,7 +2,11 @@ package com.luojie.service;
 
 import com.luojie.dao.mapper1.Mapper1;
 import com.luojie.moudle.UserModel;
+import jakarta.annotation.PostConstruct;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.cache.annotation.CacheEvict;
 import org.springframework.cache.annotation.Cacheable;
 import org.springframework.stereotype.Service;
 
@@ -12,16 +16,51 @@ public class UserService {
     @Autowired
     private Mapper1 mapper1;
 
+    @Autowired
+    private CacheManager cacheManager;
+
+    private Cache userCache;
+
+    /**
+     * PermissionAspect的权限缓存，key是userID而不是token
+     */
+    private Cache permissionCache;
+
+    @PostConstruct
+    public void init() {
+        userCache = cacheManager.getCache("userCache");
+        permissionCache = cacheManager.getCache("permissionCache");
+    }
+
     /**
      * value - 缓存名称
      * key - 自定义缓存键
+     * unless - 查不到用户时不缓存，避免之后新建的用户在缓存过期前一直无法登录
      *
      * @param token
      * @return
      */
-    @Cacheable(value = "userCache", key = "#token")
+    @Cacheable(value = "userCache", key = "#token", unless = "#result == null")
     public UserModel getUserByToken(String token) {
         // 这里假设token就是userId，实际项目中应该根据token查询用户信息
         return mapper1.getUser(token);
     }
+
+    /**
+     * token失效(退出登录、修改权限等)时调用，所有节点的用户缓存和PermissionAspect的权限缓存都会清除
+     * userCache按token清除；权限缓存按userID缓存，先把token解析成用户再清除
+     *
+     * @param token
+     */
+    @CacheEvict(value = "userCache", key = "#token")
+    public void revokeToken(String token) {
+        // @CacheEvict在方法执行后才清除，这里还能从userCache中拿到用户，避免查库
+        UserModel user = userCache.get(token, UserModel.class);
+        if (user == null) {
+            user = mapper1.getUser(token);
+        }
+        if (user != null && user.getUserid() != null) {
+            permissionCache.evict(user.getUserid());
+        }
+    }
 } 
\ No newline at end of file
@@ -0,0 +1,196 @@
+package com.luojie.test.catchs;
+
+import com.luojie.test.redis.StandInRedisServer;
+import com.luojie.util.RedisServiceUtil;
+import com.luojie.util.cache.BloomFilter;
+import com.luojie.util.cache.PenetrationGuard;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.ibatis.executor.result.DefaultResultContext;
+import org.apache.ibatis.session.ResultHandler;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.stream.IntStream;
+
+/**
+ * 缓存穿透压测：大量请求查询不存在的uuid，对比RedisCatch1写法、只用空值缓存、空值缓存+布隆过滤器的数据库查询次数和耗时
+ * 1. 重复攻击：反复查询少量不存在的uuid，空值缓存即可挡住
+ * 2. 随机攻击：每次查询一个新的随机uuid，只有布隆过滤器能挡住
+ * 最后模拟批量导入：一个节点写入BULK_ROWS个新uuid后调用addedAll，另一个节点应该能全部读到
+ * 数据库用StubUqMapper2模拟，redis用StandInRedisServer模拟，直接运行main方法即可
+ */
+@Slf4j
+public class PenetrationBenchmark {
+
+    private static final int THREADS = 16;
+    private static final int REQUESTS_PER_THREAD = 2000;
+    private static final int ROWS = 100_000;
+    private static final int HOT_ROWS = 100;
+    private static final int REPEATED_MISSING = 100;
+    private static final long DB_MILLIS = 2;
+    private static final long ROUND_TRIP_MICROS = 100;
+    /**
+     * 攻击流量占比，其余为查询存在的热点数据
+     */
+    private static final double ATTACK_RATIO = 0.9;
+    private static final int BULK_ROWS = 1000;
+
+    public static void main(String[] args) throws Exception {
+        System.setProperty("cache.penetration.bloom.enabled", "true");
+        System.setProperty("cache.penetration.bloom.expected-insertions", String.valueOf(ROWS));
+        for (int i = 0; i < ROWS; i++) {
+            StubUqMapper2.UQ.add("row-" + i);
+        }
+        try (StandInRedisServer server = StandInRedisServer.start(ROUND_TRIP_MICROS);
+             AnnotationConfigApplicationContext context = server.createContext(RedisServiceUtil.class,
+                     PenetrationGuard.class, StubUqMapper2.class)) {
+            RedisServiceUtil redis = context.getBean(RedisServiceUtil.class);
+            PenetrationGuard guard = context.getBean(PenetrationGuard.class);
+            StubUqMapper2 mapper = context.getBean(StubUqMapper2.class);
+
+            // RedisCatch1的写法，查不到时不缓存
+            Function<String, String> plain = uuid -> {
+                String value = redis.get(uuid);
+                if (StringUtils.isNotEmpty(value)) {
+                    return value;
+                }
+                String dbValue = mapper.getuuid(uuid);
+                if (StringUtils.isNotEmpty(dbValue)) {
+                    redis.setWithExpire(uuid, dbValue, 3, TimeUnit.DAYS);
+                }
+                return dbValue;
+            };
+            Function<String, String> guarded = uuid -> guard.get(uuid, () -> mapper.getuuid(uuid), 3, TimeUnit.DAYS);
+
+            Supplier<String> repeated = () -> "missing-" + ThreadLocalRandom.current().nextInt(REPEATED_MISSING);
+            Supplier<String> random = () -> UUID.randomUUID().toString();
+
+            run(server, "RedisCatch1 重复攻击", plain, repeated);
+            run(server, "空值缓存 重复攻击", guarded, repeated);
+            run(server, "RedisCatch1 随机攻击", plain, random);
+            run(server, "空值缓存 随机攻击", guarded, random);
+
+            guard.rebuildBloomFilter(add -> mapper.scanAllUuid(resultContext -> add.accept(resultContext.getResultObject())));
+            run(server, "空值缓存+布隆过滤器 重复攻击", guarded, repeated);
+            run(server, "空值缓存+布隆过滤器 随机攻击", guarded, random);
+
+            falsePositiveRate();
+            bulkAdded(server, guard, mapper);
+        }
+    }
+
+    /**
+     * 导入前两个节点都查过新uuid(本节点有空值缓存，另一个节点被布隆过滤器拦截)，导入后调用addedAll
+     */
+    private static void bulkAdded(StandInRedisServer server, PenetrationGuard guard, StubUqMapper2 mapper)
+            throws Exception {
+        try (AnnotationConfigApplicationContext node2 = server.createContext(RedisServiceUtil.class,
+                PenetrationGuard.class, StubUqMapper2.class)) {
+            PenetrationGuard guard2 = node2.getBean(PenetrationGuard.class);
+            guard2.rebuildBloomFilter(add -> mapper.scanAllUuid(resultContext -> add.accept(resultContext.getResultObject())));
+            List<String> imported = IntStream.range(0, BULK_ROWS).mapToObj(i -> "imported-" + i).toList();
+            // 新uuid几乎都被布隆过滤器拦截，误判的那部分在redis中留下空值缓存
+            imported.forEach(uuid -> guard.get(uuid, () -> mapper.getuuid(uuid), 3, TimeUnit.DAYS));
+            imported.forEach(uuid -> guard2.get(uuid, () -> mapper.getuuid(uuid), 3, TimeUnit.DAYS));
+            // 等另一个节点订阅完成
+            Thread.sleep(200);
+            StubUqMapper2.UQ.addAll(imported);
+            guard.addedAll(imported);
+            Thread.sleep(200);
+            long local = imported.stream()
+                    .filter(uuid -> guard.get(uuid, () -> mapper.getuuid(uuid), 3, TimeUnit.DAYS) != null).count();
+            long remote = imported.stream()
+                    .filter(uuid -> guard2.get(uuid, () -> mapper.getuuid(uuid), 3, TimeUnit.DAYS) != null).count();
+            log.info("批量新增 {} 个uuid后调用addedAll: 本节点读到 {} 个, 另一个节点读到 {} 个", BULK_ROWS, local, remote);
+        }
+    }
+
+    private static void run(StandInRedisServer server, String name, Function<String, String> read,
+                            Supplier<String> attack) throws InterruptedException {
+        server.flushAll();
+        ThunderingHerdBenchmark.StubMapper2.DB_CALLS.set(0);
+        long[][] latencies = new long[THREADS][REQUESTS_PER_THREAD];
+        CountDownLatch done = new CountDownLatch(THREADS);
+        long wallStart = System.nanoTime();
+        for (int t = 0; t < THREADS; t++) {
+            long[] samples = latencies[t];
+            new Thread(() -> {
+                try {
+                    ThreadLocalRandom random = ThreadLocalRandom.current();
+                    for (int i = 0; i < REQUESTS_PER_THREAD; i++) {
+                        String uuid = random.nextDouble() < ATTACK_RATIO ? attack.get() : "row-" + random.nextInt(HOT_ROWS);
+                        long begin = System.nanoTime();
+                        read.apply(uuid);
+                        samples[i] = System.nanoTime() - begin;
+                    }
+                } finally {
+                    done.countDown();
+                }
+            }).start();
+        }
+        done.await();
+        long wallMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - wallStart);
+
+        long[] all = Arrays.stream(latencies).flatMapToLong(Arrays::stream).sorted().toArray();
+        log.info("{}: {} 次请求, 查库 {} 次, 总耗时 {} ms, p50 {} us, p99 {} us", name, all.length,
+                ThunderingHerdBenchmark.StubMapper2.DB_CALLS.get(), wallMillis,
+                TimeUnit.NANOSECONDS.toMicros(all[all.length / 2]), TimeUnit.NANOSECONDS.toMicros(all[all.length * 99 / 100]));
+    }
+
+    /**
+     * 按配置的误判率构建布隆过滤器，用不存在的数据测实际误判率
+     */
+    private static void falsePositiveRate() {
+        for (double fpp : new double[]{0.1, 0.01, 0.001}) {
+            BloomFilter filter = new BloomFilter(ROWS, fpp);
+            StubUqMapper2.UQ.forEach(filter::put);
+            int probes = 1_000_000;
+            int falsePositives = 0;
+            for (int i = 0; i < probes; i++) {
+                if (filter.mightContain("missing-" + i)) {
+                    falsePositives++;
+                }
+            }
+            log.info("布隆过滤器 {} 个元素, 期望误判率 {}, 实际误判率 {}, 哈希次数 {}, 内存 {} KB", ROWS, fpp,
+                    (double) falsePositives / probes, filter.getHashCount(), filter.getMemoryBytes() >>> 10);
+        }
+    }
+
+    /**
+     * 模拟uq表，只有UQ中的uuid能查到
+     */
+    public static class StubUqMapper2 extends ThunderingHerdBenchmark.StubMapper2 {
+
+        static final Set<String> UQ = ConcurrentHashMap.newKeySet();
+
+        @Override
+        public String getuuid(String uuid) {
+            DB_CALLS.incrementAndGet();
+            try {
+                Thread.sleep(DB_MILLIS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return UQ.contains(uuid) ? uuid : null;
+        }
+
+        @Override
+        public void scanAllUuid(ResultHandler<String> handler) {
+            DefaultResultContext<String> resultContext = new DefaultResultContext<>();
+            for (String uuid : UQ) {
+                resultContext.nextResultObject(uuid);
+                handler.handleResult(resultContext);
+            }
+        }
+    }
+}
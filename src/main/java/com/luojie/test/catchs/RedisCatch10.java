@@ -0,0 +1,55 @@
+package com.luojie.test.catchs;
+
+import com.luojie.dao.mapper2.Mapper2;
+import com.luojie.util.cache.PenetrationGuard;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 防缓存穿透：查询不存在的uuid时，布隆过滤器直接拦截，误判的由空值缓存挡住
+ * 应用启动完成(ApplicationReadyEvent)后在asyncExecutor中从uq表构建布隆过滤器，不占用启动时间，构建完成前只有空值缓存生效
+ */
+@Component
+@Slf4j
+public class RedisCatch10 {
+
+    @Autowired
+    Mapper2 mapper2;
+
+    @Autowired
+    PenetrationGuard penetrationGuard;
+
+    @Autowired
+    @Qualifier("asyncExecutor")
+    Executor asyncExecutor;
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void init() {
+        if (penetrationGuard.isBloomEnabled()) {
+            asyncExecutor.execute(this::rebuildBloomFilter);
+        }
+    }
+
+    /**
+     * 从uq表全量重建布隆过滤器，数据量变化较大时可以再次调用
+     */
+    public boolean rebuildBloomFilter() {
+        return penetrationGuard.rebuildBloomFilter(
+                add -> mapper2.scanAllUuid(context -> add.accept(context.getResultObject())));
+    }
+
+    public String test1(String uuid) {
+        return penetrationGuard.get(uuid, () -> {
+            String dbValue = mapper2.getuuid(uuid);
+            log.info("get data form db dbValue:{}", dbValue);
+            return dbValue;
+        }, 1 + (int) Math.ceil(Math.random() * 10), TimeUnit.DAYS);
+    }
+}
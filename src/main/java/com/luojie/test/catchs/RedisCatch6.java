@@ -0,0 +1,48 @@
+package com.luojie.test.catchs;
+
+import com.luojie.dao.mapper2.Mapper2;
+import com.luojie.util.cache.TwoLevelCache;
+import com.luojie.util.cache.TwoLevelCacheManager;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 使用二级缓存，热点key先从进程内缓存读取，不用每次都访问redis
+ */
+@Component
+@Slf4j
+public class RedisCatch6 {
+
+    @Autowired
+    Mapper2 mapper2;
+
+    @Autowired
+    TwoLevelCacheManager cacheManager;
+
+    private TwoLevelCache cache;
+
+    @PostConstruct
+    public void init() {
+        cache = cacheManager.getCache("uuid");
+    }
+
+    public String test1() {
+        // 一级缓存 -> redis -> 数据库，查到的数据会回填到上层缓存
+        return cache.get("uuid", () -> {
+            String dbValue = mapper2.getuuid("uuid");
+            log.info("get data form db dbValue:{}", dbValue);
+            return dbValue;
+        }, 3, TimeUnit.DAYS);
+    }
+
+    /**
+     * 更新数据后调用，所有节点的一级缓存都会失效
+     */
+    public void refresh(String value) {
+        cache.put("uuid", value, 3, TimeUnit.DAYS);
+    }
+}
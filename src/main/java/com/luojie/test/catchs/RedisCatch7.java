@@ -0,0 +1,55 @@
+package com.luojie.test.catchs;
+
+import com.luojie.dao.mapper2.Mapper2;
+import com.luojie.util.RedisServiceUtil;
+import com.luojie.util.cache.SingleFlight;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 使用SingleFlight合并并发的缓存未命中
+ * 同一个key同时只有一个线程查数据库，其他线程等待同一个结果；不同key之间互不阻塞，不需要加锁和自旋
+ */
+@Component
+@Slf4j
+public class RedisCatch7 {
+
+    @Autowired
+    Mapper2 mapper2;
+
+    @Autowired
+    RedisServiceUtil redisUtil;
+
+    private final SingleFlight<String, String> singleFlight = new SingleFlight<>();
+
+    public String test1() {
+        return get("uuid");
+    }
+
+    public String get(String key) {
+        // 先从redis中找数据，没有才去查数据库
+        String value = redisUtil.get(key);
+        if (StringUtils.isNotEmpty(value)) {
+            return value;
+        }
+        return singleFlight.load(key, () -> {
+            // 双重检查，上一次加载可能刚刚写入缓存
+            String cached = redisUtil.get(key);
+            if (StringUtils.isNotEmpty(cached)) {
+                return cached;
+            }
+            // 缓存空结果的前提是该方法如果出错应抛出异常，而不是被catch后返回空
+            String dbValue = mapper2.getuuid(key);
+            log.info("get data form db dbValue:{}", dbValue);
+            if (StringUtils.isNotEmpty(dbValue)) {
+                // 缓存数据
+                redisUtil.setWithExpire(key, dbValue, 1 + (int) Math.ceil(Math.random() * 10), TimeUnit.DAYS);
+            }
+            return dbValue;
+        });
+    }
+}
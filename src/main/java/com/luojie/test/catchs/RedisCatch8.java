@@ -0,0 +1,63 @@
+package com.luojie.test.catchs;
+
+import com.luojie.dao.mapper2.Mapper2;
+import com.luojie.util.RedisServiceUtil;
+import com.luojie.util.lock.RedisLock;
+import com.luojie.util.lock.RedisLockFactory;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 使用RedisLock代替RedisCatch4/5中手写的redis锁
+ * 释放时脚本比较持有者后再删除，等待时由释放通知唤醒，不需要sleep轮询
+ */
+@Component
+@Slf4j
+public class RedisCatch8 {
+
+    @Autowired
+    Mapper2 mapper2;
+
+    @Autowired
+    RedisServiceUtil redisUtil;
+
+    @Autowired
+    RedisLockFactory lockFactory;
+
+    private RedisLock lock;
+
+    @PostConstruct
+    public void init() {
+        lock = lockFactory.getLock("uuid");
+    }
+
+    public String test1() throws InterruptedException {
+        // 先从redis中找数据，没有才去查数据库
+        String value = redisUtil.get("uuid");
+        if (StringUtils.isNotEmpty(value)) {
+            return value;
+        }
+        try (RedisLock.Lease lease = lock.tryLock(3, TimeUnit.SECONDS)) {
+            if (lease == null) {
+                // 等待超时，再从缓存获取一次
+                return redisUtil.get("uuid");
+            }
+            // 双重检查，以防止在获取锁之后，缓存已经被其他线程更新
+            value = redisUtil.get("uuid");
+            if (StringUtils.isNotEmpty(value)) {
+                return value;
+            }
+            // 缓存空结果的前提是该方法如果出错应抛出异常，而不是被catch后返回空
+            String dbValue = mapper2.getuuid("uuid");
+            log.info("get data form db dbValue:{}, fencingToken:{}", dbValue, lease.getFencingToken());
+            // 缓存数据
+            redisUtil.setWithExpire("uuid", dbValue, 1 + (int) Math.ceil(Math.random() * 10), TimeUnit.DAYS);
+            return dbValue;
+        }
+    }
+}
@@ -0,0 +1,32 @@
+package com.luojie.test.catchs;
+
+import com.luojie.dao.mapper2.Mapper2;
+import com.luojie.util.cache.EarlyRefreshCache;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 使用EarlyRefreshCache，热点key在过期前异步刷新，读请求不会因为key过期去等数据库
+ * 数据以hash格式保存，不能和RedisCatch1~8共用"uuid"这个key
+ */
+@Component
+@Slf4j
+public class RedisCatch9 {
+
+    @Autowired
+    Mapper2 mapper2;
+
+    @Autowired
+    EarlyRefreshCache earlyRefreshCache;
+
+    public String test1() {
+        return earlyRefreshCache.get("uuid:early-refresh", () -> {
+            String dbValue = mapper2.getuuid("uuid");
+            log.info("get data form db dbValue:{}", dbValue);
+            return dbValue;
+        }, 1 + (int) Math.ceil(Math.random() * 10), TimeUnit.DAYS);
+    }
+}
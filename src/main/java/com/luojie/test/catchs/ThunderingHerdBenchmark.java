@@ -0,0 +1,185 @@
+package com.luojie.test.catchs;
+
+import com.luojie.dao.mapper2.Mapper2;
+import com.luojie.moudle.IdempotenceTestModule;
+import com.luojie.moudle.LibraryModel;
+import com.luojie.moudle.UserModel;
+import com.luojie.test.redis.StandInRedisServer;
+import com.luojie.util.RedisServiceUtil;
+import com.luojie.util.cache.TwoLevelCacheManager;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.ibatis.cursor.Cursor;
+import org.apache.ibatis.session.ResultHandler;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 缓存击穿压测：缓存为空时大量线程同时读取同一个key，对比RedisCatch1~7的数据库查询次数、耗时和异常数
+ * 数据库用StubMapper2模拟，redis用StandInRedisServer模拟，直接运行main方法即可
+ */
+@Slf4j
+public class ThunderingHerdBenchmark {
+
+    private static final int THREADS = 200;
+    private static final long DB_MILLIS = 50;
+    private static final long ROUND_TRIP_MICROS = 100;
+    private static final int KEYS = 10;
+
+    public static void main(String[] args) throws Exception {
+        try (StandInRedisServer server = StandInRedisServer.start(ROUND_TRIP_MICROS);
+             AnnotationConfigApplicationContext context = server.createContext(RedisServiceUtil.class,
+                     TwoLevelCacheManager.class, StubMapper2.class, RedisCatch1.class, RedisCatch2.class,
+                     RedisCatch3.class, RedisCatch4.class, RedisCatch5.class, RedisCatch6.class, RedisCatch7.class)) {
+            RedisCatch1 catch1 = context.getBean(RedisCatch1.class);
+            RedisCatch2 catch2 = context.getBean(RedisCatch2.class);
+            RedisCatch3 catch3 = context.getBean(RedisCatch3.class);
+            RedisCatch4 catch4 = context.getBean(RedisCatch4.class);
+            RedisCatch5 catch5 = context.getBean(RedisCatch5.class);
+            RedisCatch6 catch6 = context.getBean(RedisCatch6.class);
+            RedisCatch7 catch7 = context.getBean(RedisCatch7.class);
+
+            herd(server, "RedisCatch1 不加锁", catch1::test1);
+            herd(server, "RedisCatch2 synchronized", catch2::test1);
+            herd(server, "RedisCatch3 ReentrantLock", catch3::test1);
+            herd(server, "RedisCatch4 redis锁自旋", catch4::test1);
+            herd(server, "RedisCatch5 redis锁带过期", catch5::test1);
+            herd(server, "RedisCatch6 二级缓存+SingleFlight", catch6::test1);
+            herd(server, "RedisCatch7 SingleFlight", catch7::test1);
+
+            // 不同key之间互不阻塞
+            server.flushAll();
+            StubMapper2.DB_CALLS.set(0);
+            AtomicInteger next = new AtomicInteger();
+            herd(server, "RedisCatch7 SingleFlight " + KEYS + "个key", () -> catch7.get("uuid-" + next.getAndIncrement() % KEYS));
+        }
+    }
+
+    private static void herd(StandInRedisServer server, String name, Callable<String> call) throws InterruptedException {
+        server.flushAll();
+        StubMapper2.DB_CALLS.set(0);
+        AtomicInteger errors = new AtomicInteger();
+        AtomicInteger empty = new AtomicInteger();
+        AtomicLongArray latencies = new AtomicLongArray(THREADS);
+        CountDownLatch ready = new CountDownLatch(THREADS);
+        CountDownLatch start = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(THREADS);
+        for (int i = 0; i < THREADS; i++) {
+            int index = i;
+            new Thread(() -> {
+                ready.countDown();
+                try {
+                    start.await();
+                    long begin = System.nanoTime();
+                    try {
+                        if (call.call() == null) {
+                            empty.incrementAndGet();
+                        }
+                    } catch (Throwable e) {
+                        errors.incrementAndGet();
+                    }
+                    latencies.set(index, System.nanoTime() - begin);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } finally {
+                    done.countDown();
+                }
+            }).start();
+        }
+        ready.await();
+        long wallStart = System.nanoTime();
+        start.countDown();
+        done.await();
+        long wallMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - wallStart);
+
+        long[] sorted = new long[THREADS];
+        for (int i = 0; i < THREADS; i++) {
+            sorted[i] = latencies.get(i);
+        }
+        Arrays.sort(sorted);
+        log.info("{}: {} 线程, 查库 {} 次, 总耗时 {} ms, p50 {} ms, p99 {} ms, 异常 {}, 返回空 {}", name, THREADS,
+                StubMapper2.DB_CALLS.get(), wallMillis, TimeUnit.NANOSECONDS.toMillis(sorted[THREADS / 2]),
+                TimeUnit.NANOSECONDS.toMillis(sorted[THREADS * 99 / 100]), errors.get(), empty.get());
+    }
+
+    /**
+     * 模拟数据库，getuuid每次耗时DB_MILLIS
+     */
+    public static class StubMapper2 implements Mapper2 {
+
+        static final AtomicInteger DB_CALLS = new AtomicInteger();
+
+        @Override
+        public String getuuid(String uuid) {
+            DB_CALLS.incrementAndGet();
+            try {
+                Thread.sleep(DB_MILLIS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return uuid + "-from-db";
+        }
+
+        @Override
+        public void addUserBalance(UserModel model) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void addLibrary(LibraryModel model) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void buyBook(String name, Integer amount) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void userDeductMoney(String userid, BigDecimal money) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public Integer getBookPrice(String name) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public String getOne(String uuid, String key, String value) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void insertUq(IdempotenceTestModule module) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public int insertUqIgnore(IdempotenceTestModule module) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public int insertUqs(List<IdempotenceTestModule> modules) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void scanAllUuid(ResultHandler<String> handler) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public Cursor<IdempotenceTestModule> exportUq() {
+            throw new UnsupportedOperationException();
+        }
+    }
+}
@@ -0,0 +1,139 @@
+package com.luojie.test.csv;
+
+import com.luojie.moudle.IdempotenceTestModule;
+import com.luojie.util.CsvUtil;
+import com.opencsv.CSVWriter;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.BufferedWriter;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * 导出ROWS行csv的对比，统计首字节时间(TTFB)、总耗时、字节数和堆内存峰值
+ * 1. 原来的做法：先把查询结果全部放进List，再用CSVWriter(默认大小的BufferedWriter)写出
+ * 2. CsvUtil.writeToStream：逐行从迭代器(代替MyBatis的Cursor)取出，256KB缓冲区分块写出
+ * 3. 同2，再加gzip(级别1)
+ * 输出写到只计数的流(代替HTTP响应)，直接运行main方法即可
+ * 堆内存峰值包含还没回收的垃圾，跟新生代大小有关；用-Xmx64m运行可以看出2、3不需要随行数增长的内存
+ */
+@Slf4j
+public class CsvExportBenchmark {
+
+    private static final int ROWS = 5_000_000;
+    private static final int BUFFER_SIZE = 256 * 1024;
+
+    public static void main(String[] args) throws Exception {
+        // 预热
+        CsvUtil.writeToStream(new CountingOutputStream(), IdempotenceTestModule.class, rows(100_000), true,
+                BUFFER_SIZE);
+
+        run("writeToStream", out -> CsvUtil.writeToStream(out, IdempotenceTestModule.class, rows(ROWS), true,
+                BUFFER_SIZE));
+        run("writeToStream+gzip", out -> {
+            GZIPOutputStream gzipOut = new GZIPOutputStream(out, BUFFER_SIZE) {
+                {
+                    def.setLevel(Deflater.BEST_SPEED);
+                }
+            };
+            CsvUtil.writeToStream(gzipOut, IdempotenceTestModule.class, rows(ROWS), true, BUFFER_SIZE);
+            gzipOut.finish();
+        });
+        run("全部放进List再写出", out -> {
+            List<IdempotenceTestModule> list = new ArrayList<>();
+            rows(ROWS).forEachRemaining(list::add);
+            try (CSVWriter writer = new CSVWriter(new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8)))) {
+                writer.writeNext(CsvUtil.headerOf(IdempotenceTestModule.class));
+                for (IdempotenceTestModule module : list) {
+                    writer.writeNext(new String[]{module.getKey(), module.getValue(), module.getUuid()});
+                }
+            }
+        });
+    }
+
+    /**
+     * 按需生成数据，和Cursor一样不会一次性放在内存中
+     */
+    private static Iterator<IdempotenceTestModule> rows(int count) {
+        return new Iterator<>() {
+
+            private int next;
+
+            @Override
+            public boolean hasNext() {
+                return next < count;
+            }
+
+            @Override
+            public IdempotenceTestModule next() {
+                IdempotenceTestModule module = new IdempotenceTestModule();
+                module.setKey("key-" + next);
+                module.setValue("value \"" + next + "\"");
+                module.setUuid("0b1c2d3e-4f5a-6b7c-8d9e-" + (100_000_000_000L + next));
+                next++;
+                return module;
+            }
+        };
+    }
+
+    private static void run(String name, Export export) throws Exception {
+        System.gc();
+        List<MemoryPoolMXBean> pools = ManagementFactory.getMemoryPoolMXBeans().stream()
+                .filter(pool -> pool.getType() == MemoryType.HEAP).toList();
+        pools.forEach(MemoryPoolMXBean::resetPeakUsage);
+        CountingOutputStream out = new CountingOutputStream();
+        long start = System.nanoTime();
+        try {
+            export.write(out);
+        } catch (OutOfMemoryError e) {
+            log.info("{}: OutOfMemoryError, 已写出 {} MB", name, out.bytes >> 20);
+            return;
+        }
+        long nanos = System.nanoTime() - start;
+        long peak = pools.stream().mapToLong(pool -> pool.getPeakUsage().getUsed()).sum();
+        log.info("{}: {} 行, 首字节 {} ms, 总耗时 {} ms, {} MB, 写出 {} 次, 堆内存峰值 {} MB", name, ROWS,
+                TimeUnit.NANOSECONDS.toMillis(out.firstByte - start), TimeUnit.NANOSECONDS.toMillis(nanos),
+                out.bytes >> 20, out.writes, peak >> 20);
+    }
+
+    private interface Export {
+
+        void write(OutputStream out) throws Exception;
+    }
+
+    /**
+     * 只记录第一次写出的时间、写出次数和字节数
+     */
+    private static class CountingOutputStream extends OutputStream {
+
+        private long firstByte;
+
+        private long bytes;
+
+        private long writes;
+
+        @Override
+        public void write(int b) {
+            write(new byte[]{(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            if (firstByte == 0) {
+                firstByte = System.nanoTime();
+            }
+            bytes += len;
+            writes++;
+        }
+    }
+}
@@ -0,0 +1,195 @@
+package com.luojie.test.csv;
+
+import ch.qos.logback.classic.Level;
+import com.luojie.dao.mapper2.Mapper2;
+import com.luojie.moudle.IdempotenceTestModule;
+import com.luojie.test.sql.BatchInsertBenchmark;
+import com.luojie.util.BatchSqlUtil;
+import com.luojie.util.CsvUtil;
+import com.luojie.util.csvimport.CsvImportPipeline;
+import com.opencsv.CSVParser;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.exception.ExceptionUtils;
+import org.apache.ibatis.session.ExecutorType;
+import org.apache.ibatis.session.SqlSessionFactory;
+import org.mybatis.spring.SqlSessionFactoryBean;
+import org.mybatis.spring.SqlSessionTemplate;
+import org.slf4j.LoggerFactory;
+import org.springframework.core.io.support.PathMatchingResourcePatternResolver;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+import java.io.BufferedReader;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * 导入ROWS行uq表csv的对比，数据库用BatchInsertBenchmark.StandInDataSource模拟
+ * 1. 原来的做法：单线程逐行读取，逐条insertUq，只导入BASELINE_ROWS行，再按比例推算全部的耗时
+ * 2. CsvImportPipeline：内存映射分段，多线程解析，WRITE_THREADS个线程用BATCH执行器写入
+ * 3. 断点续传：另一个按uuid唯一的数据库，导入RESUME_ROWS行，写入FAIL_AFTER_BATCHES批后失败，再用resume=true重新运行，
+ *    只导入未完成的段；未完成的段中已经写入的行用insertUq会唯一键冲突，用insertUqIgnore跳过，最后核对行数
+ * 参数：行数，默认10000000；测试文件生成在临时目录，重复运行时复用，直接运行main方法即可
+ */
+@Slf4j
+public class CsvImportBenchmark {
+
+    private static final int BASELINE_ROWS = 20_000;
+    private static final int BATCH_SIZE = 1_000;
+    private static final int WRITE_THREADS = 4;
+    private static final int RESUME_ROWS = 2_000_000;
+    private static final int FAIL_AFTER_BATCHES = 600;
+
+    public static void main(String[] args) throws Exception {
+        // com.luojie.dao在logback.xml中是DEBUG，会打印每条sql和参数
+        ((ch.qos.logback.classic.Logger) LoggerFactory.getLogger("com.luojie.dao")).setLevel(Level.INFO);
+        int rows = args.length > 0 ? Integer.parseInt(args[0]) : 10_000_000;
+        Path file = sampleFile(rows);
+
+        BatchInsertBenchmark.StandInDataSource database = new BatchInsertBenchmark.StandInDataSource();
+        DataSource dataSource = database.proxy();
+        SqlSessionFactory sqlSessionFactory = sqlSessionFactory(dataSource);
+        SqlSessionTemplate simpleTemplate = new SqlSessionTemplate(sqlSessionFactory);
+        SqlSessionTemplate batchTemplate = new SqlSessionTemplate(sqlSessionFactory, ExecutorType.BATCH);
+        TransactionTemplate transactionTemplate = BatchSqlUtil.transactionTemplate(
+                new DataSourceTransactionManager(dataSource));
+
+        // 1. 逐行读取，逐条insert
+        Mapper2 mapper2 = simpleTemplate.getMapper(Mapper2.class);
+        long start = System.nanoTime();
+        long before = database.rows();
+        CSVParser parser = new CSVParser();
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            reader.readLine();
+            for (int i = 0; i < BASELINE_ROWS; i++) {
+                String[] fields = parser.parseLine(reader.readLine());
+                IdempotenceTestModule module = new IdempotenceTestModule();
+                module.setKey(fields[0]);
+                module.setValue(fields[1]);
+                module.setUuid(fields[2]);
+                mapper2.insertUq(module);
+            }
+        }
+        long nanos = System.nanoTime() - start;
+        log.info("逐条insert: {} 行, 耗时 {} ms, {} 行/秒, 推算 {} 行需要 {} 秒", database.rows() - before,
+                TimeUnit.NANOSECONDS.toMillis(nanos), BASELINE_ROWS * TimeUnit.SECONDS.toNanos(1) / nanos, rows,
+                TimeUnit.NANOSECONDS.toSeconds(nanos * rows / BASELINE_ROWS));
+
+        // 2. 流水线
+        Consumer<List<IdempotenceTestModule>> writer = batch -> BatchSqlUtil.execute(batchTemplate,
+                transactionTemplate, Mapper2.class, batch, BATCH_SIZE, Mapper2::insertUqIgnore);
+        run("CsvImportPipeline", database, pipeline(writer), file, false);
+
+        // 3. 失败后断点续传，uuid唯一
+        int resumeRows = Math.min(rows, RESUME_ROWS);
+        Path resumeFile = sampleFile(resumeRows);
+        BatchInsertBenchmark.StandInDataSource uniqueDatabase = new BatchInsertBenchmark.StandInDataSource()
+                .uniqueKey(3);
+        DataSource uniqueDataSource = uniqueDatabase.proxy();
+        SqlSessionTemplate uniqueTemplate = new SqlSessionTemplate(sqlSessionFactory(uniqueDataSource),
+                ExecutorType.BATCH);
+        TransactionTemplate uniqueTransactionTemplate = BatchSqlUtil.transactionTemplate(
+                new DataSourceTransactionManager(uniqueDataSource));
+        Consumer<List<IdempotenceTestModule>> ignoreWriter = batch -> BatchSqlUtil.execute(uniqueTemplate,
+                uniqueTransactionTemplate, Mapper2.class, batch, BATCH_SIZE, Mapper2::insertUqIgnore);
+        AtomicInteger batches = new AtomicInteger();
+        runExpectingFailure("CsvImportPipeline 写入" + FAIL_AFTER_BATCHES + "批后失败", uniqueDatabase, pipeline(batch -> {
+            if (batches.incrementAndGet() > FAIL_AFTER_BATCHES) {
+                throw new IllegalStateException("模拟数据库断开");
+            }
+            ignoreWriter.accept(batch);
+        }), resumeFile, false);
+        runExpectingFailure("CsvImportPipeline resume, insertUq", uniqueDatabase, pipeline(batch ->
+                BatchSqlUtil.execute(uniqueTemplate, uniqueTransactionTemplate, Mapper2.class, batch, BATCH_SIZE,
+                        Mapper2::insertUq)), resumeFile, true);
+        run("CsvImportPipeline resume, insertUqIgnore", uniqueDatabase, pipeline(ignoreWriter), resumeFile, true);
+        log.info("断点续传: 文件 {} 行, 数据库共 {} 行, 跳过重复 {} 行{}", resumeRows, uniqueDatabase.rows(),
+                uniqueDatabase.duplicates(), uniqueDatabase.rows() == resumeRows ? "" : ", 行数不一致");
+    }
+
+    private static SqlSessionFactory sqlSessionFactory(DataSource dataSource) throws Exception {
+        SqlSessionFactoryBean factoryBean = new SqlSessionFactoryBean();
+        factoryBean.setDataSource(dataSource);
+        factoryBean.setMapperLocations(new PathMatchingResourcePatternResolver()
+                .getResources("classpath:rojerTestMapper/mapper2/*.xml"));
+        return factoryBean.getObject();
+    }
+
+    private static void runExpectingFailure(String name, BatchInsertBenchmark.StandInDataSource database,
+                                            CsvImportPipeline<IdempotenceTestModule> pipeline, Path file,
+                                            boolean resume) throws Exception {
+        try {
+            run(name, database, pipeline, file, resume);
+        } catch (IllegalStateException e) {
+            log.info("{}: 导入失败: {}, 原因: {}", name, e.getMessage(), ExceptionUtils.getRootCauseMessage(e));
+        }
+    }
+
+    private static CsvImportPipeline<IdempotenceTestModule> pipeline(Consumer<List<IdempotenceTestModule>> writer) {
+        return new CsvImportPipeline<>(IdempotenceTestModule.class, writer)
+                .name("benchmark")
+                .writeThreads(WRITE_THREADS)
+                .batchSize(BATCH_SIZE)
+                .skipLines(1);
+    }
+
+    private static void run(String name, BatchInsertBenchmark.StandInDataSource database,
+                            CsvImportPipeline<IdempotenceTestModule> pipeline, Path file, boolean resume)
+            throws Exception {
+        long before = database.rows();
+        long start = System.nanoTime();
+        try {
+            CsvImportPipeline.Result result = pipeline.run(file, resume);
+            long nanos = System.nanoTime() - start;
+            log.info("{}: 写入 {} 行, 拒绝 {} 行, {} 段中跳过 {} 段, 耗时 {} ms, {} 行/秒", name, result.getWritten(),
+                    result.getRejected(), result.getSplits(), result.getSkippedSplits(),
+                    TimeUnit.NANOSECONDS.toMillis(nanos), result.getWritten() * TimeUnit.SECONDS.toNanos(1) / nanos);
+        } finally {
+            log.info("{}: 数据库收到 {} 行", name, database.rows() - before);
+        }
+    }
+
+    /**
+     * 生成uq表的csv文件，第一行为列名
+     */
+    private static Path sampleFile(int rows) throws Exception {
+        Path file = Paths.get(System.getProperty("java.io.tmpdir"), "rojer-uq-" + rows + ".csv");
+        if (Files.exists(file)) {
+            return file;
+        }
+        Path tmp = Files.createTempFile(file.getParent(), "rojer-uq-", ".tmp");
+        try (OutputStream out = Files.newOutputStream(tmp)) {
+            CsvUtil.writeToStream(out, IdempotenceTestModule.class, new Iterator<>() {
+
+                private int next;
+
+                @Override
+                public boolean hasNext() {
+                    return next < rows;
+                }
+
+                @Override
+                public IdempotenceTestModule next() {
+                    IdempotenceTestModule module = new IdempotenceTestModule();
+                    module.setKey("key-" + next);
+                    module.setValue("value-" + next);
+                    module.setUuid("0b1c2d3e-4f5a-6b7c-8d9e-" + (100_000_000_000L + next));
+                    next++;
+                    return module;
+                }
+            }, true, 256 * 1024);
+        }
+        Files.move(tmp, file);
+        log.info("生成 {}, {} MB", file, Files.size(file) >> 20);
+        return file;
+    }
+}
@@ -0,0 +1,131 @@
+package com.luojie.test.csv;
+
+import com.luojie.moudle.RojerCSVModel;
+import com.luojie.util.CsvUtil;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.csv.CSVFormat;
+import org.apache.commons.csv.CSVParser;
+import org.apache.commons.csv.CSVRecord;
+
+import java.io.BufferedReader;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * 解析csv的吞吐对比，文件同CsvReadBenchmark(name,age,address，address带引号和逗号)
+ * 1. CsvUtil.CSVToBeanStream(Engine.OPENCSV)
+ * 2. commons-csv的CSVParser(RFC4180)，手写new RojerCSVModel(record.get(0), ...)绑定
+ * 3. CsvUtil.CSVToBeanStream(Engine.FAST)
+ * 每种先预热一遍再计时，统计行数/秒、MB/秒和每行分配的堆内存(当前线程)
+ * 先用一个包含转义引号、引号中的换行、CRLF、空行和中文的小文件比较FAST和commons-csv的结果
+ * 参数：文件大小(MB)，默认256，直接运行main方法即可
+ */
+@Slf4j
+public class CsvParseBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        long megabytes = args.length > 0 ? Long.parseLong(args[0]) : 256;
+        checkEdgeCases();
+
+        Path file = CsvReadBenchmark.sampleFile(megabytes);
+        long bytes = Files.size(file);
+        for (int round = 0; round < 2; round++) {
+            boolean measure = round == 1;
+            run("opencsv", measure, bytes, () -> {
+                try (Stream<RojerCSVModel> stream = CsvUtil.CSVToBeanStream(file.toString(), RojerCSVModel.class, 0,
+                        CsvUtil.Engine.OPENCSV)) {
+                    return stream.filter(model -> model.getAddress() != null).count();
+                }
+            });
+            run("commons-csv", measure, bytes, () -> {
+                long rows = 0;
+                try (CSVParser parser = CSVFormat.RFC4180.parse(Files.newBufferedReader(file, StandardCharsets.UTF_8))) {
+                    for (CSVRecord record : parser) {
+                        RojerCSVModel model = new RojerCSVModel(record.get(0), record.get(1), record.get(2));
+                        if (model.getAddress() != null) {
+                            rows++;
+                        }
+                    }
+                }
+                return rows;
+            });
+            run("FAST", measure, bytes, () -> {
+                try (Stream<RojerCSVModel> stream = CsvUtil.CSVToBeanStream(file.toString(), RojerCSVModel.class, 0,
+                        CsvUtil.Engine.FAST)) {
+                    return stream.filter(model -> model.getAddress() != null).count();
+                }
+            });
+        }
+    }
+
+    /**
+     * FAST和commons-csv解析同一个文件，结果必须一致
+     */
+    private static void checkEdgeCases() throws Exception {
+        Path file = Files.createTempFile("rojer-csv-edge-", ".csv");
+        try {
+            String content = "\uFEFFname,age,address\r\n"
+                    + "John,30,New York\r\n"
+                    + "\"Alice \"\"A\"\"\",25,\"London, UK\"\r\n"
+                    + "\r\n"
+                    + "罗杰,27,\"上海\n南京路\"\n"
+                    + "\"\",,\n"
+                    + "Bob,40,\"\"\"quoted\"\"\"\n"
+                    + "Tail,1,no newline at end";
+            Files.write(file, content.getBytes(StandardCharsets.UTF_8));
+            List<RojerCSVModel> fast = CsvUtil.CSVToBean(file.toString(), RojerCSVModel.class, 1, CsvUtil.Engine.FAST);
+            List<RojerCSVModel> expected = new ArrayList<>();
+            try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+                // commons-csv不处理BOM
+                reader.read();
+                CSVParser parser = CSVFormat.RFC4180.builder().setIgnoreEmptyLines(true).build().parse(reader);
+                for (CSVRecord record : parser) {
+                    if (record.getRecordNumber() > 1) {
+                        expected.add(new RojerCSVModel(record.get(0), record.get(1), record.get(2)));
+                    }
+                }
+            }
+            if (fast.size() != expected.size()) {
+                throw new IllegalStateException("FAST " + fast.size() + " 行, commons-csv " + expected.size() + " 行");
+            }
+            for (int i = 0; i < fast.size(); i++) {
+                RojerCSVModel a = fast.get(i);
+                RojerCSVModel b = expected.get(i);
+                if (!Objects.equals(a.getName(), b.getName()) || !Objects.equals(a.getAge(), b.getAge())
+                        || !Objects.equals(a.getAddress(), b.getAddress())) {
+                    throw new IllegalStateException("第" + (i + 1) + "行不一致: [" + a + "] [" + b + "]");
+                }
+            }
+            log.info("边界情况: {} 行, FAST和commons-csv结果一致", fast.size());
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    private static void run(String name, boolean measure, long bytes, Parse parse) throws Exception {
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long allocatedBefore = threads.getCurrentThreadAllocatedBytes();
+        long start = System.nanoTime();
+        long rows = parse.parse();
+        long nanos = System.nanoTime() - start;
+        long allocated = threads.getCurrentThreadAllocatedBytes() - allocatedBefore;
+        if (!measure) {
+            return;
+        }
+        log.info("{}: {} 行, 耗时 {} ms, {} 行/秒, {} MB/秒, 每行分配 {} 字节", name, rows,
+                TimeUnit.NANOSECONDS.toMillis(nanos), rows * TimeUnit.SECONDS.toNanos(1) / nanos,
+                (bytes >> 20) * TimeUnit.SECONDS.toNanos(1) / nanos, allocated / Math.max(1, rows));
+    }
+
+    private interface Parse {
+
+        long parse() throws Exception;
+    }
+}
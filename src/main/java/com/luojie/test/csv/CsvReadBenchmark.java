@@ -0,0 +1,131 @@
+package com.luojie.test.csv;
+
+import com.luojie.moudle.RojerCSVModel;
+import com.luojie.util.CsvUtil;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+/**
+ * 读取大csv文件的对比：原来的CSVToBean(整个文件读到List)、CSVToBeanStream、CSVToBeanInChunks(单线程/多线程映射)
+ * 统计每种方式的行数/秒、堆内存峰值，以及读完后仍然占用的堆内存(GC后)
+ * 参数：文件大小(MB)，默认1024；CSVToBean只读LEGACY_MEGABYTES的文件，否则会OutOfMemoryError
+ * 测试文件生成在临时目录，重复运行时复用，直接运行main方法即可
+ */
+@Slf4j
+public class CsvReadBenchmark {
+
+    private static final int LEGACY_MEGABYTES = 64;
+    private static final int CHUNK_SIZE = 1_000;
+
+    public static void main(String[] args) throws Exception {
+        long megabytes = args.length > 0 ? Long.parseLong(args[0]) : 1024;
+        Path small = sampleFile(LEGACY_MEGABYTES);
+        Path large = sampleFile(megabytes);
+        log.info("最大堆内存 {} MB", Runtime.getRuntime().maxMemory() >> 20);
+
+        run("CSVToBean " + LEGACY_MEGABYTES + "MB", () -> {
+            List<RojerCSVModel> list = CsvUtil.CSVToBean(small.toString(), RojerCSVModel.class, 0);
+            return new Result(list.size(), list);
+        });
+        run("CSVToBeanStream " + LEGACY_MEGABYTES + "MB", () -> stream(small));
+        run("CSVToBeanStream " + megabytes + "MB", () -> stream(large));
+        run("CSVToBeanInChunks 1线程 " + megabytes + "MB", () -> chunks(large, 1));
+        int threads = Math.max(4, Runtime.getRuntime().availableProcessors());
+        run("CSVToBeanInChunks " + threads + "线程 " + megabytes + "MB", () -> chunks(large, threads));
+    }
+
+    private static Result stream(Path file) throws IOException {
+        try (Stream<RojerCSVModel> stream = CsvUtil.CSVToBeanStream(file.toString(), RojerCSVModel.class, 0)) {
+            return new Result(stream.filter(model -> model.getName() != null).count(), null);
+        }
+    }
+
+    private static Result chunks(Path file, int parallelism) throws IOException {
+        AtomicLong named = new AtomicLong();
+        long rows = CsvUtil.CSVToBeanInChunks(file.toString(), RojerCSVModel.class, 0, CHUNK_SIZE, parallelism,
+                chunk -> chunk.forEach(model -> {
+                    if (model.getName() != null) {
+                        named.incrementAndGet();
+                    }
+                }));
+        if (rows != named.get()) {
+            throw new IllegalStateException("rows " + rows + " != " + named.get());
+        }
+        return new Result(rows, null);
+    }
+
+    private static void run(String name, Reader reader) throws Exception {
+        System.gc();
+        List<MemoryPoolMXBean> pools = ManagementFactory.getMemoryPoolMXBeans().stream()
+                .filter(pool -> pool.getType() == MemoryType.HEAP).toList();
+        pools.forEach(MemoryPoolMXBean::resetPeakUsage);
+        long before = usedHeap();
+        long start = System.nanoTime();
+        Result result = reader.read();
+        long nanos = System.nanoTime() - start;
+        long peak = pools.stream().mapToLong(pool -> pool.getPeakUsage().getUsed()).sum();
+        // 结果还被引用时GC，剩下的就是读取结果占用的内存
+        System.gc();
+        long retained = usedHeap() - before;
+        log.info("{}: {} 行, 耗时 {} ms, {} 行/秒, 堆内存峰值 {} MB, 读完后占用 {} MB", name, result.rows,
+                TimeUnit.NANOSECONDS.toMillis(nanos), result.rows * TimeUnit.SECONDS.toNanos(1) / nanos, peak >> 20,
+                Math.max(0, retained) >> 20);
+        if (result.hold != null) {
+            log.debug("hold {}", result.hold.hashCode());
+        }
+    }
+
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    /**
+     * 生成大约megabytes大小的RojerCSVModel文件(name,age,address)，已存在时直接使用
+     */
+    public static Path sampleFile(long megabytes) throws IOException {
+        Path file = Paths.get(System.getProperty("java.io.tmpdir"), "rojer-csv-" + megabytes + "MB.csv");
+        long size = megabytes << 20;
+        if (Files.exists(file) && Files.size(file) >= size) {
+            return file;
+        }
+        long start = System.nanoTime();
+        long written = 0;
+        long row = 0;
+        try (BufferedWriter writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            StringBuilder line = new StringBuilder(64);
+            while (written < size) {
+                line.setLength(0);
+                line.append("name-").append(row).append(',').append(18 + row % 60).append(',')
+                        .append("\"No.").append(row).append(" Nanjing Road, Shang Hai\"\n");
+                writer.append(line);
+                written += line.length();
+                row++;
+            }
+        }
+        log.info("生成测试文件 {}: {} 行, {} MB, 耗时 {} ms", file, row, written >> 20,
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        return file;
+    }
+
+    private interface Reader {
+
+        Result read() throws Exception;
+    }
+
+    private record Result(long rows, Object hold) {
+    }
+}
@@ -0,0 +1,87 @@
+package com.luojie.test.csv;
+
+import com.luojie.moudle.RojerCSVModel;
+import com.luojie.util.CsvUtil;
+import com.opencsv.CSVWriter;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * CsvUtil.writeToFile写List的对比：原来每个元素都getMethods()+isGetter过滤+Method.invoke，
+ * 现在每个类只解析一次getter，用LambdaMetafactory生成的Function调用
+ * 项目里没有JMH，这里用main方法预热后各跑ROUNDS轮，写到临时文件，直接运行main方法即可
+ */
+@Slf4j
+public class CsvWriteBenchmark {
+
+    private static final int ROWS = 1_000_000;
+    private static final int WARMUP_ROWS = 100_000;
+    private static final int ROUNDS = 3;
+
+    public static void main(String[] args) throws Exception {
+        List<Object> rows = new ArrayList<>(ROWS);
+        for (int i = 0; i < ROWS; i++) {
+            rows.add(new RojerCSVModel("name-" + i, String.valueOf(18 + i % 60), "No." + i + " Nanjing Road"));
+        }
+        Path legacyFile = Files.createTempFile("csv-write-legacy", ".csv");
+        Path file = Files.createTempFile("csv-write", ".csv");
+        log.info("列顺序: {}", Arrays.toString(CsvUtil.headerOf(RojerCSVModel.class)));
+
+        List<Object> warmup = rows.subList(0, WARMUP_ROWS);
+        legacyWriteToFile(legacyFile, warmup);
+        CsvUtil.writeToFile(file.toString(), warmup);
+        for (int round = 1; round <= ROUNDS; round++) {
+            long start = System.nanoTime();
+            legacyWriteToFile(legacyFile, rows);
+            long legacyNanos = System.nanoTime() - start;
+            start = System.nanoTime();
+            CsvUtil.writeToFile(file.toString(), rows);
+            long nanos = System.nanoTime() - start;
+            log.info("第{}轮 {} 行: 原来的写法 {} ms ({} ns/行), 缓存getter {} ms ({} ns/行)", round, ROWS,
+                    TimeUnit.NANOSECONDS.toMillis(legacyNanos), legacyNanos / ROWS, TimeUnit.NANOSECONDS.toMillis(nanos),
+                    nanos / ROWS);
+        }
+        log.info("文件大小: 原来的写法 {} 字节, 缓存getter {} 字节, 第一行: {} / {}", Files.size(legacyFile), Files.size(file),
+                Files.readAllLines(legacyFile).get(0), Files.readAllLines(file).get(0));
+    }
+
+    /**
+     * 原来CsvUtil.writeToFile(List)的写法
+     */
+    private static void legacyWriteToFile(Path path, List<Object> content) throws IOException {
+        try (BufferedWriter bufferedWriter = Files.newBufferedWriter(path, StandardCharsets.UTF_8);
+             CSVWriter csvWriter = new CSVWriter(bufferedWriter)) {
+            String[] strings = new String[content.size()];
+            for (int i = 0; i < content.size(); i++) {
+                strings[i] = content.get(i).toString();
+            }
+            for (Object e : content) {
+                Method[] methods = e.getClass().getMethods();
+                List<String> list = new ArrayList<>();
+                for (Method method : methods) {
+                    String name = method.getName();
+                    if ((name.startsWith("get") || name.startsWith("is")) && !name.startsWith("getClass")
+                            && method.getParameterCount() == 0 && !void.class.equals(method.getReturnType())) {
+                        try {
+                            list.add(String.valueOf(method.invoke(e)));
+                        } catch (Exception e1) {
+                            e1.printStackTrace();
+                        }
+                    }
+                }
+                csvWriter.writeNext(list.toArray(new String[0]));
+                list.clear();
+            }
+        }
+    }
+}
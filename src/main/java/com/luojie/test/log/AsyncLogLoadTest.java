@@ -0,0 +1,224 @@
+package com.luojie.test.log;
+
+import ch.qos.logback.classic.LoggerContext;
+import ch.qos.logback.classic.joran.JoranConfigurator;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.core.Appender;
+import ch.qos.logback.core.OutputStreamAppender;
+import com.luojie.config.LogAspect;
+import com.luojie.config.filter.UserAuthFilter;
+import com.luojie.config.logconfig.AccessLogInterceptor;
+import com.luojie.config.logconfig.BatchingAsyncAppender;
+import com.luojie.config.logconfig.LogAspectConfig;
+import com.luojie.config.trace.TraceIdInterceptor;
+import com.luojie.moudle.UserModel;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.slf4j.MDC;
+
+import java.io.File;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 同步日志和BatchingAsyncAppender在RPS请求/秒下的请求延迟对比
+ * 每个请求按真实链路的logger和消息打印16行INFO：UserAuthFilter 4行、AccessLogInterceptor 2行、TraceIdInterceptor 2行、
+ * LogAspect 6行(含Arrays.toString(args)和返回结果)、LogAspectConfig 2行，中间sleep HANDLER_MICROS模拟业务处理
+ * 请求按固定间隔提交到200个线程(同Tomcat默认最大线程数)，延迟从计划开始时间算起，不会因为系统变慢而少算排队时间
+ * 1. 同步：CONSOLE、FILE直接挂在logger上，FILE每条日志flush一次(原来的logback.xml)
+ * 2. 异步：logback.xml现在的配置，ASYNC_CONSOLE、ASYNC_FILE
+ * 每种配置再跑一轮标准输出卡顿的情况：每STALL_INTERVAL_MILLIS卡STALL_MILLIS，模拟日志采集(docker、journald)读得慢时管道写满
+ * 日志写到临时目录(LOG_PATH)，控制台输出重定向到文件运行，例如 java ... AsyncLogLoadTest > /tmp/load.log
+ * 参数：每秒请求数，默认2000；每轮持续秒数，默认20
+ */
+public class AsyncLogLoadTest {
+
+    private static final int THREADS = 200;
+    private static final long HANDLER_MICROS = 1000;
+    private static final int WARMUP_SECONDS = 3;
+    private static final long STALL_INTERVAL_MILLIS = 500;
+    private static final long STALL_MILLIS = 20;
+
+    private static final Logger filterLog = LoggerFactory.getLogger(UserAuthFilter.class);
+    private static final Logger accessLog = LoggerFactory.getLogger(AccessLogInterceptor.class);
+    private static final Logger traceLog = LoggerFactory.getLogger(TraceIdInterceptor.class);
+    private static final Logger aspectLog = LoggerFactory.getLogger(LogAspect.class);
+    private static final Logger aspectConfigLog = LoggerFactory.getLogger(LogAspectConfig.class);
+
+    public static void main(String[] args) throws Exception {
+        int rps = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+        int seconds = args.length > 1 ? Integer.parseInt(args[1]) : 20;
+        Path logPath = Files.createTempDirectory("rojer-log-load-");
+        System.setProperty("LOG_PATH", logPath.toString());
+
+        List<String> results = new ArrayList<>();
+        PrintStream out = System.out;
+        for (boolean stall : new boolean[]{false, true}) {
+            System.setOut(stall ? new PrintStream(new StallingOutputStream(out), true) : out);
+            String sink = stall ? "标准输出卡顿" : "标准输出正常";
+            configure(false);
+            run(rps, WARMUP_SECONDS);
+            results.add(report("同步, " + sink, rps, run(rps, seconds)));
+            configure(true);
+            run(rps, WARMUP_SECONDS);
+            results.add(report("异步, " + sink, rps, run(rps, seconds)) + ", 丢弃 " + discarded() + " 条");
+        }
+        LoggerContext context = (LoggerContext) LoggerFactory.getILoggerFactory();
+        context.stop();
+        System.setOut(out);
+        results.forEach(System.err::println);
+        for (File file : logPath.toFile().listFiles()) {
+            file.delete();
+        }
+        Files.delete(logPath);
+    }
+
+    /**
+     * 用logback.xml重新配置；sync时把异步appender包装的CONSOLE、FILE直接挂到logger上，FILE每条flush
+     */
+    private static void configure(boolean async) throws Exception {
+        LoggerContext context = (LoggerContext) LoggerFactory.getILoggerFactory();
+        context.reset();
+        JoranConfigurator configurator = new JoranConfigurator();
+        configurator.setContext(context);
+        configurator.doConfigure(AsyncLogLoadTest.class.getResource("/logback.xml"));
+        if (async) {
+            return;
+        }
+        for (ch.qos.logback.classic.Logger logger : context.getLoggerList()) {
+            List<BatchingAsyncAppender> wrappers = new ArrayList<>();
+            for (Iterator<Appender<ILoggingEvent>> it = logger.iteratorForAppenders(); it.hasNext(); ) {
+                if (it.next() instanceof BatchingAsyncAppender wrapper) {
+                    wrappers.add(wrapper);
+                }
+            }
+            for (BatchingAsyncAppender wrapper : wrappers) {
+                logger.detachAppender(wrapper);
+                for (Iterator<Appender<ILoggingEvent>> it = wrapper.iteratorForAppenders(); it.hasNext(); ) {
+                    Appender<ILoggingEvent> appender = it.next();
+                    if (appender instanceof OutputStreamAppender<ILoggingEvent> stream) {
+                        stream.setImmediateFlush(true);
+                    }
+                    logger.addAppender(appender);
+                }
+            }
+        }
+    }
+
+    private static long discarded() {
+        LoggerContext context = (LoggerContext) LoggerFactory.getILoggerFactory();
+        long discarded = 0;
+        for (Iterator<Appender<ILoggingEvent>> it = context.getLogger(org.slf4j.Logger.ROOT_LOGGER_NAME)
+                .iteratorForAppenders(); it.hasNext(); ) {
+            if (it.next() instanceof BatchingAsyncAppender wrapper) {
+                discarded += wrapper.getDiscardedCount();
+            }
+        }
+        return discarded;
+    }
+
+    /**
+     * 按固定间隔提交请求，返回每个请求的延迟(纳秒)
+     */
+    private static long[] run(int rps, int seconds) throws InterruptedException {
+        int requests = rps * seconds;
+        long interval = TimeUnit.SECONDS.toNanos(1) / rps;
+        long[] latencies = new long[requests];
+        CountDownLatch done = new CountDownLatch(requests);
+        ExecutorService pool = Executors.newFixedThreadPool(THREADS, r -> new Thread(r, "http-nio-exec"));
+        long start = System.nanoTime();
+        for (int i = 0; i < requests; i++) {
+            long scheduled = start + i * interval;
+            long wait = scheduled - System.nanoTime();
+            if (wait > 0) {
+                LockSupport.parkNanos(wait);
+            }
+            int index = i;
+            pool.execute(() -> {
+                handle(index);
+                latencies[index] = System.nanoTime() - scheduled;
+                done.countDown();
+            });
+        }
+        done.await();
+        pool.shutdown();
+        return latencies;
+    }
+
+    /**
+     * 一个请求在各个过滤器、拦截器和切面中打印的日志
+     */
+    private static void handle(int index) {
+        MDC.put(TraceIdInterceptor.TRACE_ID, "load-" + index);
+        String uri = "/user/get";
+        UserModel user = new UserModel();
+        user.setUserid("u" + (index % 1000));
+        user.setUsername("user-" + (index % 1000));
+        Object[] args = {user.getUserid(), index};
+        filterLog.info("执行了过滤器！");
+        filterLog.info("------请求开始----");
+        filterLog.info("------请求结束----");
+        traceLog.info("请求开始处理 - URL: {}, Method: {}, TraceId: {}", uri, "GET", MDC.get(TraceIdInterceptor.TRACE_ID));
+        accessLog.info("From Interceptor Request IN URL: {} - Method: {} -IP:{}", uri, "GET", "127.0.0.1");
+        aspectLog.info("环绕通知--前置： 开启调用，方法名：{}", "getUser");
+        aspectConfigLog.info(" From AOP Request In URL: {} - Method: {} -IP:{}", uri, "GET", "127.0.0.1");
+        aspectLog.info("前置通知： 开启调用，方法名：{}， 参数：{}", "getUser", Arrays.toString(args));
+        LockSupport.parkNanos(TimeUnit.MICROSECONDS.toNanos(HANDLER_MICROS));
+        aspectLog.info("返回通知： 开启调用，方法名：{}. 返回结果：{}", "getUser", user);
+        aspectLog.info("后置通知： 开启调用，方法名：{}", "getUser");
+        aspectConfigLog.info(" From AOP Request Out URL: {} - Method: {} -IP:{}", uri, "GET", "127.0.0.1");
+        aspectLog.info("环绕通知--返回： 开启调用，方法名：{}", "getUser");
+        aspectLog.info("环绕通知--后置： 开启调用，方法名：{}", "getUser");
+        accessLog.info("From Interceptor Request OUT URL: {} - Method: {} -IP:{}", uri, "GET", "127.0.0.1");
+        traceLog.info("请求处理完成 - URL: {}, TraceId: {}", uri, MDC.get(TraceIdInterceptor.TRACE_ID));
+        filterLog.info("------filter清理用户上下文----");
+        MDC.remove(TraceIdInterceptor.TRACE_ID);
+    }
+
+    private static String report(String name, int rps, long[] latencies) {
+        long[] sorted = latencies.clone();
+        Arrays.sort(sorted);
+        return String.format("%s: %d 请求/秒, %d 个请求, 延迟 p50 %.2f ms, p99 %.2f ms, p99.9 %.2f ms, max %.2f ms",
+                name, rps, sorted.length, millis(sorted, 0.50), millis(sorted, 0.99), millis(sorted, 0.999),
+                sorted[sorted.length - 1] / 1e6);
+    }
+
+    private static double millis(long[] sorted, double percentile) {
+        return sorted[(int) Math.min(sorted.length - 1, Math.round(percentile * sorted.length))] / 1e6;
+    }
+
+    /**
+     * 定期卡住所有写入的输出流，和管道写满时一样，卡住期间其他线程的写入也在等待
+     */
+    private static class StallingOutputStream extends FilterOutputStream {
+
+        private long nextStall = System.nanoTime();
+
+        private StallingOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public synchronized void write(byte[] b, int off, int len) throws IOException {
+            long now = System.nanoTime();
+            if (now >= nextStall) {
+                LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(STALL_MILLIS));
+                nextStall = now + TimeUnit.MILLISECONDS.toNanos(STALL_INTERVAL_MILLIS);
+            }
+            out.write(b, off, len);
+        }
+    }
+}
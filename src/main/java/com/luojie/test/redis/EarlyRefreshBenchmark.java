@@ -0,0 +1,118 @@
+package com.luojie.test.redis;
+
+import com.luojie.config.AsyncPools;
+import com.luojie.util.RedisServiceUtil;
+import com.luojie.util.cache.EarlyRefreshCache;
+import com.luojie.util.cache.SingleFlight;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * 对比普通cache-aside(过期后同步查库，同一个key只查一次)和EarlyRefreshCache在热点key反复过期时的读取延迟
+ * 逻辑过期时间2秒，查库耗时50ms，多个线程持续读取，直接运行main方法即可
+ */
+@Slf4j
+public class EarlyRefreshBenchmark {
+
+    private static final int THREADS = 16;
+    private static final long RUN_MILLIS = 8_000;
+    private static final int TTL_SECONDS = 2;
+    private static final long DB_MILLIS = 50;
+    private static final long ROUND_TRIP_MICROS = 100;
+    private static final int MAX_SAMPLES = 200_000;
+
+    public static void main(String[] args) throws Exception {
+        try (StandInRedisServer server = StandInRedisServer.start(ROUND_TRIP_MICROS);
+             AnnotationConfigApplicationContext context = server.createContext(RedisServiceUtil.class,
+                     AsyncPools.class, EarlyRefreshCache.class)) {
+            RedisServiceUtil redis = context.getBean(RedisServiceUtil.class);
+            EarlyRefreshCache earlyRefreshCache = context.getBean(EarlyRefreshCache.class);
+
+            AtomicInteger dbCalls = new AtomicInteger();
+            Supplier<String> loader = () -> {
+                dbCalls.incrementAndGet();
+                try {
+                    Thread.sleep(DB_MILLIS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return "value-" + System.currentTimeMillis();
+            };
+
+            SingleFlight<String, String> singleFlight = new SingleFlight<>();
+            run("cache-aside 过期后同步查库", dbCalls, key -> {
+                String value = redis.get(key);
+                if (StringUtils.isNotEmpty(value)) {
+                    return value;
+                }
+                return singleFlight.load(key, () -> {
+                    String loaded = loader.get();
+                    redis.setWithExpire(key, loaded, TTL_SECONDS, TimeUnit.SECONDS);
+                    return loaded;
+                });
+            });
+
+            run("EarlyRefreshCache 提前异步刷新", dbCalls,
+                    key -> earlyRefreshCache.get(key + ":early", loader, TTL_SECONDS, TimeUnit.SECONDS));
+            log.info("EarlyRefreshCache: 命中 {}, 提前刷新 {}, 过期后返回旧数据 {}, 未命中 {}",
+                    earlyRefreshCache.getHitCount(), earlyRefreshCache.getEarlyRefreshCount(),
+                    earlyRefreshCache.getStaleHitCount(), earlyRefreshCache.getMissCount());
+        }
+    }
+
+    private static void run(String name, AtomicInteger dbCalls, Function<String, String> read) throws InterruptedException {
+        // 先加载一次，只统计之后的过期
+        read.apply("hot");
+        dbCalls.set(0);
+        long[][] samples = new long[THREADS][MAX_SAMPLES];
+        int[] counts = new int[THREADS];
+        CountDownLatch done = new CountDownLatch(THREADS);
+        long end = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(RUN_MILLIS);
+        for (int t = 0; t < THREADS; t++) {
+            int index = t;
+            new Thread(() -> {
+                try {
+                    while (System.nanoTime() < end && counts[index] < MAX_SAMPLES) {
+                        long begin = System.nanoTime();
+                        read.apply("hot");
+                        samples[index][counts[index]++] = System.nanoTime() - begin;
+                        Thread.sleep(1);
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } finally {
+                    done.countDown();
+                }
+            }).start();
+        }
+        done.await();
+
+        int total = 0;
+        for (int count : counts) {
+            total += count;
+        }
+        long[] all = new long[total];
+        int offset = 0;
+        for (int t = 0; t < THREADS; t++) {
+            System.arraycopy(samples[t], 0, all, offset, counts[t]);
+            offset += counts[t];
+        }
+        Arrays.sort(all);
+        long stalled = Arrays.stream(all).filter(n -> n >= TimeUnit.MILLISECONDS.toNanos(DB_MILLIS)).count();
+        log.info("{}: {} 次读取, 查库 {} 次, p50 {} us, p99 {} us, p99.9 {} us, max {} ms, 等待查库的读取 {}", name, total,
+                dbCalls.get(), micros(all, 0.5), micros(all, 0.99), micros(all, 0.999),
+                TimeUnit.NANOSECONDS.toMillis(all[total - 1]), stalled);
+    }
+
+    private static long micros(long[] sorted, double percentile) {
+        return TimeUnit.NANOSECONDS.toMicros(sorted[(int) Math.min(sorted.length - 1, sorted.length * percentile)]);
+    }
+}
@@ -0,0 +1,141 @@
+package com.luojie.test.redis;
+
+import com.luojie.config.myInterface.MyPermission;
+import com.luojie.config.myInterface.PermissionAspect;
+import com.luojie.moudle.UserModel;
+import com.luojie.util.cache.BoundedCacheManager;
+import jakarta.servlet.http.HttpServletRequest;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.EnableAspectJAutoProxy;
+
+import java.lang.reflect.Proxy;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * PermissionAspect压测：每个请求调用GUARDED_CALLS个带@MyPermission的方法
+ * 对比原来每次校验都查库+roles子串匹配，和现在按请求只解析一次、多个请求共享权限缓存的查库次数和耗时
+ * 数据库用UserCacheBenchmark.StubMapper1模拟，request用只支持header和attribute的代理模拟，直接运行main方法即可
+ */
+@Slf4j
+public class PermissionBenchmark {
+
+    private static final int THREADS = 16;
+    private static final int REQUESTS_PER_THREAD = 1_000;
+    private static final int GUARDED_CALLS = 5;
+    private static final int USERS = 200;
+    private static final long ROUND_TRIP_MICROS = 100;
+
+    private static final ThreadLocal<Map<String, Object>> HEADERS = new ThreadLocal<>();
+
+    private static final ThreadLocal<Map<String, Object>> ATTRIBUTES = new ThreadLocal<>();
+
+    public static void main(String[] args) throws Exception {
+        try (StandInRedisServer server = StandInRedisServer.start(ROUND_TRIP_MICROS);
+             AnnotationConfigApplicationContext context = server.createContext(BenchConfig.class,
+                     BoundedCacheManager.class, PermissionAspect.class, UserCacheBenchmark.StubMapper1.class,
+                     GuardedService.class)) {
+            UserCacheBenchmark.StubMapper1 mapper = context.getBean(UserCacheBenchmark.StubMapper1.class);
+            GuardedService service = context.getBean(GuardedService.class);
+
+            run("每次校验都查库", () -> {
+                for (int i = 0; i < GUARDED_CALLS; i++) {
+                    UserModel user = mapper.getUser((String) HEADERS.get().get("userID"));
+                    if (user == null || !user.getRoles().contains("admin")) {
+                        throw new IllegalStateException("没有权限");
+                    }
+                }
+            });
+            run("按请求解析+权限缓存", () -> {
+                service.query();
+                service.update();
+                service.export();
+                service.audit();
+                service.delete();
+            });
+        }
+    }
+
+    private static void run(String name, Runnable request) throws InterruptedException {
+        UserCacheBenchmark.StubMapper1.DB_CALLS.set(0);
+        CountDownLatch done = new CountDownLatch(THREADS);
+        long wallStart = System.nanoTime();
+        for (int t = 0; t < THREADS; t++) {
+            new Thread(() -> {
+                try {
+                    ThreadLocalRandom random = ThreadLocalRandom.current();
+                    for (int i = 0; i < REQUESTS_PER_THREAD; i++) {
+                        HEADERS.set(Map.of("userID", "user-" + random.nextInt(USERS)));
+                        ATTRIBUTES.set(new HashMap<>());
+                        request.run();
+                    }
+                } finally {
+                    done.countDown();
+                }
+            }).start();
+        }
+        done.await();
+        long wallNanos = System.nanoTime() - wallStart;
+        int requests = THREADS * REQUESTS_PER_THREAD;
+        log.info("{}: {} 个请求, 每个请求 {} 次校验, 查库 {} 次, 总耗时 {} ms, 平均每个请求 {} us", name, requests,
+                GUARDED_CALLS, UserCacheBenchmark.StubMapper1.DB_CALLS.get(), TimeUnit.NANOSECONDS.toMillis(wallNanos),
+                TimeUnit.NANOSECONDS.toMicros(wallNanos * THREADS / requests));
+    }
+
+    @Configuration
+    @EnableAspectJAutoProxy
+    public static class BenchConfig {
+
+        /**
+         * 只实现getHeader/getAttribute/setAttribute，数据放在当前线程
+         */
+        @Bean
+        public HttpServletRequest request() {
+            return (HttpServletRequest) Proxy.newProxyInstance(PermissionBenchmark.class.getClassLoader(),
+                    new Class<?>[]{HttpServletRequest.class}, (proxy, method, methodArgs) -> {
+                        switch (method.getName()) {
+                            case "getHeader":
+                                return HEADERS.get().get((String) methodArgs[0]);
+                            case "getAttribute":
+                                return ATTRIBUTES.get().get((String) methodArgs[0]);
+                            case "setAttribute":
+                                ATTRIBUTES.get().put((String) methodArgs[0], methodArgs[1]);
+                                return null;
+                            case "toString":
+                                return "PermissionBenchmark request";
+                            default:
+                                throw new UnsupportedOperationException(method.getName());
+                        }
+                    });
+        }
+    }
+
+    public static class GuardedService {
+
+        @MyPermission("admin")
+        public void query() {
+        }
+
+        @MyPermission("admin")
+        public void update() {
+        }
+
+        @MyPermission("admin")
+        public void export() {
+        }
+
+        @MyPermission("admin")
+        public void audit() {
+        }
+
+        @MyPermission("admin")
+        public void delete() {
+        }
+    }
+}
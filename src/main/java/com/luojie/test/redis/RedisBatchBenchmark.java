@@ -0,0 +1,85 @@
+package com.luojie.test.redis;
+
+import com.luojie.util.RedisServiceUtil;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 对比RedisServiceUtil逐条调用和批量/pipeline调用的耗时和网络往返次数
+ * 使用StandInRedisServer模拟每次往返的网络延迟，直接运行main方法即可
+ */
+@Slf4j
+public class RedisBatchBenchmark {
+
+    private static final int KEYS = 1000;
+    private static final int HASH_KEYS = 200;
+    private static final int HASH_FIELDS = 20;
+    private static final long ROUND_TRIP_MICROS = 200;
+
+    public static void main(String[] args) throws Exception {
+        try (StandInRedisServer server = StandInRedisServer.start(ROUND_TRIP_MICROS);
+             AnnotationConfigApplicationContext context = server.createContext(RedisServiceUtil.class)) {
+            RedisServiceUtil redis = context.getBean(RedisServiceUtil.class);
+
+            List<String> keys = new ArrayList<>(KEYS);
+            Map<String, String> values = new LinkedHashMap<>();
+            for (int i = 0; i < KEYS; i++) {
+                keys.add("batch:key:" + i);
+                values.put("batch:key:" + i, "value-" + i);
+            }
+            List<String> hashKeys = new ArrayList<>(HASH_KEYS);
+            Map<String, String> fields = new LinkedHashMap<>();
+            for (int i = 0; i < HASH_KEYS; i++) {
+                hashKeys.add("batch:hash:" + i);
+            }
+            for (int i = 0; i < HASH_FIELDS; i++) {
+                fields.put("field" + i, "value-" + i);
+            }
+
+            // 第一轮预热
+            for (int round = 1; round <= 2; round++) {
+                boolean print = round == 2;
+
+                measure(server, print, "逐条 setWithExpire", () -> values.forEach((k, v) -> redis.setWithExpire(k, v, 60, TimeUnit.SECONDS)));
+                measure(server, print, "批量 multiSetWithExpire", () -> redis.multiSetWithExpire(values, 60, TimeUnit.SECONDS));
+
+                measure(server, print, "逐条 get", () -> keys.forEach(redis::get));
+                measure(server, print, "批量 multiGet", () -> check(redis.multiGet(keys).size(), KEYS));
+
+                measure(server, print, "逐条 setHash", () -> hashKeys.forEach(k -> fields.forEach((f, v) -> redis.setHash(k, f, v))));
+                measure(server, print, "批量 setHashAll", () -> hashKeys.forEach(k -> redis.setHashAll(k, fields)));
+
+                measure(server, print, "逐条 getHash", () -> hashKeys.forEach(k -> fields.keySet().forEach(f -> redis.getHash(k, f))));
+                measure(server, print, "批量 multiGetHash", () -> hashKeys.forEach(k -> check(redis.multiGetHash(k, fields.keySet()).size(), HASH_FIELDS)));
+                measure(server, print, "pipeline multiGetHashAll", () -> check(redis.multiGetHashAll(hashKeys).size(), HASH_KEYS));
+
+                measure(server, print, "逐条 delete", () -> keys.forEach(redis::delete));
+                redis.multiSet(values);
+                measure(server, print, "批量 multiDelete", () -> check((int) redis.multiDelete(keys), KEYS));
+            }
+        }
+    }
+
+    private static void check(int actual, int expected) {
+        if (actual != expected) {
+            throw new IllegalStateException("expected " + expected + " but was " + actual);
+        }
+    }
+
+    private static void measure(StandInRedisServer server, boolean print, String name, Runnable action) {
+        server.resetCounters();
+        long start = System.nanoTime();
+        action.run();
+        long elapsedMicros = TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - start);
+        if (print) {
+            log.info("{}: 耗时 {} ms, 命令数 {}, 网络往返 {}", name, elapsedMicros / 1000, server.getCommands(),
+                    server.getRoundTrips());
+        }
+    }
+}
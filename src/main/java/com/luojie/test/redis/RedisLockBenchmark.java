@@ -0,0 +1,173 @@
+package com.luojie.test.redis;
+
+import com.luojie.util.RedisServiceUtil;
+import com.luojie.util.lock.RedisLock;
+import com.luojie.util.lock.RedisLockFactory;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+
+import java.util.Arrays;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 分布式锁压测，使用StandInRedisServer模拟网络往返，直接运行main方法即可
+ * 1. 50个线程同时抢同一把锁：对比RedisCatch5的sleep轮询写法和RedisLock的加锁耗时，并检查互斥和fencing token
+ * 2. 看门狗：租期300ms的锁持有1秒仍然有效
+ * 3. tryLock超时
+ * 4. 锁被其他程序写成没有过期时间的key：tryLock等待期间按租期重试，不会每毫秒执行一次加锁脚本
+ */
+@Slf4j
+public class RedisLockBenchmark {
+
+    private static final int WAITERS = 50;
+    private static final long HOLD_MILLIS = 5;
+    private static final long ROUND_TRIP_MICROS = 100;
+    private static final long POLL_MILLIS = 100;
+
+    public static void main(String[] args) throws Exception {
+        // 缩短默认租期，方便观察看门狗续期
+        System.setProperty("redis.lock.lease-time", "300ms");
+        try (StandInRedisServer server = StandInRedisServer.start(ROUND_TRIP_MICROS);
+             AnnotationConfigApplicationContext context = server.createContext(RedisServiceUtil.class, RedisLockFactory.class)) {
+            RedisServiceUtil redis = context.getBean(RedisServiceUtil.class);
+            RedisLockFactory lockFactory = context.getBean(RedisLockFactory.class);
+
+            for (int round = 1; round <= 2; round++) {
+                // 第一轮预热
+                boolean print = round == 2;
+                contend(print, "sleep轮询(RedisCatch5写法)", () -> pollingLock(redis));
+                RedisLock lock = lockFactory.getLock("bench");
+                contend(print, "RedisLock 释放通知唤醒", () -> {
+                    RedisLock.Lease lease = lock.lock();
+                    return new Held(lease::unlock, lease.getFencingToken());
+                });
+            }
+            watchdog(lockFactory.getLock("watchdog"));
+            tryLockTimeout(lockFactory.getLock("timeout"));
+            noTtl(server, redis, lockFactory.getLock("no-ttl"));
+        }
+    }
+
+    private static void contend(boolean print, String name, Acquirer acquirer) throws InterruptedException {
+        AtomicInteger holders = new AtomicInteger();
+        AtomicInteger maxHolders = new AtomicInteger();
+        AtomicLong lastToken = new AtomicLong();
+        AtomicInteger tokenOutOfOrder = new AtomicInteger();
+        AtomicLongArray latencies = new AtomicLongArray(WAITERS);
+        CountDownLatch ready = new CountDownLatch(WAITERS);
+        CountDownLatch start = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(WAITERS);
+        for (int i = 0; i < WAITERS; i++) {
+            int index = i;
+            new Thread(() -> {
+                ready.countDown();
+                try {
+                    start.await();
+                    long begin = System.nanoTime();
+                    Held held = acquirer.acquire();
+                    latencies.set(index, System.nanoTime() - begin);
+                    int current = holders.incrementAndGet();
+                    maxHolders.accumulateAndGet(current, Math::max);
+                    if (held.token >= 0 && held.token <= lastToken.getAndSet(held.token)) {
+                        tokenOutOfOrder.incrementAndGet();
+                    }
+                    Thread.sleep(HOLD_MILLIS);
+                    holders.decrementAndGet();
+                    held.release.run();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } finally {
+                    done.countDown();
+                }
+            }).start();
+        }
+        ready.await();
+        long wallStart = System.nanoTime();
+        start.countDown();
+        done.await();
+        long wallMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - wallStart);
+
+        long[] sorted = new long[WAITERS];
+        for (int i = 0; i < WAITERS; i++) {
+            sorted[i] = latencies.get(i);
+        }
+        Arrays.sort(sorted);
+        if (print) {
+            log.info("{}: {} 个等待者, 持有 {} ms, 总耗时 {} ms, 加锁耗时 p50 {} ms p99 {} ms max {} ms, 同时持有最多 {}, token乱序 {}",
+                    name, WAITERS, HOLD_MILLIS, wallMillis, TimeUnit.NANOSECONDS.toMillis(sorted[WAITERS / 2]),
+                    TimeUnit.NANOSECONDS.toMillis(sorted[WAITERS * 99 / 100]),
+                    TimeUnit.NANOSECONDS.toMillis(sorted[WAITERS - 1]), maxHolders.get(), tokenOutOfOrder.get());
+        }
+    }
+
+    /**
+     * RedisCatch5的加锁方式，不限制重试次数以便对比
+     */
+    private static Held pollingLock(RedisServiceUtil redis) throws InterruptedException {
+        String uuid = UUID.randomUUID().toString();
+        while (!redis.setIfAbsentWithExpire("poll-lock", uuid, 300, TimeUnit.SECONDS)) {
+            Thread.sleep(POLL_MILLIS);
+        }
+        return new Held(() -> {
+            String lock = redis.get("poll-lock");
+            if (uuid.equals(lock)) {
+                redis.delete("poll-lock");
+            }
+        }, -1);
+    }
+
+    private static void watchdog(RedisLock lock) throws InterruptedException {
+        RedisLock.Lease lease = lock.lock();
+        Thread.sleep(1000);
+        RedisLock.Lease other = lock.tryLock(0, TimeUnit.MILLISECONDS);
+        log.info("看门狗: 租期300ms的锁持有1000ms后 isHeld={}, 其他人能否加锁={}", lease.isHeld(), other != null);
+        lease.unlock();
+    }
+
+    private static void tryLockTimeout(RedisLock lock) throws InterruptedException {
+        RedisLock.Lease lease = lock.tryLock(0, 10, TimeUnit.SECONDS);
+        long start = System.nanoTime();
+        RedisLock.Lease other = lock.tryLock(200, TimeUnit.MILLISECONDS);
+        log.info("tryLock超时: 等待 {} ms后返回 {}", TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start), other);
+        lease.unlock();
+        start = System.nanoTime();
+        other = lock.tryLock(200, TimeUnit.MILLISECONDS);
+        log.info("释放后tryLock: 耗时 {} us, token {}", TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - start),
+                other == null ? null : other.getFencingToken());
+        if (other != null) {
+            other.unlock();
+        }
+    }
+
+    private static void noTtl(StandInRedisServer server, RedisServiceUtil redis, RedisLock lock)
+            throws InterruptedException {
+        redis.set("lock:{" + lock.getName() + "}", "other");
+        server.resetCounters();
+        long start = System.nanoTime();
+        RedisLock.Lease lease = lock.tryLock(1, TimeUnit.SECONDS);
+        log.info("没有过期时间的锁: tryLock等待 {} ms后返回 {}, 执行命令 {} 次",
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start), lease, server.getCommands());
+        redis.delete("lock:{" + lock.getName() + "}");
+    }
+
+    private interface Acquirer {
+        Held acquire() throws InterruptedException;
+    }
+
+    private static final class Held {
+
+        private final Runnable release;
+
+        private final long token;
+
+        private Held(Runnable release, long token) {
+            this.release = release;
+            this.token = token;
+        }
+    }
+}
@@ -0,0 +1,90 @@
+package com.luojie.test.redis;
+
+import com.luojie.config.redis.CompactRedisSerializer;
+import com.luojie.config.redis.UserModelCodec;
+import com.luojie.moudle.UserModel;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.serializer.GenericJackson2JsonRedisSerializer;
+import org.springframework.data.redis.serializer.RedisSerializer;
+
+import java.lang.management.ManagementFactory;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * 对比GenericJackson2JsonRedisSerializer和CompactRedisSerializer的序列化/反序列化耗时、分配量和写入redis的字节数
+ * 直接运行main方法即可
+ */
+@Slf4j
+public class RedisSerializerBenchmark {
+
+    private static final int ITERATIONS = 200_000;
+    private static final int ROUNDS = 3;
+
+    private static final com.sun.management.ThreadMXBean THREAD_BEAN =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    public static void main(String[] args) {
+        RedisSerializer<Object> json = new GenericJackson2JsonRedisSerializer();
+        RedisSerializer<Object> compact = new CompactRedisSerializer(1024)
+                .register(1, UserModel.class, new UserModelCodec());
+
+        UserModel user = new UserModel();
+        user.setUsername("rojer");
+        user.setMoney("1000.50");
+        user.setSex("male");
+        user.setRoles("admin,user");
+        user.setUserid("u-000123");
+
+        StringBuilder text = new StringBuilder();
+        while (text.length() < 4096) {
+            text.append("{\"orderId\":\"").append(text.length()).append("\",\"status\":\"PAID\",\"amount\":\"99.00\"},");
+        }
+
+        Map<String, Object> samples = new LinkedHashMap<>();
+        samples.put("短字符串", "value-12345");
+        samples.put("UserModel", user);
+        samples.put("4KB字符串", text.toString());
+
+        for (int round = 1; round <= ROUNDS; round++) {
+            // 前几轮用于预热
+            boolean print = round == ROUNDS;
+            for (Map.Entry<String, Object> sample : samples.entrySet()) {
+                run("json   " + sample.getKey(), json, sample.getValue(), print);
+                run("compact " + sample.getKey(), compact, sample.getValue(), print);
+            }
+        }
+    }
+
+    private static void run(String name, RedisSerializer<Object> serializer, Object value, boolean print) {
+        byte[] bytes = serializer.serialize(value);
+        if (!Objects.equals(serializer.deserialize(bytes), value)) {
+            throw new IllegalStateException(name + " round trip mismatch");
+        }
+        int iterations = bytes.length > 1024 ? ITERATIONS / 10 : ITERATIONS;
+
+        long allocated = THREAD_BEAN.getCurrentThreadAllocatedBytes();
+        long start = System.nanoTime();
+        long sink = 0;
+        for (int i = 0; i < iterations; i++) {
+            sink += serializer.serialize(value).length;
+        }
+        long serNanos = System.nanoTime() - start;
+        long serBytes = THREAD_BEAN.getCurrentThreadAllocatedBytes() - allocated;
+
+        allocated = THREAD_BEAN.getCurrentThreadAllocatedBytes();
+        start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            sink += serializer.deserialize(bytes) == null ? 0 : 1;
+        }
+        long deserNanos = System.nanoTime() - start;
+        long deserBytes = THREAD_BEAN.getCurrentThreadAllocatedBytes() - allocated;
+
+        if (print) {
+            log.info("{}: 序列化后 {} 字节, 序列化 {} ns/op {} B/op, 反序列化 {} ns/op {} B/op (sink={})", name,
+                    bytes.length, serNanos / iterations, serBytes / iterations, deserNanos / iterations,
+                    deserBytes / iterations, sink);
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package com.luojie.test.redis;
+
+import com.luojie.util.RedisServiceUtil;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.data.redis.core.RedisTemplate;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntConsumer;
+
+/**
+ * 对比hash写入后再单独expire(原setHashWithExpire的做法)和脚本一次完成写入+过期时间的单次耗时
+ * 同时覆盖set/list的写入并设置过期时间，使用StandInRedisServer模拟网络往返，直接运行main方法即可
+ */
+@Slf4j
+public class RedisTtlWriteBenchmark {
+
+    private static final int CALLS = 2000;
+    private static final long ROUND_TRIP_MICROS = 200;
+
+    public static void main(String[] args) throws Exception {
+        try (StandInRedisServer server = StandInRedisServer.start(ROUND_TRIP_MICROS);
+             AnnotationConfigApplicationContext context = server.createContext(RedisServiceUtil.class)) {
+            RedisServiceUtil redis = context.getBean(RedisServiceUtil.class);
+            RedisTemplate redisTemplate = context.getBean(RedisTemplate.class);
+
+            // 第一轮预热，同时让服务端缓存脚本
+            for (int round = 1; round <= 2; round++) {
+                boolean print = round == 2;
+                measure(server, print, "HSET + EXPIRE 两次往返", i -> {
+                    redisTemplate.opsForHash().put("ttl:hash:" + i, "field", "value");
+                    redisTemplate.expire("ttl:hash:" + i, 60, TimeUnit.SECONDS);
+                });
+                measure(server, print, "setHashWithExpire 脚本", i -> redis.setHashWithExpire("ttl:hash:" + i, "field", "value", 60, TimeUnit.SECONDS));
+                measure(server, print, "addSetWithExpire 脚本", i -> redis.addSetWithExpire("ttl:set:" + i, 60, TimeUnit.SECONDS, "a", "b"));
+                measure(server, print, "pushListWithExpire 脚本", i -> redis.pushListWithExpire("ttl:list:" + i, 60, TimeUnit.SECONDS, "a", "b"));
+            }
+
+            // 校验写入的值和过期时间
+            String hashKey = "ttl:hash:" + (CALLS - 1);
+            log.info("{} -> field={}, ttl={}s", hashKey, redis.getHash(hashKey, "field"), redis.getExpire(hashKey));
+            String setKey = "ttl:set:" + (CALLS - 1);
+            log.info("{} -> members={}, ttl={}s", setKey, redis.getSetMembers(setKey), redis.getExpire(setKey));
+            String listKey = "ttl:list:" + (CALLS - 1);
+            log.info("{} -> values={}, ttl={}s", listKey, redis.getList(listKey), redis.getExpire(listKey));
+            redis.setHashAllWithExpire("ttl:hash:all", Map.of("f1", "v1", "f2", "v2"), 30, TimeUnit.SECONDS);
+            log.info("ttl:hash:all -> {}, ttl={}s", redis.multiGetHash("ttl:hash:all", Arrays.asList("f1", "f2")),
+                    redis.getExpire("ttl:hash:all"));
+        }
+    }
+
+    private static void measure(StandInRedisServer server, boolean print, String name, IntConsumer action) {
+        server.resetCounters();
+        long start = System.nanoTime();
+        for (int i = 0; i < CALLS; i++) {
+            action.accept(i);
+        }
+        long elapsedNanos = System.nanoTime() - start;
+        if (print) {
+            log.info("{}: {} 次调用, 平均 {} us/次, 网络往返 {}", name, CALLS, elapsedNanos / CALLS / 1000,
+                    server.getRoundTrips());
+        }
+    }
+}
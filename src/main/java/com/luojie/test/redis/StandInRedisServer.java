@@ -0,0 +1,718 @@
+package com.luojie.test.redis;
+
+import com.luojie.config.RedisConfig;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.convert.ApplicationConversionService;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.data.redis.connection.RedisStandaloneConfiguration;
+import org.springframework.data.redis.connection.jedis.JedisClientConfiguration;
+import org.springframework.data.redis.connection.jedis.JedisConnectionFactory;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import redis.clients.jedis.JedisPoolConfig;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * 本地压测用的简易Redis服务端，只实现了RESP协议、常用的string/hash/set/list命令和发布订阅
+ * 每批读到的命令模拟一次网络往返延迟，用来对比逐条调用和批量/pipeline调用的往返次数
+ * 和redis一样所有命令串行执行；不支持集群，Lua脚本只识别RedisServiceUtil中"写命令+PEXPIRE"形式的脚本和RedisLock的脚本，
+ * 只在com.luojie.test下的压测main方法里使用
+ */
+@Slf4j
+public class StandInRedisServer implements Closeable {
+
+    private final ServerSocket serverSocket;
+
+    /**
+     * 模拟的单次网络往返耗时
+     */
+    private final long roundTripNanos;
+
+    /**
+     * key统一用ISO_8859_1转成字符串，保证和字节一一对应
+     */
+    private final Map<String, Object> data = new ConcurrentHashMap<>();
+
+    private final Map<String, Long> expireAt = new ConcurrentHashMap<>();
+
+    /**
+     * 已缓存的脚本，sha1 -> 脚本内容
+     */
+    private final Map<String, String> scripts = new ConcurrentHashMap<>();
+
+    /**
+     * 能识别的脚本形式：redis.call('写命令', KEYS[1], unpack(ARGV))之后再PEXPIRE
+     */
+    private static final Pattern WRITE_WITH_EXPIRE = Pattern.compile(
+            "redis\\.call\\('(\\w+)', KEYS\\[1\\], unpack\\(ARGV\\)\\).*redis\\.call\\('PEXPIRE'");
+
+    /**
+     * 频道 -> 订阅了该频道的连接的输出流
+     */
+    private final Map<String, Set<OutputStream>> subscribers = new ConcurrentHashMap<>();
+
+    private final AtomicLong roundTrips = new AtomicLong();
+
+    private final AtomicLong commands = new AtomicLong();
+
+    private volatile boolean closed;
+
+    private StandInRedisServer(long roundTripMicros) throws IOException {
+        this.serverSocket = new ServerSocket(0, 128, InetAddress.getLoopbackAddress());
+        this.roundTripNanos = roundTripMicros * 1000;
+        Thread acceptor = new Thread(this::acceptLoop, "stand-in-redis-acceptor");
+        acceptor.setDaemon(true);
+        acceptor.start();
+    }
+
+    /**
+     * 启动服务端，监听随机端口
+     * @param roundTripMicros 模拟的单次网络往返耗时(微秒)
+     */
+    public static StandInRedisServer start(long roundTripMicros) throws IOException {
+        return new StandInRedisServer(roundTripMicros);
+    }
+
+    public int getPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    public long getRoundTrips() {
+        return roundTrips.get();
+    }
+
+    public long getCommands() {
+        return commands.get();
+    }
+
+    public void resetCounters() {
+        roundTrips.set(0);
+        commands.set(0);
+    }
+
+    public void flushAll() {
+        data.clear();
+        expireAt.clear();
+        scripts.clear();
+    }
+
+    /**
+     * 创建连接到本服务端的连接工厂，连接池参数与application.properties保持一致
+     */
+    public JedisConnectionFactory createConnectionFactory() {
+        RedisStandaloneConfiguration config = new RedisStandaloneConfiguration("127.0.0.1", getPort());
+        JedisPoolConfig poolConfig = new JedisPoolConfig();
+        poolConfig.setMaxTotal(64);
+        poolConfig.setMaxIdle(64);
+        JedisClientConfiguration clientConfiguration = JedisClientConfiguration.builder()
+                .usePooling().poolConfig(poolConfig).build();
+        JedisConnectionFactory factory = new JedisConnectionFactory(config, clientConfiguration);
+        factory.afterPropertiesSet();
+        return factory;
+    }
+
+    /**
+     * 创建一个只包含redisTemplate和指定组件的Spring容器，redisTemplate与RedisConfig中的配置一致
+     * @param componentClasses 需要注册的组件，例如RedisServiceUtil
+     */
+    public AnnotationConfigApplicationContext createContext(Class<?>... componentClasses) {
+        AnnotationConfigApplicationContext context = new AnnotationConfigApplicationContext();
+        // 与Spring Boot一致，支持@Value注入Duration等类型
+        context.getBeanFactory().setConversionService(ApplicationConversionService.getSharedInstance());
+        JedisConnectionFactory factory = createConnectionFactory();
+        RedisConfig redisConfig = new RedisConfig();
+        RedisTemplate<String, Object> redisTemplate = redisConfig.redisTemplate(factory);
+        context.registerBean("redisConnectionFactory", JedisConnectionFactory.class, () -> factory);
+        context.registerBean("redisTemplate", RedisTemplate.class, () -> redisTemplate);
+        context.registerBean("redisMessageListenerContainer", RedisMessageListenerContainer.class,
+                () -> redisConfig.redisMessageListenerContainer(factory));
+        if (componentClasses.length > 0) {
+            context.register(componentClasses);
+        }
+        context.refresh();
+        return context;
+    }
+
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        serverSocket.close();
+    }
+
+    private void acceptLoop() {
+        while (!closed) {
+            try {
+                Socket socket = serverSocket.accept();
+                socket.setTcpNoDelay(true);
+                Thread worker = new Thread(() -> serve(socket), "stand-in-redis-conn");
+                worker.setDaemon(true);
+                worker.start();
+            } catch (IOException e) {
+                if (!closed) {
+                    log.error("stand-in redis accept failed, errorMsg:{}", e.getMessage());
+                }
+            }
+        }
+    }
+
+    private void serve(Socket socket) {
+        try (socket) {
+            InputStream in = new BufferedInputStream(socket.getInputStream(), 64 * 1024);
+            OutputStream out = new BufferedOutputStream(socket.getOutputStream(), 64 * 1024);
+            boolean inBatch = false;
+            try {
+                while (!closed) {
+                    List<byte[]> command = readCommand(in);
+                    if (!inBatch) {
+                        // 一批连续到达的命令只算一次往返
+                        roundTrips.incrementAndGet();
+                        if (roundTripNanos > 0) {
+                            LockSupport.parkNanos(roundTripNanos);
+                        }
+                        inBatch = true;
+                    }
+                    commands.incrementAndGet();
+                    // 命令串行执行；订阅连接的输出流也会被发布消息的连接写入，加锁顺序固定为先server再out
+                    synchronized (this) {
+                        synchronized (out) {
+                            handle(command, out);
+                            if (in.available() == 0) {
+                                out.flush();
+                                inBatch = false;
+                            }
+                        }
+                    }
+                }
+            } finally {
+                subscribers.values().forEach(outs -> outs.remove(out));
+            }
+        } catch (EOFException e) {
+            // 客户端关闭连接
+        } catch (IOException e) {
+            if (!closed) {
+                log.debug("stand-in redis connection closed, errorMsg:{}", e.getMessage());
+            }
+        }
+    }
+
+    private void subscribe(List<byte[]> command, OutputStream out) throws IOException {
+        for (int i = 1; i < command.size(); i++) {
+            String channel = key(command, i);
+            subscribers.computeIfAbsent(channel, c -> ConcurrentHashMap.newKeySet()).add(out);
+            pubSubReply(out, "subscribe", command.get(i), subscriptionCount(out));
+        }
+    }
+
+    private void unsubscribe(List<byte[]> command, OutputStream out) throws IOException {
+        List<String> channels = new ArrayList<>();
+        if (command.size() > 1) {
+            for (int i = 1; i < command.size(); i++) {
+                channels.add(key(command, i));
+            }
+        } else {
+            subscribers.forEach((channel, outs) -> {
+                if (outs.contains(out)) {
+                    channels.add(channel);
+                }
+            });
+        }
+        if (channels.isEmpty()) {
+            pubSubReply(out, "unsubscribe", null, 0);
+        }
+        for (String channel : channels) {
+            Set<OutputStream> outs = subscribers.get(channel);
+            if (outs != null) {
+                outs.remove(out);
+            }
+            pubSubReply(out, "unsubscribe", channel.getBytes(StandardCharsets.ISO_8859_1), subscriptionCount(out));
+        }
+    }
+
+    private long publish(List<byte[]> command) {
+        Set<OutputStream> outs = subscribers.get(key(command, 1));
+        if (outs == null) {
+            return 0;
+        }
+        long receivers = 0;
+        for (OutputStream subscriber : outs) {
+            synchronized (subscriber) {
+                try {
+                    array(subscriber, 3);
+                    bulk(subscriber, "message".getBytes(StandardCharsets.US_ASCII));
+                    bulk(subscriber, command.get(1));
+                    bulk(subscriber, command.get(2));
+                    subscriber.flush();
+                    receivers++;
+                } catch (IOException e) {
+                    outs.remove(subscriber);
+                }
+            }
+        }
+        return receivers;
+    }
+
+    private int subscriptionCount(OutputStream out) {
+        int count = 0;
+        for (Set<OutputStream> outs : subscribers.values()) {
+            count += outs.contains(out) ? 1 : 0;
+        }
+        return count;
+    }
+
+    private static void pubSubReply(OutputStream out, String kind, byte[] channel, int count) throws IOException {
+        array(out, 3);
+        bulk(out, kind.getBytes(StandardCharsets.US_ASCII));
+        bulk(out, channel);
+        integer(out, count);
+    }
+
+    private void handle(List<byte[]> command, OutputStream out) throws IOException {
+        String name = new String(command.get(0), StandardCharsets.US_ASCII).toUpperCase();
+        switch (name) {
+            case "PING" -> simple(out, "PONG");
+            case "AUTH", "SELECT", "CLIENT", "QUIT" -> simple(out, "OK");
+            case "GET" -> bulk(out, getString(key(command, 1)));
+            case "SET" -> set(command, out);
+            case "INCR" -> integer(out, incr(key(command, 1)));
+            case "SETNX" -> {
+                if (alive(key(command, 1)) != null) {
+                    integer(out, 0);
+                } else {
+                    put(key(command, 1), command.get(2), -1);
+                    integer(out, 1);
+                }
+            }
+            case "SETEX", "PSETEX" -> {
+                long ttl = Long.parseLong(text(command, 2));
+                put(key(command, 1), command.get(3), "SETEX".equals(name) ? ttl * 1000 : ttl);
+                simple(out, "OK");
+            }
+            case "MGET" -> {
+                array(out, command.size() - 1);
+                for (int i = 1; i < command.size(); i++) {
+                    bulk(out, getString(key(command, i)));
+                }
+            }
+            case "MSET" -> {
+                for (int i = 1; i + 1 < command.size(); i += 2) {
+                    put(key(command, i), command.get(i + 1), -1);
+                }
+                simple(out, "OK");
+            }
+            case "DEL", "UNLINK" -> {
+                long count = 0;
+                for (int i = 1; i < command.size(); i++) {
+                    if (alive(key(command, i)) != null) {
+                        remove(key(command, i));
+                        count++;
+                    }
+                }
+                integer(out, count);
+            }
+            case "EXISTS" -> {
+                long count = 0;
+                for (int i = 1; i < command.size(); i++) {
+                    count += alive(key(command, i)) == null ? 0 : 1;
+                }
+                integer(out, count);
+            }
+            case "EXPIRE", "PEXPIRE" -> {
+                String key = key(command, 1);
+                long ttl = Long.parseLong(text(command, 2));
+                if (alive(key) == null) {
+                    integer(out, 0);
+                } else {
+                    expireAt.put(key, System.currentTimeMillis() + ("EXPIRE".equals(name) ? ttl * 1000 : ttl));
+                    integer(out, 1);
+                }
+            }
+            case "TTL", "PTTL" -> {
+                String key = key(command, 1);
+                if (alive(key) == null) {
+                    integer(out, -2);
+                } else {
+                    Long at = expireAt.get(key);
+                    long left = at == null ? -1 : at - System.currentTimeMillis();
+                    integer(out, at == null ? -1 : "TTL".equals(name) ? left / 1000 : left);
+                }
+            }
+            case "HSET", "HMSET" -> {
+                Map<String, byte[]> hash = hash(key(command, 1), true);
+                long added = 0;
+                for (int i = 2; i + 1 < command.size(); i += 2) {
+                    added += hash.put(key(command, i), command.get(i + 1)) == null ? 1 : 0;
+                }
+                if ("HSET".equals(name)) {
+                    integer(out, added);
+                } else {
+                    simple(out, "OK");
+                }
+            }
+            case "HGET" -> {
+                Map<String, byte[]> hash = hash(key(command, 1), false);
+                bulk(out, hash == null ? null : hash.get(key(command, 2)));
+            }
+            case "HMGET" -> {
+                Map<String, byte[]> hash = hash(key(command, 1), false);
+                array(out, command.size() - 2);
+                for (int i = 2; i < command.size(); i++) {
+                    bulk(out, hash == null ? null : hash.get(key(command, i)));
+                }
+            }
+            case "HGETALL" -> {
+                Map<String, byte[]> hash = hash(key(command, 1), false);
+                if (hash == null) {
+                    array(out, 0);
+                    break;
+                }
+                List<Map.Entry<String, byte[]>> entries = new ArrayList<>(hash.entrySet());
+                array(out, entries.size() * 2);
+                for (Map.Entry<String, byte[]> entry : entries) {
+                    bulk(out, entry.getKey().getBytes(StandardCharsets.ISO_8859_1));
+                    bulk(out, entry.getValue());
+                }
+            }
+            case "HDEL" -> {
+                Map<String, byte[]> hash = hash(key(command, 1), false);
+                long count = 0;
+                for (int i = 2; hash != null && i < command.size(); i++) {
+                    count += hash.remove(key(command, i)) == null ? 0 : 1;
+                }
+                integer(out, count);
+            }
+            case "SADD" -> {
+                Set<String> set = set(key(command, 1), true);
+                long added = 0;
+                for (int i = 2; i < command.size(); i++) {
+                    added += set.add(key(command, i)) ? 1 : 0;
+                }
+                integer(out, added);
+            }
+            case "SMEMBERS" -> {
+                Set<String> set = set(key(command, 1), false);
+                List<String> members = set == null ? Collections.emptyList() : new ArrayList<>(set);
+                array(out, members.size());
+                for (String member : members) {
+                    bulk(out, member.getBytes(StandardCharsets.ISO_8859_1));
+                }
+            }
+            case "RPUSH" -> {
+                List<byte[]> list = list(key(command, 1), true);
+                synchronized (list) {
+                    list.addAll(command.subList(2, command.size()));
+                    integer(out, list.size());
+                }
+            }
+            case "LRANGE" -> {
+                List<byte[]> list = list(key(command, 1), false);
+                List<byte[]> copy;
+                if (list == null) {
+                    copy = Collections.emptyList();
+                } else {
+                    synchronized (list) {
+                        int size = list.size();
+                        int start = normalize(Integer.parseInt(text(command, 2)), size);
+                        int end = Math.min(normalize(Integer.parseInt(text(command, 3)), size), size - 1);
+                        copy = start > end ? Collections.emptyList() : new ArrayList<>(list.subList(start, end + 1));
+                    }
+                }
+                array(out, copy.size());
+                for (byte[] value : copy) {
+                    bulk(out, value);
+                }
+            }
+            case "SCRIPT" -> {
+                String script = text(command, 2);
+                String sha = sha1(script);
+                scripts.put(sha, script);
+                bulk(out, sha.getBytes(StandardCharsets.US_ASCII));
+            }
+            case "EVAL" -> {
+                String script = text(command, 1);
+                scripts.put(sha1(script), script);
+                eval(script, command, out);
+            }
+            case "EVALSHA" -> {
+                String script = scripts.get(text(command, 1).toLowerCase());
+                if (script == null) {
+                    error(out, "NOSCRIPT No matching script. Please use EVAL.");
+                } else {
+                    eval(script, command, out);
+                }
+            }
+            case "SUBSCRIBE" -> subscribe(command, out);
+            case "UNSUBSCRIBE" -> unsubscribe(command, out);
+            case "PUBLISH" -> integer(out, publish(command));
+            default -> error(out, "ERR unknown command '" + name + "'");
+        }
+    }
+
+    /**
+     * 按"写命令+PEXPIRE"的形式执行脚本，ARGV最后一个参数为毫秒级过期时间
+     */
+    private void eval(String script, List<byte[]> command, OutputStream out) throws IOException {
+        if (script.contains("'NX', 'PX'") && script.contains("'INCR'")) {
+            acquireLock(command, out);
+            return;
+        }
+        if (script.contains("== ARGV[1]")) {
+            releaseOrRenewLock(script, command, out);
+            return;
+        }
+        Matcher matcher = WRITE_WITH_EXPIRE.matcher(script);
+        int numKeys = Integer.parseInt(text(command, 2));
+        if (!matcher.find() || numKeys != 1) {
+            error(out, "ERR stand-in server only supports write-with-expire and lock scripts");
+            return;
+        }
+        String key = key(command, 3);
+        List<byte[]> args = command.subList(4, command.size());
+        List<byte[]> write = new ArrayList<>(args.size() + 1);
+        write.add(matcher.group(1).getBytes(StandardCharsets.US_ASCII));
+        write.add(command.get(3));
+        write.addAll(args.subList(0, args.size() - 1));
+        handle(write, out);
+        long ttlMillis = Long.parseLong(new String(args.get(args.size() - 1), StandardCharsets.US_ASCII));
+        expireAt.put(key, System.currentTimeMillis() + ttlMillis);
+    }
+
+    /**
+     * RedisLock的加锁脚本：KEYS=锁,fencing计数器 ARGV=持有者,租期
+     */
+    private void acquireLock(List<byte[]> command, OutputStream out) throws IOException {
+        String lock = key(command, 3);
+        if (alive(lock) == null) {
+            put(lock, command.get(5), Long.parseLong(text(command, 6)));
+            integer(out, incr(key(command, 4)));
+            return;
+        }
+        Long at = expireAt.get(lock);
+        // 没有过期时间时返回0，剩余不到1毫秒按1毫秒
+        integer(out, at == null ? 0 : -Math.max(1, at - System.currentTimeMillis()));
+    }
+
+    /**
+     * RedisLock的释放脚本(ARGV=持有者,频道,锁名)和续期脚本(ARGV=持有者,租期)
+     */
+    private void releaseOrRenewLock(String script, List<byte[]> command, OutputStream out) throws IOException {
+        String lock = key(command, 3);
+        byte[] owner = getString(lock);
+        if (owner == null || !Arrays.equals(owner, command.get(4))) {
+            integer(out, 0);
+            return;
+        }
+        if (script.contains("'PUBLISH'")) {
+            remove(lock);
+            publish(Arrays.asList(command.get(0), command.get(5), command.get(6)));
+        } else {
+            expireAt.put(lock, System.currentTimeMillis() + Long.parseLong(text(command, 5)));
+        }
+        integer(out, 1);
+    }
+
+    private long incr(String key) {
+        byte[] current = getString(key);
+        long value = (current == null ? 0 : Long.parseLong(new String(current, StandardCharsets.US_ASCII))) + 1;
+        data.put(key, String.valueOf(value).getBytes(StandardCharsets.US_ASCII));
+        return value;
+    }
+
+    private void set(List<byte[]> command, OutputStream out) throws IOException {
+        String key = key(command, 1);
+        long ttlMillis = -1;
+        boolean nx = false;
+        for (int i = 3; i < command.size(); i++) {
+            String option = text(command, i).toUpperCase();
+            switch (option) {
+                case "EX" -> ttlMillis = Long.parseLong(text(command, ++i)) * 1000;
+                case "PX" -> ttlMillis = Long.parseLong(text(command, ++i));
+                case "NX" -> nx = true;
+                default -> {
+                }
+            }
+        }
+        if (nx && alive(key) != null) {
+            bulk(out, null);
+            return;
+        }
+        put(key, command.get(2), ttlMillis);
+        simple(out, "OK");
+    }
+
+    private void put(String key, Object value, long ttlMillis) {
+        data.put(key, value);
+        if (ttlMillis > 0) {
+            expireAt.put(key, System.currentTimeMillis() + ttlMillis);
+        } else {
+            expireAt.remove(key);
+        }
+    }
+
+    private void remove(String key) {
+        data.remove(key);
+        expireAt.remove(key);
+    }
+
+    /**
+     * 惰性过期，访问时才检查
+     */
+    private Object alive(String key) {
+        Long at = expireAt.get(key);
+        if (at != null && at <= System.currentTimeMillis()) {
+            remove(key);
+            return null;
+        }
+        return data.get(key);
+    }
+
+    private byte[] getString(String key) {
+        Object value = alive(key);
+        return value instanceof byte[] ? (byte[]) value : null;
+    }
+
+    @SuppressWarnings("unchecked")
+    private Map<String, byte[]> hash(String key, boolean create) {
+        Object value = alive(key);
+        if (value == null && create) {
+            value = new ConcurrentHashMap<String, byte[]>();
+            data.put(key, value);
+        }
+        return value instanceof Map ? (Map<String, byte[]>) value : null;
+    }
+
+    @SuppressWarnings("unchecked")
+    private Set<String> set(String key, boolean create) {
+        Object value = alive(key);
+        if (value == null && create) {
+            value = ConcurrentHashMap.<String>newKeySet();
+            data.put(key, value);
+        }
+        return value instanceof Set ? (Set<String>) value : null;
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<byte[]> list(String key, boolean create) {
+        Object value = alive(key);
+        if (value == null && create) {
+            value = new ArrayList<byte[]>();
+            data.put(key, value);
+        }
+        return value instanceof List ? (List<byte[]>) value : null;
+    }
+
+    private static int normalize(int index, int size) {
+        return index < 0 ? Math.max(size + index, 0) : index;
+    }
+
+    private static String sha1(String script) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-1");
+            return HexFormat.of().formatHex(digest.digest(script.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String key(List<byte[]> command, int index) {
+        return new String(command.get(index), StandardCharsets.ISO_8859_1);
+    }
+
+    private static String text(List<byte[]> command, int index) {
+        return new String(command.get(index), StandardCharsets.US_ASCII);
+    }
+
+    private static List<byte[]> readCommand(InputStream in) throws IOException {
+        int type = in.read();
+        if (type < 0) {
+            throw new EOFException();
+        }
+        if (type != '*') {
+            throw new IOException("only RESP arrays are supported");
+        }
+        int count = (int) readLong(in);
+        List<byte[]> command = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            if (in.read() != '$') {
+                throw new IOException("bulk string expected");
+            }
+            int length = (int) readLong(in);
+            byte[] bytes = in.readNBytes(length);
+            if (bytes.length < length) {
+                throw new EOFException();
+            }
+            in.read();
+            in.read();
+            command.add(bytes);
+        }
+        return command;
+    }
+
+    private static long readLong(InputStream in) throws IOException {
+        long value = 0;
+        boolean negative = false;
+        int b;
+        while ((b = in.read()) != '\r') {
+            if (b < 0) {
+                throw new EOFException();
+            }
+            if (b == '-') {
+                negative = true;
+            } else {
+                value = value * 10 + (b - '0');
+            }
+        }
+        in.read();
+        return negative ? -value : value;
+    }
+
+    private static void simple(OutputStream out, String value) throws IOException {
+        out.write(('+' + value + "\r\n").getBytes(StandardCharsets.US_ASCII));
+    }
+
+    private static void error(OutputStream out, String message) throws IOException {
+        out.write(('-' + message + "\r\n").getBytes(StandardCharsets.US_ASCII));
+    }
+
+    private static void integer(OutputStream out, long value) throws IOException {
+        out.write((":" + value + "\r\n").getBytes(StandardCharsets.US_ASCII));
+    }
+
+    private static void array(OutputStream out, int size) throws IOException {
+        out.write(("*" + size + "\r\n").getBytes(StandardCharsets.US_ASCII));
+    }
+
+    private static void bulk(OutputStream out, byte[] value) throws IOException {
+        if (value == null) {
+            out.write("$-1\r\n".getBytes(StandardCharsets.US_ASCII));
+            return;
+        }
+        out.write(("$" + value.length + "\r\n").getBytes(StandardCharsets.US_ASCII));
+        out.write(value);
+        out.write("\r\n".getBytes(StandardCharsets.US_ASCII));
+    }
+}
@@ -0,0 +1,109 @@
+package com.luojie.test.redis;
+
+import com.luojie.util.RedisServiceUtil;
+import com.luojie.util.cache.TwoLevelCache;
+import com.luojie.util.cache.TwoLevelCacheManager;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 二级缓存压测，使用StandInRedisServer模拟网络往返，直接运行main方法即可
+ * 1. 热点key：每次都读redis和读二级缓存的单次耗时
+ * 2. 偏斜访问：大量key按幂律分布访问，一级缓存只能放下一部分时的命中率
+ * 3. 两个节点：一个节点更新后另一个节点一级缓存失效所需的时间
+ */
+@Slf4j
+public class TwoLevelCacheBenchmark {
+
+    private static final long ROUND_TRIP_MICROS = 100;
+    private static final int REDIS_READS = 5_000;
+    private static final int CACHE_READS = 2_000_000;
+    private static final int SKEWED_KEYS = 20_000;
+    private static final int SKEWED_READS = 100_000;
+    private static final int SKEWED_NEAR_SIZE = 1_000;
+
+    public static void main(String[] args) throws Exception {
+        try (StandInRedisServer server = StandInRedisServer.start(ROUND_TRIP_MICROS);
+             AnnotationConfigApplicationContext node1 = server.createContext(RedisServiceUtil.class, TwoLevelCacheManager.class);
+             AnnotationConfigApplicationContext node2 = server.createContext(RedisServiceUtil.class, TwoLevelCacheManager.class)) {
+            RedisServiceUtil redis = node1.getBean(RedisServiceUtil.class);
+            TwoLevelCacheManager manager1 = node1.getBean(TwoLevelCacheManager.class);
+            TwoLevelCacheManager manager2 = node2.getBean(TwoLevelCacheManager.class);
+
+            hotKey(server, redis, manager1.getCache("hot"));
+            skewed(server, redis, manager1.getCache("skewed", SKEWED_NEAR_SIZE, Duration.ofMinutes(10)));
+            invalidation(manager1.getCache("shared"), manager2.getCache("shared"));
+        }
+    }
+
+    private static void hotKey(StandInRedisServer server, RedisServiceUtil redis, TwoLevelCache cache) {
+        redis.setWithExpire("uuid", "0b1c2d3e-hot-value", 3, TimeUnit.DAYS);
+
+        server.resetCounters();
+        long start = System.nanoTime();
+        for (int i = 0; i < REDIS_READS; i++) {
+            redis.get("uuid");
+        }
+        long redisNanos = (System.nanoTime() - start) / REDIS_READS;
+        log.info("热点key 每次读redis: 平均 {} ns/次, 网络往返 {}", redisNanos, server.getRoundTrips());
+
+        server.resetCounters();
+        long sink = 0;
+        start = System.nanoTime();
+        for (int i = 0; i < CACHE_READS; i++) {
+            sink += cache.get("uuid").length();
+        }
+        long cacheNanos = (System.nanoTime() - start) / CACHE_READS;
+        log.info("热点key 二级缓存: 平均 {} ns/次, 网络往返 {}, 一级缓存命中率 {} (sink={})", cacheNanos,
+                server.getRoundTrips(), String.format("%.4f", cache.getL1HitRatio()), sink);
+    }
+
+    private static void skewed(StandInRedisServer server, RedisServiceUtil redis, TwoLevelCache cache) {
+        for (int i = 0; i < SKEWED_KEYS; i += 1000) {
+            Map<String, String> values = new HashMap<>();
+            for (int j = i; j < i + 1000; j++) {
+                values.put("skewed:" + j, "value-" + j);
+            }
+            redis.multiSet(values);
+        }
+        server.resetCounters();
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        long start = System.nanoTime();
+        for (int i = 0; i < SKEWED_READS; i++) {
+            cache.get("skewed:" + zipf(random));
+        }
+        long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        log.info("偏斜访问 {} 个key, 一级缓存 {} 条: {} 次读取耗时 {} ms, 一级缓存命中率 {}, 网络往返 {} (全部读redis需要 {} 次)",
+                SKEWED_KEYS, cache.getLocalSize(), SKEWED_READS, elapsedMillis,
+                String.format("%.4f", cache.getL1HitRatio()), server.getRoundTrips(), SKEWED_READS);
+    }
+
+    private static void invalidation(TwoLevelCache cache1, TwoLevelCache cache2) throws InterruptedException {
+        cache1.put("shared:config", "v1", 1, TimeUnit.HOURS);
+        // 节点2读一次，放进一级缓存
+        String before = cache2.get("shared:config");
+        long start = System.nanoTime();
+        cache1.put("shared:config", "v2", 1, TimeUnit.HOURS);
+        String after = cache2.get("shared:config");
+        while (!"v2".equals(after) && System.nanoTime() - start < TimeUnit.SECONDS.toNanos(5)) {
+            Thread.sleep(0, 100_000);
+            after = cache2.get("shared:config");
+        }
+        log.info("节点1更新后节点2读到新值耗时 {} us, 更新前 {}, 更新后 {}",
+                TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - start), before, after);
+    }
+
+    /**
+     * 近似幂律分布，排名越靠前的key越容易被访问
+     */
+    private static int zipf(ThreadLocalRandom random) {
+        double u = random.nextDouble();
+        return (int) Math.min(SKEWED_KEYS - 1, Math.floor(Math.pow(SKEWED_KEYS + 1, u)) - 1);
+    }
+}
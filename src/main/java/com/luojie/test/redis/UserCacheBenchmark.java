@@ -0,0 +1,143 @@
+package com.luojie.test.redis;
+
+import com.luojie.dao.mapper1.Mapper1;
+import com.luojie.moudle.UserModel;
+import com.luojie.service.UserService;
+import com.luojie.util.cache.BoundedCache;
+import com.luojie.util.cache.BoundedCacheManager;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.cache.annotation.EnableCaching;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+/**
+ * UserAuthFilter每个请求调用一次UserService.getUserByToken，对比开启@EnableCaching前后的耗时和查库次数
+ * 另外检查token失效：一个节点revokeToken后，另一个节点的本地缓存和redis二级缓存都被清除
+ * 数据库用StubMapper1模拟，redis用StandInRedisServer模拟，直接运行main方法即可
+ */
+@Slf4j
+public class UserCacheBenchmark {
+
+    private static final int THREADS = 16;
+    private static final int REQUESTS_PER_THREAD = 5_000;
+    private static final int ACTIVE_TOKENS = 500;
+    private static final long DB_MILLIS = 2;
+    private static final long ROUND_TRIP_MICROS = 100;
+
+    public static void main(String[] args) throws Exception {
+        System.setProperty("cache.spring.caches.userCache.redis-enabled", "true");
+        try (StandInRedisServer server = StandInRedisServer.start(ROUND_TRIP_MICROS);
+             AnnotationConfigApplicationContext node1 = server.createContext(CachingConfig.class,
+                     BoundedCacheManager.class, UserService.class, StubMapper1.class);
+             AnnotationConfigApplicationContext node2 = server.createContext(CachingConfig.class,
+                     BoundedCacheManager.class, UserService.class, StubMapper1.class)) {
+            StubMapper1 mapper = node1.getBean(StubMapper1.class);
+            UserService userService1 = node1.getBean(UserService.class);
+            UserService userService2 = node2.getBean(UserService.class);
+
+            run("没有@EnableCaching 每次查库", mapper::getUser);
+            run("BoundedCacheManager", userService1::getUserByToken);
+            BoundedCache cache = (BoundedCache) node1.getBean(BoundedCacheManager.class).getCache("userCache");
+            log.info("userCache: 条数 {}, 命中 {}, 未命中 {}, 写入 {}, 容量淘汰 {}", cache.getSize(),
+                    cache.getHitCount(), cache.getMissCount(), cache.getPutCount(), cache.getEvictionCount());
+
+            revoke(mapper, userService1, userService2);
+        }
+    }
+
+    private static void run(String name, Function<String, UserModel> auth) throws InterruptedException {
+        StubMapper1.DB_CALLS.set(0);
+        long[][] latencies = new long[THREADS][REQUESTS_PER_THREAD];
+        CountDownLatch done = new CountDownLatch(THREADS);
+        long wallStart = System.nanoTime();
+        for (int t = 0; t < THREADS; t++) {
+            long[] samples = latencies[t];
+            new Thread(() -> {
+                try {
+                    ThreadLocalRandom random = ThreadLocalRandom.current();
+                    for (int i = 0; i < REQUESTS_PER_THREAD; i++) {
+                        String token = "user-" + random.nextInt(ACTIVE_TOKENS);
+                        long begin = System.nanoTime();
+                        auth.apply(token);
+                        samples[i] = System.nanoTime() - begin;
+                    }
+                } finally {
+                    done.countDown();
+                }
+            }).start();
+        }
+        done.await();
+        long wallMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - wallStart);
+
+        long[] all = Arrays.stream(latencies).flatMapToLong(Arrays::stream).sorted().toArray();
+        log.info("{}: {} 次请求, 查库 {} 次, 总耗时 {} ms, p50 {} us, p99 {} us", name, all.length,
+                StubMapper1.DB_CALLS.get(), wallMillis, TimeUnit.NANOSECONDS.toMicros(all[all.length / 2]),
+                TimeUnit.NANOSECONDS.toMicros(all[all.length * 99 / 100]));
+    }
+
+    private static void revoke(StubMapper1 mapper, UserService node1, UserService node2) throws InterruptedException {
+        String token = "user-1";
+        node1.getUserByToken(token);
+        node2.getUserByToken(token);
+        StubMapper1.DB_CALLS.set(0);
+        node2.getUserByToken(token);
+        int before = StubMapper1.DB_CALLS.get();
+
+        node1.revokeToken(token);
+        // 等待失效通知到达另一个节点
+        Thread.sleep(100);
+        node2.getUserByToken(token);
+        log.info("token失效: 失效前另一个节点查库 {} 次, 失效后另一个节点查库 {} 次", before,
+                StubMapper1.DB_CALLS.get() - before);
+
+        StubMapper1.DB_CALLS.set(0);
+        node1.getUserByToken("no-such-user");
+        node1.getUserByToken("no-such-user");
+        log.info("不存在的token不缓存: 两次请求查库 {} 次", StubMapper1.DB_CALLS.get());
+    }
+
+    @Configuration
+    @EnableCaching
+    public static class CachingConfig {
+    }
+
+    /**
+     * 模拟数据库，getUser每次耗时DB_MILLIS，只有user-开头的token能查到
+     */
+    public static class StubMapper1 implements Mapper1 {
+
+        static final AtomicInteger DB_CALLS = new AtomicInteger();
+
+        @Override
+        public UserModel getUser(String userid) {
+            DB_CALLS.incrementAndGet();
+            try {
+                Thread.sleep(DB_MILLIS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            if (!userid.startsWith("user-")) {
+                return null;
+            }
+            UserModel user = new UserModel();
+            user.setUserid(userid);
+            user.setUsername("name-" + userid);
+            user.setRoles("admin");
+            user.setMoney("100");
+            user.setSex("1");
+            return user;
+        }
+
+        @Override
+        public void addUser(UserModel userModel) {
+            throw new UnsupportedOperationException();
+        }
+    }
+}
@@ -0,0 +1,321 @@
+package com.luojie.test.sql;
+
+import ch.qos.logback.classic.Level;
+import com.luojie.dao.mapper2.Mapper2;
+import com.luojie.moudle.IdempotenceTestModule;
+import com.luojie.util.BatchSqlUtil;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.ibatis.session.ExecutorType;
+import org.apache.ibatis.session.SqlSessionFactory;
+import org.mybatis.spring.SqlSessionFactoryBean;
+import org.mybatis.spring.SqlSessionTemplate;
+import org.slf4j.LoggerFactory;
+import org.springframework.core.io.support.PathMatchingResourcePatternResolver;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.BatchUpdateException;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.SQLIntegrityConstraintViolationException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.IntSupplier;
+
+/**
+ * 10000条insert的吞吐对比：逐条insertUq、BATCH执行器(是否开启rewriteBatchedStatements)、多行insertUqs
+ * 数据库用StandInDataSource模拟：每次网络往返ROUND_TRIP_MICROS，每写一行PER_ROW_MICROS
+ * rewriteBatchedStatements关闭时mysql驱动的executeBatch仍然逐条发送，开启时一次发送
+ * 使用真实的mapper2.xml，直接运行main方法即可
+ */
+@Slf4j
+public class BatchInsertBenchmark {
+
+    private static final int ROWS = 10_000;
+    private static final int FLUSH_SIZE = 1_000;
+    private static final long ROUND_TRIP_MICROS = 200;
+    private static final long PER_ROW_MICROS = 2;
+
+    public static void main(String[] args) throws Exception {
+        // com.luojie.dao在logback.xml中是DEBUG，会打印每条sql和参数
+        ((ch.qos.logback.classic.Logger) LoggerFactory.getLogger("com.luojie.dao")).setLevel(Level.INFO);
+
+        StandInDataSource database = new StandInDataSource();
+        DataSource dataSource = database.proxy();
+        SqlSessionFactoryBean factoryBean = new SqlSessionFactoryBean();
+        factoryBean.setDataSource(dataSource);
+        factoryBean.setMapperLocations(new PathMatchingResourcePatternResolver()
+                .getResources("classpath:rojerTestMapper/mapper2/*.xml"));
+        SqlSessionFactory sqlSessionFactory = factoryBean.getObject();
+        SqlSessionTemplate simpleTemplate = new SqlSessionTemplate(sqlSessionFactory);
+        SqlSessionTemplate batchTemplate = new SqlSessionTemplate(sqlSessionFactory, ExecutorType.BATCH);
+        TransactionTemplate transactionTemplate = BatchSqlUtil.transactionTemplate(
+                new DataSourceTransactionManager(dataSource));
+        Mapper2 mapper2 = simpleTemplate.getMapper(Mapper2.class);
+
+        List<IdempotenceTestModule> modules = new ArrayList<>(ROWS);
+        for (int i = 0; i < ROWS; i++) {
+            IdempotenceTestModule module = new IdempotenceTestModule();
+            module.setKey("key-" + i);
+            module.setValue("value-" + i);
+            module.setUuid(UUID.randomUUID().toString());
+            modules.add(module);
+        }
+
+        run("逐条insertUq", database, () -> {
+            modules.forEach(mapper2::insertUq);
+            return modules.size();
+        });
+        database.rewriteBatchedStatements = false;
+        run("BATCH执行器, rewriteBatchedStatements=false", database, () -> BatchSqlUtil.execute(batchTemplate,
+                transactionTemplate, Mapper2.class, modules, FLUSH_SIZE, Mapper2::insertUq));
+        database.rewriteBatchedStatements = true;
+        run("BATCH执行器, rewriteBatchedStatements=true", database, () -> BatchSqlUtil.execute(batchTemplate,
+                transactionTemplate, Mapper2.class, modules, FLUSH_SIZE, Mapper2::insertUq));
+        run("多行insertUqs", database, () -> {
+            int rows = 0;
+            for (int from = 0; from < modules.size(); from += FLUSH_SIZE) {
+                rows += mapper2.insertUqs(modules.subList(from, Math.min(from + FLUSH_SIZE, modules.size())));
+            }
+            return rows;
+        });
+    }
+
+    private static void run(String name, StandInDataSource database, IntSupplier insert) {
+        database.roundTrips.set(0);
+        database.rows.set(0);
+        long start = System.nanoTime();
+        int rows = insert.getAsInt();
+        long nanos = System.nanoTime() - start;
+        log.info("{}: 返回 {} 行, 写入 {} 行, 网络往返 {} 次, 耗时 {} ms, {} 行/秒", name, rows, database.rows.get(),
+                database.roundTrips.get(), TimeUnit.NANOSECONDS.toMillis(nanos),
+                database.rows.get() * TimeUnit.SECONDS.toNanos(1) / nanos);
+    }
+
+    /**
+     * 只实现MyBatis和Spring事务用到的JDBC方法，执行语句时按网络往返和行数等待
+     * 每个连接各自等待，多个线程同时写入时和真实数据库一样可以并行
+     */
+    public static class StandInDataSource {
+
+        private volatile boolean rewriteBatchedStatements = true;
+
+        private final AtomicLong roundTrips = new AtomicLong();
+
+        private final AtomicLong rows = new AtomicLong();
+
+        private final AtomicLong duplicates = new AtomicLong();
+
+        private final Set<Object> uniqueKeys = ConcurrentHashMap.newKeySet();
+
+        private volatile int uniqueParameter;
+
+        /**
+         * 把单行insert的第parameterIndex个参数(从1开始)当作唯一键：重复时INSERT报错，INSERT IGNORE跳过并计入duplicates
+         * 多行insert不检查
+         */
+        public StandInDataSource uniqueKey(int parameterIndex) {
+            this.uniqueParameter = parameterIndex;
+            return this;
+        }
+
+        public DataSource proxy() {
+            return proxy(DataSource.class, (method, args) -> switch (method.getName()) {
+                case "getConnection" -> connection();
+                default -> null;
+            });
+        }
+
+        /**
+         * 已写入的行数
+         */
+        public long rows() {
+            return rows.get();
+        }
+
+        public long roundTrips() {
+            return roundTrips.get();
+        }
+
+        /**
+         * INSERT IGNORE因为唯一键重复跳过的行数
+         */
+        public long duplicates() {
+            return duplicates.get();
+        }
+
+        private Connection connection() {
+            boolean[] autoCommit = {true};
+            return proxy(Connection.class, (method, args) -> switch (method.getName()) {
+                case "getAutoCommit" -> autoCommit[0];
+                case "setAutoCommit" -> {
+                    autoCommit[0] = (Boolean) args[0];
+                    yield null;
+                }
+                case "commit", "rollback" -> {
+                    send(0);
+                    yield null;
+                }
+                case "prepareStatement" -> statement((String) args[0]);
+                // 异常转换时按数据库类型取错误码，如1062转成DuplicateKeyException
+                case "getMetaData" -> proxy(DatabaseMetaData.class, (m, a) -> switch (m.getName()) {
+                    case "getDatabaseProductName" -> "MySQL";
+                    default -> null;
+                });
+                default -> null;
+            });
+        }
+
+        private PreparedStatement statement(String sql) {
+            int rowsPerExecute = rowsOf(sql);
+            boolean ignore = sql.toUpperCase(Locale.ROOT).contains("INSERT IGNORE");
+            int unique = rowsPerExecute == 1 ? uniqueParameter : 0;
+            Object[] key = {null};
+            List<Object> batchedKeys = new ArrayList<>();
+            int[] batched = {0};
+            int[] updateCount = {rowsPerExecute};
+            return proxy(PreparedStatement.class, (method, args) -> switch (method.getName()) {
+                case "setString", "setObject" -> {
+                    if (unique > 0 && (Integer) args[0] == unique) {
+                        key[0] = args[1];
+                    }
+                    yield null;
+                }
+                case "execute", "executeUpdate" -> {
+                    send(rowsPerExecute);
+                    updateCount[0] = unique > 0 ? insert(ignore, List.of(key[0])) : insert(rowsPerExecute);
+                    yield method.getReturnType() == boolean.class ? (Object) false : (Object) updateCount[0];
+                }
+                case "getUpdateCount" -> updateCount[0];
+                case "addBatch" -> {
+                    batched[0]++;
+                    if (unique > 0) {
+                        batchedKeys.add(key[0]);
+                    }
+                    yield null;
+                }
+                case "executeBatch" -> {
+                    int[] counts = new int[batched[0]];
+                    if (rewriteBatchedStatements) {
+                        send(batched[0]);
+                        Arrays.fill(counts, Statement.SUCCESS_NO_INFO);
+                    } else {
+                        for (int i = 0; i < batched[0]; i++) {
+                            send(1);
+                        }
+                        Arrays.fill(counts, 1);
+                    }
+                    try {
+                        if (unique > 0) {
+                            insert(ignore, batchedKeys);
+                        } else {
+                            insert(batched[0]);
+                        }
+                    } catch (SQLException e) {
+                        throw new BatchUpdateException(e.getMessage(), e.getSQLState(), e.getErrorCode(), new int[0], e);
+                    } finally {
+                        batched[0] = 0;
+                        batchedKeys.clear();
+                    }
+                    yield counts;
+                }
+                default -> null;
+            });
+        }
+
+        private int insert(int rowCount) {
+            rows.addAndGet(rowCount);
+            return rowCount;
+        }
+
+        /**
+         * 按唯一键写入，INSERT遇到重复时整条语句失败，INSERT IGNORE跳过重复的行
+         */
+        private int insert(boolean ignore, List<Object> keys) throws SQLException {
+            int inserted = 0;
+            for (int i = 0; i < keys.size(); i++) {
+                if (uniqueKeys.add(keys.get(i))) {
+                    inserted++;
+                } else if (ignore) {
+                    duplicates.incrementAndGet();
+                } else {
+                    for (int j = 0; j < i; j++) {
+                        uniqueKeys.remove(keys.get(j));
+                    }
+                    throw new SQLIntegrityConstraintViolationException("Duplicate entry '" + keys.get(i) + "'",
+                            "23000", 1062);
+                }
+            }
+            rows.addAndGet(inserted);
+            return inserted;
+        }
+
+        /**
+         * 多行insert按VALUES后面的括号数计算行数
+         */
+        private static int rowsOf(String sql) {
+            int values = sql.toUpperCase(Locale.ROOT).indexOf("VALUES");
+            if (values < 0) {
+                return 1;
+            }
+            int count = 0;
+            for (int i = values; i < sql.length(); i++) {
+                if (sql.charAt(i) == '(') {
+                    count++;
+                }
+            }
+            return Math.max(count, 1);
+        }
+
+        private void send(int rowCount) {
+            roundTrips.incrementAndGet();
+            LockSupport.parkNanos(TimeUnit.MICROSECONDS.toNanos(ROUND_TRIP_MICROS + PER_ROW_MICROS * rowCount));
+        }
+
+        @SuppressWarnings("unchecked")
+        private static <T> T proxy(Class<T> type, Handler handler) {
+            return (T) Proxy.newProxyInstance(BatchInsertBenchmark.class.getClassLoader(), new Class<?>[]{type},
+                    (proxy, method, args) -> switch (method.getName()) {
+                        case "hashCode" -> System.identityHashCode(proxy);
+                        case "equals" -> proxy == args[0];
+                        case "toString" -> "StandIn" + type.getSimpleName();
+                        default -> {
+                            Object result = handler.handle(method, args);
+                            yield result != null ? result : defaultValue(method.getReturnType());
+                        }
+                    });
+        }
+
+        private static Object defaultValue(Class<?> type) {
+            if (type == boolean.class) {
+                return false;
+            }
+            if (type == int.class) {
+                return 0;
+            }
+            if (type == long.class) {
+                return 0L;
+            }
+            return null;
+        }
+
+        private interface Handler {
+
+            Object handle(Method method, Object[] args) throws Exception;
+        }
+    }
+}
@@ -0,0 +1,124 @@
+package com.luojie.test.sql;
+
+import com.luojie.util.journal.SlowSqlJournal;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.convert.ApplicationConversionService;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+
+import java.io.BufferedWriter;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.text.SimpleDateFormat;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.stream.Stream;
+
+/**
+ * 慢sql日志压测：多个查询线程同时记录慢sql，对比原来TxtUtil.writeLog(每条打开关闭一次文件)和SlowSqlJournal在查询线程上的耗时
+ * 1. 持续：每条记录之间间隔PAUSE_MICROS，模拟查询本身的耗时
+ * 2. 突发：不间断地记录，超过后台线程写入速度时队列写满，多出的记录被丢弃而不是阻塞查询线程
+ * 文件写到临时目录，直接运行main方法即可
+ */
+@Slf4j
+public class SlowSqlJournalBenchmark {
+
+    private static final int THREADS = 8;
+    private static final int LEGACY_PER_THREAD = 5_000;
+    private static final int JOURNAL_PER_THREAD = 5_000;
+    private static final int BURST_PER_THREAD = 50_000;
+    private static final long PAUSE_MICROS = 200;
+    private static final String SQL = "SELECT uuid FROM uq WHERE uuid = 0b1c2d3e-4f5a-6b7c-8d9e-0f1a2b3c4d5e AND uq.key = k AND uq.value = v";
+
+    public static void main(String[] args) throws Exception {
+        Path legacyDir = Files.createTempDirectory("slow-sql-legacy");
+        Path journalDir = Files.createTempDirectory("slow-sql-journal");
+
+        run("TxtUtil.writeLog 持续", LEGACY_PER_THREAD, PAUSE_MICROS, () -> legacyWrite(legacyDir));
+        log.info("TxtUtil.writeLog 写入 {} 行", countLines(legacyDir));
+
+        System.setProperty("sql.slow.directory", journalDir.toString());
+        System.setProperty("sql.slow.threshold", "0ms");
+        AnnotationConfigApplicationContext context = new AnnotationConfigApplicationContext();
+        context.getBeanFactory().setConversionService(ApplicationConversionService.getSharedInstance());
+        context.register(SlowSqlJournal.class);
+        context.refresh();
+        SlowSqlJournal journal = context.getBean(SlowSqlJournal.class);
+        run("SlowSqlJournal.record 持续", JOURNAL_PER_THREAD, PAUSE_MICROS, () -> journal.record(SQL, 1234));
+        // 等后台线程写完再统计
+        Thread.sleep(500);
+        log.info("SlowSqlJournal 持续: 写入 {} 行, 丢弃 {} 条", countLines(journalDir), journal.getDroppedCount());
+
+        run("SlowSqlJournal.record 突发", BURST_PER_THREAD, 0, () -> journal.record(SQL, 1234));
+        long start = System.nanoTime();
+        context.close();
+        log.info("SlowSqlJournal 突发后关闭: 写完剩余记录 {} ms, 累计写入 {} 行, 累计丢弃 {} 条",
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start), countLines(journalDir),
+                journal.getDroppedCount());
+    }
+
+    private static void run(String name, int perThread, long pauseMicros, Runnable write) throws InterruptedException {
+        long[][] latencies = new long[THREADS][perThread];
+        CountDownLatch done = new CountDownLatch(THREADS);
+        long wallStart = System.nanoTime();
+        for (int t = 0; t < THREADS; t++) {
+            long[] samples = latencies[t];
+            new Thread(() -> {
+                try {
+                    for (int i = 0; i < perThread; i++) {
+                        long begin = System.nanoTime();
+                        write.run();
+                        samples[i] = System.nanoTime() - begin;
+                        if (pauseMicros > 0) {
+                            LockSupport.parkNanos(TimeUnit.MICROSECONDS.toNanos(pauseMicros));
+                        }
+                    }
+                } finally {
+                    done.countDown();
+                }
+            }).start();
+        }
+        done.await();
+        long wallMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - wallStart);
+        long[] all = Arrays.stream(latencies).flatMapToLong(Arrays::stream).sorted().toArray();
+        log.info("{}: {} 线程共 {} 次, 总耗时 {} ms, 查询线程耗时 p50 {} ns, p99 {} ns, max {} us", name, THREADS,
+                all.length, wallMillis, all[all.length / 2], all[all.length * 99 / 100],
+                TimeUnit.NANOSECONDS.toMicros(all[all.length - 1]));
+    }
+
+    /**
+     * 原来SqlPrintInterceptor.writeSlowSqlToLocation + TxtUtil.writeLog的写法，只是目录换成临时目录
+     */
+    private static void legacyWrite(Path dir) {
+        String logs = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss.SSS").format(new Date()) + "  SQL: " + SQL
+                + "  执行耗时: 1s.234ms";
+        String filePath = dir + "/" + new SimpleDateFormat("yyyy-MM-dd").format(new Date()) + ".txt";
+        try {
+            Files.createDirectories(dir);
+        } catch (IOException e) {
+            log.error(e.getMessage());
+        }
+        try (BufferedWriter writer = new BufferedWriter(new FileWriter(filePath, true))) {
+            writer.write(logs);
+            writer.newLine();
+        } catch (IOException e) {
+            log.error(e.getMessage());
+        }
+    }
+
+    private static long countLines(Path dir) throws IOException {
+        long lines = 0;
+        try (Stream<Path> files = Files.list(dir)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                try (Stream<String> stream = Files.lines(file)) {
+                    lines += stream.count();
+                }
+            }
+        }
+        return lines;
+    }
+}
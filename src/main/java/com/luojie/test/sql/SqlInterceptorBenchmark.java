@@ -0,0 +1,177 @@
+package com.luojie.test.sql;
+
+import com.luojie.config.myInterface.mybatisIntercept.SqlPrintInterceptor;
+import com.luojie.config.myInterface.mybatisIntercept.SqlStatementMetrics;
+import com.luojie.util.journal.SlowSqlJournal;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.ibatis.builder.StaticSqlSource;
+import org.apache.ibatis.executor.Executor;
+import org.apache.ibatis.mapping.BoundSql;
+import org.apache.ibatis.mapping.MappedStatement;
+import org.apache.ibatis.mapping.ParameterMapping;
+import org.apache.ibatis.mapping.SqlCommandType;
+import org.apache.ibatis.plugin.Invocation;
+import org.apache.ibatis.reflection.MetaObject;
+import org.apache.ibatis.session.Configuration;
+import org.apache.ibatis.session.ResultHandler;
+import org.apache.ibatis.session.RowBounds;
+import org.springframework.boot.convert.ApplicationConversionService;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.util.ObjectUtils;
+
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import java.util.regex.Matcher;
+
+/**
+ * SqlPrintInterceptor每条查询的额外耗时，Executor用直接返回空结果的代理代替数据库
+ * 1. 原来的写法：每条sql都replaceAll去空白、逐个replaceFirst替换参数(另外还会打印到控制台和INFO日志，这里没有算进去)
+ * 2. 现在不是慢sql且没开DEBUG时：只计时，不生成sql
+ * 3. 现在不是慢sql且开启了SqlStatementMetrics：多记录一次耗时直方图和行数
+ * 4. 现在每条都是慢sql：按缓存的切分结果一次拼接，再放进慢sql日志队列
+ * 项目里没有JMH，这里用main方法预热后循环计时，直接运行main方法即可
+ */
+@Slf4j
+public class SqlInterceptorBenchmark {
+
+    private static final int WARMUP = 200_000;
+    private static final int ITERATIONS = 1_000_000;
+    private static final String SQL = "SELECT uuid, `key`, value\n        FROM uq\n        WHERE uuid = ?\n"
+            + "          AND `key` = ?\n          AND value = ?\n        ORDER BY uuid";
+
+    private static volatile Object sink;
+
+    public static void main(String[] args) throws Throwable {
+        Configuration configuration = new Configuration();
+        List<ParameterMapping> mappings = List.of(
+                new ParameterMapping.Builder(configuration, "uuid", String.class).build(),
+                new ParameterMapping.Builder(configuration, "key", String.class).build(),
+                new ParameterMapping.Builder(configuration, "value", String.class).build());
+        MappedStatement statement = new MappedStatement.Builder(configuration, "com.luojie.dao.mapper2.Mapper2.getUq",
+                new StaticSqlSource(configuration, SQL, mappings), SqlCommandType.SELECT).build();
+        Map<String, Object> parameter = new HashMap<>();
+        parameter.put("uuid", "0b1c2d3e-4f5a-6b7c-8d9e-0f1a2b3c4d5e");
+        parameter.put("key", "k");
+        parameter.put("value", "v");
+
+        Executor executor = (Executor) Proxy.newProxyInstance(SqlInterceptorBenchmark.class.getClassLoader(),
+                new Class<?>[]{Executor.class}, (proxy, method, methodArgs) -> Collections.emptyList());
+        Method query = Executor.class.getMethod("query", MappedStatement.class, Object.class, RowBounds.class,
+                ResultHandler.class);
+        Object[] queryArgs = {statement, parameter, RowBounds.DEFAULT, Executor.NO_RESULT_HANDLER};
+
+        run("不拦截", () -> {
+            try {
+                return new Invocation(executor, query, queryArgs).proceed();
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        run("原来的写法(只算生成sql)", () -> {
+            try {
+                Object result = new Invocation(executor, query, queryArgs).proceed();
+                sink = legacyGenerateSql(statement, parameter);
+                return result;
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+        });
+
+        Path journalDir = Files.createTempDirectory("sql-interceptor");
+        System.setProperty("sql.slow.directory", journalDir.toString());
+        System.setProperty("sql.slow.threshold", "1s");
+        try (AnnotationConfigApplicationContext context = journalContext()) {
+            SqlPrintInterceptor interceptor = new SqlPrintInterceptor(context.getBean(SlowSqlJournal.class));
+            run("不是慢sql", () -> intercept(interceptor, executor, query, queryArgs));
+
+            // 加上按statement统计的耗时直方图
+            SqlStatementMetrics metrics = context.getBean(SqlStatementMetrics.class);
+            SqlPrintInterceptor measured = new SqlPrintInterceptor(context.getBean(SlowSqlJournal.class),
+                    metrics.forDataSource("dataSource2"));
+            run("不是慢sql+耗时直方图", () -> intercept(measured, executor, query, queryArgs));
+            Timer timer = context.getBean(MeterRegistry.class).get("sql.statement")
+                    .tag("statement", "Mapper2.getUq").tag("outcome", "success").timer();
+            log.info("sql.statement: {}", timer.takeSnapshot());
+        }
+        System.setProperty("sql.slow.threshold", "0ms");
+        try (AnnotationConfigApplicationContext context = journalContext()) {
+            SlowSqlJournal journal = context.getBean(SlowSqlJournal.class);
+            SqlPrintInterceptor interceptor = new SqlPrintInterceptor(journal);
+            run("每条都是慢sql", () -> intercept(interceptor, executor, query, queryArgs));
+            log.info("慢sql日志: 写入 {} 条, 丢弃 {} 条", journal.getWrittenCount(), journal.getDroppedCount());
+        }
+    }
+
+    private static AnnotationConfigApplicationContext journalContext() {
+        AnnotationConfigApplicationContext context = new AnnotationConfigApplicationContext();
+        context.getBeanFactory().setConversionService(ApplicationConversionService.getSharedInstance());
+        context.register(SlowSqlJournal.class, SqlStatementMetrics.class, SimpleMeterRegistry.class);
+        context.refresh();
+        return context;
+    }
+
+    private static Object intercept(SqlPrintInterceptor interceptor, Executor executor, Method query, Object[] args) {
+        try {
+            return interceptor.intercept(new Invocation(executor, query, args));
+        } catch (Throwable t) {
+            throw new IllegalStateException(t);
+        }
+    }
+
+    private static void run(String name, Supplier<Object> query) {
+        for (int i = 0; i < WARMUP; i++) {
+            sink = query.get();
+        }
+        long start = System.nanoTime();
+        for (int i = 0; i < ITERATIONS; i++) {
+            sink = query.get();
+        }
+        long nanos = System.nanoTime() - start;
+        log.info("{}: {} 次, 总耗时 {} ms, 平均每次 {} ns", name, ITERATIONS, TimeUnit.NANOSECONDS.toMillis(nanos),
+                nanos / ITERATIONS);
+    }
+
+    /**
+     * 原来SqlPrintInterceptor.generateSql的写法
+     */
+    private static String legacyGenerateSql(MappedStatement mappedStatement, Object parameter) {
+        Configuration configuration = mappedStatement.getConfiguration();
+        BoundSql boundSql = mappedStatement.getBoundSql(parameter);
+        Object parameterObject = boundSql.getParameterObject();
+        List<ParameterMapping> parameterMappings = boundSql.getParameterMappings();
+        String sql = boundSql.getSql();
+        sql = sql.replaceAll("[\\s]+", " ");
+        if (!ObjectUtils.isEmpty(parameterObject) && !ObjectUtils.isEmpty(parameterMappings)) {
+            if (parameterObject instanceof String && parameterMappings.size() == 1) {
+                return sql.replaceFirst("\\?", String.valueOf(parameterObject));
+            }
+            for (ParameterMapping parameterMapping : parameterMappings) {
+                String propertyName = parameterMapping.getProperty();
+                MetaObject metaObject = configuration.newMetaObject(parameterObject);
+                Object obj = null;
+                if (metaObject.hasGetter(propertyName)) {
+                    obj = metaObject.getValue(propertyName);
+                } else if (boundSql.hasAdditionalParameter(propertyName)) {
+                    obj = boundSql.getAdditionalParameter(propertyName);
+                }
+                if (obj != null) {
+                    sql = sql.replaceFirst("\\?", Matcher.quoteReplacement(obj.toString()));
+                } else {
+                    sql = sql.replaceFirst("\\?", Matcher.quoteReplacement(propertyName));
+                }
+            }
+        }
+        return sql;
+    }
+}
@@ -0,0 +1,79 @@
+package com.luojie.test.thread;
+
+import com.luojie.config.trace.TraceIdInterceptor;
+import com.luojie.config.trace.TraceIdVirtualThreadExecutor;
+import lombok.extern.slf4j.Slf4j;
+import org.slf4j.MDC;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 对比AsyncPools中的普通线程池和虚拟线程执行器在突发IO任务下的吞吐和拒绝数
+ * 每个任务sleep模拟一次Redis/JDBC调用，直接运行main方法即可
+ */
+@Slf4j
+public class AsyncExecutorLoadTest {
+
+    private static final int BURST = 2000;
+    private static final long IO_MILLIS = 20;
+
+    public static void main(String[] args) throws InterruptedException {
+        MDC.put(TraceIdInterceptor.TRACE_ID, "load-test");
+
+        ThreadPoolTaskExecutor platform = new ThreadPoolTaskExecutor();
+        platform.setCorePoolSize(10);
+        platform.setMaxPoolSize(20);
+        platform.setQueueCapacity(100);
+        platform.setThreadNamePrefix("async-executor-");
+        platform.setRejectedExecutionHandler(new ThreadPoolExecutor.AbortPolicy());
+        platform.initialize();
+        run("platform(10~20线程, 队列100)", platform);
+        platform.shutdown();
+
+        // 并发上限与普通线程池的最大线程数一致，方便对比
+        TraceIdVirtualThreadExecutor virtual = TraceIdVirtualThreadExecutor.create("async-virtual-", 20);
+        run("virtual(并发上限20)", virtual);
+        virtual.shutdown();
+        virtual.awaitTermination(1, TimeUnit.MINUTES);
+
+        MDC.clear();
+    }
+
+    private static void run(String name, Executor executor) throws InterruptedException {
+        AtomicInteger rejected = new AtomicInteger();
+        AtomicInteger lostTrace = new AtomicInteger();
+        CountDownLatch latch = new CountDownLatch(BURST);
+        long start = System.nanoTime();
+        for (int i = 0; i < BURST; i++) {
+            try {
+                executor.execute(() -> {
+                    try {
+                        if (MDC.get(TraceIdInterceptor.TRACE_ID) == null) {
+                            lostTrace.incrementAndGet();
+                        }
+                        Thread.sleep(IO_MILLIS);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    } finally {
+                        latch.countDown();
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                rejected.incrementAndGet();
+                latch.countDown();
+            }
+        }
+        latch.await();
+        long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        int completed = BURST - rejected.get();
+        log.info("{}: 提交 {}, 完成 {}, 拒绝 {}, 丢失traceId {}, 耗时 {} ms, 吞吐 {} 任务/秒", name, BURST,
+                completed, rejected.get(), lostTrace.get(), elapsedMillis,
+                elapsedMillis == 0 ? completed : completed * 1000L / elapsedMillis);
+    }
+}
@@ -0,0 +1,97 @@
+package com.luojie.test.trace;
+
+import com.luojie.config.trace.TraceContextSnapshot;
+import com.luojie.config.trace.TraceIdInterceptor;
+import lombok.extern.slf4j.Slf4j;
+import org.slf4j.MDC;
+
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+
+/**
+ * 对比原先每个任务拷贝两次MDC的包装方式和TraceContextSnapshot的分配量和耗时
+ * 直接运行main方法即可，分为提交线程捕获上下文和工作线程安装/恢复上下文两个阶段
+ */
+@Slf4j
+public class TraceContextBenchmark {
+
+    private static final int TASKS = 200_000;
+    private static final int ROUNDS = 5;
+
+    private static final com.sun.management.ThreadMXBean THREAD_BEAN =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    private static volatile int sink;
+
+    public static void main(String[] args) throws Exception {
+        MDC.put(TraceIdInterceptor.TRACE_ID, "4bf92f3577b34da6a3ce929d0e0e4736");
+        MDC.put("userId", "007");
+        MDC.put("uri", "/trace/redis/concurrent");
+
+        for (int round = 1; round <= ROUNDS; round++) {
+            // 前几轮用于预热，只打印最后一轮的结果
+            boolean print = round == ROUNDS;
+            run("旧包装(getCopyOfContextMap)", TraceContextBenchmark::legacyWrap, print);
+            run("TraceContextSnapshot 每任务捕获", r -> TraceContextSnapshot.capture().wrap(r), print);
+            TraceContextSnapshot shared = TraceContextSnapshot.capture();
+            run("TraceContextSnapshot 扇出共享", shared::wrap, print);
+        }
+        MDC.clear();
+    }
+
+    private static void run(String name, java.util.function.UnaryOperator<Runnable> wrapper, boolean print)
+            throws InterruptedException {
+        Runnable task = () -> sink += MDC.get(TraceIdInterceptor.TRACE_ID).length();
+        Runnable[] wrapped = new Runnable[TASKS];
+
+        // 阶段一：提交线程捕获上下文
+        long bytes = THREAD_BEAN.getCurrentThreadAllocatedBytes();
+        long start = System.nanoTime();
+        for (int i = 0; i < TASKS; i++) {
+            wrapped[i] = wrapper.apply(task);
+        }
+        long captureNanos = System.nanoTime() - start;
+        long captureBytes = THREAD_BEAN.getCurrentThreadAllocatedBytes() - bytes;
+
+        // 阶段二：MDC为空的工作线程安装并恢复上下文
+        long[] result = new long[2];
+        Thread worker = new Thread(() -> {
+            long workerBytes = THREAD_BEAN.getCurrentThreadAllocatedBytes();
+            long workerStart = System.nanoTime();
+            for (Runnable runnable : wrapped) {
+                runnable.run();
+            }
+            result[0] = System.nanoTime() - workerStart;
+            result[1] = THREAD_BEAN.getCurrentThreadAllocatedBytes() - workerBytes;
+        });
+        worker.start();
+        worker.join();
+
+        if (print) {
+            log.info("{}: 捕获 {} ns/op, {} B/op; 执行 {} ns/op, {} B/op", name,
+                    captureNanos / TASKS, captureBytes / TASKS, result[0] / TASKS, result[1] / TASKS);
+        }
+    }
+
+    /**
+     * 原先TraceIdRunnable的实现，保留在这里作为对比基准
+     */
+    private static Runnable legacyWrap(Runnable runnable) {
+        Map<String, String> context = MDC.getCopyOfContextMap();
+        return () -> {
+            Map<String, String> previous = MDC.getCopyOfContextMap();
+            try {
+                if (context != null) {
+                    MDC.setContextMap(context);
+                }
+                runnable.run();
+            } finally {
+                if (previous == null) {
+                    MDC.clear();
+                } else {
+                    MDC.setContextMap(previous);
+                }
+            }
+        };
+    }
+}
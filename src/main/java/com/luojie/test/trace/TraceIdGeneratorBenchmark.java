@@ -0,0 +1,79 @@
+package com.luojie.test.trace;
+
+import com.luojie.config.trace.FastTraceIdGenerator;
+import com.luojie.config.trace.TraceIdGenerator;
+import com.luojie.config.trace.UuidTraceIdGenerator;
+import lombok.extern.slf4j.Slf4j;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 对比UUID和FastTraceIdGenerator在64个线程并发生成traceId时的单次耗时和分配量
+ * 直接运行main方法即可
+ */
+@Slf4j
+public class TraceIdGeneratorBenchmark {
+
+    private static final int THREADS = 64;
+    private static final int PER_THREAD = 100_000;
+    private static final int ROUNDS = 3;
+
+    private static final com.sun.management.ThreadMXBean THREAD_BEAN =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    public static void main(String[] args) throws InterruptedException {
+        TraceIdGenerator uuid = new UuidTraceIdGenerator();
+        TraceIdGenerator fast = new FastTraceIdGenerator();
+        for (int round = 1; round <= ROUNDS; round++) {
+            // 前几轮用于预热
+            boolean print = round == ROUNDS;
+            run("UUID", uuid, print);
+            run("Fast", fast, print);
+        }
+    }
+
+    private static void run(String name, TraceIdGenerator generator, boolean print) throws InterruptedException {
+        CountDownLatch ready = new CountDownLatch(THREADS);
+        CountDownLatch start = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(THREADS);
+        AtomicLong totalNanos = new AtomicLong();
+        AtomicLong totalBytes = new AtomicLong();
+        AtomicLong sink = new AtomicLong();
+
+        for (int t = 0; t < THREADS; t++) {
+            new Thread(() -> {
+                ready.countDown();
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+                long bytes = THREAD_BEAN.getCurrentThreadAllocatedBytes();
+                long begin = System.nanoTime();
+                int length = 0;
+                for (int i = 0; i < PER_THREAD; i++) {
+                    length += generator.generate().length();
+                }
+                totalNanos.addAndGet(System.nanoTime() - begin);
+                totalBytes.addAndGet(THREAD_BEAN.getCurrentThreadAllocatedBytes() - bytes);
+                sink.addAndGet(length);
+                done.countDown();
+            }).start();
+        }
+        ready.await();
+        long wallStart = System.nanoTime();
+        start.countDown();
+        done.await();
+        long wallNanos = System.nanoTime() - wallStart;
+
+        if (print) {
+            long ops = (long) THREADS * PER_THREAD;
+            log.info("{}: {} 线程, 每线程平均 {} ns/op, {} B/op, 总吞吐 {} 万次/秒 (sink={})", name, THREADS,
+                    totalNanos.get() / ops, totalBytes.get() / ops, ops * 1_000_000_000L / wallNanos / 10_000,
+                    sink.get());
+        }
+    }
+}
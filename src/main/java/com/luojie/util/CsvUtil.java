@@ -1,23 +1,79 @@
 package com.luojie.util;
 
+import com.opencsv.CSVParserBuilder;
+import com.opencsv.CSVReader;
+import com.opencsv.CSVReaderBuilder;
 import com.opencsv.CSVWriter;
 import com.opencsv.CSVWriterBuilder;
 import com.opencsv.ICSVWriter;
 import com.opencsv.bean.CsvToBean;
 import com.opencsv.bean.CsvToBeanBuilder;
+import com.opencsv.bean.MappingStrategy;
 import com.opencsv.bean.StatefulBeanToCsv;
 import com.opencsv.bean.StatefulBeanToCsvBuilder;
+import com.opencsv.bean.util.OpencsvUtils;
+import com.opencsv.exceptions.CsvException;
+import lombok.extern.slf4j.Slf4j;
 
 import java.io.*;
+import java.lang.invoke.CallSite;
+import java.lang.invoke.LambdaMetafactory;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
+@Slf4j
 public class CsvUtil {
 
+    private static final ConcurrentMap<Class<?>, RowWriter> ROW_WRITERS = new ConcurrentHashMap<>();
+
+    /**
+     * 读取csv的引擎
+     */
+    public enum Engine {
+        /**
+         * opencsv的CsvToBean，支持opencsv的所有注解和转换器
+         */
+        OPENCSV,
+        /**
+         * FastCsvReader，直接扫描内存映射的文件并绑定到@CsvBindByPosition字段，
+         * 只支持String、基本类型及其包装类、BigDecimal字段
+         */
+        FAST
+    }
+
     /**
-     * 根据指定的类读取csv文件
+     * 根据指定的类读取csv文件，会把整个文件读到一个List中，大文件用CSVToBeanStream或CSVToBeanInChunks
      *
      * @param filepath 文件路径
      * @param clazz 读取类
@@ -26,6 +82,31 @@ public class CsvUtil {
      * @param <T>
      */
     public static <T> List<T> CSVToBean(String filepath, Class<T> clazz, int startLine) throws IOException {
+        return CSVToBean(filepath, clazz, startLine, Engine.OPENCSV);
+    }
+
+    /**
+     * 用指定的引擎读取csv文件，会把整个文件读到一个List中
+     *
+     * @param filepath 文件路径
+     * @param clazz 读取类
+     * @param startLine 开始行
+     * @param engine 引擎
+     * @return
+     * @param <T>
+     */
+    public static <T> List<T> CSVToBean(String filepath, Class<T> clazz, int startLine, Engine engine)
+            throws IOException {
+        if (engine == Engine.FAST) {
+            try (FastCsvReader<T> reader = FastCsvReader.open(Paths.get(filepath), clazz, startLine)) {
+                List<T> resultObj = new ArrayList<>();
+                T bean;
+                while ((bean = reader.next()) != null) {
+                    resultObj.add(bean);
+                }
+                return resultObj;
+            }
+        }
         BufferedReader reader = createBufferedReader(filepath);
         try {
             CsvToBean<T> csvToBean = new CsvToBeanBuilder<T>(reader).withType(clazz) // 映射的目标类型
@@ -43,6 +124,165 @@ public class CsvUtil {
 
     }
 
+    /**
+     * 流式读取csv文件，逐行映射为对象，内存占用与文件大小无关
+     * 返回的Stream持有打开的文件，需要用try-with-resources关闭
+     *
+     * @param filepath 文件路径
+     * @param clazz 读取类
+     * @param startLine 开始行
+     * @return
+     * @param <T>
+     */
+    public static <T> Stream<T> CSVToBeanStream(String filepath, Class<T> clazz, int startLine) throws IOException {
+        return CSVToBeanStream(filepath, clazz, startLine, Engine.OPENCSV);
+    }
+
+    /**
+     * 用指定的引擎流式读取csv文件，返回的Stream需要关闭
+     *
+     * @param filepath 文件路径
+     * @param clazz 读取类
+     * @param startLine 开始行
+     * @param engine 引擎
+     * @return
+     * @param <T>
+     */
+    public static <T> Stream<T> CSVToBeanStream(String filepath, Class<T> clazz, int startLine, Engine engine)
+            throws IOException {
+        if (engine == Engine.FAST) {
+            FastCsvReader<T> reader = FastCsvReader.open(Paths.get(filepath), clazz, startLine);
+            Spliterator<T> spliterator = new Spliterators.AbstractSpliterator<>(Long.MAX_VALUE,
+                    Spliterator.ORDERED | Spliterator.NONNULL) {
+                @Override
+                public boolean tryAdvance(Consumer<? super T> action) {
+                    try {
+                        T bean = reader.next();
+                        if (bean == null) {
+                            return false;
+                        }
+                        action.accept(bean);
+                        return true;
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                }
+            };
+            return StreamSupport.stream(spliterator, false).onClose(() -> {
+                try {
+                    reader.close();
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        }
+        BufferedReader reader = createBufferedReader(filepath);
+        try {
+            CsvToBean<T> csvToBean = new CsvToBeanBuilder<T>(reader).withType(clazz)
+                    .withIgnoreLeadingWhiteSpace(true)
+                    .withSkipLines(startLine)
+                    .withIgnoreEmptyLine(true)
+                    .build();
+            // CsvToBean.stream()会在后台线程读完整个文件放进无界队列，这里用iterator逐行读取
+            return StreamSupport.stream(csvToBean.spliterator(), false).onClose(() -> {
+                try {
+                    reader.close();
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (Exception e) {
+            reader.close();
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * 分批读取csv文件，每chunkSize行回调一次，回调在调用线程按文件顺序执行
+     * parallelism大于1时，调用线程只负责读取和拆分，映射为对象在parallelism个线程中进行，
+     * 同时最多有parallelism * 2批在映射，内存占用与文件大小无关
+     *
+     * @param filepath 文件路径
+     * @param clazz 读取类，和CSVToBean一样支持@CsvBindByPosition和@CsvBindByName
+     * @param startLine 开始行
+     * @param chunkSize 每批行数
+     * @param parallelism 映射的线程数，小于等于1时在调用线程映射
+     * @param consumer 处理一批数据
+     * @return 读取的行数
+     * @param <T>
+     */
+    public static <T> long CSVToBeanInChunks(String filepath, Class<T> clazz, int startLine, int chunkSize,
+                                             int parallelism, Consumer<List<T>> consumer) throws IOException {
+        ExecutorService executor = parallelism > 1 ? Executors.newFixedThreadPool(parallelism, r -> {
+            Thread thread = new Thread(r, "csv-mapper");
+            thread.setDaemon(true);
+            return thread;
+        }) : null;
+        try (CSVReader csvReader = new CSVReaderBuilder(createBufferedReader(filepath))
+                .withCSVParser(new CSVParserBuilder().withIgnoreLeadingWhiteSpace(true).build())
+                .withSkipLines(startLine)
+                .build()) {
+            MappingStrategy<T> strategy = OpencsvUtils.determineMappingStrategy(clazz, Locale.getDefault(), null);
+            strategy.captureHeader(csvReader);
+            Deque<Future<List<T>>> pending = new ArrayDeque<>();
+            long rows = 0;
+            List<String[]> lines = new ArrayList<>(chunkSize);
+            String[] line;
+            while ((line = csvReader.readNext()) != null) {
+                // 忽略空行
+                if (line.length == 0 || (line.length == 1 && line[0].isEmpty())) {
+                    continue;
+                }
+                lines.add(line);
+                if (lines.size() < chunkSize) {
+                    continue;
+                }
+                rows += lines.size();
+                if (executor == null) {
+                    consumer.accept(mapLines(strategy, lines));
+                } else {
+                    List<String[]> chunk = lines;
+                    pending.add(executor.submit(() -> mapLines(strategy, chunk)));
+                    if (pending.size() >= parallelism * 2) {
+                        consumer.accept(pending.poll().get());
+                    }
+                }
+                lines = new ArrayList<>(chunkSize);
+            }
+            if (!lines.isEmpty()) {
+                rows += lines.size();
+                if (executor == null) {
+                    consumer.accept(mapLines(strategy, lines));
+                } else {
+                    List<String[]> chunk = lines;
+                    pending.add(executor.submit(() -> mapLines(strategy, chunk)));
+                }
+            }
+            while (!pending.isEmpty()) {
+                consumer.accept(pending.poll().get());
+            }
+            return rows;
+        } catch (IOException e) {
+            throw e;
+        } catch (ExecutionException e) {
+            throw new RuntimeException(e.getCause());
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        } finally {
+            if (executor != null) {
+                executor.shutdownNow();
+            }
+        }
+    }
+
+    private static <T> List<T> mapLines(MappingStrategy<T> strategy, List<String[]> lines) throws CsvException {
+        List<T> beans = new ArrayList<>(lines.size());
+        for (String[] line : lines) {
+            beans.add(strategy.populateNewBean(line));
+        }
+        return beans;
+    }
+
     private static BufferedReader createBufferedReader(String filepath) throws IOException {
         FileInputStream fileInputStream = new FileInputStream(filepath);
         InputStreamReader inputStreamReader = new InputStreamReader(fileInputStream, StandardCharsets.UTF_8);
@@ -82,50 +322,116 @@ public class CsvUtil {
 
         try {
             /**
-             * 方法一：简单输出为一行 或者输出为多行
-             */
-            String[] strings = new String[content.size()];
-            for (int i = 0; i < content.size(); i++) {
-                strings[i] = content.get(i).toString();
-                // 输出到多行
-    //            csvWriter.writeNext(new String[]{strings[i]});
-            }
-            // 只会输出到一行
-//        csvWriter.writeAll(Collections.singleton(strings));
-
-            /**
-             * 方法二： 输出格式按csv的格式
+             * 输出格式按csv的格式，每个对象一行，列为对象的getter方法的返回值
+             * 每个类的getter只解析一次，同一个类的每一行复用同一个数组
              */
+            RowWriter rowWriter = null;
+            String[] row = null;
             for (Object e : content) {
-                Method[] methods = e.getClass().getMethods();
-                List<String> list = new ArrayList<>();
-
-                // 遍历所有方法
-                for (Method method : methods) {
-                    // 如果方法是 getter 方法（以 "get" 或 "is" 开头，并且没有参数）
-                    if (isGetter(method)) {
-                        try {
-                            // 调用 getter 方法获取属性值
-                            String value = String.valueOf(method.invoke(e));
-                            // 加入list
-                            list.add(value);
-                        } catch (Exception e1) {
-                            e1.printStackTrace();
-                        }
-                    }
+                if (rowWriter == null || rowWriter.type != e.getClass()) {
+                    rowWriter = rowWriterOf(e.getClass());
+                    row = new String[rowWriter.getters.length];
                 }
-                writeForList(csvWriter, list);
-                list.clear();
+                rowWriter.write(e, row);
+                csvWriter.writeNext(row);
             }
         } finally {
+            // 只flush，bufferedWriter由writeToFile关闭，这里关闭会导致writeToFile中flush时抛出Stream closed
             csvWriter.flush();
-            csvWriter.close();
         }
     }
 
-    private static void writeForList(CSVWriter csvWriter, List<String> list) {
-        String[] array = list.toArray(new String[0]);
-        csvWriter.writeNext(array);
+    /**
+     * 流式写出csv，逐行从rows取出后编码到缓冲区，缓冲区满了才写到out，内存占用与行数无关
+     * 格式与writeToFile写List一致：所有字段加双引号，字段中的双引号写两次，换行为\n
+     * out是HTTP响应时，客户端读得慢会阻塞在write上，rows(如MyBatis的Cursor)也就不会继续读取
+     *
+     * @param out 输出流，不会被关闭；需要压缩时传入GZIPOutputStream
+     * @param clazz 行的类型，列为getter的返回值，顺序见headerOf
+     * @param rows 要写出的数据
+     * @param header 是否先写一行列名
+     * @param bufferSize 缓冲区字节数，也是每次写到out的大小
+     * @return 写出的行数(不含列名)
+     */
+    public static <T> long writeToStream(OutputStream out, Class<T> clazz, Iterator<? extends T> rows,
+                                         boolean header, int bufferSize) throws IOException {
+        RowWriter rowWriter = rowWriterOf(clazz);
+        CharsetEncoder encoder = StandardCharsets.UTF_8.newEncoder();
+        // servlet的输出流只接受byte[]，用堆内存的缓冲区可以直接把数组交给out.write，不用再复制一次
+        ByteBuffer bytes = ByteBuffer.allocate(Math.max(bufferSize, 1024));
+        StringBuilder chars = new StringBuilder(8192);
+        String[] row = new String[rowWriter.getters.length];
+        if (header) {
+            appendRow(chars, rowWriter.headers);
+        }
+        long count = 0;
+        while (rows.hasNext()) {
+            rowWriter.write(rows.next(), row);
+            appendRow(chars, row);
+            count++;
+            if (chars.length() >= 8192) {
+                encode(encoder, chars, bytes, out);
+            }
+        }
+        encode(encoder, chars, bytes, out);
+        if (bytes.position() > 0) {
+            out.write(bytes.array(), 0, bytes.position());
+            bytes.clear();
+        }
+        out.flush();
+        return count;
+    }
+
+    private static void appendRow(StringBuilder chars, String[] row) {
+        for (int i = 0; i < row.length; i++) {
+            if (i > 0) {
+                chars.append(',');
+            }
+            chars.append('"');
+            String value = row[i];
+            for (int j = 0; j < value.length(); j++) {
+                char c = value.charAt(j);
+                if (c == '"') {
+                    chars.append('"');
+                }
+                chars.append(c);
+            }
+            chars.append('"');
+        }
+        chars.append('\n');
+    }
+
+    /**
+     * 把chars编码到bytes，bytes满了写到out
+     */
+    private static void encode(CharsetEncoder encoder, StringBuilder chars, ByteBuffer bytes, OutputStream out)
+            throws IOException {
+        CharBuffer input = CharBuffer.wrap(chars);
+        while (true) {
+            CoderResult result = encoder.encode(input, bytes, false);
+            if (result.isOverflow()) {
+                out.write(bytes.array(), 0, bytes.position());
+                bytes.clear();
+            } else if (result.isUnderflow()) {
+                break;
+            } else {
+                result.throwException();
+            }
+        }
+        // 被拆开的代理对(如emoji)的前半个字符留到下一次
+        int remaining = input.remaining();
+        chars.delete(0, chars.length() - remaining);
+    }
+
+    /**
+     * 类的列名(getter对应的属性名)，顺序与writeToFile写入List时的列顺序一致
+     */
+    public static String[] headerOf(Class<?> clazz) {
+        return rowWriterOf(clazz).headers.clone();
+    }
+
+    private static RowWriter rowWriterOf(Class<?> clazz) {
+        return ROW_WRITERS.computeIfAbsent(clazz, RowWriter::new);
     }
 
     // 判断方法是否为 getter 方法
@@ -134,7 +440,16 @@ public class CsvUtil {
         return (name.startsWith("get") || name.startsWith("is"))
                 && !name.startsWith("getClass")
                 && method.getParameterCount() == 0
-                && !void.class.equals(method.getReturnType());
+                && !void.class.equals(method.getReturnType())
+                && !method.isBridge();
+    }
+
+    /**
+     * getter方法对应的属性名，getName -> name，isActive -> active
+     */
+    private static String propertyOf(Method method) {
+        String name = method.getName().substring(method.getName().startsWith("is") ? 2 : 3);
+        return name.isEmpty() ? name : Character.toLowerCase(name.charAt(0)) + name.substring(1);
     }
 
     private static void writeSingle(BufferedWriter bufferedWriter, Object content) throws Exception {
@@ -150,4 +465,93 @@ public class CsvUtil {
         // 将对象列表写入 CSV 文件
         beanToCsv.write(content);
     }
+
+    /**
+     * 一个类的所有getter，解析一次后缓存
+     * 列的顺序：先按类(从父类到子类)中字段的声明顺序，没有对应字段的getter按名字排在后面，不依赖getMethods()返回的顺序
+     * getter用LambdaMetafactory生成的Function调用，无法生成(如JDK的类)时退回到反射调用
+     */
+    private static final class RowWriter {
+
+        private final Class<?> type;
+
+        private final String[] headers;
+
+        private final Function<Object, Object>[] getters;
+
+        /**
+         * 每列getter抛出异常的次数，每列只在第一次失败时打印日志，避免大文件每行都打印堆栈
+         */
+        private final AtomicLongArray failures;
+
+        @SuppressWarnings("unchecked")
+        private RowWriter(Class<?> type) {
+            this.type = type;
+            Map<String, Method> methods = new TreeMap<>();
+            for (Method method : type.getMethods()) {
+                if (isGetter(method)) {
+                    methods.putIfAbsent(propertyOf(method), method);
+                }
+            }
+            List<Method> ordered = new ArrayList<>(methods.size());
+            Deque<Class<?>> hierarchy = new ArrayDeque<>();
+            for (Class<?> c = type; c != null && c != Object.class; c = c.getSuperclass()) {
+                hierarchy.push(c);
+            }
+            for (Class<?> c : hierarchy) {
+                for (Field field : c.getDeclaredFields()) {
+                    Method method = methods.remove(field.getName());
+                    if (method != null) {
+                        ordered.add(method);
+                    }
+                }
+            }
+            ordered.addAll(methods.values());
+
+            this.headers = new String[ordered.size()];
+            this.getters = new Function[ordered.size()];
+            for (int i = 0; i < ordered.size(); i++) {
+                headers[i] = propertyOf(ordered.get(i));
+                getters[i] = compile(type, ordered.get(i));
+            }
+            this.failures = new AtomicLongArray(ordered.size());
+        }
+
+        private void write(Object bean, String[] row) {
+            for (int i = 0; i < getters.length; i++) {
+                try {
+                    row[i] = String.valueOf(getters[i].apply(bean));
+                } catch (Exception e) {
+                    // 保持列对齐
+                    row[i] = "";
+                    if (failures.getAndIncrement(i) == 0) {
+                        log.warn("fail get csv column, class:{}, column:{}, later failures of this column are not logged",
+                                type.getName(), headers[i], e);
+                    }
+                }
+            }
+        }
+
+        @SuppressWarnings("unchecked")
+        private static Function<Object, Object> compile(Class<?> type, Method method) {
+            try {
+                MethodHandles.Lookup lookup = MethodHandles.privateLookupIn(type, MethodHandles.lookup());
+                MethodHandle handle = lookup.unreflect(method);
+                CallSite site = LambdaMetafactory.metafactory(lookup, "apply", MethodType.methodType(Function.class),
+                        MethodType.methodType(Object.class, Object.class), handle,
+                        MethodType.methodType(handle.type().wrap().returnType(), type));
+                return (Function<Object, Object>) site.getTarget().invokeExact();
+            } catch (Throwable t) {
+                return bean -> {
+                    try {
+                        return method.invoke(bean);
+                    } catch (InvocationTargetException e) {
+                        throw new IllegalStateException(e.getCause());
+                    } catch (IllegalAccessException e) {
+                        throw new IllegalStateException(e);
+                    }
+                };
+            }
+        }
+    }
 }
@@ -0,0 +1,474 @@
+package com.luojie.util;
+
+import com.opencsv.bean.CsvBindByPosition;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.lang.invoke.CallSite;
+import java.lang.invoke.LambdaMetafactory;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.math.BigDecimal;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * CsvUtil.Engine.FAST的实现：直接扫描内存映射的文件，按RFC 4180解析，不经过String[]和opencsv的反射绑定
+ * 1. 文件按WINDOW大小分窗口映射，一条记录跨窗口时从记录开头重新映射，所以单条记录不能超过WINDOW
+ * 2. 逐字节扫描分隔符、引号和换行，只有@CsvBindByPosition绑定的列才复制到复用的字节数组(去掉转义的引号)，
+ *    没有绑定的列只跳过不复制
+ * 3. 每个类的构造方法和setter用LambdaMetafactory生成一次后缓存，int/long直接从字节解析，不生成String
+ * 支持：引号中的逗号、换行和""转义，CRLF/LF换行，开头的UTF-8 BOM，引号前的空白(同withIgnoreLeadingWhiteSpace)，忽略空行
+ * 不支持@CsvBindByName和自定义转换器，字段类型只能是String、基本类型及其包装类、BigDecimal
+ * 非线程安全，每个线程用一个实例
+ *
+ * @param <T> 行的类型
+ */
+final class FastCsvReader<T> implements Closeable {
+
+    private static final long WINDOW = 64L << 20;
+
+    private static final ConcurrentMap<Class<?>, Binder<?>> BINDERS = new ConcurrentHashMap<>();
+
+    private final FileChannel channel;
+
+    private final long size;
+
+    private final Binder<T> binder;
+
+    private MappedByteBuffer buffer;
+
+    /**
+     * buffer在文件中的起始位置
+     */
+    private long windowStart;
+
+    /**
+     * 下一条记录在buffer中的位置
+     */
+    private int position;
+
+    /**
+     * 当前列的内容，各行复用
+     */
+    private byte[] field = new byte[256];
+
+    private int fieldLength;
+
+    private long records;
+
+    /**
+     * 正在绑定的对象
+     */
+    private T current;
+
+    private FastCsvReader(FileChannel channel, Binder<T> binder) throws IOException {
+        this.channel = channel;
+        this.size = channel.size();
+        this.binder = binder;
+        map(0);
+        if (buffer.limit() >= 3 && buffer.get(0) == (byte) 0xEF && buffer.get(1) == (byte) 0xBB
+                && buffer.get(2) == (byte) 0xBF) {
+            position = 3;
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    static <T> FastCsvReader<T> open(Path file, Class<T> type, int skipLines) throws IOException {
+        Binder<T> binder = (Binder<T>) BINDERS.computeIfAbsent(type, Binder::new);
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+        try {
+            FastCsvReader<T> reader = new FastCsvReader<>(channel, binder);
+            for (int i = 0; i < skipLines && reader.read(false) != Status.END; i++) {
+                // 跳过
+            }
+            return reader;
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * @return 下一行，没有时返回null
+     */
+    T next() throws IOException {
+        return read(true) == Status.END ? null : current;
+    }
+
+    private Status read(boolean bind) throws IOException {
+        while (true) {
+            Status status = readRecord(bind);
+            if (status != Status.MORE) {
+                return status;
+            }
+            if (position == 0) {
+                throw new IllegalArgumentException("第" + (records + 1) + "行超过" + (WINDOW >> 20) + "MB，或者引号没有闭合");
+            }
+            map(windowStart + position);
+        }
+    }
+
+    private void map(long start) throws IOException {
+        windowStart = start;
+        position = 0;
+        buffer = channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(WINDOW, size - start));
+    }
+
+    /**
+     * 从position解析一条记录，成功后把position移到下一条记录
+     * 记录在窗口中不完整时返回MORE，position不变
+     */
+    private Status readRecord(boolean bind) {
+        MappedByteBuffer buffer = this.buffer;
+        int limit = buffer.limit();
+        boolean last = windowStart + limit >= size;
+        int i = position;
+        // 空行
+        while (i < limit && (buffer.get(i) == '\n' || buffer.get(i) == '\r')) {
+            i++;
+        }
+        if (i >= limit) {
+            position = i;
+            return last ? Status.END : Status.MORE;
+        }
+        if (bind) {
+            current = binder.newInstance();
+        }
+        int column = 0;
+        while (true) {
+            boolean bound = bind && binder.isBound(column);
+            int start = i;
+            while (i < limit && (buffer.get(i) == ' ' || buffer.get(i) == '\t')) {
+                i++;
+            }
+            if (i < limit && buffer.get(i) == '"') {
+                i++;
+                fieldLength = 0;
+                while (true) {
+                    if (i >= limit) {
+                        if (last) {
+                            throw new IllegalArgumentException("第" + (records + 1) + "行引号没有闭合");
+                        }
+                        return Status.MORE;
+                    }
+                    byte b = buffer.get(i);
+                    if (b == '"') {
+                        if (i + 1 >= limit && !last) {
+                            // 不知道后面是不是另一个引号
+                            return Status.MORE;
+                        }
+                        if (i + 1 < limit && buffer.get(i + 1) == '"') {
+                            if (bound) {
+                                append(b);
+                            }
+                            i += 2;
+                            continue;
+                        }
+                        i++;
+                        break;
+                    }
+                    if (bound) {
+                        append(b);
+                    }
+                    i++;
+                }
+            } else {
+                i = start;
+                while (i < limit) {
+                    byte b = buffer.get(i);
+                    if (b == ',' || b == '\n' || b == '\r') {
+                        break;
+                    }
+                    i++;
+                }
+                if (i >= limit && !last) {
+                    return Status.MORE;
+                }
+                if (bound) {
+                    fieldLength = 0;
+                    ensureCapacity(i - start);
+                    buffer.get(start, field, 0, i - start);
+                    fieldLength = i - start;
+                }
+            }
+            if (bound) {
+                binder.set(current, column, field, fieldLength, records + 1);
+            }
+            if (i >= limit) {
+                break;
+            }
+            byte b = buffer.get(i);
+            if (b == ',') {
+                i++;
+                column++;
+                continue;
+            }
+            if (b == '\r' || b == '\n') {
+                i++;
+                if (b == '\r' && i < limit && buffer.get(i) == '\n') {
+                    i++;
+                }
+                break;
+            }
+            throw new IllegalArgumentException("第" + (records + 1) + "行第" + (column + 1) + "列的引号后面不是分隔符");
+        }
+        position = i;
+        records++;
+        return Status.RECORD;
+    }
+
+    private void append(byte b) {
+        if (fieldLength == field.length) {
+            ensureCapacity(fieldLength + 1);
+        }
+        field[fieldLength++] = b;
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (field.length < capacity) {
+            byte[] larger = new byte[Math.max(capacity, field.length * 2)];
+            System.arraycopy(field, 0, larger, 0, fieldLength);
+            field = larger;
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        buffer = null;
+        channel.close();
+    }
+
+    private enum Status {
+        RECORD, MORE, END
+    }
+
+    /**
+     * 把一列的字节转换后设置到字段
+     */
+    private interface Setter {
+
+        void set(Object bean, byte[] bytes, int length);
+    }
+
+    /**
+     * 一个类的构造方法和按位置排列的setter，没有状态，各线程共享
+     */
+    private static final class Binder<T> {
+
+        private final Class<T> type;
+
+        private final Supplier<T> constructor;
+
+        private final Setter[] setters;
+
+        private final boolean[] required;
+
+        @SuppressWarnings("unchecked")
+        private Binder(Class<?> type) {
+            this.type = (Class<T>) type;
+            this.constructor = compileConstructor(this.type);
+            Deque<Class<?>> hierarchy = new ArrayDeque<>();
+            for (Class<?> c = type; c != null && c != Object.class; c = c.getSuperclass()) {
+                hierarchy.push(c);
+            }
+            int columns = 0;
+            for (Class<?> c : hierarchy) {
+                for (Field field : c.getDeclaredFields()) {
+                    CsvBindByPosition bind = field.getAnnotation(CsvBindByPosition.class);
+                    if (bind != null) {
+                        columns = Math.max(columns, bind.position() + 1);
+                    }
+                }
+            }
+            if (columns == 0) {
+                throw new IllegalArgumentException(type.getName() + "没有@CsvBindByPosition字段，不能用FAST引擎");
+            }
+            this.setters = new Setter[columns];
+            this.required = new boolean[columns];
+            for (Class<?> c : hierarchy) {
+                for (Field field : c.getDeclaredFields()) {
+                    CsvBindByPosition bind = field.getAnnotation(CsvBindByPosition.class);
+                    if (bind != null) {
+                        setters[bind.position()] = compileSetter(type, field);
+                        required[bind.position()] = bind.required();
+                    }
+                }
+            }
+        }
+
+        private T newInstance() {
+            return constructor.get();
+        }
+
+        private boolean isBound(int column) {
+            return column < setters.length && setters[column] != null;
+        }
+
+        private void set(T bean, int column, byte[] bytes, int length, long record) {
+            if (length == 0 && required[column]) {
+                throw new IllegalArgumentException("第" + record + "行第" + (column + 1) + "列不能为空");
+            }
+            try {
+                setters[column].set(bean, bytes, length);
+            } catch (RuntimeException e) {
+                throw new IllegalArgumentException("第" + record + "行第" + (column + 1) + "列转换失败: "
+                        + new String(bytes, 0, length, StandardCharsets.UTF_8), e);
+            }
+        }
+
+        @SuppressWarnings("unchecked")
+        private static <T> Supplier<T> compileConstructor(Class<T> type) {
+            try {
+                MethodHandles.Lookup lookup = MethodHandles.privateLookupIn(type, MethodHandles.lookup());
+                MethodHandle handle = lookup.findConstructor(type, MethodType.methodType(void.class));
+                CallSite site = LambdaMetafactory.metafactory(lookup, "get", MethodType.methodType(Supplier.class),
+                        MethodType.methodType(Object.class), handle, MethodType.methodType(type));
+                return (Supplier<T>) site.getTarget().invokeExact();
+            } catch (Throwable t) {
+                throw new IllegalArgumentException(type.getName() + "需要无参构造方法", t);
+            }
+        }
+
+        private static Setter compileSetter(Class<?> type, Field field) {
+            BiConsumer<Object, Object> setter = compileAccessor(type, field);
+            Class<?> fieldType = field.getType();
+            if (fieldType == String.class) {
+                return (bean, bytes, length) -> setter.accept(bean, new String(bytes, 0, length, StandardCharsets.UTF_8));
+            }
+            boolean primitive = fieldType.isPrimitive();
+            if (fieldType == int.class || fieldType == Integer.class) {
+                return (bean, bytes, length) -> {
+                    if (!isBlank(bytes, length)) {
+                        setter.accept(bean, Math.toIntExact(parseLong(bytes, length)));
+                    } else if (!primitive) {
+                        setter.accept(bean, null);
+                    }
+                };
+            }
+            if (fieldType == long.class || fieldType == Long.class) {
+                return (bean, bytes, length) -> {
+                    if (!isBlank(bytes, length)) {
+                        setter.accept(bean, parseLong(bytes, length));
+                    } else if (!primitive) {
+                        setter.accept(bean, null);
+                    }
+                };
+            }
+            Function<String, Object> parser;
+            if (fieldType == double.class || fieldType == Double.class) {
+                parser = Double::valueOf;
+            } else if (fieldType == float.class || fieldType == Float.class) {
+                parser = Float::valueOf;
+            } else if (fieldType == short.class || fieldType == Short.class) {
+                parser = Short::valueOf;
+            } else if (fieldType == byte.class || fieldType == Byte.class) {
+                parser = Byte::valueOf;
+            } else if (fieldType == boolean.class || fieldType == Boolean.class) {
+                parser = Boolean::valueOf;
+            } else if (fieldType == BigDecimal.class) {
+                parser = BigDecimal::new;
+            } else {
+                throw new IllegalArgumentException(type.getName() + "." + field.getName() + "的类型" + fieldType.getName()
+                        + "不能用FAST引擎");
+            }
+            return (bean, bytes, length) -> {
+                if (!isBlank(bytes, length)) {
+                    setter.accept(bean, parser.apply(new String(bytes, 0, length, StandardCharsets.UTF_8).trim()));
+                } else if (!primitive) {
+                    setter.accept(bean, null);
+                }
+            };
+        }
+
+        /**
+         * 优先用public的setter，没有时直接设置字段
+         */
+        @SuppressWarnings("unchecked")
+        private static BiConsumer<Object, Object> compileAccessor(Class<?> type, Field field) {
+            String name = field.getName();
+            String setterName = "set" + Character.toUpperCase(name.charAt(0)) + name.substring(1);
+            try {
+                Method method = type.getMethod(setterName, field.getType());
+                if (!Modifier.isStatic(method.getModifiers())) {
+                    MethodHandles.Lookup lookup = MethodHandles.privateLookupIn(type, MethodHandles.lookup());
+                    MethodHandle handle = lookup.unreflect(method);
+                    CallSite site = LambdaMetafactory.metafactory(lookup, "accept",
+                            MethodType.methodType(BiConsumer.class),
+                            MethodType.methodType(void.class, Object.class, Object.class), handle,
+                            MethodType.methodType(void.class, type, handle.type().wrap().parameterType(1)));
+                    return (BiConsumer<Object, Object>) site.getTarget().invokeExact();
+                }
+            } catch (Throwable t) {
+                // 退回到直接设置字段
+            }
+            field.setAccessible(true);
+            return (bean, value) -> {
+                try {
+                    field.set(bean, value);
+                } catch (IllegalAccessException e) {
+                    throw new IllegalStateException(e);
+                }
+            };
+        }
+
+        private static boolean isBlank(byte[] bytes, int length) {
+            for (int i = 0; i < length; i++) {
+                if (bytes[i] != ' ' && bytes[i] != '\t') {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /**
+         * 不生成String直接解析整数，允许前后空白
+         */
+        private static long parseLong(byte[] bytes, int length) {
+            int i = 0;
+            while (i < length && (bytes[i] == ' ' || bytes[i] == '\t')) {
+                i++;
+            }
+            int end = length;
+            while (end > i && (bytes[end - 1] == ' ' || bytes[end - 1] == '\t')) {
+                end--;
+            }
+            boolean negative = false;
+            if (i < end && (bytes[i] == '-' || bytes[i] == '+')) {
+                negative = bytes[i] == '-';
+                i++;
+            }
+            if (i >= end || end - i > 19) {
+                return Long.parseLong(new String(bytes, 0, length, StandardCharsets.UTF_8).trim());
+            }
+            long value = 0;
+            for (; i < end; i++) {
+                int digit = bytes[i] - '0';
+                if (digit < 0 || digit > 9) {
+                    throw new NumberFormatException("For input string: \""
+                            + new String(bytes, 0, length, StandardCharsets.UTF_8) + "\"");
+                }
+                // 19位可能溢出，交给Long.parseLong判断
+                if (value > (Long.MAX_VALUE - digit) / 10) {
+                    return Long.parseLong(new String(bytes, 0, length, StandardCharsets.UTF_8).trim());
+                }
+                value = value * 10 + digit;
+            }
+            return negative ? -value : value;
+        }
+    }
+}
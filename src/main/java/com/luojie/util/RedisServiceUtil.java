@@ -2,9 +2,26 @@ package com.luojie.util;
 
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.redis.connection.ClusterSlotHashUtil;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.connection.jedis.JedisConnectionFactory;
+import org.springframework.data.redis.core.RedisOperations;
 import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.SessionCallback;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.data.redis.serializer.RedisSerializer;
 import org.springframework.stereotype.Component;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.TimeUnit;
 
 /**
@@ -17,6 +34,24 @@ public class RedisServiceUtil {
     @Autowired
     private RedisTemplate redisTemplate;
 
+    /**
+     * 集群模式下同一个slot内批量设置值和过期时间的脚本，最后一个参数为毫秒级过期时间
+     */
+    private static final DefaultRedisScript<Long> MULTI_SET_WITH_EXPIRE_SCRIPT = new DefaultRedisScript<>(
+            "local ttl = tonumber(ARGV[#ARGV]) " +
+            "for i = 1, #KEYS do redis.call('SET', KEYS[i], ARGV[i], 'PX', ttl) end " +
+            "return #KEYS", Long.class);
+
+    /**
+     * 写入并设置过期时间的脚本，一次往返完成且不会出现key已写入但没有过期时间的窗口
+     * RedisTemplate执行脚本时先用EVALSHA，服务端没有缓存时才发送完整脚本
+     */
+    private static final DefaultRedisScript<Long> HSET_WITH_EXPIRE_SCRIPT = writeWithExpireScript("HSET");
+
+    private static final DefaultRedisScript<Long> SADD_WITH_EXPIRE_SCRIPT = writeWithExpireScript("SADD");
+
+    private static final DefaultRedisScript<Long> RPUSH_WITH_EXPIRE_SCRIPT = writeWithExpireScript("RPUSH");
+
     /**
      * 普通string类型，设置值
      *
@@ -159,20 +194,111 @@ public class RedisServiceUtil {
     }
 
     /**
-     * hash类型，设置值
+     * hash类型，设置值并设置超时时间
+     * 通过脚本一次往返完成，原子操作
      *
      * @param key
      * @param value
      */
     public void setHashWithExpire(String key, String field, String value, int time, TimeUnit timeUnit) {
         try {
-            redisTemplate.opsForHash().put(key, field, value);
-            redisTemplate.expire(key, time, timeUnit);
+            List<byte[]> args = new ArrayList<>(3);
+            args.add(redisTemplate.getHashKeySerializer().serialize(field));
+            args.add(redisTemplate.getHashValueSerializer().serialize(value));
+            executeWithExpire(HSET_WITH_EXPIRE_SCRIPT, key, args, time, timeUnit);
         } catch (Exception e) {
             log.error("fail setHash with expire redis key:{}, errorMsg:{}", key, e.getMessage());
         }
     }
 
+    /**
+     * hash类型，一次设置多个field并设置超时时间，原子操作
+     *
+     * @param key
+     * @param values
+     */
+    public void setHashAllWithExpire(String key, Map<String, String> values, int time, TimeUnit timeUnit) {
+        if (values == null || values.isEmpty()) {
+            return;
+        }
+        try {
+            List<byte[]> args = new ArrayList<>(values.size() * 2 + 1);
+            for (Map.Entry<String, String> entry : values.entrySet()) {
+                args.add(redisTemplate.getHashKeySerializer().serialize(entry.getKey()));
+                args.add(redisTemplate.getHashValueSerializer().serialize(entry.getValue()));
+            }
+            executeWithExpire(HSET_WITH_EXPIRE_SCRIPT, key, args, time, timeUnit);
+        } catch (Exception e) {
+            log.error("fail setHashAll with expire redis key:{}, errorMsg:{}", key, e.getMessage());
+        }
+    }
+
+    /**
+     * set类型，添加成员并设置超时时间，原子操作
+     *
+     * @param key
+     * @param members
+     * @return 新增的成员数
+     */
+    public Long addSetWithExpire(String key, int time, TimeUnit timeUnit, String... members) {
+        if (members == null || members.length == 0) {
+            return 0L;
+        }
+        try {
+            return executeWithExpire(SADD_WITH_EXPIRE_SCRIPT, key, serializeValues(members), time, timeUnit);
+        } catch (Exception e) {
+            log.error("fail addSet with expire redis key:{}, errorMsg:{}", key, e.getMessage());
+        }
+        return null;
+    }
+
+    /**
+     * set类型，获取全部成员
+     *
+     * @param key
+     */
+    public Set<String> getSetMembers(String key) {
+        try {
+            return redisTemplate.opsForSet().members(key);
+        } catch (Exception e) {
+            log.error("fail getSetMembers redis key:{}, errorMsg:{}", key, e.getMessage());
+        }
+        return null;
+    }
+
+    /**
+     * list类型，从右侧追加元素并设置超时时间，原子操作
+     *
+     * @param key
+     * @param values
+     * @return 追加后的list长度
+     */
+    public Long pushListWithExpire(String key, int time, TimeUnit timeUnit, String... values) {
+        if (values == null || values.length == 0) {
+            return 0L;
+        }
+        try {
+            return executeWithExpire(RPUSH_WITH_EXPIRE_SCRIPT, key, serializeValues(values), time, timeUnit);
+        } catch (Exception e) {
+            log.error("fail pushList with expire redis key:{}, errorMsg:{}", key, e.getMessage());
+        }
+        return null;
+    }
+
+    /**
+     * list类型，获取全部元素
+     *
+     * @param key
+     */
+    public List<String> getList(String key) {
+        try {
+            return redisTemplate.opsForList().range(key, 0, -1);
+        } catch (Exception e) {
+            log.error("fail getList redis key:{}, errorMsg:{}", key, e.getMessage());
+        }
+        return null;
+    }
+
     /**
      * hash类型，获取值
      *
@@ -199,4 +325,275 @@ public class RedisServiceUtil {
             log.error("fail deleteHash redis key:{}, errorMsg:{}", key, e.getMessage());
         }
     }
+
+    /**
+     * 普通string类型，批量获取值
+     * 单机一次MGET，集群按slot分组后每个slot一次MGET
+     *
+     * @param keys
+     * @return key和值的映射，不存在的key不会出现在结果中
+     */
+    public Map<String, String> multiGet(Collection<String> keys) {
+        Map<String, String> result = new HashMap<>();
+        if (keys == null || keys.isEmpty()) {
+            return result;
+        }
+        try {
+            for (List<String> group : groupKeys(keys)) {
+                List<Object> values = redisTemplate.opsForValue().multiGet(group);
+                if (values == null) {
+                    continue;
+                }
+                for (int i = 0; i < group.size(); i++) {
+                    if (values.get(i) != null) {
+                        result.put(group.get(i), (String) values.get(i));
+                    }
+                }
+            }
+        } catch (Exception e) {
+            log.error("fail multiGet redis keys size:{}, errorMsg:{}", keys.size(), e.getMessage());
+        }
+        return result;
+    }
+
+    /**
+     * 普通string类型，批量设置值
+     * 单机一次MSET，集群按slot分组后每个slot一次MSET
+     *
+     * @param values
+     */
+    public void multiSet(Map<String, String> values) {
+        if (values == null || values.isEmpty()) {
+            return;
+        }
+        try {
+            for (List<String> group : groupKeys(values.keySet())) {
+                Map<String, String> groupValues = new LinkedHashMap<>();
+                for (String key : group) {
+                    groupValues.put(key, values.get(key));
+                }
+                redisTemplate.opsForValue().multiSet(groupValues);
+            }
+        } catch (Exception e) {
+            log.error("fail multiSet redis keys size:{}, errorMsg:{}", values.size(), e.getMessage());
+        }
+    }
+
+    /**
+     * 普通string类型，批量设置值并设置相同的超时时间
+     * 单机通过pipeline一次往返完成；集群不支持pipeline，按slot分组后每个slot执行一次脚本
+     *
+     * @param values
+     */
+    public void multiSetWithExpire(Map<String, String> values, int time, TimeUnit timeUnit) {
+        if (values == null || values.isEmpty()) {
+            return;
+        }
+        try {
+            if (isCluster()) {
+                for (List<String> group : groupKeys(values.keySet())) {
+                    String[] groupValues = new String[group.size()];
+                    for (int i = 0; i < group.size(); i++) {
+                        groupValues[i] = values.get(group.get(i));
+                    }
+                    // 值用value序列化器，过期时间用string序列化器，否则compact模式下tonumber得到nil
+                    executeWithExpire(MULTI_SET_WITH_EXPIRE_SCRIPT, group, serializeValues(groupValues), time, timeUnit);
+                }
+            } else {
+                redisTemplate.executePipelined(new SessionCallback<Object>() {
+                    @Override
+                    public Object execute(RedisOperations operations) throws DataAccessException {
+                        for (Map.Entry<String, String> entry : values.entrySet()) {
+                            operations.opsForValue().set(entry.getKey(), entry.getValue(), time, timeUnit);
+                        }
+                        return null;
+                    }
+                });
+            }
+        } catch (Exception e) {
+            log.error("fail multiSet with expire redis keys size:{}, errorMsg:{}", values.size(), e.getMessage());
+        }
+    }
+
+    /**
+     * 普通string类型，批量删除key
+     * 单机一次DEL，集群按slot分组后每个slot一次DEL
+     *
+     * @param keys
+     * @return 删除的key数量
+     */
+    public long multiDelete(Collection<String> keys) {
+        if (keys == null || keys.isEmpty()) {
+            return 0;
+        }
+        long deleted = 0;
+        try {
+            for (List<String> group : groupKeys(keys)) {
+                Long count = redisTemplate.delete(group);
+                deleted += count == null ? 0 : count;
+            }
+        } catch (Exception e) {
+            log.error("fail multiDelete redis keys size:{}, errorMsg:{}", keys.size(), e.getMessage());
+        }
+        return deleted;
+    }
+
+    /**
+     * hash类型，一次HMGET获取同一个key下的多个field
+     *
+     * @param key
+     * @param fields
+     * @return field和值的映射，不存在的field不会出现在结果中
+     */
+    public Map<String, String> multiGetHash(String key, Collection<String> fields) {
+        Map<String, String> result = new HashMap<>();
+        if (fields == null || fields.isEmpty()) {
+            return result;
+        }
+        try {
+            List<String> fieldList = new ArrayList<>(fields);
+            List<Object> values = redisTemplate.opsForHash().multiGet(key, fieldList);
+            for (int i = 0; i < fieldList.size(); i++) {
+                if (values.get(i) != null) {
+                    result.put(fieldList.get(i), (String) values.get(i));
+                }
+            }
+        } catch (Exception e) {
+            log.error("fail multiGetHash redis key:{}, errorMsg:{}", key, e.getMessage());
+        }
+        return result;
+    }
+
+    /**
+     * hash类型，一次HSET设置同一个key下的多个field
+     *
+     * @param key
+     * @param values
+     */
+    public void setHashAll(String key, Map<String, String> values) {
+        if (values == null || values.isEmpty()) {
+            return;
+        }
+        try {
+            redisTemplate.opsForHash().putAll(key, values);
+        } catch (Exception e) {
+            log.error("fail setHashAll redis key:{}, errorMsg:{}", key, e.getMessage());
+        }
+    }
+
+    /**
+     * hash类型，批量获取多个key的全部field
+     * 单机通过pipeline一次往返完成；集群不支持pipeline，逐个key获取
+     *
+     * @param keys
+     * @return key和hash内容的映射，不存在的key不会出现在结果中
+     */
+    public Map<String, Map<String, String>> multiGetHashAll(Collection<String> keys) {
+        Map<String, Map<String, String>> result = new HashMap<>();
+        if (keys == null || keys.isEmpty()) {
+            return result;
+        }
+        try {
+            List<String> keyList = new ArrayList<>(keys);
+            List<Object> values;
+            if (isCluster()) {
+                values = new ArrayList<>(keyList.size());
+                for (String key : keyList) {
+                    values.add(redisTemplate.opsForHash().entries(key));
+                }
+            } else {
+                values = redisTemplate.executePipelined(new SessionCallback<Object>() {
+                    @Override
+                    public Object execute(RedisOperations operations) throws DataAccessException {
+                        for (String key : keyList) {
+                            operations.opsForHash().entries(key);
+                        }
+                        return null;
+                    }
+                });
+            }
+            for (int i = 0; i < keyList.size(); i++) {
+                Map<String, String> entries = (Map<String, String>) values.get(i);
+                if (entries != null && !entries.isEmpty()) {
+                    result.put(keyList.get(i), entries);
+                }
+            }
+        } catch (Exception e) {
+            log.error("fail multiGetHashAll redis keys size:{}, errorMsg:{}", keys.size(), e.getMessage());
+        }
+        return result;
+    }
+
+    /**
+     * 执行返回整数的lua脚本，参数按原始字符串传入，不经过value的序列化器
+     *
+     * @param script 脚本，优先用EVALSHA执行
+     * @param keys 脚本中的KEYS，集群模式下需要在同一个slot
+     * @param args 脚本中的ARGV
+     * @return 脚本返回值，执行失败时返回null
+     */
+    public Long executeScript(RedisScript<Long> script, List<String> keys, String... args) {
+        try {
+            return (Long) redisTemplate.execute(script, RedisSerializer.string(), RedisSerializer.string(), keys,
+                    (Object[]) args);
+        } catch (Exception e) {
+            log.error("fail execute script redis keys:{}, errorMsg:{}", keys, e.getMessage());
+        }
+        return null;
+    }
+
+    /**
+     * 执行写入并设置过期时间的脚本，参数已按对应类型的序列化器序列化，最后追加毫秒级过期时间
+     */
+    private Long executeWithExpire(DefaultRedisScript<Long> script, String key, List<byte[]> args, int time, TimeUnit timeUnit) {
+        return executeWithExpire(script, Collections.singletonList(key), args, time, timeUnit);
+    }
+
+    private Long executeWithExpire(DefaultRedisScript<Long> script, List<String> keys, List<byte[]> args, int time,
+                                   TimeUnit timeUnit) {
+        args.add(RedisSerializer.string().serialize(String.valueOf(timeUnit.toMillis(time))));
+        return (Long) redisTemplate.execute(script, RedisSerializer.byteArray(), RedisSerializer.byteArray(),
+                keys, args.toArray());
+    }
+
+    private List<byte[]> serializeValues(String... values) {
+        List<byte[]> args = new ArrayList<>(values.length + 1);
+        for (String value : values) {
+            args.add(redisTemplate.getValueSerializer().serialize(value));
+        }
+        return args;
+    }
+
+    /**
+     * 先执行写命令再设置过期时间，ARGV最后一个参数为毫秒级过期时间，返回写命令的结果
+     */
+    private static DefaultRedisScript<Long> writeWithExpireScript(String command) {
+        return new DefaultRedisScript<>(
+                "local ttl = table.remove(ARGV) " +
+                "local result = redis.call('" + command + "', KEYS[1], unpack(ARGV)) " +
+                "redis.call('PEXPIRE', KEYS[1], ttl) " +
+                "return result", Long.class);
+    }
+
+    /**
+     * 是否连接的是redis集群
+     */
+    private boolean isCluster() {
+        RedisConnectionFactory factory = redisTemplate.getConnectionFactory();
+        return factory instanceof JedisConnectionFactory && ((JedisConnectionFactory) factory).isRedisClusterAware();
+    }
+
+    /**
+     * 集群模式下按slot分组，保证每组的key可以用一条多key命令完成；单机模式不分组
+     */
+    private Collection<List<String>> groupKeys(Collection<String> keys) {
+        if (!isCluster()) {
+            return Collections.singletonList(new ArrayList<>(keys));
+        }
+        Map<Integer, List<String>> groups = new LinkedHashMap<>();
+        for (String key : keys) {
+            groups.computeIfAbsent(ClusterSlotHashUtil.calculateSlot(key), slot -> new ArrayList<>()).add(key);
+        }
+        return groups.values();
+    }
 }
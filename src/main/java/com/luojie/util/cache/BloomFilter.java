@@ -0,0 +1,112 @@
+package com.luojie.util.cache;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 进程内的布隆过滤器，判断不存在时一定不存在，判断存在时有fpp的概率误判
+ * 位数 m = -n * ln(p) / (ln2)^2，哈希次数 k = m / n * ln2，n为预计元素个数，p为误判率
+ * 元素个数超过预计值后误判率会上升，需要按新的数据量重建；只能添加，不能删除
+ * 用AtomicLongArray保存位，多线程同时添加和查询是安全的
+ */
+public class BloomFilter {
+
+    private final AtomicLongArray bits;
+
+    private final long bitSize;
+
+    private final int hashCount;
+
+    /**
+     * @param expectedInsertions 预计元素个数
+     * @param fpp 期望的误判率，0~1之间
+     */
+    public BloomFilter(long expectedInsertions, double fpp) {
+        if (expectedInsertions <= 0) {
+            throw new IllegalArgumentException("expectedInsertions must be positive");
+        }
+        if (fpp <= 0 || fpp >= 1) {
+            throw new IllegalArgumentException("fpp must be between 0 and 1");
+        }
+        long m = (long) Math.ceil(-expectedInsertions * Math.log(fpp) / (Math.log(2) * Math.log(2)));
+        int words = (int) Math.min(Integer.MAX_VALUE - 8, (m + 63) >>> 6);
+        this.bits = new AtomicLongArray(words);
+        this.bitSize = (long) words << 6;
+        this.hashCount = Math.max(1, (int) Math.round((double) bitSize / expectedInsertions * Math.log(2)));
+    }
+
+    /**
+     * 添加元素
+     *
+     * @return 有位从0变为1时返回true，即之前一定不存在
+     */
+    public boolean put(String value) {
+        long hash = hash(value);
+        long h1 = (int) hash;
+        long h2 = (int) (hash >>> 32);
+        boolean changed = false;
+        for (int i = 1; i <= hashCount; i++) {
+            long index = indexOf(h1 + i * h2);
+            long mask = 1L << index;
+            int word = (int) (index >>> 6);
+            if ((bits.get(word) & mask) == 0) {
+                bits.getAndAccumulate(word, mask, (a, b) -> a | b);
+                changed = true;
+            }
+        }
+        return changed;
+    }
+
+    /**
+     * 元素是否可能存在，返回false时一定不存在
+     */
+    public boolean mightContain(String value) {
+        long hash = hash(value);
+        long h1 = (int) hash;
+        long h2 = (int) (hash >>> 32);
+        for (int i = 1; i <= hashCount; i++) {
+            long index = indexOf(h1 + i * h2);
+            if ((bits.get((int) (index >>> 6)) & (1L << index)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public long getBitSize() {
+        return bitSize;
+    }
+
+    public int getHashCount() {
+        return hashCount;
+    }
+
+    /**
+     * 位数组占用的内存，单位字节
+     */
+    public long getMemoryBytes() {
+        return bitSize >>> 3;
+    }
+
+    private long indexOf(long combined) {
+        // 负数取反，保证下标非负
+        return (combined < 0 ? ~combined : combined) % bitSize;
+    }
+
+    /**
+     * 对UTF-8字节做FNV-1a，再用murmur3的fmix64打散，高低32位作为两个独立的哈希
+     */
+    private static long hash(String value) {
+        long h = 0xcbf29ce484222325L;
+        for (byte b : value.getBytes(StandardCharsets.UTF_8)) {
+            h ^= b;
+            h *= 0x100000001b3L;
+        }
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb3fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
@@ -0,0 +1,255 @@
+package com.luojie.util.cache;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.cache.support.AbstractValueAdaptingCache;
+import org.springframework.data.redis.core.Cursor;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.ScanOptions;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 给@Cacheable使用的缓存：进程内NearCache，可选redis作为二级缓存
+ * 本地缓存限制条数和写入后的存活时间，二级缓存使用相同的过期时间，key为 cache:缓存名:key
+ * evict/clear会通过BoundedCacheManager通知其他节点清掉本地缓存；put只在值和旧值(本地缓存或二级缓存中的)不同时才通知，
+ * @Cacheable未命中后的put和sync=true时加载的值只写入缓存，不会让其他节点互相清掉同一个key，也不依赖redis发布消息
+ * 本地缓存(redis-enabled=false)在其他节点上的旧值看不到，@CachePut更新后其他节点最多在expireAfterWrite后读到新值
+ * 通过BoundedCacheManager.getCache获取
+ */
+@Slf4j
+public class BoundedCache extends AbstractValueAdaptingCache {
+
+    private final String name;
+
+    private final NearCache<Object> nearCache;
+
+    private final Duration expireAfterWrite;
+
+    /**
+     * 为null时不使用二级缓存
+     */
+    private final RedisTemplate<String, Object> redisTemplate;
+
+    private final BoundedCacheManager manager;
+
+    /**
+     * sync=true时同一个key并发未命中只有一个线程执行加载
+     */
+    private final SingleFlight<String, Object> singleFlight = new SingleFlight<>();
+
+    private final LongAdder hits = new LongAdder();
+
+    private final LongAdder misses = new LongAdder();
+
+    private final LongAdder puts = new LongAdder();
+
+    BoundedCache(String name, int maximumSize, Duration expireAfterWrite, RedisTemplate<String, Object> redisTemplate,
+                 BoundedCacheManager manager) {
+        super(true);
+        this.name = name;
+        this.nearCache = new NearCache<>(maximumSize, expireAfterWrite.toNanos());
+        this.expireAfterWrite = expireAfterWrite;
+        this.redisTemplate = redisTemplate;
+        this.manager = manager;
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public Object getNativeCache() {
+        return nearCache;
+    }
+
+    @Override
+    protected Object lookup(Object key) {
+        String cacheKey = String.valueOf(key);
+        Object value = nearCache.get(cacheKey);
+        if (value == null && redisTemplate != null) {
+            long generation = nearCache.generation();
+            try {
+                value = redisTemplate.opsForValue().get(redisKey(cacheKey));
+            } catch (Exception e) {
+                log.error("fail get cache:{}, key:{}, errorMsg:{}", name, cacheKey, e.getMessage());
+            }
+            if (value != null) {
+                nearCache.put(cacheKey, value, generation);
+            }
+        }
+        if (value == null) {
+            misses.increment();
+        } else {
+            hits.increment();
+        }
+        return value;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T get(Object key, Callable<T> valueLoader) {
+        ValueWrapper wrapper = get(key);
+        if (wrapper != null) {
+            return (T) wrapper.get();
+        }
+        String cacheKey = String.valueOf(key);
+        Object storeValue = singleFlight.load(cacheKey, () -> {
+            // 上一次加载可能刚刚结束，再看一次本地缓存
+            Object loaded = nearCache.get(cacheKey);
+            if (loaded != null) {
+                return loaded;
+            }
+            // 加载期间发生失效时不写入本地缓存
+            long generation = nearCache.generation();
+            try {
+                loaded = toStoreValue(valueLoader.call());
+            } catch (Exception e) {
+                throw new ValueRetrievalException(key, valueLoader, e);
+            }
+            fill(cacheKey, loaded, generation);
+            return loaded;
+        });
+        return (T) fromStoreValue(storeValue);
+    }
+
+    @Override
+    public void put(Object key, Object value) {
+        String cacheKey = String.valueOf(key);
+        Object storeValue = toStoreValue(value);
+        Object previous = nearCache.peek(cacheKey);
+        if (previous == null && redisTemplate != null) {
+            try {
+                previous = redisTemplate.opsForValue().get(redisKey(cacheKey));
+            } catch (Exception e) {
+                log.error("fail get cache:{}, key:{}, errorMsg:{}", name, cacheKey, e.getMessage());
+            }
+        }
+        writeRedis(cacheKey, storeValue);
+        // 让正在进行的加载放弃写入旧值
+        nearCache.invalidate(cacheKey);
+        nearCache.put(cacheKey, storeValue, nearCache.generation());
+        puts.increment();
+        if (previous != null && !Objects.equals(previous, storeValue)) {
+            manager.publishEvict(name, cacheKey);
+        }
+    }
+
+    @Override
+    public void evict(Object key) {
+        String cacheKey = String.valueOf(key);
+        if (redisTemplate != null) {
+            try {
+                redisTemplate.delete(redisKey(cacheKey));
+            } catch (Exception e) {
+                log.error("fail evict cache:{}, key:{}, errorMsg:{}", name, cacheKey, e.getMessage());
+            }
+        }
+        nearCache.invalidate(cacheKey);
+        manager.publishEvict(name, cacheKey);
+    }
+
+    @Override
+    public void clear() {
+        if (redisTemplate != null) {
+            clearRedis();
+        }
+        nearCache.clear();
+        manager.publishEvict(name, null);
+    }
+
+    /**
+     * 只清除本机的本地缓存，收到其他节点的通知时调用
+     *
+     * @param key 为null时清空
+     */
+    void invalidateLocal(String key) {
+        if (key == null) {
+            nearCache.clear();
+        } else {
+            nearCache.invalidate(key);
+        }
+    }
+
+    public int getSize() {
+        return nearCache.size();
+    }
+
+    public long getHitCount() {
+        return hits.sum();
+    }
+
+    public long getMissCount() {
+        return misses.sum();
+    }
+
+    public long getPutCount() {
+        return puts.sum();
+    }
+
+    /**
+     * 本地缓存因为容量满了淘汰的条数
+     */
+    public long getEvictionCount() {
+        return nearCache.evictionCount();
+    }
+
+    /**
+     * 写入加载的值，不通知其他节点
+     *
+     * @param generation 加载之前的generation，期间发生过失效则不写入本地缓存
+     */
+    private void fill(String cacheKey, Object storeValue, long generation) {
+        writeRedis(cacheKey, storeValue);
+        nearCache.put(cacheKey, storeValue, generation);
+        puts.increment();
+    }
+
+    private void writeRedis(String cacheKey, Object storeValue) {
+        if (redisTemplate == null) {
+            return;
+        }
+        try {
+            redisTemplate.opsForValue().set(redisKey(cacheKey), storeValue, expireAfterWrite);
+        } catch (Exception e) {
+            log.error("fail put cache:{}, key:{}, errorMsg:{}", name, cacheKey, e.getMessage());
+        }
+    }
+
+    /**
+     * 用SCAN分批删除redis中这个缓存的所有key，不使用会阻塞redis的KEYS
+     */
+    private void clearRedis() {
+        try {
+            redisTemplate.execute((RedisCallback<Void>) connection -> {
+                ScanOptions options = ScanOptions.scanOptions().match(redisKey("*")).count(1000).build();
+                List<byte[]> batch = new ArrayList<>();
+                try (Cursor<byte[]> cursor = connection.keyCommands().scan(options)) {
+                    while (cursor.hasNext()) {
+                        batch.add(cursor.next());
+                        if (batch.size() >= 1000) {
+                            connection.keyCommands().del(batch.toArray(new byte[0][]));
+                            batch.clear();
+                        }
+                    }
+                }
+                if (!batch.isEmpty()) {
+                    connection.keyCommands().del(batch.toArray(new byte[0][]));
+                }
+                return null;
+            });
+        } catch (Exception e) {
+            log.error("fail clear cache:{}, errorMsg:{}", name, e.getMessage());
+        }
+    }
+
+    private String redisKey(String key) {
+        return "cache:" + name + ":" + key;
+    }
+}
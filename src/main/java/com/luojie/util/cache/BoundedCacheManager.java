@@ -0,0 +1,177 @@
+package com.luojie.util.cache;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.binder.cache.CacheMeterBinder;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.convert.DurationStyle;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.core.env.Environment;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * @Cacheable/@CacheEvict使用的CacheManager，每个缓存都是有界、按写入时间过期的BoundedCache
+ * 单个缓存的配置：cache.spring.caches.缓存名.maximum-size/expire-after-write/redis-enabled，没有配置时用cache.spring.xxx
+ * 统计数据按micrometer的cache.gets/cache.puts/cache.evictions/cache.size注册，可在/actuator/metrics查看，
+ * /actuator/caches可以查看和清空缓存
+ * 节点之间通过redis发布订阅同步本地缓存的失效，消息格式：节点id|缓存名|key，没有key表示清空
+ */
+@Component
+@Slf4j
+public class BoundedCacheManager implements CacheManager, MessageListener {
+
+    private static final String SEPARATOR = "|";
+
+    private static final String PREFIX = "cache.spring.";
+
+    @Value("${cache.spring.channel:cache:spring:evict}")
+    private String channel;
+
+    @Autowired
+    private Environment environment;
+
+    @Autowired
+    private RedisTemplate redisTemplate;
+
+    @Autowired
+    private RedisMessageListenerContainer listenerContainer;
+
+    @Autowired
+    private ObjectProvider<MeterRegistry> meterRegistryProvider;
+
+    private MeterRegistry meterRegistry;
+
+    private final String nodeId = UUID.randomUUID().toString();
+
+    private final ConcurrentMap<String, BoundedCache> caches = new ConcurrentHashMap<>();
+
+    @PostConstruct
+    public void init() {
+        meterRegistry = meterRegistryProvider.getIfAvailable(SimpleMeterRegistry::new);
+        listenerContainer.addMessageListener(this, new ChannelTopic(channel));
+    }
+
+    /**
+     * 获取缓存，第一次使用时按配置创建
+     */
+    @Override
+    public Cache getCache(String name) {
+        return caches.computeIfAbsent(name, this::createCache);
+    }
+
+    @Override
+    public Collection<String> getCacheNames() {
+        return Collections.unmodifiableSet(caches.keySet());
+    }
+
+    /**
+     * 通知其他节点清除本地缓存
+     *
+     * @param key 为null时清空整个缓存
+     */
+    void publishEvict(String cacheName, String key) {
+        try {
+            redisTemplate.convertAndSend(channel, nodeId + SEPARATOR + cacheName + (key == null ? "" : SEPARATOR + key));
+        } catch (Exception e) {
+            log.error("fail publish cache evict cache:{}, key:{}, errorMsg:{}", cacheName, key, e.getMessage());
+        }
+    }
+
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        Object body = redisTemplate.getValueSerializer().deserialize(message.getBody());
+        if (!(body instanceof String)) {
+            return;
+        }
+        String[] parts = ((String) body).split("\\|", 3);
+        if (parts.length < 2 || nodeId.equals(parts[0])) {
+            return;
+        }
+        BoundedCache cache = caches.get(parts[1]);
+        if (cache != null) {
+            cache.invalidateLocal(parts.length == 3 ? parts[2] : null);
+        }
+    }
+
+    private BoundedCache createCache(String name) {
+        if (name.contains(SEPARATOR)) {
+            throw new IllegalArgumentException("cache name must not contain " + SEPARATOR);
+        }
+        int maximumSize = Integer.parseInt(property(name, "maximum-size", "10000"));
+        Duration expireAfterWrite = DurationStyle.detectAndParse(property(name, "expire-after-write", "10m"));
+        boolean redisEnabled = Boolean.parseBoolean(property(name, "redis-enabled", "false"));
+        BoundedCache cache = new BoundedCache(name, maximumSize, expireAfterWrite,
+                redisEnabled ? redisTemplate : null, this);
+        new Metrics(cache).bindTo(meterRegistry);
+        log.info("create cache:{}, maximumSize:{}, expireAfterWrite:{}, redisEnabled:{}", name, maximumSize,
+                expireAfterWrite, redisEnabled);
+        return cache;
+    }
+
+    private String property(String cacheName, String key, String defaultValue) {
+        String value = environment.getProperty(PREFIX + "caches." + cacheName + "." + key);
+        return value != null ? value : environment.getProperty(PREFIX + key, defaultValue);
+    }
+
+    /**
+     * 按micrometer的标准缓存指标注册，tag为cache=缓存名
+     */
+    private static final class Metrics extends CacheMeterBinder<BoundedCache> {
+
+        private Metrics(BoundedCache cache) {
+            super(cache, cache.getName(), Tags.of("cache.manager", "boundedCacheManager"));
+        }
+
+        @Override
+        protected Long size() {
+            BoundedCache cache = getCache();
+            return cache == null ? null : (long) cache.getSize();
+        }
+
+        @Override
+        protected long hitCount() {
+            BoundedCache cache = getCache();
+            return cache == null ? 0 : cache.getHitCount();
+        }
+
+        @Override
+        protected Long missCount() {
+            BoundedCache cache = getCache();
+            return cache == null ? null : cache.getMissCount();
+        }
+
+        @Override
+        protected Long evictionCount() {
+            BoundedCache cache = getCache();
+            return cache == null ? null : cache.getEvictionCount();
+        }
+
+        @Override
+        protected long putCount() {
+            BoundedCache cache = getCache();
+            return cache == null ? 0 : cache.getPutCount();
+        }
+
+        @Override
+        protected void bindImplementationSpecificMetrics(MeterRegistry registry) {
+        }
+    }
+}
@@ -0,0 +1,194 @@
+package com.luojie.util.cache;
+
+import com.luojie.config.trace.TraceIdRunnable;
+import com.luojie.util.RedisServiceUtil;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * 提前刷新的cache-aside读取(XFetch)，热点key过期时读请求不用等数据库
+ * redis中用hash保存：value=数据，delta=上次查询数据库的耗时，expiry=逻辑过期时间
+ * 1. 逻辑过期前，按 now - delta * beta * ln(random) >= expiry 的概率提前刷新，越接近过期、查询越慢、访问越多越容易触发
+ * 2. 逻辑过期后的staleTime内仍返回旧数据，同时异步刷新
+ * 3. redis中没有数据时才同步查询数据库，同一个key只有一个线程查询
+ * 刷新在asyncExecutor中执行，同一个key同时只有一个刷新任务；hash格式与普通string不兼容，需要使用单独的key
+ */
+@Component
+@Slf4j
+public class EarlyRefreshCache {
+
+    private static final String VALUE = "value";
+    private static final String DELTA = "delta";
+    private static final String EXPIRY = "expiry";
+    private static final List<String> FIELDS = Arrays.asList(VALUE, DELTA, EXPIRY);
+
+    /**
+     * 提前刷新的积极程度，大于1更早刷新，小于1更晚刷新
+     */
+    @Value("${cache.early-refresh.beta:1.0}")
+    private double beta;
+
+    /**
+     * 逻辑过期后仍可返回旧数据的时间，redis中的实际过期时间为逻辑过期时间加上该时间
+     */
+    @Value("${cache.early-refresh.stale-time:10m}")
+    private Duration staleTime;
+
+    @Autowired
+    private RedisServiceUtil redisServiceUtil;
+
+    @Autowired
+    @Qualifier("asyncExecutor")
+    private Executor asyncExecutor;
+
+    @Autowired
+    private ObjectProvider<MeterRegistry> meterRegistryProvider;
+
+    private final SingleFlight<String, String> singleFlight = new SingleFlight<>();
+
+    /**
+     * 正在异步刷新的key
+     */
+    private final Set<String> refreshing = ConcurrentHashMap.newKeySet();
+
+    private Counter hits;
+
+    private Counter earlyRefreshes;
+
+    private Counter staleHits;
+
+    private Counter misses;
+
+    @PostConstruct
+    public void init() {
+        MeterRegistry meterRegistry = meterRegistryProvider.getIfAvailable(SimpleMeterRegistry::new);
+        hits = requests(meterRegistry, "hit");
+        earlyRefreshes = requests(meterRegistry, "early_refresh");
+        staleHits = requests(meterRegistry, "stale");
+        misses = requests(meterRegistry, "miss");
+    }
+
+    /**
+     * 读取缓存，需要时提前异步刷新
+     *
+     * @param key redis的key
+     * @param loader 查询数据库
+     * @param time 逻辑过期时间
+     * @return 缓存的数据，可能是刷新完成前的旧数据
+     */
+    public String get(String key, Supplier<String> loader, int time, TimeUnit timeUnit) {
+        Map<String, String> entry = redisServiceUtil.multiGetHash(key, FIELDS);
+        String value = entry.get(VALUE);
+        if (value == null) {
+            misses.increment();
+            return singleFlight.load(key, () -> load(key, loader, time, timeUnit));
+        }
+        long now = System.currentTimeMillis();
+        long expiry = parseLong(entry.get(EXPIRY));
+        if (now >= expiry) {
+            staleHits.increment();
+            refreshAsync(key, loader, time, timeUnit);
+        } else if (shouldRefreshEarly(now, parseLong(entry.get(DELTA)), expiry)) {
+            earlyRefreshes.increment();
+            refreshAsync(key, loader, time, timeUnit);
+        } else {
+            hits.increment();
+        }
+        return value;
+    }
+
+    public long getHitCount() {
+        return (long) hits.count();
+    }
+
+    public long getEarlyRefreshCount() {
+        return (long) earlyRefreshes.count();
+    }
+
+    public long getStaleHitCount() {
+        return (long) staleHits.count();
+    }
+
+    public long getMissCount() {
+        return (long) misses.count();
+    }
+
+    private boolean shouldRefreshEarly(long now, long delta, long expiry) {
+        // ln(random)为负数，相当于给当前时间加上一个随机的提前量
+        return now - delta * beta * Math.log(ThreadLocalRandom.current().nextDouble()) >= expiry;
+    }
+
+    private void refreshAsync(String key, Supplier<String> loader, int time, TimeUnit timeUnit) {
+        if (!refreshing.add(key)) {
+            return;
+        }
+        try {
+            asyncExecutor.execute(TraceIdRunnable.wrap(() -> {
+                try {
+                    load(key, loader, time, timeUnit);
+                } catch (Exception e) {
+                    log.error("fail refresh cache key:{}, errorMsg:{}", key, e.getMessage());
+                } finally {
+                    refreshing.remove(key);
+                }
+            }));
+        } catch (RejectedExecutionException e) {
+            // 线程池满了，下次读取时再刷新
+            refreshing.remove(key);
+            log.warn("cache refresh rejected key:{}", key);
+        }
+    }
+
+    private String load(String key, Supplier<String> loader, int time, TimeUnit timeUnit) {
+        long start = System.currentTimeMillis();
+        String value = loader.get();
+        long now = System.currentTimeMillis();
+        if (StringUtils.isNotEmpty(value)) {
+            Map<String, String> entry = new HashMap<>(4);
+            entry.put(VALUE, value);
+            entry.put(DELTA, String.valueOf(now - start));
+            entry.put(EXPIRY, String.valueOf(now + timeUnit.toMillis(time)));
+            int physicalSeconds = (int) Math.min(Integer.MAX_VALUE, timeUnit.toSeconds(time) + staleTime.getSeconds());
+            redisServiceUtil.setHashAllWithExpire(key, entry, Math.max(physicalSeconds, 1), TimeUnit.SECONDS);
+        }
+        return value;
+    }
+
+    private static long parseLong(String value) {
+        if (value == null) {
+            return 0;
+        }
+        try {
+            return Long.parseLong(value);
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    private Counter requests(MeterRegistry meterRegistry, String result) {
+        return Counter.builder("early.refresh.cache.requests").description("提前刷新缓存的读取次数")
+                .tag("result", result).register(meterRegistry);
+    }
+}
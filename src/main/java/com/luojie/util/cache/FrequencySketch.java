@@ -0,0 +1,85 @@
+package com.luojie.util.cache;
+
+/**
+ * 近似统计key访问频率的Count-Min Sketch，每个计数器4位，最大15
+ * 累计记录次数达到容量的10倍时所有计数减半，让频率随时间衰减
+ * 计数器的更新不加锁，并发下偶尔丢失一次计数不影响淘汰判断
+ */
+final class FrequencySketch {
+
+    private static final long[] SEEDS = {
+            0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L, 0x9ae16a3b2f90404fL, 0xcbf29ce484222325L};
+
+    private static final long RESET_MASK = 0x7777777777777777L;
+
+    /**
+     * 每个long存16个4位计数器
+     */
+    private final long[] table;
+
+    private final int tableMask;
+
+    private final int sampleSize;
+
+    private int additions;
+
+    FrequencySketch(int maximumSize) {
+        int size = Integer.highestOneBit(Math.max(maximumSize, 16) - 1) << 1;
+        this.table = new long[size];
+        this.tableMask = size - 1;
+        this.sampleSize = Math.max(maximumSize, 16) * 10;
+    }
+
+    /**
+     * 获取key的估算访问次数，0~15
+     */
+    int frequency(Object key) {
+        int hash = spread(key.hashCode());
+        int frequency = Integer.MAX_VALUE;
+        for (int i = 0; i < 4; i++) {
+            long h = rehash(hash, i);
+            int index = (int) h & tableMask;
+            int offset = (int) ((h >>> 32) & 15) << 2;
+            frequency = Math.min(frequency, (int) ((table[index] >>> offset) & 0xF));
+        }
+        return frequency;
+    }
+
+    /**
+     * 记录一次访问，计数器已满时不再写内存，避免热点key在多线程间反复写同一个缓存行
+     */
+    void increment(Object key) {
+        int hash = spread(key.hashCode());
+        boolean added = false;
+        for (int i = 0; i < 4; i++) {
+            long h = rehash(hash, i);
+            int index = (int) h & tableMask;
+            int offset = (int) ((h >>> 32) & 15) << 2;
+            long value = table[index];
+            if (((value >>> offset) & 0xF) != 0xF) {
+                table[index] = value + (1L << offset);
+                added = true;
+            }
+        }
+        if (added && ++additions >= sampleSize) {
+            reset();
+        }
+    }
+
+    private void reset() {
+        for (int i = 0; i < table.length; i++) {
+            table[i] = (table[i] >>> 1) & RESET_MASK;
+        }
+        additions = sampleSize / 2;
+    }
+
+    private static int spread(int hash) {
+        hash = ((hash >>> 16) ^ hash) * 0x45d9f3b;
+        return (hash >>> 16) ^ hash;
+    }
+
+    private static long rehash(int hash, int i) {
+        long h = (hash + SEEDS[i]) * SEEDS[i];
+        return h + (h >>> 29);
+    }
+}
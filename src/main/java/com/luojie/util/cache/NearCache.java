@@ -0,0 +1,201 @@
+package com.luojie.util.cache;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 进程内的一级缓存，限制条数和写入后的存活时间
+ * 淘汰参考W-TinyLFU：满了之后从轮转的迭代器里取几个候选，淘汰访问频率最低的，
+ * 新key的访问频率不高于被淘汰的候选时不放进缓存，避免一次性的key把热点数据挤出去
+ * 读操作和覆盖已有的key不加锁，新增key时在evictionLock内检查容量、淘汰和写入，条数不会超过maximumSize
+ *
+ * @param <V> 缓存的数据类型
+ */
+final class NearCache<V> {
+
+    /**
+     * 每次淘汰时比较的候选数量
+     */
+    private static final int SAMPLE_SIZE = 8;
+
+    private final ConcurrentHashMap<String, Entry<V>> map;
+
+    private final FrequencySketch sketch;
+
+    private final int maximumSize;
+
+    private final long expireAfterWriteNanos;
+
+    private final ReentrantLock evictionLock = new ReentrantLock();
+
+    /**
+     * 每次失效都会加1，读二级缓存前记下，写入一级缓存时不一致说明期间发生过失效，放弃写入
+     */
+    private final AtomicLong generation = new AtomicLong();
+
+    /**
+     * 因为容量满了被淘汰的条数，不包括过期和主动失效
+     */
+    private final LongAdder evictions = new LongAdder();
+
+    /**
+     * 轮转的候选迭代器，只在evictionLock内使用
+     */
+    private Iterator<Map.Entry<String, Entry<V>>> clock;
+
+    NearCache(int maximumSize, long expireAfterWriteNanos) {
+        this.maximumSize = maximumSize;
+        this.expireAfterWriteNanos = expireAfterWriteNanos;
+        this.map = new ConcurrentHashMap<>(Math.min(maximumSize, 1 << 16));
+        this.sketch = new FrequencySketch(maximumSize);
+    }
+
+    V get(String key) {
+        sketch.increment(key);
+        Entry<V> entry = map.get(key);
+        if (entry == null) {
+            return null;
+        }
+        if (entry.isExpired(System.nanoTime())) {
+            map.remove(key, entry);
+            return null;
+        }
+        return entry.value;
+    }
+
+    /**
+     * 和get一样，但不计入访问频率，用于写入前比较旧值
+     */
+    V peek(String key) {
+        Entry<V> entry = map.get(key);
+        if (entry == null || entry.isExpired(System.nanoTime())) {
+            return null;
+        }
+        return entry.value;
+    }
+
+    long generation() {
+        return generation.get();
+    }
+
+    /**
+     * 写入一级缓存
+     * @param expectedGeneration 读取数据之前的generation，期间发生过失效则不写入
+     * @return 是否写入
+     */
+    boolean put(String key, V value, long expectedGeneration) {
+        if (maximumSize <= 0 || generation.get() != expectedGeneration) {
+            return false;
+        }
+        Entry<V> entry = new Entry<>(value, System.nanoTime() + expireAfterWriteNanos);
+        if (map.replace(key, entry) == null && !insert(key, entry)) {
+            return false;
+        }
+        // 写入过程中发生了失效，撤销本次写入
+        if (generation.get() != expectedGeneration) {
+            map.remove(key, entry);
+            return false;
+        }
+        return true;
+    }
+
+    void invalidate(String key) {
+        generation.incrementAndGet();
+        map.remove(key);
+    }
+
+    /**
+     * 清空缓存，正在进行的写入也会被放弃
+     */
+    void clear() {
+        generation.incrementAndGet();
+        map.clear();
+    }
+
+    int size() {
+        return map.size();
+    }
+
+    long evictionCount() {
+        return evictions.sum();
+    }
+
+    /**
+     * 新增key：检查容量和写入放在同一个锁内，并发写入不同的新key时不会超过maximumSize
+     * @return 是否写入，新key的访问频率不高于被淘汰的候选时不写入
+     */
+    private boolean insert(String key, Entry<V> entry) {
+        evictionLock.lock();
+        try {
+            if (map.size() >= maximumSize && !makeRoomFor(key)) {
+                return false;
+            }
+            map.put(key, entry);
+            return true;
+        } finally {
+            evictionLock.unlock();
+        }
+    }
+
+    /**
+     * 淘汰到有空位为止，只在evictionLock内调用
+     */
+    private boolean makeRoomFor(String key) {
+        int candidateFrequency = sketch.frequency(key);
+        while (map.size() >= maximumSize) {
+            String victim = null;
+            int victimFrequency = Integer.MAX_VALUE;
+            long now = System.nanoTime();
+            for (int i = 0; i < SAMPLE_SIZE; i++) {
+                if (clock == null || !clock.hasNext()) {
+                    clock = map.entrySet().iterator();
+                    if (!clock.hasNext()) {
+                        return true;
+                    }
+                }
+                Map.Entry<String, Entry<V>> sample = clock.next();
+                if (sample.getValue().isExpired(now)) {
+                    // 过期的直接淘汰
+                    victim = sample.getKey();
+                    victimFrequency = -1;
+                    break;
+                }
+                int frequency = sketch.frequency(sample.getKey());
+                if (frequency < victimFrequency) {
+                    victim = sample.getKey();
+                    victimFrequency = frequency;
+                }
+            }
+            if (victim == null) {
+                return true;
+            }
+            if (candidateFrequency <= victimFrequency) {
+                return false;
+            }
+            if (map.remove(victim) != null && victimFrequency >= 0) {
+                evictions.increment();
+            }
+        }
+        return true;
+    }
+
+    private static final class Entry<V> {
+
+        private final V value;
+
+        private final long expireAtNanos;
+
+        private Entry(V value, long expireAtNanos) {
+            this.value = value;
+            this.expireAtNanos = expireAtNanos;
+        }
+
+        private boolean isExpired(long now) {
+            return now - expireAtNanos >= 0;
+        }
+    }
+}
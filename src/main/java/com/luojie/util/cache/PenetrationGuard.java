@@ -0,0 +1,267 @@
+package com.luojie.util.cache;
+
+import com.luojie.util.RedisServiceUtil;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * 防缓存穿透的cache-aside读取，查询不存在的数据时不会每次都打到数据库
+ * 1. 空值缓存：数据库查不到时在redis写入空值标记，过期时间为cache.penetration.null-ttl
+ * 2. 布隆过滤器(可选)：先判断key是否可能存在，一定不存在时直接返回null，不访问redis和数据库
+ * 布隆过滤器由调用方通过rebuildBloomFilter从数据库全量构建，构建完成前不拦截；
+ * 新增数据后必须调用added(批量写入时每批调用addedAll)，通过redis发布订阅通知所有节点加入布隆过滤器，并删除空值缓存
+ */
+@Component
+@Slf4j
+public class PenetrationGuard implements MessageListener {
+
+    /**
+     * 空值标记，数据本身不能是这个值
+     */
+    static final String NULL_VALUE = "__NULL__";
+
+    /**
+     * 批量通知时key之间的分隔符，key不能包含换行
+     */
+    private static final String KEY_SEPARATOR = "\n";
+
+    /**
+     * 空值缓存的过期时间，也是新增数据在其他节点读到null的最长时间(通知丢失时)
+     */
+    @Value("${cache.penetration.null-ttl:60s}")
+    private Duration nullTtl;
+
+    @Value("${cache.penetration.bloom.enabled:false}")
+    private boolean bloomEnabled;
+
+    /**
+     * 预计数据量，和误判率一起决定布隆过滤器大小；实际数据量超过后误判率会上升，需要调大后重建
+     */
+    @Value("${cache.penetration.bloom.expected-insertions:1000000}")
+    private long expectedInsertions;
+
+    /**
+     * 布隆过滤器误判率，越小占用内存越大，0.01时每个元素约9.6位
+     */
+    @Value("${cache.penetration.bloom.fpp:0.01}")
+    private double fpp;
+
+    /**
+     * 新增数据的通知频道，消息内容为key
+     */
+    @Value("${cache.penetration.channel:cache:penetration}")
+    private String channel;
+
+    @Autowired
+    private RedisServiceUtil redisServiceUtil;
+
+    @Autowired
+    private RedisTemplate redisTemplate;
+
+    @Autowired
+    private RedisMessageListenerContainer listenerContainer;
+
+    @Autowired
+    private ObjectProvider<MeterRegistry> meterRegistryProvider;
+
+    private final SingleFlight<String, String> singleFlight = new SingleFlight<>();
+
+    private volatile BloomFilter bloomFilter;
+
+    /**
+     * 正在构建的布隆过滤器，构建期间收到的新增通知也要加入
+     */
+    private volatile BloomFilter building;
+
+    private Counter hits;
+
+    private Counter nullHits;
+
+    private Counter rejects;
+
+    private Counter loads;
+
+    @PostConstruct
+    public void init() {
+        MeterRegistry meterRegistry = meterRegistryProvider.getIfAvailable(SimpleMeterRegistry::new);
+        hits = requests(meterRegistry, "hit");
+        nullHits = requests(meterRegistry, "null_hit");
+        rejects = requests(meterRegistry, "bloom_reject");
+        loads = requests(meterRegistry, "load");
+        if (bloomEnabled) {
+            listenerContainer.addMessageListener(this, new ChannelTopic(channel));
+        }
+    }
+
+    /**
+     * 读取缓存，数据不存在时返回null
+     *
+     * @param key redis的key，也是布隆过滤器中的元素
+     * @param loader 查询数据库，查不到返回null
+     * @param time 数据的过期时间
+     */
+    public String get(String key, Supplier<String> loader, int time, TimeUnit timeUnit) {
+        BloomFilter filter = bloomFilter;
+        if (filter != null && !filter.mightContain(key)) {
+            rejects.increment();
+            return null;
+        }
+        String value = redisServiceUtil.get(key);
+        if (NULL_VALUE.equals(value)) {
+            nullHits.increment();
+            return null;
+        }
+        if (StringUtils.isNotEmpty(value)) {
+            hits.increment();
+            return value;
+        }
+        return singleFlight.load(key, () -> {
+            loads.increment();
+            // loader出错时直接抛出，不能缓存空值
+            String dbValue = loader.get();
+            if (StringUtils.isEmpty(dbValue)) {
+                redisServiceUtil.setWithExpire(key, NULL_VALUE, (int) nullTtl.toMillis(), TimeUnit.MILLISECONDS);
+                return null;
+            }
+            redisServiceUtil.setWithExpire(key, dbValue, time, timeUnit);
+            return dbValue;
+        });
+    }
+
+    /**
+     * 数据库新增数据后调用：所有节点加入布隆过滤器，并删除空值缓存
+     */
+    public void added(String key) {
+        addLocal(key);
+        if (bloomEnabled) {
+            try {
+                redisTemplate.convertAndSend(channel, key);
+            } catch (Exception e) {
+                log.error("fail publish penetration guard key:{}, errorMsg:{}", key, e.getMessage());
+            }
+        }
+        redisServiceUtil.delete(key);
+    }
+
+    /**
+     * 批量新增数据后调用，如csv导入、批量写入每写完一批：一条通知带上这一批的所有key，空值缓存按slot批量删除
+     */
+    public void addedAll(Collection<String> keys) {
+        if (keys == null || keys.isEmpty()) {
+            return;
+        }
+        keys.forEach(this::addLocal);
+        if (bloomEnabled) {
+            try {
+                redisTemplate.convertAndSend(channel, String.join(KEY_SEPARATOR, keys));
+            } catch (Exception e) {
+                log.error("fail publish penetration guard keys size:{}, errorMsg:{}", keys.size(), e.getMessage());
+            }
+        }
+        redisServiceUtil.multiDelete(keys);
+    }
+
+    /**
+     * 全量构建布隆过滤器，构建完成后替换旧的；构建期间新增的数据同时加入新旧两个过滤器
+     *
+     * @param source 遍历所有已存在的key，对每个key调用传入的Consumer
+     * @return 是否构建成功，未开启布隆过滤器时返回false
+     */
+    public boolean rebuildBloomFilter(Consumer<Consumer<String>> source) {
+        if (!bloomEnabled) {
+            return false;
+        }
+        long start = System.currentTimeMillis();
+        BloomFilter filter = new BloomFilter(expectedInsertions, fpp);
+        building = filter;
+        AtomicLong count = new AtomicLong();
+        try {
+            source.accept(key -> {
+                filter.put(key);
+                count.incrementAndGet();
+            });
+            // 先替换再清除building，中间收到的通知不会丢
+            bloomFilter = filter;
+        } catch (Exception e) {
+            log.error("fail build bloom filter, errorMsg:{}", e.getMessage());
+            return false;
+        } finally {
+            building = null;
+        }
+        if (count.get() > expectedInsertions) {
+            log.warn("bloom filter elements {} exceed expected {}, fpp will be higher than {}",
+                    count.get(), expectedInsertions, fpp);
+        }
+        log.info("bloom filter built, elements:{}, bits:{}, hashes:{}, memory:{}KB, cost:{}ms", count.get(),
+                filter.getBitSize(), filter.getHashCount(), filter.getMemoryBytes() >>> 10,
+                System.currentTimeMillis() - start);
+        return true;
+    }
+
+    public boolean isBloomEnabled() {
+        return bloomEnabled;
+    }
+
+    public long getRejectCount() {
+        return (long) rejects.count();
+    }
+
+    public long getNullHitCount() {
+        return (long) nullHits.count();
+    }
+
+    public long getLoadCount() {
+        return (long) loads.count();
+    }
+
+    public long getHitCount() {
+        return (long) hits.count();
+    }
+
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        Object body = redisTemplate.getValueSerializer().deserialize(message.getBody());
+        if (!(body instanceof String)) {
+            return;
+        }
+        for (String key : StringUtils.split((String) body, KEY_SEPARATOR)) {
+            addLocal(key);
+        }
+    }
+
+    private void addLocal(String key) {
+        BloomFilter filter = bloomFilter;
+        if (filter != null) {
+            filter.put(key);
+        }
+        BloomFilter next = building;
+        if (next != null) {
+            next.put(key);
+        }
+    }
+
+    private Counter requests(MeterRegistry meterRegistry, String result) {
+        return Counter.builder("penetration.guard.requests").description("防穿透缓存的读取次数")
+                .tag("result", result).register(meterRegistry);
+    }
+}
@@ -0,0 +1,67 @@
+package com.luojie.util.cache;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Supplier;
+
+/**
+ * 按key合并并发的加载请求：同一个key同时只有一个线程真正执行loader，其他线程等待同一个CompletableFuture的结果
+ * 不同的key互不影响，可以并行加载；加载结束后立即移除，不缓存结果，结果的缓存由调用方负责
+ *
+ * @param <K> key类型
+ * @param <V> 加载结果类型
+ */
+public class SingleFlight<K, V> {
+
+    private final ConcurrentMap<K, CompletableFuture<V>> inFlight = new ConcurrentHashMap<>();
+
+    /**
+     * 加载key对应的数据，同一个key正在加载时直接等待那次加载的结果
+     * loader抛出的异常会原样抛给所有等待的线程
+     *
+     * @param key key
+     * @param loader 实际的加载逻辑，只会在一个线程中执行
+     * @return 加载结果
+     */
+    public V load(K key, Supplier<V> loader) {
+        CompletableFuture<V> future = new CompletableFuture<>();
+        CompletableFuture<V> existing = inFlight.putIfAbsent(key, future);
+        if (existing != null) {
+            return await(existing);
+        }
+        try {
+            V value = loader.get();
+            future.complete(value);
+            return value;
+        } catch (Throwable e) {
+            future.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(key, future);
+        }
+    }
+
+    /**
+     * 正在加载的key数量
+     */
+    public int inFlightCount() {
+        return inFlight.size();
+    }
+
+    private static <V> V await(CompletableFuture<V> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw e;
+        }
+    }
+}
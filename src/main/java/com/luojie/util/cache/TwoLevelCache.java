@@ -0,0 +1,179 @@
+package com.luojie.util.cache;
+
+import com.luojie.util.RedisServiceUtil;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.apache.commons.lang3.StringUtils;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * 二级缓存：进程内NearCache + redis
+ * 读：一级缓存 -> redis -> 数据库(loader)，下层读到的数据会回填到上层
+ * 写/删除：先改redis，再清掉本机一级缓存，并通过redis发布订阅通知其他节点清掉一级缓存
+ * 发布订阅的消息可能丢失，一级缓存的存活时间就是其他节点最多读到旧数据的时间
+ * 通过TwoLevelCacheManager.getCache获取
+ */
+public class TwoLevelCache {
+
+    private final String name;
+
+    private final NearCache<String> nearCache;
+
+    private final RedisServiceUtil redisServiceUtil;
+
+    private final TwoLevelCacheManager manager;
+
+    /**
+     * 同一个key并发未命中时只有一个线程执行loader
+     */
+    private final SingleFlight<String, String> singleFlight = new SingleFlight<>();
+
+    private final Counter l1Hits;
+
+    private final Counter l2Hits;
+
+    private final Counter misses;
+
+    private final Timer l2Latency;
+
+    private final Timer loadLatency;
+
+    TwoLevelCache(String name, int maximumSize, long expireAfterWriteNanos, RedisServiceUtil redisServiceUtil,
+                  TwoLevelCacheManager manager, MeterRegistry meterRegistry) {
+        this.name = name;
+        this.nearCache = new NearCache<>(maximumSize, expireAfterWriteNanos);
+        this.redisServiceUtil = redisServiceUtil;
+        this.manager = manager;
+        this.l1Hits = requests(meterRegistry, "l1_hit");
+        this.l2Hits = requests(meterRegistry, "l2_hit");
+        this.misses = requests(meterRegistry, "miss");
+        this.l2Latency = latency(meterRegistry, "l2");
+        this.loadLatency = latency(meterRegistry, "loader");
+        Gauge.builder("two.level.cache.size", nearCache, NearCache::size)
+                .description("一级缓存条数").tag("cache", name).register(meterRegistry);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * 依次从一级缓存和redis获取
+     *
+     * @param key redis的key
+     * @return 都没有时返回null
+     */
+    public String get(String key) {
+        String value = nearCache.get(key);
+        if (value != null) {
+            l1Hits.increment();
+            return value;
+        }
+        long generation = nearCache.generation();
+        long start = System.nanoTime();
+        value = redisServiceUtil.get(key);
+        l2Latency.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        if (StringUtils.isEmpty(value)) {
+            misses.increment();
+            return null;
+        }
+        l2Hits.increment();
+        nearCache.put(key, value, generation);
+        return value;
+    }
+
+    /**
+     * 依次从一级缓存、redis和loader获取，loader查到的数据写入redis和一级缓存
+     * 同一个key并发未命中时只有一个线程执行loader，其他线程共享结果
+     *
+     * @param key redis的key
+     * @param loader 缓存都没有时查询数据库
+     * @param time redis中的过期时间
+     */
+    public String get(String key, Supplier<String> loader, int time, TimeUnit timeUnit) {
+        String value = get(key);
+        if (value != null) {
+            return value;
+        }
+        return singleFlight.load(key, () -> {
+            // 上一次加载可能刚刚结束，再看一次一级缓存
+            long generation = nearCache.generation();
+            String loaded = nearCache.get(key);
+            if (loaded != null) {
+                return loaded;
+            }
+            long start = System.nanoTime();
+            loaded = loader.get();
+            loadLatency.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            if (StringUtils.isNotEmpty(loaded)) {
+                redisServiceUtil.setWithExpire(key, loaded, time, timeUnit);
+                nearCache.put(key, loaded, generation);
+            }
+            return loaded;
+        });
+    }
+
+    /**
+     * 更新redis，并让所有节点的一级缓存失效
+     */
+    public void put(String key, String value, int time, TimeUnit timeUnit) {
+        redisServiceUtil.setWithExpire(key, value, time, timeUnit);
+        nearCache.invalidate(key);
+        manager.publishInvalidation(name, key);
+        nearCache.put(key, value, nearCache.generation());
+    }
+
+    /**
+     * 删除redis中的数据，并让所有节点的一级缓存失效
+     */
+    public void evict(String key) {
+        redisServiceUtil.delete(key);
+        nearCache.invalidate(key);
+        manager.publishInvalidation(name, key);
+    }
+
+    /**
+     * 只清除本机的一级缓存，收到其他节点的失效通知时调用
+     */
+    void invalidateLocal(String key) {
+        nearCache.invalidate(key);
+    }
+
+    public int getLocalSize() {
+        return nearCache.size();
+    }
+
+    public long getL1HitCount() {
+        return (long) l1Hits.count();
+    }
+
+    public long getL2HitCount() {
+        return (long) l2Hits.count();
+    }
+
+    public long getMissCount() {
+        return (long) misses.count();
+    }
+
+    /**
+     * 一级缓存命中率
+     */
+    public double getL1HitRatio() {
+        double total = l1Hits.count() + l2Hits.count() + misses.count();
+        return total == 0 ? 0 : l1Hits.count() / total;
+    }
+
+    private Counter requests(MeterRegistry meterRegistry, String result) {
+        return Counter.builder("two.level.cache.requests").description("二级缓存读取次数")
+                .tag("cache", name).tag("result", result).register(meterRegistry);
+    }
+
+    private Timer latency(MeterRegistry meterRegistry, String level) {
+        return Timer.builder("two.level.cache.latency").description("一级缓存未命中时的读取耗时")
+                .tag("cache", name).tag("level", level).register(meterRegistry);
+    }
+}
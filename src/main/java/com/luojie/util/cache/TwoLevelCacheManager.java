@@ -0,0 +1,124 @@
+package com.luojie.util.cache;
+
+import com.luojie.util.RedisServiceUtil;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * 管理各个名字的二级缓存，并负责通过redis发布订阅在节点之间传递一级缓存的失效通知
+ * 消息格式：节点id|缓存名|key，自己发出的消息直接忽略
+ * 命中率和耗时通过micrometer记录，可在/actuator/metrics/two.level.cache.requests查看
+ */
+@Component
+@Slf4j
+public class TwoLevelCacheManager implements MessageListener {
+
+    private static final String SEPARATOR = "|";
+
+    /**
+     * 失效通知的频道
+     */
+    @Value("${cache.two-level.channel:cache:invalidate}")
+    private String channel;
+
+    /**
+     * 每个缓存一级缓存的最大条数
+     */
+    @Value("${cache.two-level.maximum-size:10000}")
+    private int maximumSize;
+
+    /**
+     * 一级缓存写入后的存活时间，也是失效通知丢失时最多读到旧数据的时间
+     */
+    @Value("${cache.two-level.expire-after-write:60s}")
+    private Duration expireAfterWrite;
+
+    @Autowired
+    private RedisServiceUtil redisServiceUtil;
+
+    @Autowired
+    private RedisTemplate redisTemplate;
+
+    @Autowired
+    private RedisMessageListenerContainer listenerContainer;
+
+    @Autowired
+    private ObjectProvider<MeterRegistry> meterRegistryProvider;
+
+    private MeterRegistry meterRegistry;
+
+    private final String nodeId = UUID.randomUUID().toString();
+
+    private final ConcurrentMap<String, TwoLevelCache> caches = new ConcurrentHashMap<>();
+
+    @PostConstruct
+    public void init() {
+        meterRegistry = meterRegistryProvider.getIfAvailable(SimpleMeterRegistry::new);
+        listenerContainer.addMessageListener(this, new ChannelTopic(channel));
+    }
+
+    /**
+     * 获取指定名字的二级缓存，不存在时按默认配置创建
+     */
+    public TwoLevelCache getCache(String name) {
+        return getCache(name, maximumSize, expireAfterWrite);
+    }
+
+    /**
+     * 获取指定名字的二级缓存，不存在时按指定的一级缓存大小和存活时间创建
+     */
+    public TwoLevelCache getCache(String name, int maximumSize, Duration expireAfterWrite) {
+        if (name.contains(SEPARATOR)) {
+            throw new IllegalArgumentException("cache name must not contain " + SEPARATOR);
+        }
+        return caches.computeIfAbsent(name, n -> new TwoLevelCache(n, maximumSize, expireAfterWrite.toNanos(),
+                redisServiceUtil, this, meterRegistry));
+    }
+
+    public String getNodeId() {
+        return nodeId;
+    }
+
+    /**
+     * 通知其他节点清除一级缓存
+     */
+    void publishInvalidation(String cacheName, String key) {
+        try {
+            redisTemplate.convertAndSend(channel, nodeId + SEPARATOR + cacheName + SEPARATOR + key);
+        } catch (Exception e) {
+            log.error("fail publish cache invalidation cache:{}, key:{}, errorMsg:{}", cacheName, key, e.getMessage());
+        }
+    }
+
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        Object body = redisTemplate.getValueSerializer().deserialize(message.getBody());
+        if (!(body instanceof String)) {
+            return;
+        }
+        String[] parts = ((String) body).split("\\|", 3);
+        if (parts.length != 3 || nodeId.equals(parts[0])) {
+            return;
+        }
+        TwoLevelCache cache = caches.get(parts[1]);
+        if (cache != null) {
+            cache.invalidateLocal(parts[2]);
+        }
+    }
+}
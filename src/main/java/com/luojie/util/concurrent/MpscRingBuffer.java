@@ -0,0 +1,100 @@
+package com.luojie.util.concurrent;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * 有界、无锁的多生产者单消费者环形队列
+ * 每个槽位有一个序号：序号等于写入位置时可以写，等于写入位置+1时可以读，读完后加上容量交给下一圈
+ * 生产者只用一次CAS抢位置，满了直接返回false，不会阻塞；只能有一个线程调用poll
+ * SlowSqlJournal和BatchingAsyncAppender用它把请求线程的数据交给后台线程
+ *
+ * @param <E> 元素类型
+ */
+public final class MpscRingBuffer<E> {
+
+    private final int mask;
+
+    private final AtomicReferenceArray<E> elements;
+
+    private final AtomicLongArray sequences;
+
+    private final AtomicLong tail = new AtomicLong();
+
+    /**
+     * 只有消费者线程修改，volatile是为了让生产者估算队列长度
+     */
+    private volatile long head;
+
+    /**
+     * @param capacity 容量，向上取2的幂
+     */
+    public MpscRingBuffer(int capacity) {
+        int size = Integer.highestOneBit(Math.max(capacity, 2) - 1) << 1;
+        this.mask = size - 1;
+        this.elements = new AtomicReferenceArray<>(size);
+        this.sequences = new AtomicLongArray(size);
+        for (int i = 0; i < size; i++) {
+            sequences.set(i, i);
+        }
+    }
+
+    /**
+     * 放入元素，队列满时返回false
+     */
+    public boolean offer(E element) {
+        while (true) {
+            long position = tail.get();
+            int index = (int) position & mask;
+            long diff = sequences.get(index) - position;
+            if (diff == 0) {
+                if (tail.compareAndSet(position, position + 1)) {
+                    elements.lazySet(index, element);
+                    // volatile写，消费者看到序号时元素已经写入；之后读取的volatile变量(如消费者是否在等待)不会重排到前面
+                    sequences.set(index, position + 1);
+                    return true;
+                }
+            } else if (diff < 0) {
+                // 这个槽位上一圈的数据还没被取走
+                return false;
+            }
+            // 被其他生产者抢先，重试
+        }
+    }
+
+    /**
+     * 取出元素，队列为空(或者下一个位置的生产者还没写完)时返回null
+     */
+    public E poll() {
+        long position = head;
+        int index = (int) position & mask;
+        if (sequences.get(index) != position + 1) {
+            return null;
+        }
+        E element = elements.get(index);
+        elements.lazySet(index, null);
+        sequences.set(index, position + mask + 1);
+        head = position + 1;
+        return element;
+    }
+
+    /**
+     * 下一个位置是否还没有可读的元素，只能由消费者线程调用
+     */
+    public boolean isEmpty() {
+        long position = head;
+        return sequences.get((int) position & mask) != position + 1;
+    }
+
+    /**
+     * 估算的元素个数，并发修改时不精确
+     */
+    public int size() {
+        return (int) Math.max(0, tail.get() - head);
+    }
+
+    public int capacity() {
+        return mask + 1;
+    }
+}
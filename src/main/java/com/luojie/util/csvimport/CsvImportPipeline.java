@@ -0,0 +1,551 @@
+package com.luojie.util.csvimport;
+
+import com.opencsv.CSVParser;
+import com.opencsv.CSVParserBuilder;
+import com.opencsv.bean.ColumnPositionMappingStrategy;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+/**
+ * csv文件导入数据库的流水线
+ * 1. 切分：按splitSize把文件切成若干段，每段的结尾调整到换行符之后，所以字段中不能包含换行
+ * 2. 解析：parseThreads个线程各自内存映射一段，逐行解析(按@CsvBindByPosition映射)、校验，每batchSize行放进队列
+ * 3. 写入：writeThreads个线程从队列取出一批调用writer(如BatchSqlUtil.execute)，每个数据源用一个流水线
+ * 队列有界(queueCapacity批)，写入跟不上时解析线程会等待，内存占用与文件大小无关
+ * 一段的所有批次都写入后记录到检查点文件(文件名.checkpoint)，中断后resume=true重新运行会跳过已完成的段；
+ * 未完成的段会整段重新写入，其中已经写入的行会再写一次，writer必须是幂等的：
+ * 目标表要有唯一键并且用INSERT IGNORE/ON DUPLICATE KEY UPDATE写入(如Mapper2.insertUqIgnore)，普通INSERT会因重复而失败
+ * 进度通过csv.import.rows、csv.import.bytes计数(tag import为name)，并且每10秒打印一次日志
+ *
+ * @param <T> 行的类型
+ */
+@Slf4j
+public class CsvImportPipeline<T> {
+
+    private static final int MAX_LOGGED_REJECTS = 10;
+
+    private final Class<T> type;
+
+    private final Consumer<List<T>> writer;
+
+    private String name = "default";
+
+    private int parseThreads = Runtime.getRuntime().availableProcessors();
+
+    private int writeThreads = 2;
+
+    private int batchSize = 1000;
+
+    private long splitSize = 8L << 20;
+
+    private int queueCapacity = 16;
+
+    private int skipLines;
+
+    private Predicate<T> validator = row -> true;
+
+    private MeterRegistry meterRegistry;
+
+    /**
+     * @param type 行的类型，字段用@CsvBindByPosition绑定
+     * @param writer 写入一批数据，会在多个线程中同时调用
+     */
+    public CsvImportPipeline(Class<T> type, Consumer<List<T>> writer) {
+        this.type = type;
+        this.writer = writer;
+    }
+
+    /**
+     * 用于日志和指标的tag
+     */
+    public CsvImportPipeline<T> name(String name) {
+        this.name = name;
+        return this;
+    }
+
+    public CsvImportPipeline<T> parseThreads(int parseThreads) {
+        this.parseThreads = Math.max(1, parseThreads);
+        return this;
+    }
+
+    /**
+     * 不要超过数据库连接池的大小
+     */
+    public CsvImportPipeline<T> writeThreads(int writeThreads) {
+        this.writeThreads = Math.max(1, writeThreads);
+        return this;
+    }
+
+    public CsvImportPipeline<T> batchSize(int batchSize) {
+        this.batchSize = Math.max(1, batchSize);
+        return this;
+    }
+
+    /**
+     * 每段的字节数，也是检查点的粒度；修改后之前的检查点失效
+     */
+    public CsvImportPipeline<T> splitSize(long splitSize) {
+        this.splitSize = Math.max(1024, splitSize);
+        return this;
+    }
+
+    public CsvImportPipeline<T> queueCapacity(int queueCapacity) {
+        this.queueCapacity = Math.max(1, queueCapacity);
+        return this;
+    }
+
+    /**
+     * 跳过文件开头的行数，如列名
+     */
+    public CsvImportPipeline<T> skipLines(int skipLines) {
+        this.skipLines = Math.max(0, skipLines);
+        return this;
+    }
+
+    /**
+     * 校验不通过的行不写入，计入rejected
+     */
+    public CsvImportPipeline<T> validator(Predicate<T> validator) {
+        this.validator = validator;
+        return this;
+    }
+
+    public CsvImportPipeline<T> meterRegistry(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+        return this;
+    }
+
+    /**
+     * 导入文件，全部写入后删除检查点文件
+     *
+     * @param file csv文件
+     * @param resume 是否从检查点继续，false时删除已有的检查点从头导入
+     * @return 本次写入和拒绝的行数
+     * @throws IllegalStateException 解析或写入失败，已完成的段保留在检查点中
+     */
+    public Result run(Path file, boolean resume) throws IOException {
+        long startNanos = System.nanoTime();
+        Metrics metrics = new Metrics(meterRegistry != null ? meterRegistry : new SimpleMeterRegistry(), name);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+             ImportCheckpoint checkpoint = ImportCheckpoint.open(file, splitSize, resume)) {
+            List<Split> splits = split(channel);
+            List<Split> pending = new ArrayList<>();
+            for (Split split : splits) {
+                if (!checkpoint.isDone(split.index)) {
+                    pending.add(split);
+                }
+            }
+            log.info("csv import [{}] {}: {} 段, 跳过已完成的 {} 段", name, file, splits.size(),
+                    splits.size() - pending.size());
+
+            ColumnPositionMappingStrategy<T> strategy = new ColumnPositionMappingStrategy<>();
+            strategy.setType(type);
+            BlockingQueue<Batch<T>> queue = new ArrayBlockingQueue<>(queueCapacity);
+            Run<T> run = new Run<>(queue, checkpoint, metrics);
+
+            List<Thread> writers = new ArrayList<>(writeThreads);
+            for (int i = 0; i < writeThreads; i++) {
+                Thread thread = new Thread(() -> writeLoop(run), "csv-import-" + name + "-writer-" + i);
+                thread.setDaemon(true);
+                thread.start();
+                writers.add(thread);
+            }
+            ExecutorService parsers = Executors.newFixedThreadPool(parseThreads, r -> {
+                Thread thread = new Thread(r, "csv-import-" + name + "-parser");
+                thread.setDaemon(true);
+                return thread;
+            });
+            for (Split split : pending) {
+                parsers.execute(() -> parse(channel, split, strategy, run));
+            }
+            parsers.shutdown();
+            try {
+                while (!parsers.awaitTermination(10, TimeUnit.SECONDS)) {
+                    logProgress(metrics, startNanos, queue.size());
+                }
+                // 解析完后通知写入线程结束
+                for (int i = 0; i < writeThreads; i++) {
+                    enqueue(run, Batch.end());
+                }
+                for (Thread thread : writers) {
+                    while (thread.isAlive()) {
+                        thread.join(TimeUnit.SECONDS.toMillis(10));
+                        if (thread.isAlive()) {
+                            logProgress(metrics, startNanos, queue.size());
+                        }
+                    }
+                }
+            } catch (InterruptedException e) {
+                abort(run, parsers, writers, e);
+            } catch (CancellationException e) {
+                // 放结束标记时被中断
+                abort(run, parsers, writers, new InterruptedException("csv import [" + name + "] interrupted"));
+            }
+
+            Result result = new Result(metrics.written.get(), metrics.rejected.get(), splits.size(),
+                    splits.size() - pending.size(), TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos));
+            if (run.failure.get() != null) {
+                throw new IllegalStateException("csv import [" + name + "] failed after " + result.written
+                        + " rows, rerun with resume to continue", run.failure.get());
+            }
+            checkpoint.complete();
+            log.info("csv import [{}] 完成: 写入 {} 行, 拒绝 {} 行, 耗时 {} ms", name, result.written, result.rejected,
+                    result.elapsedMillis);
+            return result;
+        }
+    }
+
+    /**
+     * 协调线程被中断(如应用关闭时asyncExecutor中断任务)：停止解析线程，中断写入线程，不再等它们结束
+     * 写入线程不会再收到结束标记，不中断会一直阻塞在queue.take()；中断时正在写的批次写完后可能记不进已关闭的检查点，
+     * resume时这一段会重新导入，writer要求幂等
+     */
+    private void abort(Run<T> run, ExecutorService parsers, List<Thread> writers, InterruptedException cause) {
+        Thread.currentThread().interrupt();
+        run.fail(cause);
+        parsers.shutdownNow();
+        writers.forEach(Thread::interrupt);
+    }
+
+    /**
+     * 按splitSize切分，每段的结尾移到下一个换行符之后
+     */
+    private List<Split> split(FileChannel channel) throws IOException {
+        long size = channel.size();
+        List<Split> splits = new ArrayList<>();
+        ByteBuffer buffer = ByteBuffer.allocate(8192);
+        long start = 0;
+        while (start < size) {
+            long end = Math.min(size, start + splitSize);
+            if (end < size) {
+                end = nextLineStart(channel, end - 1, buffer);
+            }
+            splits.add(new Split(splits.size(), start, end));
+            start = end;
+        }
+        return splits;
+    }
+
+    private static long nextLineStart(FileChannel channel, long position, ByteBuffer buffer) throws IOException {
+        long size = channel.size();
+        while (position < size) {
+            buffer.clear();
+            int read = channel.read(buffer, position);
+            if (read <= 0) {
+                break;
+            }
+            for (int i = 0; i < read; i++) {
+                if (buffer.get(i) == '\n') {
+                    return position + i + 1;
+                }
+            }
+            position += read;
+        }
+        return size;
+    }
+
+    /**
+     * 解析一段，每batchSize行放进队列
+     */
+    private void parse(FileChannel channel, Split split, ColumnPositionMappingStrategy<T> strategy, Run<T> run) {
+        try {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, split.start, split.end - split.start);
+            CSVParser parser = new CSVParserBuilder().withIgnoreLeadingWhiteSpace(true).build();
+            byte[] lineBytes = new byte[256];
+            int skip = split.index == 0 ? skipLines : 0;
+            List<T> rows = new ArrayList<>(batchSize);
+            int limit = buffer.limit();
+            int lineStart = 0;
+            while (lineStart < limit && run.failure.get() == null) {
+                int lineEnd = lineStart;
+                while (lineEnd < limit && buffer.get(lineEnd) != '\n') {
+                    lineEnd++;
+                }
+                int next = lineEnd + 1;
+                if (lineEnd > lineStart && buffer.get(lineEnd - 1) == '\r') {
+                    lineEnd--;
+                }
+                int length = lineEnd - lineStart;
+                if (skip > 0) {
+                    skip--;
+                } else if (length > 0) {
+                    if (lineBytes.length < length) {
+                        lineBytes = new byte[Math.max(length, lineBytes.length * 2)];
+                    }
+                    buffer.get(lineStart, lineBytes, 0, length);
+                    T row = parseLine(parser, strategy, new String(lineBytes, 0, length, StandardCharsets.UTF_8),
+                            split.start + lineStart, run);
+                    if (row != null) {
+                        rows.add(row);
+                        if (rows.size() >= batchSize) {
+                            split.pending.incrementAndGet();
+                            enqueue(run, new Batch<>(split, rows));
+                            rows = new ArrayList<>(batchSize);
+                        }
+                    } else {
+                        split.rejected.incrementAndGet();
+                    }
+                }
+                lineStart = next;
+            }
+            if (run.failure.get() != null) {
+                // 没有解析完，不能记录到检查点
+                return;
+            }
+            if (!rows.isEmpty()) {
+                split.pending.incrementAndGet();
+                enqueue(run, new Batch<>(split, rows));
+            }
+            run.metrics.bytes.increment(split.end - split.start);
+            run.metrics.rejected.addAndGet(split.rejected.get());
+            run.metrics.rejectedCounter.increment(split.rejected.get());
+            // 解析完成，所有批次也写完时这一段就完成了
+            if (split.pending.decrementAndGet() == 0) {
+                run.splitDone(split);
+            }
+        } catch (CancellationException e) {
+            // 其他线程已经失败
+        } catch (Exception e) {
+            run.fail(e);
+        }
+    }
+
+    /**
+     * 解析并校验一行，不通过时返回null
+     */
+    private T parseLine(CSVParser parser, ColumnPositionMappingStrategy<T> strategy, String line, long offset,
+                        Run<T> run) {
+        try {
+            String[] fields = parser.parseLine(line);
+            if (parser.isPending()) {
+                throw new IllegalArgumentException("字段中不能包含换行");
+            }
+            T row = strategy.populateNewBean(fields);
+            if (validator.test(row)) {
+                return row;
+            }
+            logReject(run, offset, line, "校验不通过");
+        } catch (Exception e) {
+            logReject(run, offset, line, e.getMessage());
+        }
+        return null;
+    }
+
+    private void logReject(Run<T> run, long offset, String line, String reason) {
+        if (run.loggedRejects.incrementAndGet() <= MAX_LOGGED_REJECTS) {
+            log.warn("csv import [{}] 拒绝位置 {} 的行: {}, {}", name, offset, reason, line);
+        }
+    }
+
+    private void writeLoop(Run<T> run) {
+        try {
+            while (true) {
+                Batch<T> batch = run.queue.take();
+                if (batch.split == null) {
+                    return;
+                }
+                if (run.failure.get() != null) {
+                    continue;
+                }
+                writer.accept(batch.rows);
+                run.metrics.written.addAndGet(batch.rows.size());
+                run.metrics.writtenCounter.increment(batch.rows.size());
+                batch.split.written.addAndGet(batch.rows.size());
+                if (batch.split.pending.decrementAndGet() == 0) {
+                    run.splitDone(batch.split);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            run.fail(e);
+            // 继续取出队列中的数据，避免解析线程一直等待
+            drain(run);
+        }
+    }
+
+    private void drain(Run<T> run) {
+        try {
+            while (run.queue.take().split != null) {
+                // 丢弃
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * 放进队列，失败后不再等待
+     */
+    private void enqueue(Run<T> run, Batch<T> batch) {
+        try {
+            while (!run.queue.offer(batch, 100, TimeUnit.MILLISECONDS)) {
+                if (run.failure.get() != null && batch.split != null) {
+                    throw new CancellationException();
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CancellationException();
+        }
+    }
+
+    private void logProgress(Metrics metrics, long startNanos, int queued) {
+        long elapsed = Math.max(1, TimeUnit.NANOSECONDS.toSeconds(System.nanoTime() - startNanos));
+        log.info("csv import [{}] 已写入 {} 行, 拒绝 {} 行, {} 行/秒, 队列 {} 批", name, metrics.written.get(),
+                metrics.rejected.get(), metrics.written.get() / elapsed, queued);
+    }
+
+    @Getter
+    public static final class Result {
+
+        /**
+         * 本次写入的行数，不含检查点中已完成的段
+         */
+        private final long written;
+
+        private final long rejected;
+
+        private final int splits;
+
+        /**
+         * 从检查点跳过的段数
+         */
+        private final int skippedSplits;
+
+        private final long elapsedMillis;
+
+        private Result(long written, long rejected, int splits, int skippedSplits, long elapsedMillis) {
+            this.written = written;
+            this.rejected = rejected;
+            this.splits = splits;
+            this.skippedSplits = skippedSplits;
+            this.elapsedMillis = elapsedMillis;
+        }
+    }
+
+    private static final class Split {
+
+        private final int index;
+
+        private final long start;
+
+        private final long end;
+
+        /**
+         * 未写完的批次数，加1表示还在解析
+         */
+        private final AtomicInteger pending = new AtomicInteger(1);
+
+        private final AtomicLong written = new AtomicLong();
+
+        private final AtomicLong rejected = new AtomicLong();
+
+        private Split(int index, long start, long end) {
+            this.index = index;
+            this.start = start;
+            this.end = end;
+        }
+    }
+
+    private static final class Batch<T> {
+
+        private final Split split;
+
+        private final List<T> rows;
+
+        private Batch(Split split, List<T> rows) {
+            this.split = split;
+            this.rows = rows;
+        }
+
+        /**
+         * 通知写入线程结束
+         */
+        private static <T> Batch<T> end() {
+            return new Batch<>(null, null);
+        }
+    }
+
+    private static final class Metrics {
+
+        private final AtomicLong written = new AtomicLong();
+
+        private final AtomicLong rejected = new AtomicLong();
+
+        private final Counter writtenCounter;
+
+        private final Counter rejectedCounter;
+
+        private final Counter bytes;
+
+        private Metrics(MeterRegistry registry, String name) {
+            writtenCounter = Counter.builder("csv.import.rows").description("csv导入的行数")
+                    .tag("import", name).tag("result", "written").register(registry);
+            rejectedCounter = Counter.builder("csv.import.rows").description("csv导入的行数")
+                    .tag("import", name).tag("result", "rejected").register(registry);
+            bytes = Counter.builder("csv.import.bytes").description("csv导入已解析的字节数")
+                    .tag("import", name).register(registry);
+        }
+    }
+
+    /**
+     * 一次导入中各线程共享的状态
+     */
+    private static final class Run<T> {
+
+        private final BlockingQueue<Batch<T>> queue;
+
+        private final ImportCheckpoint checkpoint;
+
+        private final Metrics metrics;
+
+        private final AtomicReference<Throwable> failure = new AtomicReference<>();
+
+        private final AtomicInteger loggedRejects = new AtomicInteger();
+
+        private Run(BlockingQueue<Batch<T>> queue, ImportCheckpoint checkpoint, Metrics metrics) {
+            this.queue = queue;
+            this.checkpoint = checkpoint;
+            this.metrics = metrics;
+        }
+
+        private void splitDone(Split split) {
+            try {
+                checkpoint.markDone(split.index, split.written.get(), split.rejected.get());
+            } catch (IOException e) {
+                fail(e);
+            }
+        }
+
+        private void fail(Throwable t) {
+            if (failure.compareAndSet(null, t)) {
+                log.error("csv import failed, errorMsg:{}", t.getMessage(), t);
+            }
+        }
+    }
+}
@@ -0,0 +1,89 @@
+package com.luojie.util.csvimport;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * 导入的检查点文件，和csv文件放在同一目录，文件名为csv文件名.checkpoint
+ * 第一行记录csv文件的大小、修改时间和分段大小，任何一个变化时检查点失效；之后每完成一段追加一行：段号 写入行数 拒绝行数
+ * 每追加一行都会force到磁盘，进程崩溃时最多丢失正在写的段
+ */
+@Slf4j
+final class ImportCheckpoint implements Closeable {
+
+    private final Path path;
+
+    private final BitSet done = new BitSet();
+
+    private final FileChannel channel;
+
+    private ImportCheckpoint(Path path, BitSet done, FileChannel channel) {
+        this.path = path;
+        this.done.or(done);
+        this.channel = channel;
+    }
+
+    static ImportCheckpoint open(Path file, long splitSize, boolean resume) throws IOException {
+        Path path = file.resolveSibling(file.getFileName() + ".checkpoint");
+        String header = "size=" + Files.size(file) + ",modified=" + Files.getLastModifiedTime(file).toMillis()
+                + ",split=" + splitSize;
+        BitSet done = new BitSet();
+        if (resume && Files.exists(path)) {
+            List<String> lines = Files.readAllLines(path, StandardCharsets.UTF_8);
+            if (!lines.isEmpty() && header.equals(lines.get(0))) {
+                for (String line : lines.subList(1, lines.size())) {
+                    String[] parts = line.split(" ");
+                    // 最后一行可能只写了一半
+                    if (parts.length == 3) {
+                        done.set(Integer.parseInt(parts[0]));
+                    }
+                }
+            } else {
+                log.warn("checkpoint {} does not match {}, import from the beginning", path, file);
+            }
+        }
+        if (done.isEmpty()) {
+            Files.write(path, (header + "\n").getBytes(StandardCharsets.UTF_8));
+        }
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        return new ImportCheckpoint(path, done, channel);
+    }
+
+    synchronized boolean isDone(int split) {
+        return done.get(split);
+    }
+
+    synchronized void markDone(int split, long written, long rejected) throws IOException {
+        done.set(split);
+        ByteBuffer line = ByteBuffer.wrap((split + " " + written + " " + rejected + "\n").getBytes(StandardCharsets.UTF_8));
+        while (line.hasRemaining()) {
+            channel.write(line);
+        }
+        channel.force(false);
+    }
+
+    /**
+     * 全部导入完成，删除检查点文件
+     */
+    void complete() throws IOException {
+        close();
+        Files.deleteIfExists(path);
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (channel.isOpen()) {
+            channel.close();
+        }
+    }
+}
@@ -0,0 +1,331 @@
+package com.luojie.util.journal;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import com.luojie.util.concurrent.MpscRingBuffer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 慢sql日志，代替每条sql调用一次TxtUtil.writeLog
+ * 1. 查询线程只把记录放进有界的无锁环形队列，不做格式化和IO，队列满时丢弃并计数，不会阻塞查询
+ * 2. 后台线程批量取出，格式化后写入一直打开的FileChannel
+ * 3. 按天滚动文件(yyyy-MM-dd.txt)，单个文件超过max-file-size时滚动为yyyy-MM-dd.1.txt、yyyy-MM-dd.2.txt...
+ * 停止时会把队列里剩下的记录写完
+ */
+@Component
+@Slf4j
+public class SlowSqlJournal {
+
+    private static final DateTimeFormatter TIME_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss.")
+            .withZone(ZoneId.systemDefault());
+
+    private static final byte[] NEW_LINE = System.lineSeparator().getBytes(StandardCharsets.UTF_8);
+
+    @Value("${sql.slow.enabled:true}")
+    private boolean enabled;
+
+    /**
+     * 执行时间达到该值才记录
+     */
+    @Value("${sql.slow.threshold:1s}")
+    private Duration threshold;
+
+    @Value("${sql.slow.directory:D:\\tmp\\log}")
+    private String directory;
+
+    @Value("${sql.slow.max-file-size:100MB}")
+    private DataSize maxFileSize;
+
+    /**
+     * 队列容量，写入跟不上时超出的记录会被丢弃
+     */
+    @Value("${sql.slow.buffer-size:8192}")
+    private int bufferSize;
+
+    /**
+     * 队列为空时后台线程的等待时间，也是记录最晚写入文件的延迟
+     */
+    @Value("${sql.slow.flush-interval:200ms}")
+    private Duration flushInterval;
+
+    private MpscRingBuffer<Entry> buffer;
+
+    private Thread writer;
+
+    private volatile boolean running;
+
+    /**
+     * 后台线程正在等待，队列积压到四分之一时由生产者唤醒，避免突发流量在等待期间把队列写满
+     */
+    private final AtomicBoolean sleeping = new AtomicBoolean();
+
+    private int wakeupSize;
+
+    private final AtomicLong dropped = new AtomicLong();
+
+    private final AtomicLong written = new AtomicLong();
+
+    /**
+     * 以下字段只在writer线程中使用
+     */
+    private FileChannel channel;
+
+    private LocalDate fileDate;
+
+    private int fileIndex;
+
+    private long fileSize;
+
+    private ByteBuffer out;
+
+    private long reportedDropped;
+
+    private final StringBuilder line = new StringBuilder(256);
+
+    /**
+     * 同一秒内的记录复用格式化好的"yyyy-MM-dd HH:mm:ss."
+     */
+    private long cachedSecond = -1;
+
+    private String cachedSecondText;
+
+    @PostConstruct
+    public void start() {
+        if (!enabled) {
+            return;
+        }
+        buffer = new MpscRingBuffer<>(bufferSize);
+        wakeupSize = Math.max(1, buffer.capacity() / 4);
+        out = ByteBuffer.allocateDirect(64 * 1024);
+        running = true;
+        writer = new Thread(this::drainLoop, "slow-sql-journal");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (writer == null) {
+            return;
+        }
+        running = false;
+        LockSupport.unpark(writer);
+        try {
+            writer.join(TimeUnit.SECONDS.toMillis(5));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    public boolean isSlow(long executionMillis) {
+        return enabled && executionMillis >= threshold.toMillis();
+    }
+
+    /**
+     * 记录一条慢sql，不会阻塞
+     *
+     * @param sql 渲染好的sql
+     * @param executionMillis 执行耗时
+     * @return 队列满或未开启时返回false
+     */
+    public boolean record(String sql, long executionMillis) {
+        if (!running) {
+            return false;
+        }
+        if (!buffer.offer(new Entry(System.currentTimeMillis(), sql, executionMillis))) {
+            dropped.incrementAndGet();
+            return false;
+        }
+        if (sleeping.get() && buffer.size() >= wakeupSize && sleeping.compareAndSet(true, false)) {
+            LockSupport.unpark(writer);
+        }
+        return true;
+    }
+
+    public long getDroppedCount() {
+        return dropped.get();
+    }
+
+    public long getWrittenCount() {
+        return written.get();
+    }
+
+    private void drainLoop() {
+        long parkNanos = flushInterval.toNanos();
+        while (true) {
+            boolean stopping = !running;
+            int count = drainBatch();
+            if (count == 0) {
+                if (stopping) {
+                    break;
+                }
+                sleeping.set(true);
+                LockSupport.parkNanos(this, parkNanos);
+                sleeping.set(false);
+            }
+        }
+        closeChannel();
+    }
+
+    /**
+     * 取出队列中的所有记录写入文件
+     *
+     * @return 写入的条数
+     */
+    private int drainBatch() {
+        int count = 0;
+        Entry entry;
+        try {
+            while ((entry = buffer.poll()) != null) {
+                append(entry);
+                count++;
+            }
+            flush();
+        } catch (Exception e) {
+            log.error("fail write slow sql journal, errorMsg:{}", e.getMessage());
+            out.clear();
+            closeChannel();
+        }
+        written.addAndGet(count);
+        long droppedNow = dropped.get();
+        if (droppedNow != reportedDropped) {
+            log.warn("slow sql journal full, dropped {} entries", droppedNow - reportedDropped);
+            reportedDropped = droppedNow;
+        }
+        return count;
+    }
+
+    private void append(Entry entry) throws IOException {
+        roll(entry.timestamp);
+        byte[] bytes = format(entry).getBytes(StandardCharsets.UTF_8);
+        if (out.remaining() < bytes.length + NEW_LINE.length) {
+            flush();
+        }
+        if (bytes.length + NEW_LINE.length > out.capacity()) {
+            // 超长的sql直接写
+            channel.write(ByteBuffer.wrap(bytes));
+            channel.write(ByteBuffer.wrap(NEW_LINE));
+        } else {
+            out.put(bytes).put(NEW_LINE);
+        }
+        fileSize += bytes.length + NEW_LINE.length;
+    }
+
+    private void flush() throws IOException {
+        out.flip();
+        while (out.hasRemaining()) {
+            channel.write(out);
+        }
+        out.clear();
+    }
+
+    /**
+     * 日期变化或文件超过大小时切换文件，先写完当前文件的缓冲区
+     */
+    private void roll(long timestamp) throws IOException {
+        LocalDate date = Instant.ofEpochMilli(timestamp).atZone(ZoneId.systemDefault()).toLocalDate();
+        if (channel != null && date.equals(fileDate) && fileSize < maxFileSize.toBytes()) {
+            return;
+        }
+        if (channel != null) {
+            flush();
+            closeChannel();
+            if (date.equals(fileDate)) {
+                fileIndex++;
+            }
+        }
+        if (!date.equals(fileDate)) {
+            fileDate = date;
+            fileIndex = 0;
+        }
+        Path dir = Paths.get(directory);
+        Files.createDirectories(dir);
+        Path file = dir.resolve(fileName(date, fileIndex));
+        // 重启后跳过已经写满的文件
+        while (Files.exists(file) && Files.size(file) >= maxFileSize.toBytes()) {
+            file = dir.resolve(fileName(date, ++fileIndex));
+        }
+        channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        fileSize = channel.size();
+    }
+
+    private static String fileName(LocalDate date, int index) {
+        return index == 0 ? date + ".txt" : date + "." + index + ".txt";
+    }
+
+    private void closeChannel() {
+        if (channel == null) {
+            return;
+        }
+        try {
+            channel.close();
+        } catch (IOException e) {
+            log.error("fail close slow sql journal, errorMsg:{}", e.getMessage());
+        }
+        channel = null;
+    }
+
+    /**
+     * 格式与原来TxtUtil写入的一致：时间  SQL: xxx  执行耗时: XXs.XXXms
+     */
+    private String format(Entry entry) {
+        long second = entry.timestamp / 1000;
+        if (second != cachedSecond) {
+            cachedSecond = second;
+            cachedSecondText = TIME_FORMAT.format(Instant.ofEpochSecond(second));
+        }
+        line.setLength(0);
+        line.append(cachedSecondText);
+        appendThreeDigits(entry.timestamp % 1000);
+        line.append("  SQL: ").append(entry.sql).append("  执行耗时: ")
+                .append(entry.executionMillis / 1000).append("s.");
+        appendThreeDigits(entry.executionMillis % 1000);
+        return line.append("ms").toString();
+    }
+
+    private void appendThreeDigits(long value) {
+        if (value < 100) {
+            line.append('0');
+        }
+        if (value < 10) {
+            line.append('0');
+        }
+        line.append(value);
+    }
+
+    private static final class Entry {
+
+        private final long timestamp;
+
+        private final String sql;
+
+        private final long executionMillis;
+
+        private Entry(long timestamp, String sql, long executionMillis) {
+            this.timestamp = timestamp;
+            this.sql = sql;
+            this.executionMillis = executionMillis;
+        }
+    }
+}
@@ -0,0 +1,255 @@
+package com.luojie.util.lock;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 基于redis的分布式锁，通过RedisLockFactory.getLock获取
+ * 1. 加锁：SET NX PX和递增的fencing token在同一个脚本里完成，token可以交给下游存储拒绝过期持有者的写入
+ * 2. 释放：脚本里比较持有者标识后再删除，并发布释放通知，不会误删别人的锁
+ * 3. 等待：订阅释放通知，有锁释放时才去重试，兜底按当前持有者的剩余租期重试
+ * 4. 续期：没有指定租期时由看门狗每隔三分之一租期续期，持有者进程挂掉后锁会在租期后自动释放
+ * 锁不可重入，也不和线程绑定，用返回的Lease释放
+ */
+@Slf4j
+public class RedisLock {
+
+    /**
+     * KEYS[1]=锁，KEYS[2]=fencing计数器，ARGV[1]=持有者，ARGV[2]=租期(毫秒)
+     * 成功返回fencing token(大于0)，失败返回当前持有者剩余租期的负数；
+     * 锁没有过期时间(被其他程序用SET写入)时返回NO_TTL，PTTL时锁刚好过期则再加锁一次
+     */
+    private static final DefaultRedisScript<Long> ACQUIRE_SCRIPT = new DefaultRedisScript<>(
+            "if redis.call('SET', KEYS[1], ARGV[1], 'NX', 'PX', ARGV[2]) then " +
+            "return redis.call('INCR', KEYS[2]) end " +
+            "local ttl = redis.call('PTTL', KEYS[1]) " +
+            "if ttl > 0 then return -ttl end " +
+            "if ttl == -1 then return 0 end " +
+            "if redis.call('SET', KEYS[1], ARGV[1], 'NX', 'PX', ARGV[2]) then " +
+            "return redis.call('INCR', KEYS[2]) end " +
+            "return -1", Long.class);
+
+    /**
+     * ACQUIRE_SCRIPT的返回值：锁存在但没有过期时间，不会自动释放
+     */
+    private static final long NO_TTL = 0;
+
+    /**
+     * KEYS[1]=锁，ARGV[1]=持有者，ARGV[2]=释放通知频道，ARGV[3]=锁名
+     */
+    private static final DefaultRedisScript<Long> RELEASE_SCRIPT = new DefaultRedisScript<>(
+            "if redis.call('GET', KEYS[1]) == ARGV[1] then " +
+            "redis.call('DEL', KEYS[1]) " +
+            "redis.call('PUBLISH', ARGV[2], ARGV[3]) " +
+            "return 1 end " +
+            "return 0", Long.class);
+
+    /**
+     * KEYS[1]=锁，ARGV[1]=持有者，ARGV[2]=租期(毫秒)
+     */
+    private static final DefaultRedisScript<Long> RENEW_SCRIPT = new DefaultRedisScript<>(
+            "if redis.call('GET', KEYS[1]) == ARGV[1] then " +
+            "return redis.call('PEXPIRE', KEYS[1], ARGV[2]) end " +
+            "return 0", Long.class);
+
+    /**
+     * redis不可用时两次重试之间的间隔
+     */
+    private static final long RETRY_MILLIS = 100;
+
+    private final String name;
+
+    /**
+     * 锁和fencing计数器用同一个hash tag，集群模式下落在同一个slot
+     */
+    private final List<String> keys;
+
+    private final RedisLockFactory factory;
+
+    RedisLock(String name, RedisLockFactory factory) {
+        this.name = name;
+        this.keys = Arrays.asList("lock:{" + name + "}", "lock:{" + name + "}:fence");
+        this.factory = factory;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * 一直等到加锁成功，由看门狗续期
+     */
+    public Lease lock() throws InterruptedException {
+        return acquire(Long.MAX_VALUE, -1);
+    }
+
+    /**
+     * 在指定时间内尝试加锁，由看门狗续期
+     *
+     * @param waitTime 最长等待时间，0表示只尝试一次
+     * @return 加锁成功返回Lease，超时返回null
+     */
+    public Lease tryLock(long waitTime, TimeUnit unit) throws InterruptedException {
+        return acquire(unit.toNanos(waitTime), -1);
+    }
+
+    /**
+     * 在指定时间内尝试加锁，租期到了自动释放，不续期
+     *
+     * @param waitTime 最长等待时间，0表示只尝试一次
+     * @param leaseTime 租期
+     * @return 加锁成功返回Lease，超时返回null
+     */
+    public Lease tryLock(long waitTime, long leaseTime, TimeUnit unit) throws InterruptedException {
+        if (leaseTime <= 0) {
+            throw new IllegalArgumentException("leaseTime must be positive");
+        }
+        return acquire(unit.toNanos(waitTime), unit.toMillis(leaseTime));
+    }
+
+    private Lease acquire(long waitNanos, long leaseMillis) throws InterruptedException {
+        boolean watchdog = leaseMillis <= 0;
+        long lease = watchdog ? factory.getDefaultLeaseMillis() : leaseMillis;
+        String owner = factory.nextOwner();
+        long deadline = waitNanos == Long.MAX_VALUE ? Long.MAX_VALUE : System.nanoTime() + waitNanos;
+
+        // 没有竞争时不需要订阅
+        Long result = tryAcquire(owner, lease);
+        if (result != null && result > 0) {
+            return newLease(owner, result, lease, watchdog);
+        }
+        if (waitNanos <= 0) {
+            return null;
+        }
+        Semaphore wakeup = factory.startWaiting(name);
+        try {
+            while (true) {
+                // 开始等待之后再试一次，避免错过等待之前发出的释放通知
+                result = tryAcquire(owner, lease);
+                if (result != null && result > 0) {
+                    return newLease(owner, result, lease, watchdog);
+                }
+                long remainingNanos = deadline == Long.MAX_VALUE ? Long.MAX_VALUE : deadline - System.nanoTime();
+                if (remainingNanos <= 0) {
+                    return null;
+                }
+                // 通知丢失时，最晚在当前持有者租期到期时重试；锁没有过期时间时按一个租期重试，不会空转
+                long ttlNanos = TimeUnit.MILLISECONDS.toNanos(backoffMillis(result, lease));
+                wakeup.tryAcquire(Math.min(remainingNanos, ttlNanos), TimeUnit.NANOSECONDS);
+            }
+        } finally {
+            factory.stopWaiting(name);
+        }
+    }
+
+    /**
+     * 加锁失败后最多等待多久再重试
+     */
+    private long backoffMillis(Long result, long leaseMillis) {
+        if (result == null) {
+            return RETRY_MILLIS;
+        }
+        if (result == NO_TTL) {
+            log.warn("redis lock {} exists without expiry, it will not be released automatically", name);
+            return leaseMillis;
+        }
+        return -result;
+    }
+
+    private Long tryAcquire(String owner, long leaseMillis) {
+        return factory.getRedisServiceUtil().executeScript(ACQUIRE_SCRIPT, keys, owner, String.valueOf(leaseMillis));
+    }
+
+    private Lease newLease(String owner, long fencingToken, long leaseMillis, boolean watchdog) {
+        Lease lease = new Lease(owner, fencingToken);
+        if (watchdog) {
+            long period = Math.max(leaseMillis / 3, 1);
+            lease.renewal = factory.getWatchdog().scheduleAtFixedRate(() -> lease.renew(leaseMillis),
+                    period, period, TimeUnit.MILLISECONDS);
+        }
+        return lease;
+    }
+
+    /**
+     * 一次加锁的凭证，通过unlock或try-with-resources释放
+     */
+    public class Lease implements AutoCloseable {
+
+        private final String owner;
+
+        private final long fencingToken;
+
+        private volatile boolean held = true;
+
+        private volatile ScheduledFuture<?> renewal;
+
+        private Lease(String owner, long fencingToken) {
+            this.owner = owner;
+            this.fencingToken = fencingToken;
+        }
+
+        /**
+         * 单调递增的fencing token，写下游存储时带上，存储端拒绝比已见过的token更小的写入
+         */
+        public long getFencingToken() {
+            return fencingToken;
+        }
+
+        /**
+         * 是否仍持有锁，续期失败(锁已过期被别人拿走)或已释放时为false
+         */
+        public boolean isHeld() {
+            return held;
+        }
+
+        public void unlock() {
+            if (!held) {
+                return;
+            }
+            held = false;
+            cancelRenewal();
+            Long released = factory.getRedisServiceUtil().executeScript(RELEASE_SCRIPT, keys.subList(0, 1), owner,
+                    factory.getChannel(), name);
+            if (released == null) {
+                // 脚本执行失败，锁仍在redis中，已停止续期，租期到了自动释放
+                log.error("redis lock {} unlock failed, it will expire after the lease, fencingToken:{}", name,
+                        fencingToken);
+            } else if (released == 0) {
+                log.warn("redis lock {} already expired before unlock, fencingToken:{}", name, fencingToken);
+            }
+        }
+
+        @Override
+        public void close() {
+            unlock();
+        }
+
+        private void renew(long leaseMillis) {
+            if (!held) {
+                cancelRenewal();
+                return;
+            }
+            Long renewed = factory.getRedisServiceUtil().executeScript(RENEW_SCRIPT, keys.subList(0, 1), owner,
+                    String.valueOf(leaseMillis));
+            // redis暂时不可用时下次再试，确认锁已不属于自己时停止续期
+            if (renewed != null && renewed == 0) {
+                log.warn("redis lock {} lost before unlock, fencingToken:{}", name, fencingToken);
+                held = false;
+                cancelRenewal();
+            }
+        }
+
+        private void cancelRenewal() {
+            ScheduledFuture<?> future = renewal;
+            if (future != null) {
+                future.cancel(false);
+            }
+        }
+    }
+}
@@ -0,0 +1,141 @@
+package com.luojie.util.lock;
+
+import com.luojie.util.RedisServiceUtil;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 创建RedisLock，并负责两件公共的事情：
+ * 1. 订阅锁释放的频道，有锁释放时唤醒本机等待该锁的一个线程，代替sleep轮询
+ * 2. 看门狗线程，为没有指定租期的锁定时续期
+ */
+@Component
+@Slf4j
+public class RedisLockFactory implements MessageListener {
+
+    /**
+     * 锁释放通知的频道，消息内容为锁名
+     */
+    @Value("${redis.lock.channel:lock:release}")
+    private String channel;
+
+    /**
+     * 未指定租期时的默认租期，看门狗每隔三分之一租期续期一次
+     */
+    @Value("${redis.lock.lease-time:30s}")
+    private Duration defaultLeaseTime;
+
+    @Autowired
+    private RedisServiceUtil redisServiceUtil;
+
+    @Autowired
+    private RedisMessageListenerContainer listenerContainer;
+
+    private final String nodeId = UUID.randomUUID().toString();
+
+    private final AtomicLong ownerSequence = new AtomicLong();
+
+    /**
+     * 锁名 -> 本机等待该锁的线程
+     */
+    private final ConcurrentMap<String, Waiters> waiters = new ConcurrentHashMap<>();
+
+    private final ScheduledExecutorService watchdog = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "redis-lock-watchdog");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    @PostConstruct
+    public void init() {
+        listenerContainer.addMessageListener(this, new ChannelTopic(channel));
+    }
+
+    @PreDestroy
+    public void destroy() {
+        watchdog.shutdownNow();
+    }
+
+    /**
+     * 获取指定名字的锁，同名的锁在所有节点之间互斥
+     */
+    public RedisLock getLock(String name) {
+        return new RedisLock(name, this);
+    }
+
+    RedisServiceUtil getRedisServiceUtil() {
+        return redisServiceUtil;
+    }
+
+    String getChannel() {
+        return channel;
+    }
+
+    long getDefaultLeaseMillis() {
+        return defaultLeaseTime.toMillis();
+    }
+
+    ScheduledExecutorService getWatchdog() {
+        return watchdog;
+    }
+
+    /**
+     * 每次加锁使用不同的持有者标识，释放和续期时用来确认锁仍属于自己
+     */
+    String nextOwner() {
+        return nodeId + ":" + ownerSequence.incrementAndGet();
+    }
+
+    /**
+     * 开始等待某个锁，必须与stopWaiting成对调用
+     */
+    Semaphore startWaiting(String name) {
+        return waiters.compute(name, (n, w) -> {
+            Waiters result = w == null ? new Waiters() : w;
+            result.count++;
+            return result;
+        }).semaphore;
+    }
+
+    void stopWaiting(String name) {
+        waiters.computeIfPresent(name, (n, w) -> --w.count == 0 ? null : w);
+    }
+
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        String name = new String(message.getBody(), StandardCharsets.UTF_8);
+        Waiters w = waiters.get(name);
+        // 只唤醒一个等待者，避免所有线程同时去抢锁
+        if (w != null && w.semaphore.availablePermits() < w.count) {
+            w.semaphore.release();
+        }
+    }
+
+    private static final class Waiters {
+
+        private final Semaphore semaphore = new Semaphore(0);
+
+        /**
+         * 只在ConcurrentHashMap.compute中修改
+         */
+        private int count;
+    }
+}